@@ -0,0 +1,114 @@
+package fr.uge.clonewar;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the analysis of a small, a medium and a huge generated jar. Each
+ * operation analyzes the jar with empty backup files, so that all its classes
+ * are read, hashed and saved.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class AnalysisBenchmark {
+
+  /**
+   * Amount of classes of the analyzed jar: small, medium or huge.
+   */
+  @Param({"20", "1000", "10000"})
+  public int classCount;
+
+  /**
+   * Directory of the generated jar and of the backup files.
+   */
+  private Path directory;
+
+  /**
+   * Analyzed jar.
+   */
+  private Path jar;
+
+  /**
+   * Object analyzing the jar, created again before each operation.
+   */
+  private Asm asm;
+
+  /**
+   * Generates the analyzed jar.
+   *
+   * @throws IOException if the jar can't be written.
+   */
+  @Setup(Level.Trial)
+  public void generateJar() throws IOException {
+    directory = Files.createTempDirectory("clonewarAnalysisBenchmark");
+    jar = BenchmarkArtifacts.jar(directory, "artifact", classCount, new Random(0));
+  }
+
+  /**
+   * Creates an object analyzing the jar with empty backup files.
+   *
+   * @throws IOException if the previous backup files can't be deleted.
+   */
+  @Setup(Level.Invocation)
+  public void createAsm() throws IOException {
+    var hashesBackupFile = directory.resolve("hashesBackupFile.bin");
+    var jarsBackupFile = directory.resolve("jarsBackupFile.txt");
+    Files.deleteIfExists(hashesBackupFile);
+    Files.deleteIfExists(jarsBackupFile);
+    asm = new Asm(hashesBackupFile, jarsBackupFile);
+  }
+
+  /**
+   * Closes the object analyzing the jar.
+   *
+   * @throws IOException if the backup file can't be closed.
+   */
+  @TearDown(Level.Invocation)
+  public void closeAsm() throws IOException {
+    asm.close();
+  }
+
+  /**
+   * Deletes the generated jar and the backup files.
+   *
+   * @throws IOException if a file can't be deleted.
+   */
+  @TearDown(Level.Trial)
+  public void deleteDirectory() throws IOException {
+    BenchmarkArtifacts.delete(directory);
+  }
+
+  /**
+   * Analyzes the jar.
+   *
+   * @return true if the analysis has been completed.
+   */
+  @Benchmark
+  public boolean analysis() {
+    return asm.analysis(jar);
+  }
+}
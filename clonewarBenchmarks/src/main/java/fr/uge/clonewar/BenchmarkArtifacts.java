@@ -0,0 +1,179 @@
+package fr.uge.clonewar;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Generates the artifacts analyzed by the benchmarks. The classes are made of
+ * random static methods whose bodies are taken from a common pool, so that the
+ * generated artifacts share some classes like real clones do. The same seed
+ * always generates the same artifacts.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+final class BenchmarkArtifacts {
+
+  /**
+   * Amount of distinct class bodies the generated classes are taken from.
+   */
+  private static final int BODY_POOL_SIZE = 2_000;
+
+  /**
+   * Maximum amount of methods of a generated class.
+   */
+  private static final int MAX_METHOD_COUNT = 10;
+
+  /**
+   * Maximum amount of statements of a generated method.
+   */
+  private static final int MAX_STATEMENT_COUNT = 60;
+
+  private BenchmarkArtifacts() {
+    throw new AssertionError();
+  }
+
+  /**
+   * Generates the byte code of a class. The methods of the class only depend on
+   * the body seed.
+   *
+   * @param className is the internal name of the class.
+   * @param bodySeed  is the seed of the methods of the class.
+   * @return the content of the .class file.
+   */
+  private static byte[] classBytes(String className, long bodySeed) {
+    var random = new Random(bodySeed);
+    var writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, className, null, "java/lang/Object", null);
+    writer.visitField(Opcodes.ACC_STATIC, "counter", "I", null, null).visitEnd();
+    var methodCount = 1 + random.nextInt(MAX_METHOD_COUNT);
+    for (var i = 0; i < methodCount; i++) {
+      var method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "m" + i, "(I)I", null, null);
+      method.visitCode();
+      var statementCount = 1 + random.nextInt(MAX_STATEMENT_COUNT);
+      for (var j = 0; j < statementCount; j++) {
+        statement(method, className, random);
+      }
+      method.visitVarInsn(Opcodes.ILOAD, 0);
+      method.visitInsn(Opcodes.IRETURN);
+      method.visitMaxs(0, 0);
+      method.visitEnd();
+    }
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  /**
+   * Writes a random statement updating the parameter of a method.
+   *
+   * @param method    is the visitor of the method.
+   * @param className is the internal name of the class of the method.
+   * @param random    is the random generator of the class.
+   */
+  private static void statement(MethodVisitor method, String className, Random random) {
+    switch (random.nextInt(4)) {
+      case 0 -> { // parameter = parameter op constant
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitLdcInsn(random.nextInt());
+        method.visitInsn(switch (random.nextInt(3)) {
+          case 0 -> Opcodes.IADD;
+          case 1 -> Opcodes.IMUL;
+          default -> Opcodes.IXOR;
+        });
+        method.visitVarInsn(Opcodes.ISTORE, 0);
+      }
+      case 1 -> { // parameter = Math.abs(parameter)
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "abs", "(I)I", false);
+        method.visitVarInsn(Opcodes.ISTORE, 0);
+      }
+      case 2 -> { // counter += parameter
+        method.visitFieldInsn(Opcodes.GETSTATIC, className, "counter", "I");
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitInsn(Opcodes.IADD);
+        method.visitFieldInsn(Opcodes.PUTSTATIC, className, "counter", "I");
+      }
+      default -> method.visitIincInsn(0, random.nextInt(Byte.MAX_VALUE)); // parameter += constant
+    }
+  }
+
+  /**
+   * Generates a jar in the given directory.
+   *
+   * @param directory  is the directory of the jar.
+   * @param name       is the name of the jar, without extension.
+   * @param classCount is the amount of classes of the jar.
+   * @param random     is the random generator choosing the body of each class.
+   * @return the path of the jar.
+   * @throws IOException if the jar can't be written.
+   */
+  static Path jar(Path directory, String name, int classCount, Random random) throws IOException {
+    var jar = directory.resolve(name + ".jar");
+    try (var output = new JarOutputStream(Files.newOutputStream(jar))) {
+      for (var i = 0; i < classCount; i++) {
+        var className = "bench/C" + i;
+        output.putNextEntry(new JarEntry(className + ".class"));
+        output.write(classBytes(className, random.nextInt(BODY_POOL_SIZE)));
+        output.closeEntry();
+      }
+    }
+    return jar;
+  }
+
+  /**
+   * Generates jars in the given directory and analyzes them.
+   *
+   * @param asm           is the object analyzing the jars.
+   * @param directory     is the directory of the jars.
+   * @param artifactCount is the amount of generated jars.
+   * @param classCount    is the amount of classes of each jar.
+   * @param seed          is the seed of the generated jars.
+   * @return the paths of the jars.
+   * @throws IOException if a jar can't be written.
+   */
+  static List<Path> analyzedJars(Asm asm, Path directory, int artifactCount, int classCount, long seed)
+      throws IOException {
+    var random = new Random(seed);
+    var jars = new ArrayList<Path>(artifactCount);
+    for (var i = 0; i < artifactCount; i++) {
+      var jar = jar(directory, "artifact" + i, classCount, random);
+      if (!asm.analysis(jar)) {
+        throw new IllegalStateException("the analysis of " + jar + " has failed");
+      }
+      jars.add(jar);
+    }
+    return jars;
+  }
+
+  /**
+   * Deletes a directory and all its content.
+   *
+   * @param directory is the directory to delete.
+   * @throws IOException if a file can't be deleted.
+   */
+  static void delete(Path directory) throws IOException {
+    try (var paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+        try {
+          Files.delete(path);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package fr.uge.clonewar;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the loading of the backup files when the server starts, while the
+ * amount of analyzed artifacts grows.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class ColdStartBenchmark {
+
+  /**
+   * Amount of classes of each analyzed artifact.
+   */
+  private static final int CLASS_COUNT = 50;
+
+  /**
+   * Amount of artifacts saved in the backup files.
+   */
+  @Param({"10", "100", "1000"})
+  public int artifactCount;
+
+  /**
+   * Directory of the generated jars and of the backup files.
+   */
+  private Path directory;
+
+  /**
+   * Binary hashes backup file.
+   */
+  private Path hashesBackupFile;
+
+  /**
+   * Analyzed jars backup file.
+   */
+  private Path jarsBackupFile;
+
+  /**
+   * Generates and analyzes the jars to fill the backup files.
+   *
+   * @throws IOException if a file can't be written.
+   */
+  @Setup(Level.Trial)
+  public void fillBackupFiles() throws IOException {
+    directory = Files.createTempDirectory("clonewarColdStartBenchmark");
+    hashesBackupFile = directory.resolve("hashesBackupFile.bin");
+    jarsBackupFile = directory.resolve("jarsBackupFile.txt");
+    try (var asm = new Asm(hashesBackupFile, jarsBackupFile)) {
+      BenchmarkArtifacts.analyzedJars(asm, directory, artifactCount, CLASS_COUNT, 0);
+    }
+  }
+
+  /**
+   * Deletes all the files.
+   *
+   * @throws IOException if a file can't be deleted.
+   */
+  @TearDown(Level.Trial)
+  public void deleteDirectory() throws IOException {
+    BenchmarkArtifacts.delete(directory);
+  }
+
+  /**
+   * Loads the backup files, as done when the server starts.
+   *
+   * @return the analyzed jars known after the loading.
+   * @throws IOException if the backup file can't be closed.
+   */
+  @Benchmark
+  public String load() throws IOException {
+    try (var asm = new Asm(hashesBackupFile, jarsBackupFile)) {
+      return asm.analyzedJars();
+    }
+  }
+}
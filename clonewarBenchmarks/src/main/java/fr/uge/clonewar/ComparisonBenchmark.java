@@ -0,0 +1,116 @@
+package fr.uge.clonewar;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the comparisons of artifacts while the amount of analyzed artifacts
+ * grows. The compared artifacts always have the same size, only the index
+ * around them changes. Each rolling hash kernel is measured, since the
+ * collisions of a kernel make the index read more postings.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class ComparisonBenchmark {
+
+  /**
+   * Amount of classes of each analyzed artifact.
+   */
+  private static final int CLASS_COUNT = 50;
+
+  /**
+   * Amount of analyzed artifacts.
+   */
+  @Param({"10", "100", "1000"})
+  public int artifactCount;
+
+  /**
+   * Rolling hash kernel used to calculate the hashes.
+   */
+  @Param({"LEGACY", "POLYNOMIAL64"})
+  public FingerprintSettings.Kernel kernel;
+
+  /**
+   * Directory of the generated jars and of the backup files.
+   */
+  private Path directory;
+
+  /**
+   * Object which has analyzed all the jars.
+   */
+  private Asm asm;
+
+  /**
+   * Analyzed jars.
+   */
+  private List<Path> jars;
+
+  /**
+   * Generates and analyzes the jars.
+   *
+   * @throws IOException if a file can't be written.
+   */
+  @Setup(Level.Trial)
+  public void analyzeJars() throws IOException {
+    directory = Files.createTempDirectory("clonewarComparisonBenchmark");
+    asm = new Asm(directory.resolve("hashesBackupFile.bin"), directory.resolve("jarsBackupFile.txt"),
+        Asm.Options.DEFAULT.withParallelism(Runtime.getRuntime().availableProcessors())
+            .withSettings(FingerprintSettings.DEFAULT.withKernel(kernel)));
+    jars = BenchmarkArtifacts.analyzedJars(asm, directory, artifactCount, CLASS_COUNT, 0);
+  }
+
+  /**
+   * Closes the object which has analyzed the jars and deletes all the files.
+   *
+   * @throws IOException if a file can't be deleted.
+   */
+  @TearDown(Level.Trial)
+  public void deleteDirectory() throws IOException {
+    asm.close();
+    BenchmarkArtifacts.delete(directory);
+  }
+
+  /**
+   * Compares the two first analyzed jars.
+   *
+   * @return the result of the comparison.
+   */
+  @Benchmark
+  public String percentageCloning() {
+    return asm.percentageCloning(jars.get(0).toString(), jars.get(1).toString());
+  }
+
+  /**
+   * Compares the first analyzed jar with all the other ones.
+   *
+   * @return the artifacts sharing the most hashes with the first jar.
+   */
+  @Benchmark
+  public String topClones() {
+    return asm.topClones(jars.get(0).toString(), 10);
+  }
+}
@@ -0,0 +1,204 @@
+package fr.uge.clonewar;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the fingerprint engine to the previous implementation of the rolling
+ * hash which used a window of boxed values. Each benchmark hashes the same
+ * sequence of methods made of random byte code line hashes.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class RollingHashBenchmark {
+
+  /**
+   * Amount of byte code lines of each method.
+   */
+  @Param({"3", "20", "200"})
+  public int methodLength;
+
+  /**
+   * Amount of methods hashed by an operation.
+   */
+  private static final int METHOD_COUNT = 1_000;
+
+  /**
+   * Hashes of the byte code lines of all the methods.
+   */
+  private long[] instructions;
+
+  /**
+   * Generates the byte code lines hashes.
+   */
+  @Setup
+  public void setup() {
+    var random = new Random(0);
+    instructions = new long[METHOD_COUNT * methodLength];
+    for (var i = 0; i < instructions.length; i++) {
+      instructions[i] = random.nextInt(256) + random.nextInt(); // Opcode plus the hash code of an owner or a constant
+    }
+  }
+
+  /**
+   * Hashes the methods with the fingerprint engine.
+   *
+   * @return the hashes of the methods.
+   */
+  @Benchmark
+  public long[] fingerprintEngine() {
+    var engine = new FingerprintEngine();
+    for (var method = 0; method < METHOD_COUNT; method++) {
+      engine.startMethod();
+      for (var i = method * methodLength; i < (method + 1) * methodLength; i++) {
+        engine.addInstruction(instructions[i]);
+      }
+      engine.endMethod();
+    }
+    return engine.hashes().toArray();
+  }
+
+  /**
+   * Hashes the methods with the previous implementation.
+   *
+   * @return the hashes of the methods.
+   */
+  @Benchmark
+  public ArrayList<Long> boxedRollingHash() {
+    var legacy = new BoxedRollingHash();
+    for (var method = 0; method < METHOD_COUNT; method++) {
+      legacy.startMethod();
+      for (var i = method * methodLength; i < (method + 1) * methodLength; i++) {
+        legacy.newHash(instructions[i]);
+        legacy.addHash();
+      }
+      legacy.endMethod();
+    }
+    return legacy.hashTable;
+  }
+
+  /**
+   * Copy of the rolling hash implementation used before the fingerprint engine.
+   * It is only kept as a reference for the benchmarks.
+   */
+  static final class BoxedRollingHash {
+
+    /**
+     * Prime number for the polynomial formula.
+     */
+    private static final int PRIME_NUMBER = 2;
+
+    /**
+     * Size of the blocks.
+     */
+    private static final int WINDOW_SIZE = 4;
+
+    /**
+     * Window representing the block of operation we are calculating the hash value.
+     */
+    private final ArrayList<Long> window = new ArrayList<>(WINDOW_SIZE);
+
+    /**
+     * List where the hashes are stocked.
+     */
+    final ArrayList<Long> hashTable = new ArrayList<>();
+
+    /**
+     * Value of the block hash value.
+     */
+    private long windowHash;
+
+    /**
+     * Count the lines already visited in the block window.
+     */
+    private int count;
+
+    /**
+     * Calculates the new hash using the rolling hash system.
+     */
+    private static long rollingHash(long hash, long oldFirstHashCode, int blockSize, long addedHashCode) {
+      return (hash - oldFirstHashCode * Math.round(Math.pow(PRIME_NUMBER, blockSize))) * PRIME_NUMBER
+          + addedHashCode * PRIME_NUMBER;
+    }
+
+    /**
+     * Hash function of a whole block.
+     */
+    private static long hash(ArrayList<Long> block) {
+      long hashCode = 0;
+      var blockSize = block.size();
+      for (var i = 0; i < block.size(); i++) {
+        var byteCodeLineHash = block.get(i);
+        var pow_index = blockSize - i;
+        hashCode = hashCode + byteCodeLineHash * Math.round(Math.pow(PRIME_NUMBER, pow_index));
+      }
+      return hashCode;
+    }
+
+    /**
+     * Clears the window before the analysis of a new method.
+     */
+    void startMethod() {
+      window.clear();
+      windowHash = 0;
+      count = 0;
+    }
+
+    /**
+     * Update the hash value of the current window analyzed.
+     */
+    void newHash(long addingHash) {
+      if (count == WINDOW_SIZE) {
+        windowHash = hash(window);
+        count++;
+        return;
+      }
+      if (window.size() == WINDOW_SIZE) {
+        windowHash = rollingHash(windowHash, window.remove(0), WINDOW_SIZE, addingHash);
+        window.add(addingHash);
+        return;
+      }
+      window.add(addingHash);
+      count++;
+    }
+
+    /**
+     * Add the hash of the current block if it doesn't worth 0.
+     */
+    void addHash() {
+      if (windowHash != 0) {
+        hashTable.add(windowHash);
+      }
+    }
+
+    /**
+     * Adds the hash of a method smaller than the block size.
+     */
+    void endMethod() {
+      if (count < WINDOW_SIZE) {
+        windowHash = hash(window);
+        addHash();
+      }
+    }
+  }
+}
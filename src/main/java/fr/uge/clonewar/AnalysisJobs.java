@@ -0,0 +1,457 @@
+package fr.uge.clonewar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import io.helidon.common.http.Http;
+import io.helidon.nima.webserver.cors.CorsSupport;
+import io.helidon.nima.webserver.cors.CrossOriginConfig;
+import io.helidon.nima.webserver.http.HttpRules;
+import io.helidon.nima.webserver.http.HttpService;
+import io.helidon.nima.webserver.http.ServerRequest;
+import io.helidon.nima.webserver.http.ServerResponse;
+
+/**
+ * Runs the analyses of artifacts and the bulk ingestions of directories in the
+ * background. An analysis is submitted as a job whose identifier is returned at
+ * once, the state of the job is then
+ * polled until the analysis is over. At most a given amount of jobs run at the
+ * same time and at most a given amount of jobs wait to be run, the other ones
+ * are rejected.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+final class AnalysisJobs implements HttpService, Closeable {
+
+  /**
+   * Amount of finished jobs whose state is kept, the oldest ones are forgotten.
+   */
+  private static final int MAX_FINISHED_JOBS = 1_000;
+
+  /**
+   * CorsSupport instance used to configure cross-origin resource sharing (CORS).
+   */
+  private static final CorsSupport CORS_SUPPORT = CorsSupport.builder()
+      .addCrossOrigin(CrossOriginConfig.builder()
+          .allowOrigins("http://127.0.0.1:8080", "http://localhost:8080", "http://127.0.0.1:3000", "http://localhost:3000")
+          .build())
+      .build();
+
+  /**
+   * State of a job.
+   */
+  enum State {
+    /**
+     * The job waits for a worker.
+     */
+    QUEUED("en attente"),
+    /**
+     * The artifact or the directory is being analyzed.
+     */
+    RUNNING("en cours"),
+    /**
+     * The analysis has been fully completed.
+     */
+    SUCCEEDED("terminée"),
+    /**
+     * The analysis has failed.
+     */
+    FAILED("échouée");
+
+    /**
+     * Label of the state shown to the users.
+     */
+    private final String label;
+
+    State(String label) {
+      this.label = label;
+    }
+  }
+
+  /**
+   * Result of a job.
+   *
+   * @param completed tells if the job has been fully completed.
+   * @param result    is the string representation of the result.
+   */
+  private record Outcome(boolean completed, String result) {}
+
+  /**
+   * Analysis of an artifact or bulk ingestion of a directory submitted as a job.
+   */
+  static final class Job {
+
+    /**
+     * Identifier of the job.
+     */
+    private final long id;
+
+    /**
+     * Kind of the analyzed path shown to the users.
+     */
+    private final String kind;
+
+    /**
+     * String path of the analyzed artifact or directory.
+     */
+    private final String target;
+
+    /**
+     * Amount of classes already added to the database.
+     */
+    private final AtomicInteger processedClasses = new AtomicInteger();
+
+    /**
+     * Current state of the job.
+     */
+    private volatile State state = State.QUEUED;
+
+    /**
+     * Time at which the job has been submitted, in nanoseconds.
+     */
+    private final long submitTime = System.nanoTime();
+
+    /**
+     * Time at which the job has finished, in nanoseconds, only meaningful once
+     * the job is finished.
+     */
+    private volatile long endTime;
+
+    /**
+     * Result of the analysis, null while the job isn't finished.
+     */
+    private volatile String result;
+
+    private Job(long id, String kind, String target) {
+      this.id = id;
+      this.kind = kind;
+      this.target = target;
+    }
+
+    /**
+     * Returns the identifier of the job.
+     *
+     * @return the identifier of the job.
+     */
+    long id() {
+      return id;
+    }
+
+    /**
+     * Returns the current state of the job.
+     *
+     * @return the state of the job.
+     */
+    State state() {
+      return state;
+    }
+
+    /**
+     * Returns the amount of classes already added to the database.
+     *
+     * @return the amount of processed classes.
+     */
+    int processedClasses() {
+      return processedClasses.get();
+    }
+
+    /**
+     * Returns the time elapsed since the job has been submitted, until the end of
+     * the job if it is finished.
+     *
+     * @return the elapsed time, in milliseconds.
+     */
+    long elapsedMillis() {
+      var end = state == State.SUCCEEDED || state == State.FAILED ? endTime : System.nanoTime();
+      return TimeUnit.NANOSECONDS.toMillis(end - submitTime);
+    }
+
+    /**
+     * Makes a string representation of the state of the job.
+     *
+     * @return the string representation of the job.
+     */
+    @Override
+    public String toString() {
+      var builder = new StringBuilder()
+          .append("Tâche ").append(id).append(" : ").append(state.label).append('\n')
+          .append(kind).append(" : ").append(target).append('\n')
+          .append("Classes traitées : ").append(processedClasses()).append('\n')
+          .append("Durée : ").append(elapsedMillis()).append(" ms\n");
+      var result = this.result;
+      if (result != null) {
+        builder.append("Résultat : ").append(result).append('\n');
+      }
+      return builder.toString();
+    }
+  }
+
+  /**
+   * Object analyzing the artifacts.
+   */
+  private final Asm asm;
+
+  /**
+   * Bulk ingestion of the directories.
+   */
+  private final BulkIngest bulkIngest;
+
+  /**
+   * Executor running the jobs.
+   */
+  private final ExecutorService executor;
+
+  /**
+   * Submitted jobs, by identifier.
+   */
+  private final ConcurrentHashMap<Long, Job> jobs = new ConcurrentHashMap<>();
+
+  /**
+   * Identifiers of the finished jobs, from the oldest to the newest.
+   */
+  private final ConcurrentLinkedQueue<Long> finishedJobs = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Identifier of the next submitted job.
+   */
+  private final AtomicLong nextId = new AtomicLong(1);
+
+  /**
+   * Creates the jobs of analysis of artifacts.
+   *
+   * @param asm               is the object analyzing the artifacts.
+   * @param bulkIngest        is the bulk ingestion of the directories.
+   * @param maxConcurrentJobs is the maximum amount of artifacts analyzed at the
+   *                          same time.
+   * @param maxQueuedJobs     is the maximum amount of jobs waiting to be run.
+   */
+  AnalysisJobs(Asm asm, BulkIngest bulkIngest, int maxConcurrentJobs, int maxQueuedJobs) {
+    Objects.requireNonNull(asm, "asm is null");
+    Objects.requireNonNull(bulkIngest, "bulkIngest is null");
+    if (maxConcurrentJobs <= 0) {
+      throw new IllegalArgumentException("maxConcurrentJobs must be positive");
+    }
+    if (maxQueuedJobs <= 0) {
+      throw new IllegalArgumentException("maxQueuedJobs must be positive");
+    }
+    this.asm = asm;
+    this.bulkIngest = bulkIngest;
+    executor = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(maxQueuedJobs)); // Submitting a job fails when the queue is full
+  }
+
+  /**
+   * Allow to configure some server routes.
+   *
+   * @param httpRules HTTP rules
+   */
+  @Override
+  public void routing(HttpRules httpRules) {
+    httpRules.post("/analyze", CORS_SUPPORT, this::postAnalysis)
+        .post("/ingest", CORS_SUPPORT, this::postIngest)
+        .get("/jobs/{id}", CORS_SUPPORT, this::getJob);
+  }
+
+  /**
+   * Submits the analysis of an artifact.
+   *
+   * @param jarLocation is the path of the artifact.
+   * @return the submitted job.
+   * @throws RejectedExecutionException if too many jobs are already waiting.
+   */
+  Job submit(Path jarLocation) {
+    Objects.requireNonNull(jarLocation, "jarLocation is null");
+    return submit("Artéfact", jarLocation, job -> {
+      var completed = asm.analysis(jarLocation, job.processedClasses::incrementAndGet, true);
+      return new Outcome(completed, Asm.analysisResult(job.target, completed));
+    });
+  }
+
+  /**
+   * Submits the bulk ingestion of a directory.
+   *
+   * @param directory is the path of the directory.
+   * @return the submitted job.
+   * @throws RejectedExecutionException if too many jobs are already waiting.
+   */
+  Job submitIngest(Path directory) {
+    Objects.requireNonNull(directory, "directory is null");
+    return submit("Dossier", directory, job -> {
+      try {
+        var report = bulkIngest.ingest(directory, job.processedClasses::incrementAndGet);
+        return new Outcome(true, report.toString());
+      } catch (IOException e) {
+        return new Outcome(false, "L'ingestion du dossier \"" + job.target + "\" a échoué : " + e.getMessage());
+      }
+    });
+  }
+
+  /**
+   * Submits a job.
+   *
+   * @param kind   is the kind of the analyzed path shown to the users.
+   * @param target is the analyzed path.
+   * @param task   is the work of the job.
+   * @return the submitted job.
+   * @throws RejectedExecutionException if too many jobs are already waiting.
+   */
+  private Job submit(String kind, Path target, Function<Job, Outcome> task) {
+    var job = new Job(nextId.getAndIncrement(), kind, target.toString());
+    jobs.put(job.id, job);
+    try {
+      executor.execute(() -> run(job, task));
+    } catch (RejectedExecutionException e) {
+      jobs.remove(job.id);
+      throw e;
+    }
+    return job;
+  }
+
+  /**
+   * Runs the work of a job.
+   *
+   * @param job  is the job.
+   * @param task is the work of the job.
+   */
+  private void run(Job job, Function<Job, Outcome> task) {
+    job.state = State.RUNNING;
+    var outcome = new Outcome(false, "La tâche a été interrompue par une erreur inattendue.");
+    try {
+      outcome = task.apply(job);
+    } finally {
+      job.result = outcome.result();
+      job.endTime = System.nanoTime();
+      job.state = outcome.completed() ? State.SUCCEEDED : State.FAILED; // Set last, the other fields are visible once
+                                                                         // finished
+      finished(job);
+    }
+  }
+
+  /**
+   * Remembers that a job is finished and forgets the oldest finished jobs.
+   *
+   * @param job is the finished job.
+   */
+  private void finished(Job job) {
+    finishedJobs.add(job.id);
+    while (finishedJobs.size() > MAX_FINISHED_JOBS) {
+      var oldest = finishedJobs.poll();
+      if (oldest != null) {
+        jobs.remove(oldest);
+      }
+    }
+  }
+
+  /**
+   * Returns a job.
+   *
+   * @param id is the identifier of the job.
+   * @return the job, null if it doesn't exist or has been forgotten.
+   */
+  Job job(long id) {
+    return jobs.get(id);
+  }
+
+  /**
+   * Process the request to submit the analysis of an artifact. The identifier of
+   * the job is sent at once.
+   *
+   * @param req serveur request
+   * @param res serveur response
+   */
+  private void postAnalysis(ServerRequest req, ServerResponse res) {
+    var jarPathToAnalyzeOptional = req.query().first("jarPathToAnalyse");
+    if (jarPathToAnalyzeOptional.isEmpty()) {
+      res.status(Http.Status.BAD_REQUEST_400).send("Veuillez fournir le chemin absolu d'un artéfact à analyser");
+      return;
+    }
+    var jarPathToAnalyze = jarPathToAnalyzeOptional.get();
+    Job job;
+    try {
+      job = submit(Path.of(jarPathToAnalyze));
+    } catch (InvalidPathException e) {
+      res.status(Http.Status.BAD_REQUEST_400).send("Le chemin \"" + jarPathToAnalyze + "\" n'est pas valide");
+      return;
+    } catch (RejectedExecutionException e) {
+      res.status(Http.Status.SERVICE_UNAVAILABLE_503)
+          .send("Trop d'analyses sont en attente, veuillez réessayer plus tard");
+      return;
+    }
+    res.status(Http.Status.ACCEPTED_202)
+        .header(Http.Header.create(Http.Header.LOCATION, "/jobs/" + job.id))
+        .send(Long.toString(job.id));
+  }
+
+  /**
+   * Process the request to submit the bulk ingestion of a directory. The
+   * identifier of the job is sent at once.
+   *
+   * @param req serveur request
+   * @param res serveur response
+   */
+  private void postIngest(ServerRequest req, ServerResponse res) {
+    var directoryOptional = req.query().first("directory");
+    if (directoryOptional.isEmpty()) {
+      res.status(Http.Status.BAD_REQUEST_400).send("Veuillez fournir le chemin absolu d'un dossier à analyser");
+      return;
+    }
+    var directory = directoryOptional.get();
+    Job job;
+    try {
+      job = submitIngest(Path.of(directory));
+    } catch (InvalidPathException e) {
+      res.status(Http.Status.BAD_REQUEST_400).send("Le chemin \"" + directory + "\" n'est pas valide");
+      return;
+    } catch (RejectedExecutionException e) {
+      res.status(Http.Status.SERVICE_UNAVAILABLE_503)
+          .send("Trop d'analyses sont en attente, veuillez réessayer plus tard");
+      return;
+    }
+    res.status(Http.Status.ACCEPTED_202)
+        .header(Http.Header.create(Http.Header.LOCATION, "/jobs/" + job.id))
+        .send(Long.toString(job.id));
+  }
+
+  /**
+   * Process the request to get the state of a job.
+   *
+   * @param req serveur request
+   * @param res serveur response
+   */
+  private void getJob(ServerRequest req, ServerResponse res) {
+    var id = req.path().pathParameters().value("id");
+    Job job;
+    try {
+      job = job(Long.parseLong(id));
+    } catch (NumberFormatException e) {
+      job = null;
+    }
+    if (job == null) {
+      res.status(Http.Status.NOT_FOUND_404).send("Aucune tâche d'identifiant \"" + id + "\" n'a été trouvée");
+      return;
+    }
+    res.send(job.toString());
+  }
+
+  /**
+   * Stops the workers once the running and waiting jobs are over.
+   */
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+}
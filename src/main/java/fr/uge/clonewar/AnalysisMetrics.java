@@ -0,0 +1,332 @@
+package fr.uge.clonewar;
+
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the stages of the analyses, of the backup
+ * of their results and of the comparisons, written in the Prometheus text
+ * format. They only grow from the creation of the object, Prometheus
+ * calculates the rates itself.
+ *
+ * <p>The metrics are thread-safe and recorded without any lock: each counter is
+ * a {@link LongAdder}, so that the workers analyzing the classes don't contend
+ * on them.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+final class AnalysisMetrics {
+
+  /**
+   * Upper bounds of the buckets of the histograms, in seconds, as written in the
+   * "le" label. The last bucket, "+Inf", isn't listed.
+   */
+  private static final String[] BUCKETS = {
+      "0.0001", "0.0005", "0.001", "0.005", "0.01", "0.05", "0.1", "0.5", "1", "5", "10", "60"
+  };
+
+  /**
+   * Upper bounds of the buckets of the histograms, in nanoseconds.
+   */
+  private static final long[] BUCKET_NANOS = new long[BUCKETS.length];
+
+  static {
+    for (var i = 0; i < BUCKETS.length; i++) {
+      BUCKET_NANOS[i] = Math.round(Double.parseDouble(BUCKETS[i]) * 1e9);
+    }
+  }
+
+  /**
+   * Comparisons whose latency is measured, each one has its own histogram.
+   */
+  enum Comparison {
+
+    /**
+     * Percentage of cloning of two artifacts.
+     */
+    PERCENTAGE_CLONING,
+
+    /**
+     * Artifacts an artifact is the most likely to be cloned from.
+     */
+    TOP_CLONES,
+
+    /**
+     * Cloned methods of two artifacts.
+     */
+    CLONED_METHODS,
+
+    /**
+     * Pairs of similar artifacts.
+     */
+    SIMILARITY_MATRIX;
+
+    /**
+     * Returns the value of the "operation" label of the comparison.
+     *
+     * @return the name of the comparison in lower case.
+     */
+    String label() {
+      return name().toLowerCase(Locale.ROOT);
+    }
+  }
+
+  /**
+   * Distribution of durations in the buckets of {@link #BUCKETS}.
+   */
+  static final class Histogram {
+
+    /**
+     * Amount of durations of each bucket, the last one is "+Inf". A duration is
+     * only counted in its own bucket, the counts are summed when written.
+     */
+    private final LongAdder[] counts = new LongAdder[BUCKETS.length + 1];
+
+    /**
+     * Sum of the durations, in nanoseconds.
+     */
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * Creates an empty histogram.
+     */
+    Histogram() {
+      for (var i = 0; i < counts.length; i++) {
+        counts[i] = new LongAdder();
+      }
+    }
+
+    /**
+     * Adds the duration elapsed since a given time.
+     *
+     * @param startNanos is the start of the duration, given by
+     *                   {@link System#nanoTime()}.
+     */
+    void recordSince(long startNanos) {
+      record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Adds a duration.
+     *
+     * @param nanos is the duration in nanoseconds.
+     */
+    void record(long nanos) {
+      var bucket = 0;
+      while (bucket < BUCKET_NANOS.length && nanos > BUCKET_NANOS[bucket]) {
+        bucket++;
+      }
+      counts[bucket].increment();
+      sumNanos.add(nanos);
+    }
+
+    /**
+     * Writes the samples of the histogram.
+     *
+     * @param builder is the builder the samples are appended to.
+     * @param name    is the name of the histogram.
+     * @param labels  is the labels of the samples without braces, empty if there
+     *                isn't any.
+     */
+    private void write(StringBuilder builder, String name, String labels) {
+      var separator = labels.isEmpty() ? "" : labels + ",";
+      var cumulative = 0L;
+      for (var i = 0; i < counts.length; i++) {
+        cumulative += counts[i].sum();
+        var bound = i < BUCKETS.length ? BUCKETS[i] : "+Inf";
+        builder.append(name).append("_bucket{").append(separator).append("le=\"").append(bound).append("\"} ")
+            .append(cumulative).append('\n');
+      }
+      var braces = labels.isEmpty() ? "" : "{" + labels + "}";
+      builder.append(name).append("_sum").append(braces).append(' ').append(sumNanos.sum() / 1e9).append('\n');
+      builder.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+    }
+  }
+
+  /**
+   * Amount of jars whose analysis has been completed.
+   */
+  final LongAdder jarsAnalyzed = new LongAdder();
+
+  /**
+   * Amount of jars whose analysis has failed.
+   */
+  final LongAdder jarsFailed = new LongAdder();
+
+  /**
+   * Amount of bytes of byte code read from the jars, once inflated.
+   */
+  final LongAdder bytesRead = new LongAdder();
+
+  /**
+   * Amount of classes visited by the class reader.
+   */
+  final LongAdder classesVisited = new LongAdder();
+
+  /**
+   * Amount of unchanged classes whose stocked hashes have been reused instead of
+   * being visited again.
+   */
+  final LongAdder classesReused = new LongAdder();
+
+  /**
+   * Amount of methods visited by the class reader.
+   */
+  final LongAdder methodsVisited = new LongAdder();
+
+  /**
+   * Amount of byte code instructions given to the rolling hash.
+   */
+  final LongAdder instructionsHashed = new LongAdder();
+
+  /**
+   * Amount of hashes kept by the rolling hash.
+   */
+  final LongAdder hashesEmitted = new LongAdder();
+
+  /**
+   * Duration of the analyses of the jars, the wait for the backup included.
+   */
+  final Histogram analysisDuration = new Histogram();
+
+  /**
+   * Duration of the opening of the jars, their central directory is read.
+   */
+  final Histogram jarOpenDuration = new Histogram();
+
+  /**
+   * Duration of the visit and the hashing of a class.
+   */
+  final Histogram classDuration = new Histogram();
+
+  /**
+   * Duration of the writing of the hashes of a jar in the hashes backup file.
+   */
+  final Histogram storeAppendDuration = new Histogram();
+
+  /**
+   * Duration of the wait of an analysis or of a commit for the results to be
+   * saved according to the durability policy.
+   */
+  final Histogram persistDuration = new Histogram();
+
+  /**
+   * Duration of the writing of a group of jars in the analyzed jars backup file.
+   */
+  final Histogram backupWriteDuration = new Histogram();
+
+  /**
+   * Duration of the synchronization of the backup files with the storage device.
+   */
+  final Histogram backupSyncDuration = new Histogram();
+
+  /**
+   * Duration of the comparisons, by comparison.
+   */
+  private final Histogram[] comparisonDurations = new Histogram[Comparison.values().length];
+
+  /**
+   * Creates metrics whose counters are all 0.
+   */
+  AnalysisMetrics() {
+    for (var i = 0; i < comparisonDurations.length; i++) {
+      comparisonDurations[i] = new Histogram();
+    }
+  }
+
+  /**
+   * Returns the histogram of the duration of a comparison.
+   *
+   * @param comparison is the comparison.
+   * @return the histogram of its duration.
+   */
+  Histogram comparisonDuration(Comparison comparison) {
+    Objects.requireNonNull(comparison, "comparison is null");
+    return comparisonDurations[comparison.ordinal()];
+  }
+
+  /**
+   * Writes the metrics in the Prometheus text format.
+   *
+   * @param builder is the builder the metrics are appended to.
+   */
+  void write(StringBuilder builder) {
+    Objects.requireNonNull(builder, "builder is null");
+    counter(builder, "clonewar_jars_analyzed_total", "Analyses of jars completed.", jarsAnalyzed.sum());
+    counter(builder, "clonewar_jars_failed_total", "Analyses of jars failed.", jarsFailed.sum());
+    counter(builder, "clonewar_bytes_read_total", "Bytes of byte code read from the jars, once inflated.",
+        bytesRead.sum());
+    counter(builder, "clonewar_classes_visited_total", "Classes visited by the class reader.",
+        classesVisited.sum());
+    counter(builder, "clonewar_classes_reused_total", "Unchanged classes whose stocked hashes were reused.",
+        classesReused.sum());
+    counter(builder, "clonewar_methods_visited_total", "Methods visited by the class reader.",
+        methodsVisited.sum());
+    counter(builder, "clonewar_instructions_hashed_total", "Byte code instructions given to the rolling hash.",
+        instructionsHashed.sum());
+    counter(builder, "clonewar_hashes_emitted_total", "Hashes kept by the rolling hash.", hashesEmitted.sum());
+    histogram(builder, "clonewar_analysis_duration_seconds", "Duration of the analyses of the jars.",
+        analysisDuration);
+    histogram(builder, "clonewar_jar_open_duration_seconds", "Duration of the reading of the central directory "
+        + "of the jars.", jarOpenDuration);
+    histogram(builder, "clonewar_class_duration_seconds", "Duration of the visit and the hashing of a class.",
+        classDuration);
+    histogram(builder, "clonewar_store_append_duration_seconds", "Duration of the writing of the hashes of a jar "
+        + "in the hashes backup file.", storeAppendDuration);
+    histogram(builder, "clonewar_persist_duration_seconds", "Wait of the analyses and of the commits for their "
+        + "results to be saved.", persistDuration);
+    histogram(builder, "clonewar_backup_write_duration_seconds", "Duration of the writing of the analyzed jars "
+        + "backup file.", backupWriteDuration);
+    histogram(builder, "clonewar_backup_sync_duration_seconds", "Duration of the synchronization of the backup "
+        + "files with the storage device.", backupSyncDuration);
+    var name = "clonewar_comparison_duration_seconds";
+    header(builder, name, "Duration of the comparisons of the artifacts.", "histogram");
+    for (var comparison : Comparison.values()) {
+      comparisonDuration(comparison).write(builder, name, "operation=\"" + comparison.label() + "\"");
+    }
+  }
+
+  /**
+   * Writes a counter in the Prometheus text format.
+   *
+   * @param builder is the builder the counter is appended to.
+   * @param name    is the name of the counter.
+   * @param help    is the description of the counter.
+   * @param value   is the value of the counter.
+   */
+  static void counter(StringBuilder builder, String name, String help, long value) {
+    header(builder, name, help, "counter");
+    builder.append(name).append(' ').append(value).append('\n');
+  }
+
+  /**
+   * Writes a gauge in the Prometheus text format.
+   *
+   * @param builder is the builder the gauge is appended to.
+   * @param name    is the name of the gauge.
+   * @param help    is the description of the gauge.
+   * @param value   is the value of the gauge.
+   */
+  static void gauge(StringBuilder builder, String name, String help, long value) {
+    header(builder, name, help, "gauge");
+    builder.append(name).append(' ').append(value).append('\n');
+  }
+
+  /**
+   * Writes a histogram without labels in the Prometheus text format.
+   */
+  private static void histogram(StringBuilder builder, String name, String help, Histogram histogram) {
+    header(builder, name, help, "histogram");
+    histogram.write(builder, name, "");
+  }
+
+  /**
+   * Writes the HELP and TYPE lines of a metric.
+   */
+  private static void header(StringBuilder builder, String name, String help, String type) {
+    builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+}
@@ -0,0 +1,180 @@
+package fr.uge.clonewar;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Compact fingerprint of an analyzed artifact. It is made of the sorted distinct
+ * hashes of the artifact and of the amount of occurrences of each of them, so
+ * that two artifacts are compared by a single linear merge.
+ *
+ * @param hashes   is the sorted array of the distinct hashes of the artifact.
+ * @param counts   is the amount of occurrences of each hash, null if each hash
+ *                 occurs only once.
+ * @param total    is the amount of hashes of the artifact, occurrences included.
+ * @param settings is the settings used to calculate the hashes, only
+ *                 fingerprints with the same settings can be compared.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+record ArtifactFingerprint(long[] hashes, int[] counts, int total, FingerprintSettings settings) {
+
+  /**
+   * Fingerprint of an artifact without any hash.
+   */
+  static final ArtifactFingerprint EMPTY = new ArtifactFingerprint(new long[0], null, 0, FingerprintSettings.DEFAULT);
+
+  /**
+   * Amount of common hashes found by the comparison of two fingerprints.
+   *
+   * @param referenceShared is the amount of hashes of the reference found in the
+   *                        clone, occurrences included.
+   * @param cloneShared     is the amount of hashes of the clone found in the
+   *                        reference, occurrences included.
+   * @param distinctShared  is the amount of distinct hashes found in the two
+   *                        artifacts.
+   */
+  record Overlap(int referenceShared, int cloneShared, int distinctShared) {}
+
+  /**
+   * Creates a fingerprint.
+   */
+  ArtifactFingerprint {
+    Objects.requireNonNull(hashes, "hashes is null");
+    Objects.requireNonNull(settings, "settings is null");
+    if (counts != null && counts.length != hashes.length) {
+      throw new IllegalArgumentException("counts and hashes have different lengths");
+    }
+  }
+
+  /**
+   * Makes the fingerprint of an artifact from all its hashes.
+   *
+   * @param allHashes is the array of the hashes of the artifact. It is sorted by
+   *                  this method.
+   * @param settings  is the settings used to calculate the hashes.
+   * @return the fingerprint of the artifact.
+   */
+  static ArtifactFingerprint of(long[] allHashes, FingerprintSettings settings) {
+    Objects.requireNonNull(allHashes, "allHashes is null");
+    Objects.requireNonNull(settings, "settings is null");
+    if (allHashes.length == 0) {
+      return new ArtifactFingerprint(allHashes, null, 0, settings);
+    }
+    Arrays.sort(allHashes);
+    var distinct = 1;
+    for (var i = 1; i < allHashes.length; i++) {
+      if (allHashes[i] != allHashes[i - 1]) {
+        distinct++;
+      }
+    }
+    if (distinct == allHashes.length) { // No multiplicity to keep
+      return new ArtifactFingerprint(allHashes, null, allHashes.length, settings);
+    }
+    var hashes = new long[distinct];
+    var counts = new int[distinct];
+    var index = -1;
+    for (var i = 0; i < allHashes.length; i++) {
+      if (i == 0 || allHashes[i] != allHashes[i - 1]) {
+        hashes[++index] = allHashes[i];
+      }
+      counts[index]++;
+    }
+    return new ArtifactFingerprint(hashes, counts, allHashes.length, settings);
+  }
+
+  /**
+   * Returns the amount of occurrences of the hash at the given index.
+   *
+   * @param index is the index of the hash in the distinct hashes.
+   * @return the amount of occurrences of the hash.
+   */
+  int count(int index) {
+    return counts == null ? 1 : counts[index];
+  }
+
+  /**
+   * Tells if the artifact doesn't have any hash.
+   *
+   * @return true if the fingerprint is empty.
+   */
+  boolean isEmpty() {
+    return total == 0;
+  }
+
+  /**
+   * Tells if this fingerprint can be compared to the given one, their hashes
+   * having been calculated with the same settings.
+   *
+   * @param other is the other fingerprint.
+   * @return true if the fingerprints are comparable.
+   */
+  boolean isComparableTo(ArtifactFingerprint other) {
+    Objects.requireNonNull(other, "other is null");
+    return settings.equals(other.settings);
+  }
+
+  /**
+   * Counts the common hashes of this fingerprint, being the reference, and of the
+   * given one, being the clone, by merging their sorted hashes.
+   *
+   * @param clone is the fingerprint of the clone artifact.
+   * @return the amount of common hashes in each artifact.
+   */
+  Overlap overlap(ArtifactFingerprint clone) {
+    Objects.requireNonNull(clone, "clone is null");
+    var cloneHashes = clone.hashes;
+    var referenceShared = 0;
+    var cloneShared = 0;
+    var distinctShared = 0;
+    var i = 0;
+    var j = 0;
+    while (i < hashes.length && j < cloneHashes.length) {
+      var hashReference = hashes[i];
+      var hashClone = cloneHashes[j];
+      if (hashReference < hashClone) {
+        i++;
+      } else if (hashReference > hashClone) {
+        j++;
+      } else { // Common hash, all its occurrences are counted in the two artifacts
+        referenceShared += count(i++);
+        cloneShared += clone.count(j++);
+        distinctShared++;
+      }
+    }
+    return new Overlap(referenceShared, cloneShared, distinctShared);
+  }
+
+  /**
+   * Calculates the Jaccard similarity of the distinct hashes of this fingerprint
+   * and of the given one.
+   *
+   * @param other   is the other fingerprint.
+   * @param overlap is the overlap of the two fingerprints.
+   * @return the similarity, between 0 and 1.
+   */
+  double jaccard(ArtifactFingerprint other, Overlap overlap) {
+    Objects.requireNonNull(other, "other is null");
+    Objects.requireNonNull(overlap, "overlap is null");
+    var union = hashes.length + other.hashes.length - overlap.distinctShared();
+    return union == 0 ? 0 : (double) overlap.distinctShared() / union;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof ArtifactFingerprint fingerprint && total == fingerprint.total
+        && settings.equals(fingerprint.settings) && Arrays.equals(hashes, fingerprint.hashes)
+        && Arrays.equals(counts, fingerprint.counts);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(hashes) ^ Arrays.hashCode(counts) ^ total ^ settings.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "ArtifactFingerprint[" + hashes.length + " distinct hashes, " + total + " hashes, " + settings + "]";
+  }
+}
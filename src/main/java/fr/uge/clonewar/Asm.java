@@ -1,18 +1,31 @@
 package fr.uge.clonewar;
 
+import java.io.Closeable;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.lang.module.ModuleFinder;
-import java.lang.module.ModuleReader;
-import java.nio.charset.StandardCharsets;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.NoSuchElementException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
 
 import io.helidon.nima.webserver.cors.CorsSupport;
 import io.helidon.nima.webserver.cors.CrossOriginConfig;
@@ -34,57 +47,162 @@ import org.objectweb.asm.Opcodes;
  * @author Dylan DE JESUS & Vincent RICHARD
  *
  */
-public class Asm implements HttpService  {
+public class Asm implements HttpService, Closeable  {
 
   /**
-   * Prime number for the polynomial formula.
+   * Amount of artifacts returned by a search of the origin of an artifact when no limit is given.
    */
-  private static final int PRIME_NUMBER = 2;
+  private static final int DEFAULT_TOP_CLONES_LIMIT = 10;
 
   /**
-   * Size of the blocks analyzed in the current file of the jar.
+   * Amount of pairs of methods returned by a localisation of the clones when no limit is given.
    */
-  private static final int WINDOW_SIZE = 4; // We choose to analyze the files by taking 4 lines of byte code for
-  // a block of instructions
+  private static final int DEFAULT_CLONED_METHODS_LIMIT = 20;
+
+  /**
+   * Amount of classes waiting to be analyzed or merged for each worker of the executor.
+   */
+  private static final int IN_FLIGHT_CLASSES_PER_WORKER = 4;
+
   /**
-   * Value of the block hash value.
+   * Bean measuring the memory allocated by the threads, null if the virtual
+   * machine can't measure it.
    */
-  private long windowHash;
+  private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+      ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+          && bean.isThreadAllocatedMemorySupported() ? bean : null;
 
   /**
-   * Window representing the block of operation we are calculating the hash value.
+   * Identifiers of the string paths of the projects we analyze, shared by the
+   * index and the backup file so that each path is kept once.
    */
-  private final ArrayList<Long> window;
+  private final SymbolTable artifactSymbols = new SymbolTable();
 
   /**
-   * Database of hash for all the projects we analyze.
+   * Identifiers of the names of the analyzed classes, shared by the index and
+   * the backup file so that each name is kept once.
    */
-  private final HashMap<String, ArrayList<Long>> map = new HashMap<>();
+  private final SymbolTable classSymbols = new SymbolTable();
 
   /**
-   * Count the lines already visited in the block window.
+   * Tells if the hashes of the stocked jars are only read when the jars are
+   * compared.
    */
-  private int count;
+  private final boolean lazy;
 
   /**
-   * String path of the current file analyzed.
+   * Inverted index of the hashes of all the projects we analyze.
    */
-  private String currentFile;
+  private final FingerprintIndex index;
+
+  /**
+   * Executor on which the classes of a jar are analyzed.
+   */
+  private final ExecutorService executor;
+
+  /**
+   * Maximum amount of classes of a jar being analyzed at the same time.
+   */
+  private final int parallelism;
+
+  /**
+   * Settings used to calculate the hashes of the analyzed jars.
+   */
+  private final FingerprintSettings settings;
 
   /**
    * Hashes and artifacts association backup file path.
    */
   private final Path hashesBackupFile;
 
+  /**
+   * Binary backup file of the hashes of the analyzed artifacts.
+   */
+  private final FingerprintStore store;
+
   /**
    * Already analyzed artifacts (jar extension files) backup file path.
    */
   private final Path jarsBackupFile;
 
   /**
-   * List of all the analyzed project.
+   * List of all the analyzed project, sorted. It is modified with the lock held
+   * and read without it.
    */
-  private final ArrayList<String> analyzedJars = new ArrayList<>();
+  private final ConcurrentSkipListSet<String> analyzedJars = new ConcurrentSkipListSet<>();
+
+  /**
+   * Fingerprint of the last complete analysis of each jar, published with the
+   * lock held at the end of the analysis and read by the comparisons without the
+   * lock. A fingerprint is immutable, so a comparison never sees a jar being
+   * analyzed again. Empty if the stocked hashes are loaded lazily, the
+   * fingerprints are then read from the index with the lock held.
+   */
+  private final ConcurrentHashMap<String, ArtifactFingerprint> fingerprints = new ConcurrentHashMap<>();
+
+  /**
+   * Writer saving the analyzed projects and synchronizing the backup files.
+   */
+  private final PersistenceWriter writer;
+
+  /**
+   * Cache of the results of the comparisons of two jars, a new analysis of a jar
+   * gives it a new version.
+   */
+  private final ComparisonCache<Comparison> comparisonCache;
+
+  /**
+   * Counters and latency histograms of the analyses, of their backup and of the
+   * comparisons.
+   */
+  private final AnalysisMetrics metrics = new AnalysisMetrics();
+
+  /**
+   * Amount of classes whose allocations have been measured.
+   */
+  private final LongAdder measuredClasses = new LongAdder();
+
+  /**
+   * Amount of bytes allocated to read and hash the measured classes.
+   */
+  private final LongAdder allocatedBytes = new LongAdder();
+
+  /**
+   * Lock protecting the database, the index, the backup files and the
+   * modifications of the list of the analyzed projects, so that several jars can
+   * be analyzed at the same time. The hashes of the classes are calculated
+   * without it and the comparisons of two jars don't take it.
+   */
+  private final Object lock = new Object();
+
+  /**
+   * String paths of the jars being analyzed. A jar can't be analyzed twice at the
+   * same time.
+   */
+  private final HashSet<String> analyzingJars = new HashSet<>();
+
+  /**
+   * Minimal proportion of dead bytes of the hashes backup file, left by the
+   * replaced analyses, from which it is compacted.
+   */
+  private static final double COMPACTION_DEAD_RATIO = 0.5;
+
+  /**
+   * Minimal amount of dead bytes of the hashes backup file from which it is
+   * compacted, so that a small file isn't compacted after each analysis.
+   */
+  private static final long COMPACTION_MIN_DEAD_BYTES = 1 << 20;
+
+  /**
+   * Tells if the hashes backup file is being compacted, guarded by the lock.
+   */
+  private boolean compacting;
+
+  /**
+   * Tells if the object has been closed, guarded by the lock. No compaction is
+   * started afterwards.
+   */
+  private boolean closed;
 
   /**
    * CorsSupport instance used to configure cross-origin resource sharing (CORS).
@@ -104,99 +222,244 @@ public class Asm implements HttpService  {
   public void routing(HttpRules httpRules) {
     httpRules.get("/analyze", CORS_SUPPORT, this::getAnalysis)
         .get("/analyzedJars", CORS_SUPPORT, this::getAnalyzedJars)
-        .get("/percentageCloning", CORS_SUPPORT, this::getPercentageCloning);
+        .get("/percentageCloning", CORS_SUPPORT, this::getPercentageCloning)
+        .get("/topClones", CORS_SUPPORT, this::getTopClones)
+        .get("/clonedMethods", CORS_SUPPORT, this::getClonedMethods)
+        .get("/allocationPerClass", CORS_SUPPORT, this::getAllocationPerClass)
+        .get("/hashStatistics", CORS_SUPPORT, this::getHashStatistics)
+        .get("/comparisonCacheStatistics", CORS_SUPPORT, this::getComparisonCacheStatistics)
+        .get("/similarityMatrix", CORS_SUPPORT, this::getSimilarityMatrix);
   }
 
   /**
-   * Constructor of an object that will be able to analyze artifacts (jar extension files).
+   * Settings of an object analyzing the jars. The options are changed one by
+   * one from {@link #DEFAULT}, like
+   * {@code Options.DEFAULT.withParallelism(2).withFingerprintCacheSize(100)}.
    *
+   * @param parallelism             is the maximum amount of classes of a jar analyzed at the same time.
+   * @param settings                is the settings used to calculate the hashes of the analyzed jars.
+   * @param durabilityPolicy        tells when the backup files are synchronized with the storage device.
+   * @param fingerprintCacheSize    is the maximum amount of stocked jars whose hashes are kept in memory, 0 if it
+   *                                isn't limited.
+   * @param fingerprintMemoryBudget is the amount of bytes the hashes kept in memory, off the heap, and the
+   *                                fingerprints built from them should not exceed, 0 if it isn't limited. If both
+   *                                are 0, all the stocked hashes are read at the start and nothing is limited: the
+   *                                postings and the fingerprints stay on the heap and the hashes off the heap, up to
+   *                                the -XX:MaxDirectMemorySize option of the virtual machine. Otherwise only the
+   *                                classes are read at the start, the hashes of a jar are read the first time it is
+   *                                compared and the least recently compared jars are unloaded when a limit is
+   *                                exceeded.
+   * @param comparisonCachePolicy   is the size and the time to live of the cache of the comparisons.
    */
-  public Asm(Path hashesBackupFile, Path jarsBackupFile) {
-    Objects.requireNonNull(hashesBackupFile, "hashesBackupFile is null");
-    Objects.requireNonNull(jarsBackupFile, "jarsBackupFile is null");
-    window = new ArrayList<Long>(WINDOW_SIZE);  // Window of hash codes (each hash code is the hash corresponding to a
-                                                // byte code line)
-    this.hashesBackupFile = hashesBackupFile;
-    this.jarsBackupFile = jarsBackupFile;
-    loadHashesBackupFile();
-    loadJarsBackupFile();
+  record Options(int parallelism, FingerprintSettings settings, PersistenceWriter.Policy durabilityPolicy,
+                 int fingerprintCacheSize, long fingerprintMemoryBudget, ComparisonCache.Policy comparisonCachePolicy) {
+
+    /**
+     * Options used when nothing else is specified: the classes of a jar are
+     * analyzed using as many workers as there are available processors with the
+     * default settings, durability policy and cache of the comparisons, and all
+     * the stocked hashes are read at the start.
+     */
+    static final Options DEFAULT = new Options(Runtime.getRuntime().availableProcessors(), FingerprintSettings.DEFAULT,
+        PersistenceWriter.Policy.DEFAULT, 0, 0, ComparisonCache.Policy.DEFAULT);
+
+    /**
+     * Creates options.
+     */
+    Options {
+      Objects.requireNonNull(settings, "settings is null");
+      Objects.requireNonNull(durabilityPolicy, "durabilityPolicy is null");
+      Objects.requireNonNull(comparisonCachePolicy, "comparisonCachePolicy is null");
+      if (parallelism <= 0) {
+        throw new IllegalArgumentException("parallelism must be positive");
+      }
+      if (fingerprintCacheSize < 0) {
+        throw new IllegalArgumentException("fingerprintCacheSize is negative");
+      }
+      if (fingerprintMemoryBudget < 0) {
+        throw new IllegalArgumentException("fingerprintMemoryBudget is negative");
+      }
+    }
+
+    /**
+     * Returns the same options with another amount of workers.
+     *
+     * @param parallelism is the maximum amount of classes of a jar analyzed at the same time.
+     * @return the options.
+     */
+    Options withParallelism(int parallelism) {
+      return new Options(parallelism, settings, durabilityPolicy, fingerprintCacheSize, fingerprintMemoryBudget,
+          comparisonCachePolicy);
+    }
+
+    /**
+     * Returns the same options with other fingerprint settings.
+     *
+     * @param settings is the settings used to calculate the hashes of the analyzed jars.
+     * @return the options.
+     */
+    Options withSettings(FingerprintSettings settings) {
+      return new Options(parallelism, settings, durabilityPolicy, fingerprintCacheSize, fingerprintMemoryBudget,
+          comparisonCachePolicy);
+    }
+
+    /**
+     * Returns the same options with another durability policy.
+     *
+     * @param durabilityPolicy tells when the backup files are synchronized with the storage device.
+     * @return the options.
+     */
+    Options withDurabilityPolicy(PersistenceWriter.Policy durabilityPolicy) {
+      return new Options(parallelism, settings, durabilityPolicy, fingerprintCacheSize, fingerprintMemoryBudget,
+          comparisonCachePolicy);
+    }
+
+    /**
+     * Returns the same options with another size of the cache of the hashes.
+     *
+     * @param fingerprintCacheSize is the maximum amount of stocked jars whose hashes are kept in memory, 0 if it
+     *                             isn't limited.
+     * @return the options.
+     */
+    Options withFingerprintCacheSize(int fingerprintCacheSize) {
+      return new Options(parallelism, settings, durabilityPolicy, fingerprintCacheSize, fingerprintMemoryBudget,
+          comparisonCachePolicy);
+    }
+
+    /**
+     * Returns the same options with another memory budget of the hashes.
+     *
+     * @param fingerprintMemoryBudget is the amount of bytes the hashes kept in memory and the fingerprints built
+     *                                from them should not exceed, 0 if it isn't limited.
+     * @return the options.
+     */
+    Options withFingerprintMemoryBudget(long fingerprintMemoryBudget) {
+      return new Options(parallelism, settings, durabilityPolicy, fingerprintCacheSize, fingerprintMemoryBudget,
+          comparisonCachePolicy);
+    }
+
+    /**
+     * Returns the same options with another cache of the comparisons.
+     *
+     * @param comparisonCachePolicy is the size and the time to live of the cache of the comparisons.
+     * @return the options.
+     */
+    Options withComparisonCachePolicy(ComparisonCache.Policy comparisonCachePolicy) {
+      return new Options(parallelism, settings, durabilityPolicy, fingerprintCacheSize, fingerprintMemoryBudget,
+          comparisonCachePolicy);
+    }
   }
 
   /**
-   * Calculates the new hash using the rolling hash system. It is a representation
-   * of the Rabin's fingerprint.
+   * Constructor of an object that will be able to analyze artifacts (jar extension files).
+   * The classes of a jar are analyzed using as many workers as there are available processors.
    *
-   * @param hash             is the old hash value already calculated.
-   * @param oldFirstHashCode is the hash value of the previous first byte code
-   *                         line.
-   * @param blockSize        is the size of the block used to calculates the hash
-   *                         value.
-   * @param addedHashCode    is the value of the new hash to add to the previous
-   *                         one.
-   * @return the new hash value.
    */
-  private static long rollingHash(long hash, long oldFirstHashCode, int blockSize, long addedHashCode) {
-    return (hash - oldFirstHashCode * Math.round(Math.pow(PRIME_NUMBER, blockSize))) * PRIME_NUMBER
-        + addedHashCode * PRIME_NUMBER; // We remove the value of the old first hash value and we add the new one
+  public Asm(Path hashesBackupFile, Path jarsBackupFile) {
+    this(hashesBackupFile, jarsBackupFile, Options.DEFAULT);
   }
 
   /**
-   * Hash Function. It returns a long value which represents the hash value of a
-   * block of long (hash value). The window/block is a list of hash value that
-   * represents the hash code of each line of byte code.
+   * Constructor of an object that will be able to analyze artifacts (jar extension files).
    *
-   * @param block is a list given to make the long hash value.
-   * @return the long value representing the hash of the whole block.
+   * @param hashesBackupFile is the path of the binary hashes backup file.
+   * @param jarsBackupFile   is the path of the analyzed jars backup file.
+   * @param parallelism      is the maximum amount of classes of a jar analyzed at the same time.
+   * @throws UncheckedIOException if the hashes backup file can't be opened.
    */
-  private static long hash(ArrayList<Long> block) {
-    long hashCode = 0;
-    var blockSize = block.size();
-    for (var i = 0; i < block.size(); i++) {
-      var byteCodeLineHash = block.get(i);
-      var pow_index = blockSize - i;
-      hashCode = hashCode + byteCodeLineHash * Math.round(Math.pow(PRIME_NUMBER, pow_index)); // polynomial formula
-    }
-    return hashCode;
+  public Asm(Path hashesBackupFile, Path jarsBackupFile, int parallelism) {
+    this(hashesBackupFile, jarsBackupFile, Options.DEFAULT.withParallelism(parallelism));
   }
 
   /**
-   * Update the hash value of the current window analyzed.
+   * Constructor of an object that will be able to analyze artifacts (jar extension files).
    *
-   * @param addingHash is the new instruction hash code to add.
+   * @param hashesBackupFile is the path of the binary hashes backup file.
+   * @param jarsBackupFile   is the path of the analyzed jars backup file.
+   * @param options          is the settings of the analyses, of their backup and of the comparisons.
+   * @throws UncheckedIOException if a backup file can't be opened.
    */
-  private void newHash(long addingHash) {
-    if (count == WINDOW_SIZE) { // We have the window fulfilled for the first time
-      windowHash = hash(window); // we calculate the hash of the whole block
-      count++;
-      return;
+  Asm(Path hashesBackupFile, Path jarsBackupFile, Options options) {
+    Objects.requireNonNull(hashesBackupFile, "hashesBackupFile is null");
+    Objects.requireNonNull(jarsBackupFile, "jarsBackupFile is null");
+    Objects.requireNonNull(options, "options is null");
+    var parallelism = options.parallelism();
+    var fingerprintCacheSize = options.fingerprintCacheSize();
+    var fingerprintMemoryBudget = options.fingerprintMemoryBudget();
+    lazy = fingerprintCacheSize != 0 || fingerprintMemoryBudget != 0;
+    index = lazy
+        ? new FingerprintIndex(artifactSymbols, classSymbols, this::readStockedHashes,
+            fingerprintCacheSize == 0 ? Integer.MAX_VALUE : Math.max(2, fingerprintCacheSize),
+            fingerprintMemoryBudget == 0 ? Long.MAX_VALUE : fingerprintMemoryBudget)
+        : new FingerprintIndex(artifactSymbols, classSymbols);
+    this.hashesBackupFile = hashesBackupFile;
+    this.jarsBackupFile = jarsBackupFile;
+    this.parallelism = parallelism;
+    settings = options.settings();
+    comparisonCache = new ComparisonCache<>(options.comparisonCachePolicy());
+    executor = new ForkJoinPool(parallelism);
+    try {
+      store = FingerprintStore.open(hashesBackupFile, artifactSymbols, classSymbols); // Only the directory of the
+                                                                                      // classes is read
+    } catch (IOException e) {
+      throw new UncheckedIOException("can't open the hashes backup file " + hashesBackupFile, e);
     }
-    if (window.size() == WINDOW_SIZE) { // The window was already fulfilled
-      windowHash = rollingHash(windowHash, window.remove(0), WINDOW_SIZE, addingHash); // Use of the rolling hash system
-      window.add(addingHash);
-      return;
+    loadHashesBackupFile();
+    loadJarsBackupFile();
+    try {
+      writer = new PersistenceWriter(jarsBackupFile, store::force, options.durabilityPolicy(), metrics); // Kept open until the end
+    } catch (IOException e) {
+      try {
+        store.close();
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      executor.shutdown();
+      throw new UncheckedIOException("can't open the jars backup file " + jarsBackupFile, e);
+    }
+    synchronized (lock) {
+      compactIfNeeded(); // The file may have been left with dead bytes by a previous run
     }
-    window.add(addingHash);
-    count++;
   }
 
   /**
-   * Pushes the tuple of data to the map being the database.
+   * Result of the analysis of one class of a jar.
+   *
+   * @param filename  is the name of the analyzed .class file.
+   * @param digest    is the digest of the content of the .class file.
+   * @param hashTable is the array of the hashes of the class.
+   * @param methods   is the list of the methods of the class, null if they
+   *                  aren't known.
+   */
+  private record ClassAnalysis(String filename, long digest, long[] hashTable, List<MethodRange> methods) {}
+
+  /**
+   * Pushes the tuple of data to the index.
    *
-   * @param filename is the string path of the file the data belongs to.
+   * @param jar       is the string path of the jar the file belongs to.
+   * @param classFile is the name of the .class file the data belongs to.
+   * @param block     is the array of the hashes of the file.
+   * @param methods   is the list of the methods of the file, null if they aren't
+   *                  known.
    */
-  private void putMap(String filename, ArrayList<Long> block) {
-    map.put(filename, block);
+  private void indexClass(String jar, String classFile, long[] block, List<MethodRange> methods) {
+    index.add(jar, classFile, block, methods);
   }
 
   /**
-   * Add the hash of the current block if it doesn't worth 0.
+   * Reads the hashes of the classes of a stocked jar for the lazy index, which
+   * is only used with the lock held.
    *
-   * @param hashTable is the list of hash codes.
+   * @param jar is the string path of the jar.
+   * @return the hashes of each class of the jar, by .class file name.
+   * @throws IOException if the hashes backup file can't be read.
    */
-  private void addHash(ArrayList<Long> hashTable) {
-    if (windowHash != 0) {
-      hashTable.add(windowHash);
+  private Map<Integer, long[]> readStockedHashes(String jar) throws IOException {
+    var hashes = new HashMap<Integer, long[]>();
+    for (var entry : store.entries(jar)) {
+      hashes.put(classSymbols.id(entry.className()), store.read(entry)); // Interned when the entry was read
     }
+    return hashes;
   }
 
   /**
@@ -205,100 +468,841 @@ public class Asm implements HttpService  {
    * @return the database which is a hash map of the files string path of the
    *         project.
    */
-  HashMap<String, ArrayList<Long>> getMap() { // Mainly used to check the tests.
-    return map;
+  HashMap<String, long[]> getMap() { // Mainly used to check the tests.
+    synchronized (lock) {
+      return index.classHashes(); // The keys are only built on demand
+    }
   }
 
   /**
-   * Calculates the result of the comparison between two lists of long values and
-   * returns a string representation of the result. The formula returns the
-   * percentage of elements found in the two given lists.
+   * Result of the comparison of two artifacts.
    *
-   * @param projectNameReference   is the string path of the reference project.
-   * @param projectNameClone       is the string path of the project we compare to
-   *                               the reference one.
-   * @param hashesProjectReference is the list of hash codes for the project of
-   *                               reference.
-   * @param hashesProjectClone     is the list of hash codes for the
-   * @return the string representation of the comparison.
+   * @param outcome                       tells if the artifacts have been
+   *                                      compared.
+   * @param clonesFromReferencePercentage is the percentage of the hashes of the
+   *                                      reference found in the clone, 0 if they
+   *                                      haven't been compared.
+   * @param totalClonesPercentage         is the percentage of the hashes of the
+   *                                      clone found in the reference, 0 if they
+   *                                      haven't been compared.
    */
-  private static String resultComparison(String projectNameReference, String projectNameClone,
-                                         ArrayList<Long> hashesProjectReference, ArrayList<Long> hashesProjectClone) {
-    if (hashesProjectReference.isEmpty()) {
-      return "L'artéfact \"" + projectNameReference + "\" n'a pas été analysé ou ne contient pas de fichier analysable.\n";
+  record Comparison(Outcome outcome, double clonesFromReferencePercentage, double totalClonesPercentage) {
+
+    /**
+     * Tells why two artifacts have been compared or not.
+     */
+    enum Outcome {
+      /**
+       * The artifacts have been compared.
+       */
+      COMPARED,
+      /**
+       * The reference artifact hasn't been analyzed or doesn't have any hash.
+       */
+      REFERENCE_NOT_ANALYZED,
+      /**
+       * The clone artifact hasn't been analyzed or doesn't have any hash.
+       */
+      CLONE_NOT_ANALYZED,
+      /**
+       * The artifacts have been analyzed with different settings.
+       */
+      INCOMPARABLE
     }
-    if (hashesProjectClone.isEmpty()) {
-      return "L'artéfact \"" + projectNameClone + "\" n'a pas été analysé ou ne contient pas de fichier analysable.\n";
+
+    /**
+     * Makes the string representation of the comparison.
+     *
+     * @param projectNameReference is the string path of the reference project.
+     * @param projectNameClone     is the string path of the clone project.
+     * @return the string representation of the comparison.
+     */
+    String text(String projectNameReference, String projectNameClone) {
+      return switch (outcome) {
+        case REFERENCE_NOT_ANALYZED ->
+            "L'artéfact \"" + projectNameReference + "\" n'a pas été analysé ou ne contient pas de fichier analysable.\n";
+        case CLONE_NOT_ANALYZED ->
+            "L'artéfact \"" + projectNameClone + "\" n'a pas été analysé ou ne contient pas de fichier analysable.\n";
+        case INCOMPARABLE -> "Les artéfacts \"" + projectNameReference + "\" et \"" + projectNameClone + "\" ont été analysés avec des paramètres différents et ne peuvent pas être comparés.\n";
+        case COMPARED -> "L'artéfact \"" + projectNameClone + "\" a plagié " + clonesFromReferencePercentage + " % de l'artéfact \""
+            + projectNameReference + "\".\n" + "Au total, " + totalClonesPercentage + " % de l'artéfact \"" + projectNameClone
+            + "\" est issu du plagiat.\n";
+      };
     }
-    var hashesReference = new ArrayList<>(hashesProjectReference);
-    var hashesClone = new ArrayList<>(hashesProjectClone);
 
-    var tmp = new ArrayList<>(hashesProjectReference);
-    tmp.retainAll(hashesClone);
-    var commonHashes = tmp;
+    /**
+     * Makes the JSON representation of the comparison, the percentages are only
+     * given if the artifacts have been compared.
+     *
+     * @param projectNameReference is the string path of the reference project.
+     * @param projectNameClone     is the string path of the clone project.
+     * @return the JSON object of the comparison.
+     */
+    String json(String projectNameReference, String projectNameClone) {
+      var json = "{\"reference\":" + ResponseFormat.quote(projectNameReference) + ",\"clone\":"
+          + ResponseFormat.quote(projectNameClone) + ",\"outcome\":\"" + outcome.name().toLowerCase(Locale.ROOT) + "\"";
+      if (outcome != Outcome.COMPARED) {
+        return json + "}";
+      }
+      return json + ",\"clonesFromReferencePercentage\":" + clonesFromReferencePercentage
+          + ",\"totalClonesPercentage\":" + totalClonesPercentage + "}";
+    }
 
-    var nbHashesReference = hashesReference.size(); // amount of hashes in the first project
-    var nbHashesClone = hashesClone.size(); // amount of hashes in the second project
+    /**
+     * Writes the binary representation of the comparison: the ordinal of the
+     * outcome on a byte, then the two percentages as doubles.
+     *
+     * @param output is the stream the comparison is written to.
+     * @throws IOException if the comparison can't be written.
+     */
+    void write(DataOutputStream output) throws IOException {
+      output.writeByte(outcome.ordinal());
+      output.writeDouble(clonesFromReferencePercentage);
+      output.writeDouble(totalClonesPercentage);
+    }
+  }
 
-    hashesClone.retainAll(commonHashes);
-    var cloneHashesInClone = hashesClone;
+  /**
+   * Calculates the result of the comparison between two artifact fingerprints.
+   * The formula returns the percentage of hashes found in the two given
+   * artifacts. The common hashes are found by a single merge of the sorted hashes
+   * of the fingerprints.
+   *
+   * @param fingerprintProjectReference is the fingerprint of the project of
+   *                                    reference.
+   * @param fingerprintProjectClone     is the fingerprint of the project we compare
+   *                                    to the reference one.
+   * @return the result of the comparison.
+   */
+  static Comparison resultComparison(ArtifactFingerprint fingerprintProjectReference,
+                                     ArtifactFingerprint fingerprintProjectClone) {
+    if (fingerprintProjectReference.isEmpty()) {
+      return new Comparison(Comparison.Outcome.REFERENCE_NOT_ANALYZED, 0, 0);
+    }
+    if (fingerprintProjectClone.isEmpty()) {
+      return new Comparison(Comparison.Outcome.CLONE_NOT_ANALYZED, 0, 0);
+    }
+    if (!fingerprintProjectReference.isComparableTo(fingerprintProjectClone)) { // The hashes can't be mixed
+      return new Comparison(Comparison.Outcome.INCOMPARABLE, 0, 0);
+    }
+    var nbHashesReference = fingerprintProjectReference.total(); // amount of hashes in the first project
+    var nbHashesClone = fingerprintProjectClone.total(); // amount of hashes in the second project
 
-    hashesReference.retainAll(commonHashes);
-    var cloneHashesInReference = hashesReference;
+    var overlap = fingerprintProjectReference.overlap(fingerprintProjectClone);
+    var cloneHashesInReference = overlap.referenceShared(); // hashes of the first project found in the second one
+    var cloneHashesInClone = overlap.cloneShared(); // hashes of the second project found in the first one
 
     double clonesFromReferencePercentage = nbHashesReference == 0 ? 0
-        : cloneHashesInReference.size() * 100 / Integer.valueOf(nbHashesReference).floatValue();
+        : cloneHashesInReference * 100 / Integer.valueOf(nbHashesReference).floatValue();
     double totalClonesPercentage = nbHashesClone == 0 ? 0
-        : cloneHashesInClone.size() * 100 / Integer.valueOf(nbHashesClone).floatValue();
+        : cloneHashesInClone * 100 / Integer.valueOf(nbHashesClone).floatValue();
 
-    return "L'artéfact \"" + projectNameClone + "\" a plagié " + clonesFromReferencePercentage + " % de l'artéfact \""
-        + projectNameReference + "\".\n" + "Au total, " + totalClonesPercentage + " % de l'artéfact \"" + projectNameClone
-        + "\" est issu du plagiat.\n";
+    return new Comparison(Comparison.Outcome.COMPARED, clonesFromReferencePercentage, totalClonesPercentage);
   }
 
   /**
    * Calculates a percentage of clone code between two jar project. Makes a String
    * representation of the result statement of the comparison between the
-   * projects.
+   * projects. The result is cached until one of the projects is analyzed again.
    *
    * @return a string representation of the comparison result of cloning between
    *         two jar file.
    */
   public String percentageCloning(String projectLocationReference, String projectLocationClone) {
+    return comparison(projectLocationReference, projectLocationClone).text(projectLocationReference,
+        projectLocationClone);
+  }
+
+  /**
+   * Compares two jar projects. The result is cached until one of the projects is
+   * analyzed again.
+   *
+   * @param projectLocationReference is the string path of the reference project.
+   * @param projectLocationClone     is the string path of the project we compare
+   *                                 to the reference one.
+   * @return the result of the comparison.
+   */
+  Comparison comparison(String projectLocationReference, String projectLocationClone) {
+    Objects.requireNonNull(projectLocationReference, "projectLocationReference is null");
+    Objects.requireNonNull(projectLocationClone, "projectLocationClone is null");
+    var start = System.nanoTime();
+    var comparison = comparisonCache.get(projectLocationReference, projectLocationClone, () -> {
+      var fingerprintReference = fingerprint(projectLocationReference); // Built once at the end of the analysis
+      var fingerprintClone = fingerprint(projectLocationClone);
+      return resultComparison(fingerprintReference, fingerprintClone);
+    });
+    metrics.comparisonDuration(AnalysisMetrics.Comparison.PERCENTAGE_CLONING).recordSince(start);
+    return comparison;
+  }
+
+  /**
+   * Returns the fingerprint of the last complete analysis of a jar. It is read
+   * without the lock, unless the stocked hashes are loaded lazily: it is then
+   * read from the index with the lock held, which may read it from the backup
+   * file. The index always holds complete analyses, a new analysis replaces the
+   * previous one at once.
+   *
+   * @param jar is the string path of the jar.
+   * @return the fingerprint of the jar, empty if it hasn't been analyzed.
+   */
+  private ArtifactFingerprint fingerprint(String jar) {
+    if (!lazy) {
+      return fingerprints.getOrDefault(jar, ArtifactFingerprint.EMPTY);
+    }
+    synchronized (lock) {
+      return index.fingerprint(jar);
+    }
+  }
+
+  /**
+   * Process the request to calculate percentage of cloning between two artifacts..
+   *
+   * @param req serveur request
+   * @param res serveur response
+   */
+  private void getPercentageCloning(ServerRequest req, ServerResponse res) {
+    var format = ResponseFormat.of(req);
+    var projectLocationReferenceOptional = req.query().first("referenceArtifact");
+    var projectLocationCloneOptional = req.query().first("cloneArtifact");
+    if (projectLocationReferenceOptional.isEmpty()) {
+      format.sendError(res, "Veuillez fournir le chemin absolu d'un artéfact de référence pour pouvoir réaliser une comparaison");
+    } else if (projectLocationCloneOptional.isEmpty()) {
+      format.sendError(res, "Veuillez fournir le chemin absolu d'un artéfact à vérifier pour pouvoir réaliser une comparaison");
+    } else {
+      var projectLocationReference = projectLocationReferenceOptional.get();
+      var projectLocationClone = projectLocationCloneOptional.get();
+      var comparison = comparison(projectLocationReference, projectLocationClone);
+      switch (format) {
+        case TEXT -> res.send(comparison.text(projectLocationReference, projectLocationClone));
+        case JSON -> format.contentType(res).send(comparison.json(projectLocationReference, projectLocationClone));
+        case BINARY -> {
+          try (var output = format.dataOutput(res)) {
+            comparison.write(output);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Compares an artifact with all the other analyzed artifacts and makes a String
+   * representation of the artifacts it is the most likely to be cloned from.
+   *
+   * @param projectLocationClone is the string path of the artifact to check.
+   * @param limit                is the maximum amount of artifacts listed.
+   * @return a string representation of the artifacts sharing the most hashes with
+   *         the given one.
+   */
+  public String topClones(String projectLocationClone, int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("limit must be positive");
+    }
+    var matches = topMatches(projectLocationClone, limit);
+    if (matches == null) {
+      return notAnalyzed(projectLocationClone);
+    }
+    if (matches.isEmpty()) {
+      return noCommonCode(projectLocationClone);
+    }
+    var builder = new StringBuilder();
+    for (var match : matches) {
+      builder.append(topCloneText(projectLocationClone, match));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Compares an artifact with all the other analyzed artifacts and returns the
+   * artifacts it is the most likely to be cloned from.
+   *
+   * @param projectLocationClone is the string path of the artifact to check.
+   * @param limit                is the maximum amount of artifacts returned.
+   * @return the artifacts sharing the most hashes with the given one, null if it
+   *         hasn't been analyzed.
+   */
+  private List<FingerprintIndex.Match> topMatches(String projectLocationClone, int limit) {
+    Objects.requireNonNull(projectLocationClone, "projectLocationClone is null");
+    var start = System.nanoTime();
+    try {
+      synchronized (lock) {
+        if (index.fingerprint(projectLocationClone).isEmpty()) {
+          return null;
+        }
+        return index.topClones(projectLocationClone, limit); // One pass over the hashes of the artifact
+      }
+    } finally {
+      metrics.comparisonDuration(AnalysisMetrics.Comparison.TOP_CLONES).recordSince(start);
+    }
+  }
+
+  /**
+   * Page of the artifacts an artifact is the most likely to be cloned from.
+   *
+   * @param analyzed   tells if the artifact has been analyzed.
+   * @param matches    is the artifacts of the page, in decreasing order of shared
+   *                   hashes.
+   * @param nextOffset is the amount of artifacts to skip to get the next page, -1
+   *                   if there is no next page.
+   */
+  record TopClonesPage(boolean analyzed, List<FingerprintIndex.Match> matches, int nextOffset) {}
+
+  /**
+   * Compares an artifact with all the other analyzed artifacts and returns a page
+   * of the artifacts it is the most likely to be cloned from. One more artifact
+   * than the page holds is searched to tell if there is a next page.
+   *
+   * @param projectLocationClone is the string path of the artifact to check.
+   * @param offset               is the amount of artifacts skipped.
+   * @param limit                is the maximum amount of artifacts of the page.
+   * @return the page of artifacts.
+   */
+  TopClonesPage topClonesPage(String projectLocationClone, int offset, int limit) {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("limit must be positive");
+    }
+    if (offset < 0 || offset > Integer.MAX_VALUE - limit - 1) {
+      throw new IllegalArgumentException("offset must be positive");
+    }
+    var matches = topMatches(projectLocationClone, offset + limit + 1);
+    if (matches == null) {
+      return new TopClonesPage(false, List.of(), -1);
+    }
+    var page = matches.subList(Math.min(offset, matches.size()), Math.min(offset + limit, matches.size()));
+    return new TopClonesPage(true, List.copyOf(page), matches.size() > offset + limit ? offset + limit : -1);
+  }
+
+  /**
+   * Makes the string representation of an artifact which can't be compared.
+   */
+  private static String notAnalyzed(String projectLocation) {
+    return "L'artéfact \"" + projectLocation + "\" n'a pas été analysé ou ne contient pas de fichier analysable.\n";
+  }
+
+  /**
+   * Makes the string representation of an artifact sharing no code with the
+   * other ones.
+   */
+  private static String noCommonCode(String projectLocationClone) {
+    return "Aucun artéfact analysé n'a de code en commun avec l'artéfact \"" + projectLocationClone + "\".\n";
+  }
+
+  /**
+   * Makes the string representation of an artifact an artifact is likely to be
+   * cloned from.
+   */
+  private static String topCloneText(String projectLocationClone, FingerprintIndex.Match match) {
+    return "L'artéfact \"" + projectLocationClone + "\" a plagié " + match.clonesFromReferencePercentage()
+        + " % de l'artéfact \"" + match.reference() + "\". Au total, " + match.totalClonesPercentage()
+        + " % de l'artéfact \"" + projectLocationClone + "\" en est issu.\n";
+  }
+
+  /**
+   * Process the request to find the analyzed artifacts an artifact is the most
+   * likely to be cloned from.
+   *
+   * @param req serveur request
+   * @param res serveur response
+   */
+  private void getTopClones(ServerRequest req, ServerResponse res) {
+    var format = ResponseFormat.of(req);
+    var projectLocationCloneOptional = req.query().first("artifact");
+    if (projectLocationCloneOptional.isEmpty()) {
+      format.sendError(res, "Veuillez fournir le chemin absolu d'un artéfact à vérifier pour pouvoir réaliser une recherche");
+      return;
+    }
+    var limit = intParameter(req, "limit", DEFAULT_TOP_CLONES_LIMIT);
+    if (limit <= 0) {
+      format.sendError(res, "Veuillez fournir un nombre maximal d'artéfacts strictement positif");
+      return;
+    }
+    var offset = intParameter(req, "offset", 0);
+    if (offset < 0 || offset > Integer.MAX_VALUE - limit - 1) {
+      format.sendError(res, "Veuillez fournir un nombre d'artéfacts à passer positif");
+      return;
+    }
+    var projectLocationClone = projectLocationCloneOptional.get();
+    var page = topClonesPage(projectLocationClone, offset, limit);
+    try {
+      switch (format) {
+        case TEXT -> {
+          if (!page.analyzed() || (offset == 0 && page.matches().isEmpty())) {
+            res.send(page.analyzed() ? noCommonCode(projectLocationClone) : notAnalyzed(projectLocationClone));
+            return;
+          }
+          try (var writer = format.writer(res)) {
+            for (var match : page.matches()) {
+              writer.write(topCloneText(projectLocationClone, match));
+            }
+          }
+        }
+        case JSON -> {
+          try (var writer = format.writer(res)) {
+            writer.write("{\"artifact\":" + ResponseFormat.quote(projectLocationClone) + ",\"analyzed\":"
+                + page.analyzed() + ",\"matches\":[");
+            for (var i = 0; i < page.matches().size(); i++) {
+              var match = page.matches().get(i);
+              writer.write((i == 0 ? "" : ",") + "{\"reference\":" + ResponseFormat.quote(match.reference())
+                  + ",\"clonesFromReferencePercentage\":" + match.clonesFromReferencePercentage()
+                  + ",\"totalClonesPercentage\":" + match.totalClonesPercentage() + "}");
+            }
+            writer.write("],\"nextOffset\":" + (page.nextOffset() == -1 ? "null" : String.valueOf(page.nextOffset()))
+                + "}");
+          }
+        }
+        case BINARY -> { // Analyzed flag, records each preceded by 1, 0, then next offset or -1
+          try (var output = format.dataOutput(res)) {
+            output.writeBoolean(page.analyzed());
+            for (var match : page.matches()) {
+              output.writeByte(1);
+              output.writeUTF(match.reference());
+              output.writeDouble(match.clonesFromReferencePercentage());
+              output.writeDouble(match.totalClonesPercentage());
+            }
+            output.writeByte(0);
+            output.writeInt(page.nextOffset());
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Reads an integer query parameter of a request.
+   *
+   * @param req          is the request.
+   * @param name         is the name of the parameter.
+   * @param defaultValue is the value of the missing parameter.
+   * @return the value of the parameter, -1 if it isn't a positive integer.
+   */
+  private static int intParameter(ServerRequest req, String name, int defaultValue) {
+    var value = req.query().first(name);
+    if (value.isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return Math.max(-1, Integer.parseInt(value.get()));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Result of the comparison of the methods of two artifacts.
+   *
+   * @param outcome tells if the methods of the artifacts have been compared.
+   * @param matches is the pairs of methods sharing the most hashes, empty if the
+   *                methods haven't been compared.
+   */
+  record ClonedMethods(Outcome outcome, List<FingerprintIndex.MethodMatch> matches) {
+
+    /**
+     * Tells why the methods of two artifacts have been compared or not.
+     */
+    enum Outcome {
+      /**
+       * The methods have been compared.
+       */
+      COMPARED,
+      /**
+       * The reference artifact hasn't been analyzed or doesn't have any hash.
+       */
+      REFERENCE_NOT_ANALYZED,
+      /**
+       * The clone artifact hasn't been analyzed or doesn't have any hash.
+       */
+      CLONE_NOT_ANALYZED,
+      /**
+       * The artifacts have been analyzed with different settings.
+       */
+      INCOMPARABLE,
+      /**
+       * The reference artifact has been analyzed before the methods were stocked.
+       */
+      REFERENCE_METHODS_UNKNOWN,
+      /**
+       * The clone artifact has been analyzed before the methods were stocked.
+       */
+      CLONE_METHODS_UNKNOWN
+    }
+
+    /**
+     * Creates the result of the comparison of the methods of two artifacts.
+     */
+    ClonedMethods {
+      Objects.requireNonNull(outcome, "outcome is null");
+      matches = List.copyOf(matches);
+    }
+
+    /**
+     * Makes the string representation of the result when no pair of methods is
+     * listed.
+     *
+     * @param projectLocationReference is the string path of the reference project.
+     * @param projectLocationClone     is the string path of the clone project.
+     * @return the string representation, null if pairs of methods are listed.
+     */
+    String emptyText(String projectLocationReference, String projectLocationClone) {
+      return switch (outcome) {
+        case REFERENCE_NOT_ANALYZED -> notAnalyzed(projectLocationReference);
+        case CLONE_NOT_ANALYZED -> notAnalyzed(projectLocationClone);
+        case INCOMPARABLE -> "Les artéfacts \"" + projectLocationReference + "\" et \"" + projectLocationClone + "\" ont été analysés avec des paramètres différents et ne peuvent pas être comparés.\n";
+        case REFERENCE_METHODS_UNKNOWN -> methodsUnknown(projectLocationReference);
+        case CLONE_METHODS_UNKNOWN -> methodsUnknown(projectLocationClone);
+        case COMPARED -> matches.isEmpty() ? "Aucune méthode de l'artéfact \"" + projectLocationClone
+            + "\" n'a de code en commun avec l'artéfact \"" + projectLocationReference + "\".\n" : null;
+      };
+    }
+
+    /**
+     * Makes the string representation of an artifact whose methods aren't known.
+     */
+    private static String methodsUnknown(String projectLocation) {
+      return "Les méthodes de l'artéfact \"" + projectLocation + "\" ne sont pas connues. Veuillez analyser à nouveau cet artéfact.\n";
+    }
+
+    /**
+     * Makes the string representation of a pair of methods sharing hashes.
+     *
+     * @param match is the pair of methods.
+     * @return the string representation of the pair.
+     */
+    static String matchText(FingerprintIndex.MethodMatch match) {
+      return "La méthode " + match.cloneMethod() + " de la classe \"" + match.cloneClass() + "\" partage "
+          + match.sharedHashes() + " hashs avec la méthode " + match.referenceMethod() + " de la classe \""
+          + match.referenceClass() + "\".\n";
+    }
+
+    /**
+     * Makes the JSON representation of a pair of methods sharing hashes.
+     *
+     * @param match is the pair of methods.
+     * @return the JSON object of the pair.
+     */
+    static String matchJson(FingerprintIndex.MethodMatch match) {
+      return "{\"referenceClass\":" + ResponseFormat.quote(match.referenceClass()) + ",\"referenceMethod\":"
+          + methodJson(match.referenceMethod()) + ",\"cloneClass\":" + ResponseFormat.quote(match.cloneClass())
+          + ",\"cloneMethod\":" + methodJson(match.cloneMethod()) + ",\"sharedHashes\":" + match.sharedHashes() + "}";
+    }
+
+    /**
+     * Makes the JSON representation of a method, its lines are null if they
+     * aren't known.
+     */
+    private static String methodJson(MethodRange method) {
+      var unknown = method.firstLine() == MethodRange.NO_LINE;
+      return "{\"name\":" + ResponseFormat.quote(method.name()) + ",\"descriptor\":"
+          + ResponseFormat.quote(method.descriptor()) + ",\"firstLine\":" + (unknown ? "null" : method.firstLine())
+          + ",\"lastLine\":" + (unknown ? "null" : method.lastLine()) + ",\"hashCount\":" + method.hashCount() + "}";
+    }
+
+    /**
+     * Writes the binary representation of a pair of methods sharing hashes: the
+     * class and the method of the reference, the class and the method of the
+     * clone, then the amount of shared hashes.
+     *
+     * @param output is the stream the pair is written to.
+     * @param match  is the pair of methods.
+     * @throws IOException if the pair can't be written.
+     */
+    static void writeMatch(DataOutputStream output, FingerprintIndex.MethodMatch match) throws IOException {
+      output.writeUTF(match.referenceClass());
+      writeMethod(output, match.referenceMethod());
+      output.writeUTF(match.cloneClass());
+      writeMethod(output, match.cloneMethod());
+      output.writeInt(match.sharedHashes());
+    }
+
+    /**
+     * Writes the binary representation of a method: its name, its descriptor, its
+     * first and last lines, -1 if they aren't known, and its amount of hashes.
+     */
+    private static void writeMethod(DataOutputStream output, MethodRange method) throws IOException {
+      output.writeUTF(method.name());
+      output.writeUTF(method.descriptor());
+      output.writeInt(method.firstLine());
+      output.writeInt(method.lastLine());
+      output.writeInt(method.hashCount());
+    }
+  }
+
+  /**
+   * Compares the methods of two artifacts and makes a String representation of
+   * the pairs of methods sharing the most hashes, so that the cloned code is
+   * located without analyzing the artifacts again.
+   *
+   * @param projectLocationReference is the string path of the reference project.
+   * @param projectLocationClone     is the string path of the project we compare
+   *                                 to the reference one.
+   * @param limit                    is the maximum amount of pairs of methods
+   *                                 listed.
+   * @return a string representation of the cloned methods.
+   */
+  public String clonedMethods(String projectLocationReference, String projectLocationClone, int limit) {
+    var clonedMethods = methodMatches(projectLocationReference, projectLocationClone, limit);
+    var emptyText = clonedMethods.emptyText(projectLocationReference, projectLocationClone);
+    if (emptyText != null) {
+      return emptyText;
+    }
+    var builder = new StringBuilder();
+    for (var match : clonedMethods.matches()) {
+      builder.append(ClonedMethods.matchText(match));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Compares the methods of two artifacts and returns the pairs of methods
+   * sharing the most hashes.
+   *
+   * @param projectLocationReference is the string path of the reference project.
+   * @param projectLocationClone     is the string path of the project we compare
+   *                                 to the reference one.
+   * @param limit                    is the maximum amount of pairs of methods
+   *                                 returned.
+   * @return the result of the comparison of the methods.
+   */
+  ClonedMethods methodMatches(String projectLocationReference, String projectLocationClone, int limit) {
     Objects.requireNonNull(projectLocationReference, "projectLocationReference is null");
     Objects.requireNonNull(projectLocationClone, "projectLocationClone is null");
-    var hashReference = new ArrayList<Long>();
-    var hashClone = new ArrayList<Long>();
-    map.keySet().forEach(elem -> {
-      if (elem.startsWith(projectLocationClone + " : ")) { // If its belongs to the project then we add all the hash
-        // values
-        hashClone.addAll(map.get(elem));
+    if (limit <= 0) {
+      throw new IllegalArgumentException("limit must be positive");
+    }
+    var start = System.nanoTime();
+    try {
+      synchronized (lock) {
+        var fingerprintReference = index.fingerprint(projectLocationReference);
+        var fingerprintClone = index.fingerprint(projectLocationClone);
+        if (fingerprintReference.isEmpty()) {
+          return new ClonedMethods(ClonedMethods.Outcome.REFERENCE_NOT_ANALYZED, List.of());
+        }
+        if (fingerprintClone.isEmpty()) {
+          return new ClonedMethods(ClonedMethods.Outcome.CLONE_NOT_ANALYZED, List.of());
+        }
+        if (!fingerprintReference.isComparableTo(fingerprintClone)) { // The hashes can't be mixed
+          return new ClonedMethods(ClonedMethods.Outcome.INCOMPARABLE, List.of());
+        }
+        if (!index.hasMethods(projectLocationReference)) { // Analyzed before the methods were stocked
+          return new ClonedMethods(ClonedMethods.Outcome.REFERENCE_METHODS_UNKNOWN, List.of());
+        }
+        if (!index.hasMethods(projectLocationClone)) {
+          return new ClonedMethods(ClonedMethods.Outcome.CLONE_METHODS_UNKNOWN, List.of());
+        }
+        return new ClonedMethods(ClonedMethods.Outcome.COMPARED,
+            index.methodMatches(projectLocationReference, projectLocationClone, limit));
       }
-      if (elem.startsWith(projectLocationReference + " : ")) { // If its belongs to the project then we add all the hash
-        // values
-        hashReference.addAll(map.get(elem));
+    } finally {
+      metrics.comparisonDuration(AnalysisMetrics.Comparison.CLONED_METHODS).recordSince(start);
+    }
+  }
+
+  /**
+   * Process the request to locate the cloned methods between two artifacts.
+   *
+   * @param req serveur request
+   * @param res serveur response
+   */
+  private void getClonedMethods(ServerRequest req, ServerResponse res) {
+    var format = ResponseFormat.of(req);
+    var projectLocationReferenceOptional = req.query().first("referenceArtifact");
+    var projectLocationCloneOptional = req.query().first("cloneArtifact");
+    if (projectLocationReferenceOptional.isEmpty()) {
+      format.sendError(res, "Veuillez fournir le chemin absolu d'un artéfact de référence pour pouvoir réaliser une comparaison");
+      return;
+    }
+    if (projectLocationCloneOptional.isEmpty()) {
+      format.sendError(res, "Veuillez fournir le chemin absolu d'un artéfact à vérifier pour pouvoir réaliser une comparaison");
+      return;
+    }
+    var limit = intParameter(req, "limit", DEFAULT_CLONED_METHODS_LIMIT);
+    if (limit <= 0) {
+      format.sendError(res, "Veuillez fournir un nombre maximal de méthodes strictement positif");
+      return;
+    }
+    var projectLocationReference = projectLocationReferenceOptional.get();
+    var projectLocationClone = projectLocationCloneOptional.get();
+    var clonedMethods = methodMatches(projectLocationReference, projectLocationClone, limit);
+    try {
+      switch (format) {
+        case TEXT -> {
+          var emptyText = clonedMethods.emptyText(projectLocationReference, projectLocationClone);
+          if (emptyText != null) {
+            res.send(emptyText);
+            return;
+          }
+          try (var writer = format.writer(res)) {
+            for (var match : clonedMethods.matches()) {
+              writer.write(ClonedMethods.matchText(match));
+            }
+          }
+        }
+        case JSON -> {
+          try (var writer = format.writer(res)) {
+            writer.write("{\"reference\":" + ResponseFormat.quote(projectLocationReference) + ",\"clone\":"
+                + ResponseFormat.quote(projectLocationClone) + ",\"outcome\":\""
+                + clonedMethods.outcome().name().toLowerCase(Locale.ROOT) + "\",\"matches\":[");
+            for (var i = 0; i < clonedMethods.matches().size(); i++) {
+              writer.write((i == 0 ? "" : ",") + ClonedMethods.matchJson(clonedMethods.matches().get(i)));
+            }
+            writer.write("]}");
+          }
+        }
+        case BINARY -> { // Ordinal of the outcome, records each preceded by 1, then 0
+          try (var output = format.dataOutput(res)) {
+            output.writeByte(clonedMethods.outcome().ordinal());
+            for (var match : clonedMethods.matches()) {
+              output.writeByte(1);
+              ClonedMethods.writeMatch(output, match);
+            }
+            output.writeByte(0);
+          }
+        }
       }
-    });
-    return resultComparison(projectLocationReference, projectLocationClone, hashReference, hashClone);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Compares all the analyzed artifacts with each other and makes a String
+   * representation of the pairs of similar artifacts. Only the pairs of
+   * artifacts whose MinHash sketches share a band are compared exactly, so that
+   * all the pairs don't need to be compared.
+   *
+   * @param threshold is the minimal Jaccard similarity of the distinct hashes of
+   *                  the listed pairs, between 0 (excluded) and 1.
+   * @return a string representation of the similar pairs of artifacts.
+   */
+  public String similarityMatrix(double threshold) {
+    var matrix = similarPairs(threshold);
+    var builder = new StringBuilder(similarityMatrixText(matrix));
+    if (matrix.pairs().isEmpty()) {
+      return builder.append(noSimilarPair(threshold)).toString();
+    }
+    for (var pair : matrix.pairs()) {
+      builder.append(similarPairText(pair));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Compares all the analyzed artifacts with each other and returns the pairs of
+   * similar artifacts.
+   *
+   * @param threshold is the minimal Jaccard similarity of the distinct hashes of
+   *                  the returned pairs, between 0 (excluded) and 1.
+   * @return the similar pairs of artifacts and the counters of the comparison.
+   */
+  private FingerprintIndex.SimilarityMatrix similarPairs(double threshold) {
+    if (!(threshold > 0 && threshold <= 1)) {
+      throw new IllegalArgumentException("threshold must be between 0 (excluded) and 1");
+    }
+    var start = System.nanoTime();
+    try {
+      synchronized (lock) {
+        return index.similarityMatrix(threshold);
+      }
+    } finally {
+      metrics.comparisonDuration(AnalysisMetrics.Comparison.SIMILARITY_MATRIX).recordSince(start);
+    }
+  }
+
+  /**
+   * Makes the string representation of the counters of the comparison of all the
+   * artifacts.
+   */
+  private static String similarityMatrixText(FingerprintIndex.SimilarityMatrix matrix) {
+    var allPairs = (long) matrix.artifacts() * (matrix.artifacts() - 1) / 2;
+    return matrix.artifacts() + " artéfacts analysés, " + matrix.candidatePairs() + " paires candidates sur "
+        + allPairs + " paires possibles, " + matrix.exactPairs() + " paires comparées exactement.\n";
+  }
+
+  /**
+   * Makes the string representation of a threshold no pair of artifacts reaches.
+   */
+  private static String noSimilarPair(double threshold) {
+    return "Aucune paire d'artéfacts n'atteint une similarité de " + threshold * 100 + " %.\n";
   }
 
   /**
-   * Process the request to calculate percentage of cloning between two artifacts..
+   * Makes the string representation of a pair of similar artifacts.
+   */
+  private static String similarPairText(FingerprintIndex.SimilarPair pair) {
+    return "Les artéfacts \"" + pair.artifact1() + "\" et \"" + pair.artifact2() + "\" sont similaires à "
+        + pair.similarity() * 100 + " % : " + pair.percentage1In2() + " % du premier se retrouve dans le second et "
+        + pair.percentage2In1() + " % du second se retrouve dans le premier.\n";
+  }
+
+  /**
+   * Process the request to find the pairs of similar artifacts.
    *
    * @param req serveur request
    * @param res serveur response
    */
-  private void getPercentageCloning(ServerRequest req, ServerResponse res) {
-    var projectLocationReferenceOptional = req.query().first("referenceArtifact");
-    var projectLocationCloneOptional = req.query().first("cloneArtifact");
-    if (projectLocationReferenceOptional.isEmpty()) {
-      res.send("Veuillez fournir le chemin absolu d'un artéfact de référence pour pouvoir réaliser une comparaison");
-    } else if (projectLocationCloneOptional.isEmpty()) {
-      res.send("Veuillez fournir le chemin absolu d'un artéfact à vérifier pour pouvoir réaliser une comparaison");
-    } else {
-      var projectLocationReference = projectLocationReferenceOptional.get();
-      var projectLocationClone = projectLocationCloneOptional.get();
-      res.send(percentageCloning(projectLocationReference, projectLocationClone));
+  private void getSimilarityMatrix(ServerRequest req, ServerResponse res) {
+    var format = ResponseFormat.of(req);
+    var thresholdOptional = req.query().first("threshold");
+    double threshold;
+    try {
+      threshold = thresholdOptional.isEmpty() ? 0 : Double.parseDouble(thresholdOptional.get());
+    } catch (NumberFormatException e) {
+      threshold = 0;
+    }
+    if (!(threshold > 0 && threshold <= 1)) {
+      format.sendError(res, "Veuillez fournir un seuil de similarité compris entre 0 (exclu) et 1");
+      return;
+    }
+    var matrix = similarPairs(threshold);
+    try {
+      switch (format) {
+        case TEXT -> {
+          try (var writer = format.writer(res)) {
+            writer.write(similarityMatrixText(matrix));
+            if (matrix.pairs().isEmpty()) {
+              writer.write(noSimilarPair(threshold));
+            }
+            for (var pair : matrix.pairs()) {
+              writer.write(similarPairText(pair));
+            }
+          }
+        }
+        case JSON -> {
+          try (var writer = format.writer(res)) {
+            writer.write("{\"threshold\":" + threshold + ",\"artifacts\":" + matrix.artifacts()
+                + ",\"candidatePairs\":" + matrix.candidatePairs() + ",\"exactPairs\":" + matrix.exactPairs()
+                + ",\"pairs\":[");
+            for (var i = 0; i < matrix.pairs().size(); i++) {
+              var pair = matrix.pairs().get(i);
+              writer.write((i == 0 ? "" : ",") + "{\"artifact1\":" + ResponseFormat.quote(pair.artifact1())
+                  + ",\"artifact2\":" + ResponseFormat.quote(pair.artifact2()) + ",\"similarity\":"
+                  + pair.similarity() + ",\"percentage1In2\":" + pair.percentage1In2() + ",\"percentage2In1\":"
+                  + pair.percentage2In1() + "}");
+            }
+            writer.write("]}");
+          }
+        }
+        case BINARY -> { // Counters of the comparison, records each preceded by 1, then 0
+          try (var output = format.dataOutput(res)) {
+            output.writeInt(matrix.artifacts());
+            output.writeLong(matrix.candidatePairs());
+            output.writeLong(matrix.exactPairs());
+            for (var pair : matrix.pairs()) {
+              output.writeByte(1);
+              output.writeUTF(pair.artifact1());
+              output.writeUTF(pair.artifact2());
+              output.writeDouble(pair.similarity());
+              output.writeDouble(pair.percentage1In2());
+              output.writeDouble(pair.percentage2In1());
+            }
+            output.writeByte(0);
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
   }
 
@@ -306,22 +1310,42 @@ public class Asm implements HttpService  {
    * Creates a MethodVisitor object. This object is made to visit the various
    * cases of byte code line we can meet.
    *
-   * @param hashTable is the list where we stock the hash.
+   * @param engine     is the fingerprint engine of the class being analyzed.
+   * @param constants  is the hash codes of the constants of the class being
+   *                   analyzed.
+   * @param name       is the name of the visited method.
+   * @param descriptor is the descriptor of the visited method.
+   * @param methods    is the list where the range of the method is added once
+   *                   visited.
    * @return a MethodVisitor instance, that calculates the hash code of each byte
    *         code line encountered in a method.
    */
-  private MethodVisitor methodVisitor(ArrayList<Long> hashTable) {
+  private static MethodVisitor methodVisitor(FingerprintEngine engine, ConstantHashes constants, String name,
+                                             String descriptor, ArrayList<MethodRange> methods) {
     return new MethodVisitor(Opcodes.ASM9) {
 
+      /**
+       * Index of the first hash of the method in the hashes of the class.
+       */
+      private final int start = engine.hashes().size();
+
+      /**
+       * First source line of the method.
+       */
+      private int firstLine = MethodRange.NO_LINE;
+
+      /**
+       * Last source line of the method.
+       */
+      private int lastLine = MethodRange.NO_LINE;
+
       /**
        * Visits the node of the call of a method. A new method declaration has been
        * found.
        */
       @Override
       public void visitCode() {
-        window.clear(); // clear for the usage of it
-        windowHash = 0; // clear of the current hash value
-        count = 0;
+        engine.startMethod();
       }
 
       /**
@@ -330,9 +1354,8 @@ public class Asm implements HttpService  {
        */
       @Override
       public void visitInsn(int opcode) {
-        newHash(opcode); // The type of the instruction is important, RETURN instruction and AALOAD are
+        engine.addInstruction(opcode); // The type of the instruction is important, RETURN instruction and AALOAD are
         // too different
-        addHash(hashTable);
       }
 
       /**
@@ -345,8 +1368,7 @@ public class Asm implements HttpService  {
         long hashCode = opcode + owner.hashCode(); // The least we take for the hash value is the...
         hashCode = hashCode + (name.startsWith("java/") ? name.hashCode() : 0); // We keep the method name in the hash
         // value only if it starts with java.*
-        newHash(hashCode);
-        addHash(hashTable);
+        engine.addInstruction(hashCode);
       }
 
       /**
@@ -354,8 +1376,7 @@ public class Asm implements HttpService  {
        */
       @Override
       public void visitIntInsn(final int opcode, final int operand) {
-        newHash(opcode + operand); // The operand is important for the meaning
-        addHash(hashTable);
+        engine.addInstruction(opcode + operand); // The operand is important for the meaning
       }
 
       /**
@@ -364,8 +1385,7 @@ public class Asm implements HttpService  {
        */
       @Override
       public void visitVarInsn(final int opcode, final int varIndex) {
-        newHash(opcode); // The place of the local variable in the stack isn't important
-        addHash(hashTable);
+        engine.addInstruction(opcode); // The place of the local variable in the stack isn't important
       }
 
       /**
@@ -373,8 +1393,7 @@ public class Asm implements HttpService  {
        */
       @Override
       public void visitTypeInsn(final int opcode, final String type) {
-        newHash(opcode + type.hashCode());
-        addHash(hashTable);
+        engine.addInstruction(opcode + type.hashCode());
       }
 
       /**
@@ -383,8 +1402,7 @@ public class Asm implements HttpService  {
       @Override
       public void visitFieldInsn(final int opcode, final String owner, final String name, final String descriptor) {
         Objects.requireNonNull(owner, "owner is null");
-        newHash(opcode + owner.hashCode()); // The name isn't important, the name don't give any clue of cloning.
-        addHash(hashTable);
+        engine.addInstruction(opcode + owner.hashCode()); // The name isn't important, the name don't give any clue of cloning.
       }
 
       /**
@@ -393,8 +1411,7 @@ public class Asm implements HttpService  {
        */
       @Override
       public void visitJumpInsn(final int opcode, final Label label) {
-        newHash(opcode); // We don't focus on the label where it jumps
-        addHash(hashTable);
+        engine.addInstruction(opcode); // We don't focus on the label where it jumps
       }
 
       /**
@@ -403,13 +1420,8 @@ public class Asm implements HttpService  {
       @Override
       public void visitLdcInsn(final Object value) {
         Objects.requireNonNull(value, "value is null");
-        @SuppressWarnings("preview")
-        String stringVersion = switch(value) {
-          case String s -> "\"" + s + "\"";
-          default -> value.toString();
-        };
-        newHash(Opcodes.LDC + stringVersion.hashCode());
-        addHash(hashTable);
+        engine.addInstruction(Opcodes.LDC + constants.hash(value)); // Hash code of the string representation, a string
+                                                                    // being quoted, without building it
       }
 
       /**
@@ -417,9 +1429,8 @@ public class Asm implements HttpService  {
        */
       @Override
       public void visitIincInsn(final int varIndex, final int increment) {
-        newHash(Opcodes.IINC + increment); // We don't care about the place of the variable in the stack, the increment
+        engine.addInstruction(Opcodes.IINC + increment); // We don't care about the place of the variable in the stack, the increment
         // value can be a clue in some cases
-        addHash(hashTable);
       }
 
       /**
@@ -427,8 +1438,19 @@ public class Asm implements HttpService  {
        */
       @Override
       public void visitTableSwitchInsn(final int min, final int max, final Label dflt, final Label... labels) {
-        newHash(Opcodes.TABLESWITCH + min + max + dflt.hashCode()); // The label doesn't matter
-        addHash(hashTable);
+        engine.addInstruction(Opcodes.TABLESWITCH + min + max + dflt.hashCode()); // The label doesn't matter
+      }
+
+      /**
+       * Visits a line number of the source code, the lines of the method are kept
+       * to locate its clones.
+       */
+      @Override
+      public void visitLineNumber(final int line, final Label start) {
+        if (firstLine == MethodRange.NO_LINE || line < firstLine) {
+          firstLine = line;
+        }
+        lastLine = Math.max(lastLine, line);
       }
 
       /**
@@ -436,41 +1458,419 @@ public class Asm implements HttpService  {
        */
       @Override
       public void visitEnd() {
-        if (count < WINDOW_SIZE) { // Case where the block size is lower than the amount of byte code instructions
-          // in the method
-          windowHash = hash(window);
-          addHash(hashTable);
+        engine.endMethod();
+        var hashCount = engine.hashes().size() - start; // The hashes of a method are consecutive
+        if (hashCount > 0) {
+          methods.add(new MethodRange(name, descriptor, firstLine, lastLine, hashCount));
         }
       }
     };
   }
 
   /**
-   * Runs through the tree structure of a class. It takes a module reader and
-   * visit all the class methods.
+   * Runs through the tree structure of a class. It takes the byte code of a
+   * class and visit all the class methods. This method doesn't use any shared
+   * state so that it can be called by several tasks at the same time.
+   *
+   * @param filename is a string name of a the file/.class we analyze.
+   * @param digest   is the digest of the content of the class.
+   * @param bytes    is the byte code of the class.
+   * @param settings is the settings used to calculate the hashes.
+   * @param metrics  is the metrics where the visit of the class is recorded.
+   * @return the result of the analysis of the class.
+   */
+  private static ClassAnalysis classReader(String filename, long digest, byte[] bytes,
+                                           FingerprintSettings settings, AnalysisMetrics metrics) {
+    var start = System.nanoTime();
+    var engine = new FingerprintEngine(settings); // Hashing state dedicated to this class
+    var constants = new ConstantHashes();
+    var methods = new ArrayList<MethodRange>();
+    var classReader = new ClassReader(bytes); // Make a ClassReader
+    classReader.accept(new ClassVisitor(Opcodes.ASM9) { // We put a classVisitor in the method of the class Reader to
+      // visit the class
+      /**
+       * Methods case. We reach a method declaration.
+       */
+      @Override
+      public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                                       String[] exceptions) {
+        return methodVisitor(engine, constants, name, descriptor, methods); // Call a method visitor
+      }
+    }, 0);
+    var hashes = engine.hashes().toArray();
+    metrics.classDuration.recordSince(start);
+    metrics.bytesRead.add(bytes.length);
+    metrics.classesVisited.increment();
+    metrics.methodsVisited.add(engine.methodCount());
+    metrics.instructionsHashed.add(engine.instructionCount());
+    metrics.hashesEmitted.add(hashes.length);
+    return new ClassAnalysis(filename, digest, hashes, List.copyOf(methods));
+  }
+
+  /**
+   * Reads and analyzes a class of a jar, the memory allocated to do it is
+   * measured.
+   *
+   * @param entry is the class of the jar.
+   * @return the result of the analysis of the class.
+   * @throws IOException if the class can't be read or isn't a valid class file.
+   */
+  private ClassAnalysis hashClass(JarSource.ClassEntry entry) throws IOException {
+    var allocatedBefore = currentThreadAllocatedBytes();
+    var bytes = entry.bytes();
+    ClassAnalysis classAnalysis;
+    try {
+      classAnalysis = classReader(entry.name(), entry.digest(), bytes, settings, metrics);
+    } catch (RuntimeException e) { // ASM rejects a malformed class file with various unchecked exceptions
+      throw new IOException("invalid class file " + entry.name(), e);
+    }
+    if (allocatedBefore != -1) {
+      allocatedBytes.add(currentThreadAllocatedBytes() - allocatedBefore);
+      measuredClasses.increment();
+    }
+    return classAnalysis;
+  }
+
+  /**
+   * Returns the amount of bytes allocated by the current thread since it started.
+   *
+   * @return the amount of allocated bytes, -1 if it can't be measured.
+   */
+  static long currentThreadAllocatedBytes() {
+    if (THREAD_MX_BEAN == null || !THREAD_MX_BEAN.isThreadAllocatedMemoryEnabled()) {
+      return -1;
+    }
+    return THREAD_MX_BEAN.getCurrentThreadAllocatedBytes();
+  }
+
+  /**
+   * Returns the average amount of bytes allocated to read and hash a class since
+   * the creation of this object.
+   *
+   * @return the average amount of bytes allocated per class, -1 if no allocation
+   *         has been measured.
+   */
+  long allocatedBytesPerClass() {
+    var classes = measuredClasses.sum();
+    return classes == 0 ? -1 : allocatedBytes.sum() / classes;
+  }
+
+  /**
+   * Process the request to get the average amount of bytes allocated to analyze
+   * a class.
+   *
+   * @param req serveur request
+   * @param res serveur response
+   */
+  private void getAllocationPerClass(ServerRequest req, ServerResponse res) {
+    var format = ResponseFormat.of(req);
+    var allocatedBytesPerClass = allocatedBytesPerClass();
+    var classes = measuredClasses.sum();
+    try {
+      switch (format) {
+        case TEXT -> {
+          if (allocatedBytesPerClass == -1) {
+            res.send("Aucune allocation n'a été mesurée. Aucune classe n'a été analysée ou la machine virtuelle ne permet pas de mesurer les allocations.");
+          } else {
+            res.send("En moyenne, " + allocatedBytesPerClass + " octets ont été alloués pour lire et analyser chacune des " + classes + " classes analysées.");
+          }
+        }
+        case JSON -> {
+          try (var writer = format.writer(res)) {
+            writer.write("{\"allocatedBytesPerClass\":"
+                + (allocatedBytesPerClass == -1 ? "null" : String.valueOf(allocatedBytesPerClass))
+                + ",\"measuredClasses\":" + classes + "}");
+          }
+        }
+        case BINARY -> { // Average bytes per class or -1, then measured classes
+          try (var output = format.dataOutput(res)) {
+            output.writeLong(allocatedBytesPerClass);
+            output.writeLong(classes);
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Distribution of the hashes of the analyzed artifacts and size of the backup
+   * file of the hashes.
+   *
+   * @param index      is the statistics of the index of the hashes.
+   * @param storeBytes is the size of the backup file, in bytes.
+   * @param deadBytes  is the amount of bytes of the backup file taken by replaced
+   *                   analyses.
+   */
+  private record HashStatistics(FingerprintIndex.Statistics index, long storeBytes, long deadBytes) {}
+
+  /**
+   * Returns the distribution of the hashes of the analyzed artifacts and the size
+   * of the backup file, read at the same time.
+   *
+   * @return the statistics of the hashes.
+   */
+  private HashStatistics statistics() {
+    synchronized (lock) {
+      return new HashStatistics(index.statistics(), store.size(), store.deadBytes());
+    }
+  }
+
+  /**
+   * Makes a string representation of the distribution of the hashes of the
+   * analyzed artifacts for each rolling hash kernel, and of the occupancy of the
+   * table of the postings. The more occurrences a hash has, the more postings the
+   * comparisons read.
+   *
+   * @return the string representation of the statistics of the hashes.
+   */
+  public String hashStatistics() {
+    var statistics = statistics();
+    if (statistics.index().kernels().isEmpty()) {
+      return noHashText();
+    }
+    var builder = new StringBuilder();
+    for (var kernel : statistics.index().kernels()) {
+      builder.append(kernelStatisticsText(kernel));
+    }
+    return builder.append(indexStatisticsText(statistics)).toString();
+  }
+
+  /**
+   * Makes the string representation of statistics without any hash.
+   */
+  private static String noHashText() {
+    return "Aucun hash n'a été calculé. Aucun artéfact n'a été analysé.\n";
+  }
+
+  /**
+   * Makes the string representation of the distribution of the hashes of a
+   * rolling hash kernel.
+   */
+  private static String kernelStatisticsText(FingerprintIndex.KernelStatistics kernel) {
+    var builder = new StringBuilder();
+    builder.append("Noyau ").append(kernel.kernel()).append(" : ").append(kernel.artifacts())
+        .append(" artéfacts, ").append(kernel.occurrences()).append(" occurrences de ")
+        .append(kernel.distinctHashes()).append(" hashs distincts, soit ")
+        .append(String.format(Locale.ROOT, "%.2f", kernel.averageOccurrences()))
+        .append(" occurrences par hash en moyenne et ").append(kernel.maxOccurrences())
+        .append(" au plus. Collisions attendues d'un hash idéal de 64 bits : ")
+        .append(String.format(Locale.ROOT, "%.3g", kernel.idealCollisions())).append(".\n");
+    var occupancy = kernel.occupancy();
+    for (var i = 0; i < occupancy.length; i++) {
+      builder.append("  hashs présents de ").append(1L << i).append(" à ").append((1L << (i + 1)) - 1)
+          .append(" fois : ").append(occupancy[i]).append("\n");
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Makes the string representation of the occupancy of the table of the postings
+   * and of the size of the backup file.
+   */
+  private static String indexStatisticsText(HashStatistics statistics) {
+    var indexStatistics = statistics.index();
+    return "Index : " + indexStatistics.distinctHashes() + " hashs dans une table de " + indexStatistics.slots()
+        + " cases occupant " + indexStatistics.heapBytes() + " octets, un hash est trouvé en lisant au plus "
+        + indexStatistics.maxProbeLength() + " cases.\n" + "Fichier de sauvegarde : " + statistics.storeBytes()
+        + " octets dont " + statistics.deadBytes() + " octets d'analyses remplacées.\n";
+  }
+
+  /**
+   * Process the request to get the statistics of the hashes of the analyzed
+   * artifacts.
+   *
+   * @param req serveur request
+   * @param res serveur response
+   */
+  private void getHashStatistics(ServerRequest req, ServerResponse res) {
+    var format = ResponseFormat.of(req);
+    var statistics = statistics();
+    var indexStatistics = statistics.index();
+    try {
+      switch (format) {
+        case TEXT -> {
+          if (indexStatistics.kernels().isEmpty()) {
+            res.send(noHashText());
+            return;
+          }
+          try (var writer = format.writer(res)) {
+            for (var kernel : indexStatistics.kernels()) {
+              writer.write(kernelStatisticsText(kernel));
+            }
+            writer.write(indexStatisticsText(statistics));
+          }
+        }
+        case JSON -> {
+          try (var writer = format.writer(res)) {
+            writer.write("{\"kernels\":[");
+            for (var i = 0; i < indexStatistics.kernels().size(); i++) {
+              var kernel = indexStatistics.kernels().get(i);
+              writer.write((i == 0 ? "" : ",") + "{\"kernel\":\"" + kernel.kernel().name().toLowerCase(Locale.ROOT)
+                  + "\",\"artifacts\":" + kernel.artifacts() + ",\"occurrences\":" + kernel.occurrences()
+                  + ",\"distinctHashes\":" + kernel.distinctHashes() + ",\"averageOccurrences\":"
+                  + kernel.averageOccurrences() + ",\"maxOccurrences\":" + kernel.maxOccurrences()
+                  + ",\"idealCollisions\":" + kernel.idealCollisions() + ",\"occupancy\":"
+                  + Arrays.toString(kernel.occupancy()).replace(" ", "") + "}");
+            }
+            writer.write("],\"distinctHashes\":" + indexStatistics.distinctHashes() + ",\"slots\":"
+                + indexStatistics.slots() + ",\"maxProbeLength\":" + indexStatistics.maxProbeLength()
+                + ",\"indexBytes\":" + indexStatistics.heapBytes()
+                + ",\"storeBytes\":" + statistics.storeBytes() + ",\"deadBytes\":" + statistics.deadBytes() + "}");
+          }
+        }
+        case BINARY -> { // Kernels each preceded by 1, 0, then the index and the backup file
+          try (var output = format.dataOutput(res)) {
+            for (var kernel : indexStatistics.kernels()) {
+              output.writeByte(1);
+              output.writeByte(kernel.kernel().ordinal());
+              output.writeInt(kernel.artifacts());
+              output.writeLong(kernel.occurrences());
+              output.writeInt(kernel.distinctHashes());
+              output.writeInt(kernel.maxOccurrences());
+              output.writeInt(kernel.occupancy().length);
+              for (var count : kernel.occupancy()) {
+                output.writeInt(count);
+              }
+            }
+            output.writeByte(0);
+            output.writeInt(indexStatistics.distinctHashes());
+            output.writeInt(indexStatistics.slots());
+            output.writeInt(indexStatistics.maxProbeLength());
+            output.writeLong(indexStatistics.heapBytes());
+            output.writeLong(statistics.storeBytes());
+            output.writeLong(statistics.deadBytes());
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Makes a string representation of the counters of the cache of the
+   * comparisons.
+   *
+   * @return the string representation of the statistics of the cache.
+   */
+  public String comparisonCacheStatistics() {
+    var statistics = comparisonCache.statistics();
+    var requests = statistics.hits() + statistics.misses();
+    return "Cache des comparaisons : " + statistics.size() + " résultats, " + statistics.hits() + " trouvés et "
+        + statistics.misses() + " calculés"
+        + (requests == 0 ? "" : String.format(Locale.ROOT, " (%.1f %% trouvés)", statistics.hits() * 100.0 / requests))
+        + ", " + statistics.evictions() + " retirés car le cache était plein ou qu'ils avaient expiré.\n";
+  }
+
+  /**
+   * Process the request to get the statistics of the cache of the comparisons.
+   *
+   * @param req serveur request
+   * @param res serveur response
+   */
+  private void getComparisonCacheStatistics(ServerRequest req, ServerResponse res) {
+    var format = ResponseFormat.of(req);
+    try {
+      switch (format) {
+        case TEXT -> res.send(comparisonCacheStatistics());
+        case JSON -> {
+          var statistics = comparisonCache.statistics();
+          try (var writer = format.writer(res)) {
+            writer.write("{\"size\":" + statistics.size() + ",\"hits\":" + statistics.hits() + ",\"misses\":"
+                + statistics.misses() + ",\"evictions\":" + statistics.evictions() + "}");
+          }
+        }
+        case BINARY -> { // Size, hits, misses, evictions
+          var statistics = comparisonCache.statistics();
+          try (var output = format.dataOutput(res)) {
+            output.writeInt(statistics.size());
+            output.writeLong(statistics.hits());
+            output.writeLong(statistics.misses());
+            output.writeLong(statistics.evictions());
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Makes the Prometheus text representation of the metrics of the analyses,
+   * of their backup, of the comparisons and of the cache of the comparisons. The
+   * metrics are read without the lock.
+   *
+   * @return the metrics in the Prometheus text format.
+   */
+  public String metrics() {
+    var builder = new StringBuilder();
+    metrics.write(builder);
+    var statistics = comparisonCache.statistics();
+    AnalysisMetrics.counter(builder, "clonewar_comparison_cache_hits_total",
+        "Comparisons whose result was found in the cache.", statistics.hits());
+    AnalysisMetrics.counter(builder, "clonewar_comparison_cache_misses_total",
+        "Comparisons whose result was calculated.", statistics.misses());
+    AnalysisMetrics.counter(builder, "clonewar_comparison_cache_evictions_total",
+        "Results removed from the cache because it was full or because they had expired.", statistics.evictions());
+    AnalysisMetrics.gauge(builder, "clonewar_comparison_cache_size", "Results in the cache.", statistics.size());
+    AnalysisMetrics.gauge(builder, "clonewar_analyzed_jars", "Jars analyzed.", analyzedJars.size());
+    return builder.toString();
+  }
+
+  /**
+   * Waits for the next class analysis to be over and adds its result to the
+   * classes of the new analysis of the jar.
    *
-   * @param reader    is the module reader on the current jar.
-   * @param filename  is a string name of a the file/.class we want to open a
-   *                  class reader on.
-   * @param hashTable is the list where the hash of the class analyzed are
-   *                  stocked.
-   * @throws IOException if there is a problem in the reading of the class.
+   * @param jarLocation       is the path of the jar the class belongs to.
+   * @param completionService is the service on which the analyses of the classes
+   *                          have been submitted.
+   * @param classes           is the list of the classes of the new analysis.
+   * @param classProcessed    is called once the class has been added.
+   * @throws IOException if the analysis of the class failed.
    */
-  private void classReader(ModuleReader reader, String filename, ArrayList<Long> hashTable) throws IOException {
-    try (var inputStream = reader.open(filename).orElseThrow()) {
-      var classReader = new ClassReader(inputStream); // Make a ClassReader
-      classReader.accept(new ClassVisitor(Opcodes.ASM9) { // We put a classVisitor in the method of the class Reader to
-        // visit the class
-        /**
-         * Methods case. We reach a method declaration.
-         */
-        @Override
-        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
-                                         String[] exceptions) {
-          return methodVisitor(hashTable); // Call a method visitor
+  private void mergeNextClass(Path jarLocation, CompletionService<ClassAnalysis> completionService,
+                              ArrayList<FingerprintStore.ClassRecord> classes, Runnable classProcessed)
+      throws IOException {
+    ClassAnalysis classAnalysis;
+    try {
+      classAnalysis = completionService.take().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("analysis of " + jarLocation + " interrupted");
+    } catch (ExecutionException e) {
+      // The fork join pool wraps the exceptions of the tasks, an IOException may be the cause of the cause
+      for (var cause = e.getCause(); cause != null; cause = cause.getCause()) {
+        if (cause instanceof IOException ioException) {
+          throw ioException;
         }
-      }, 0);
+      }
+      var cause = e.getCause();
+      if (cause instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (cause instanceof Error error) {
+        throw error;
+      }
+      throw new IOException(cause);
     }
+    mergeClass(classAnalysis, classes, classProcessed);
+  }
+
+  /**
+   * Adds the result of the analysis of a class to the classes of the new
+   * analysis of the jar. They are added to the index once all of them are known.
+   *
+   * @param classAnalysis  is the result of the analysis of the class.
+   * @param classes        is the list of the classes of the new analysis.
+   * @param classProcessed is called once the class has been added.
+   */
+  private static void mergeClass(ClassAnalysis classAnalysis, ArrayList<FingerprintStore.ClassRecord> classes,
+                                 Runnable classProcessed) {
+    classes.add(new FingerprintStore.ClassRecord(classAnalysis.filename(), classAnalysis.digest(),
+        classAnalysis.hashTable(), classAnalysis.methods()));
+    classProcessed.run();
   }
 
   /**
@@ -478,29 +1878,169 @@ public class Asm implements HttpService  {
    * structure created on the jar given and fills the database with the hash
    * calculated on the byte code instructions encountered.
    *
-   * @param jarLocation is the string path of the jar we want to visit the tree
-   *                    structure.
-   * @throws IOException            if an issue occurred due to the file system.
-   * @throws NoSuchElementException if no module has been found.
+   * <p>The classes are analyzed without modifying the index, the new analysis is
+   * stocked then replaces the previous one in the index at once, with the lock
+   * held. So the comparisons never see a jar partly analyzed, and if the
+   * analysis fails the index and the backup file keep the previous one.
+   *
+   * @param jarLocation    is the string path of the jar we want to visit the tree
+   *                       structure.
+   * @param classProcessed is called each time a class of the jar has been
+   *                       analyzed.
+   * @throws IOException if an issue occurred due to the file system or if the jar
+   *                     isn't a valid zip file.
+   */
+  private void treeVisit(Path jarLocation, Runnable classProcessed) throws IOException {
+    var jar = jarLocation.toString();
+    var openStart = System.nanoTime();
+    var source = JarSource.open(jarLocation); // The central directory of the jar is read straight from the mapped file
+    metrics.jarOpenDuration.recordSince(openStart);
+    // The classes stocked by the previous analysis of the jar are kept so that the unchanged ones aren't analyzed
+    // again.
+    var previousClasses = new HashMap<String, FingerprintStore.Entry>();
+    FingerprintSettings previousSettings;
+    synchronized (lock) {
+      previousSettings = store.settings(jar);
+      if (settings.equals(previousSettings)) { // Hashes calculated with other settings can't be reused
+        for (var entry : store.entries(jar)) {
+          previousClasses.put(entry.className(), entry);
+        }
+      }
+    }
+    var completionService = new ExecutorCompletionService<ClassAnalysis>(executor);
+    var maxInFlight = parallelism * IN_FLIGHT_CLASSES_PER_WORKER; // Bounds the amount of class bytes kept in memory
+    var inFlight = 0;
+    var classes = new ArrayList<FingerprintStore.ClassRecord>(); // Classes stocked in the backup file
+    var changed = false; // Tells if at least one class has been added or modified since the previous analysis
+    // The classes of the nested jars (BOOT-INF/lib, WEB-INF/lib...) are listed after the ones of their parent
+    for (JarSource.ClassEntry classEntry; (classEntry = source.next()) != null;) {
+      if (inFlight == maxInFlight) { // Too many classes are waiting, we merge one before reading another one
+        mergeNextClass(jarLocation, completionService, classes, classProcessed);
+        inFlight--;
+      }
+      var filename = classEntry.name();
+      var digest = classEntry.digest(); // Read from the central directory, the class isn't inflated
+      var previousClass = previousClasses.get(filename);
+      if (previousClass != null && previousClass.digest() == digest && previousClass.methods() != null) { // Unchanged
+        // class whose methods are known, its hashes are reused
+        long[] previousHashes;
+        synchronized (lock) {
+          previousHashes = store.read(previousClass);
+        }
+        mergeClass(new ClassAnalysis(filename, digest, previousHashes, previousClass.methods()), classes,
+            classProcessed);
+        metrics.classesReused.increment();
+        continue;
+      }
+      changed = true;
+      var entry = classEntry;
+      completionService.submit(() -> hashClass(entry)); // The class is inflated and analyzed by a worker
+      inFlight++;
+    }
+    for (; inFlight > 0; inFlight--) { // Each class is merged as soon as its analysis is over
+      mergeNextClass(jarLocation, completionService, classes, classProcessed);
+    }
+    // Tells if a class has been added, modified or removed since the previous analysis
+    var modified = changed || classes.size() != previousClasses.size() || !settings.equals(previousSettings);
+    var fingerprint = fingerprint(classes); // Built once without the lock, it is used by the comparisons as well
+    long[] sketch;
+    synchronized (lock) {
+      sketch = modified ? null : store.sketch(jar);
+    }
+    if (sketch == null) { // The sketch of an unchanged jar is reused, unless an older version has stocked it
+      sketch = MinHash.sketch(fingerprint.hashes());
+      modified = true;
+    }
+    // Encoded without the lock, only its writing at the end of the backup file needs it
+    var segment = modified ? FingerprintStore.encode(jar, settings, sketch, classes) : null;
+    synchronized (lock) {
+      if (modified) { // If it fails, the index and the backup file still hold the previous analysis
+        var appendStart = System.nanoTime();
+        store.append(segment); // Stock the analysis, it replaces the previous one of the jar
+        metrics.storeAppendDuration.recordSince(appendStart);
+      }
+      try { // The previous analysis is replaced without releasing the lock
+        index.removeArtifact(jar);
+        index.setSettings(jar, settings);
+        for (var classRecord : classes) {
+          indexClass(jar, classRecord.className(), classRecord.hashes(), classRecord.methods());
+        }
+        index.setFingerprint(jar, fingerprint);
+        index.setSketch(jar, sketch);
+      } finally {
+        index.release(jar); // Stocked, its hashes can be read again from the backup file
+      }
+      if (!lazy) {
+        fingerprints.put(artifactSymbols.canonical(jar), fingerprint); // Published for the comparisons at once
+      }
+      comparisonCache.newVersion(jar); // Its previous results aren't returned anymore
+      if (modified) {
+        compactIfNeeded();
+      }
+    }
+  }
+
+  /**
+   * Builds the compact fingerprint of a new analysis of a jar.
+   *
+   * @param classes is the classes of the analysis.
+   * @return the fingerprint of the jar.
+   */
+  private ArtifactFingerprint fingerprint(List<FingerprintStore.ClassRecord> classes) {
+    var hashCount = 0;
+    for (var classRecord : classes) {
+      hashCount += classRecord.hashes().length;
+    }
+    var hashes = new long[hashCount];
+    var position = 0;
+    for (var classRecord : classes) {
+      System.arraycopy(classRecord.hashes(), 0, hashes, position, classRecord.hashes().length);
+      position += classRecord.hashes().length;
+    }
+    return ArtifactFingerprint.of(hashes, settings);
+  }
+
+  /**
+   * Starts the compaction of the hashes backup file in the background if enough
+   * of its bytes belong to replaced analyses. Must be called with the lock held.
+   */
+  private void compactIfNeeded() {
+    if (compacting || closed || !store.needsCompaction(COMPACTION_DEAD_RATIO, COMPACTION_MIN_DEAD_BYTES)) {
+      return;
+    }
+    compacting = true;
+    var thread = new Thread(this::compact, "clonewar-compaction");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Compacts the hashes backup file. The live analyses are copied without the
+   * lock, so that the jars are still analyzed and compared meanwhile, then the
+   * analyses stocked in the meantime are copied and the file is replaced with
+   * the lock held.
    */
-  private void treeVisit(Path jarLocation) throws IOException, NoSuchElementException {
-    // The following instruction is used to re-analyze a jar that has been modified but which is at the same location.
-    // All the information concerning the old jar will be erased in order to be able to do a new analysis of it.
-    // Therefore, nly the hashes of the new jar will be associated with it in the map.
-    map.entrySet().removeIf(entry -> entry.getKey().startsWith(jarLocation + " : "));
-    var finder = ModuleFinder.of(jarLocation); // Find the module name of the .jar
-    var moduleReference = finder.findAll().stream().findFirst().orElseThrow(); // Array with the module,
-                                                                                              // and the location.
-    try (var reader = moduleReference.open()) { // Makes a JarReader
-      for (var filename : (Iterable<String>) reader.list()::iterator) { // We visit all the META-INF directory
-        if (!filename.endsWith(".class")) { // if the file isn't a .class we break
-          continue;
+  private void compact() {
+    FingerprintStore.Compaction compaction = null;
+    try {
+      synchronized (lock) {
+        compaction = store.startCompaction();
+      }
+      compaction.copy();
+      synchronized (lock) {
+        compaction.commit();
+      }
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Impossible de compacter le fichier de sauvegarde " + hashesBackupFile + " : " + e);
+      if (compaction != null) {
+        synchronized (lock) {
+          compaction.abort();
         }
-        var hashTable = new ArrayList<Long>(); // List which will stock all the hash of the current file analyzed.
-        currentFile = filename;
-        classReader(reader, filename, hashTable); // Open a class Reader on the current .class file.
-        saveHashesInBackupFile(jarLocation + " : " + currentFile, hashTable); // Stock the analysis
-        putMap(jarLocation + " : " + currentFile, hashTable); // This adds the hash codes into the database
+      }
+    } finally {
+      synchronized (lock) {
+        compacting = false;
+        lock.notifyAll();
       }
     }
   }
@@ -514,19 +2054,80 @@ public class Asm implements HttpService  {
    * @return a boolean describing if the analysis has been fully completed or not.
    */
   public boolean analysis(Path jarLocation) {
+    return analysis(jarLocation, () -> {}, true);
+  }
+
+  /**
+   * Launch the analysis on the jar located at the string path given and reports
+   * its progress. Several jars can be analyzed at the same time, but if the given
+   * jar is already being analyzed, this analysis waits for the other one to be
+   * over.
+   *
+   * @param jarLocation    is the string of the path location of the jar file.
+   * @param classProcessed is called each time a class of the jar has been added
+   *                       to the database.
+   * @param save           tells if the analysis waits for its result to be saved
+   *                       according to the durability policy, otherwise it is
+   *                       saved in the background and the next {@link #commit()}
+   *                       waits for it.
+   * @return a boolean describing if the analysis has been fully completed or not.
+   */
+  boolean analysis(Path jarLocation, Runnable classProcessed, boolean save) {
     Objects.requireNonNull(jarLocation, "jarLocation is null");
+    Objects.requireNonNull(classProcessed, "classProcessed is null");
+    var jar = jarLocation.toString();
+    synchronized (lock) {
+      while (analyzingJars.contains(jar)) { // The same jar is being analyzed by another thread
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+      analyzingJars.add(jar);
+    }
+    var start = System.nanoTime();
     try {
-      treeVisit(jarLocation); // Launch the analysis
-      if(!analyzedJars.contains(jarLocation.toString())) {
-        analyzedJars.add(jarLocation.toString());
-        saveJarsBackupFile(jarLocation.toString());
+      treeVisit(jarLocation, classProcessed); // Launch the analysis, it replaces the previous one once complete
+      CompletableFuture<Void> saved;
+      synchronized (lock) {
+        var symbol = artifactSymbols.canonical(jar); // The instance kept by the index
+        saved = writer.artifactAnalyzed(analyzedJars.add(symbol) ? symbol : null); // Written by the persistence
+                                                                                   // thread
       }
+      if (save) {
+        var persistStart = System.nanoTime();
+        await(saved);
+        metrics.persistDuration.recordSince(persistStart);
+      }
+      metrics.jarsAnalyzed.increment();
+      metrics.analysisDuration.recordSince(start);
       return true;
     } catch (IOException e) { // An IOException occurred the analysis has failed
+      metrics.jarsFailed.increment();
       return false;
-    } catch (NoSuchElementException e) { // A NoSuchElementException occurred the analysis has failed
-      return false;
+    } finally {
+      synchronized (lock) {
+        analyzingJars.remove(jar);
+        comparisonCache.newVersion(jar); // The comparisons made during the analysis may have read the previous one
+        lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Makes the string representation of the result of the analysis of a jar.
+   *
+   * @param jarPathToAnalyze is the string path of the analyzed jar.
+   * @param completed        tells if the analysis has been fully completed.
+   * @return the string representation of the result of the analysis.
+   */
+  static String analysisResult(String jarPathToAnalyze, boolean completed) {
+    if (completed) {
+      return "L'analyse de l'artéfact \"" + jarPathToAnalyze + "\" est terminée et s'est déroulée correctement. Le résultat de cette analyse a été sauvegardé.";
     }
+    return "L'analyse de l'artéfact \"" + jarPathToAnalyze + "\" a échoué. Veuillez vous assurer que l'emplacement de cet artéfact est correct et que celui-ci est bien accessible. Il se peut également qu'un problème soit survenue lors de l'accès aux fichiers de sauvegarde afin de sauvegarder le résultat de l'analyse.";
   }
 
   /**
@@ -536,42 +2137,50 @@ public class Asm implements HttpService  {
    * @param res serveur response
    */
   private void getAnalysis(ServerRequest req, ServerResponse res) {
+    var format = ResponseFormat.of(req);
     var jarPathToAnalyzeOptional = req.query().first("jarPathToAnalyse");
     if (jarPathToAnalyzeOptional.isEmpty()) {
-      res.send("Veuillez fournir le chemin absolu d'un artéfact à analyser");
+      format.sendError(res, "Veuillez fournir le chemin absolu d'un artéfact à analyser");
     } else {
       var jarPathToAnalyze = jarPathToAnalyzeOptional.get();
       var jarLocation = Path.of(jarPathToAnalyze);
-      if (analysis(jarLocation)) {
-        res.send("L'analyse de l'artéfact \"" + jarPathToAnalyze + "\" est terminée et s'est déroulée correctement. Le résultat de cette analyse a été sauvegardé.");
-      } else {
-        res.send("L'analyse de l'artéfact \"" + jarPathToAnalyze + "\" a échoué. Veuillez vous assurer que l'emplacement de cet artéfact est correct et que celui-ci est bien accessible. Il se peut également qu'un problème soit survenue lors de l'accès aux fichiers de sauvegarde afin de sauvegarder le résultat de l'analyse.");
+      var completed = analysis(jarLocation);
+      switch (format) {
+        case TEXT -> res.send(analysisResult(jarPathToAnalyze, completed));
+        case JSON -> format.contentType(res).send("{\"artifact\":" + ResponseFormat.quote(jarPathToAnalyze)
+            + ",\"completed\":" + completed + "}");
+        case BINARY -> {
+          try (var output = format.dataOutput(res)) {
+            output.writeUTF(jarPathToAnalyze);
+            output.writeBoolean(completed);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
       }
     }
   }
 
   /**
-   * Stocks the current state of the map of hashes files analysis in the save file.
-   *
-   * @param filename is the filename of the class analyzed.
-   * @param hashes is the list of hashes for the file analyzed.
-   */
-  private void saveHashesInBackupFile(String filename, ArrayList<Long> hashes) throws IOException {
-    var line = filename + "\n" + hashes.stream().map(String :: valueOf).collect(Collectors.joining(" ")) + "\n";
-    Files.writeString(hashesBackupFile, line,  StandardCharsets.UTF_8, StandardOpenOption.APPEND, StandardOpenOption.CREATE);
-  }
-
-  /**
-   * Retrieves the previous data of the files analyzed.
+   * Retrieves the previous data of the files analyzed. The hashes of each class
+   * are copied from the memory mapping of the backup file, unless they are loaded
+   * lazily: only the classes are known until the jar is compared.
    */
   private void loadHashesBackupFile() {
-    try (var reader = Files.newBufferedReader(hashesBackupFile)) { // Open the reader and close it
-      String key;
-      String rawValue;
-      ArrayList<Long> value;
-      while ((key = reader.readLine()) != null && (rawValue = reader.readLine()) != null) {
-        value = new ArrayList<>(Arrays.stream(rawValue.split(" ")).map(Long::parseLong).toList());
-        map.put(key, value);
+    try {
+      for (var jar : store.artifacts()) {
+        index.setSettings(jar, store.settings(jar));
+        for (var entry : store.entries(jar)) {
+          if (lazy) {
+            index.declare(jar, entry.className(), entry.hashCount(), entry.methods());
+          } else {
+            indexClass(jar, entry.className(), store.read(entry), entry.methods());
+          }
+        }
+        index.setSketch(jar, store.sketch(jar)); // Calculated at the first comparison if an older version stocked the jar
+        if (!lazy) {
+          fingerprints.put(jar, index.fingerprint(jar)); // Build the compact fingerprint used by the comparisons
+        }
       }
     } catch (IOException e) { // Issue in the reading, we stop the load
       System.err.println("Aucune sauvegarde précédente n'a été trouvée. Sinon, une erreur est survenue lors de l'accès au fichier de sauvegarde \"" + hashesBackupFile + "\" afin de restaurer les hashs asociés aux artéfacts déjà analysés.");
@@ -585,7 +2194,7 @@ public class Asm implements HttpService  {
     try (var reader = Files.newBufferedReader(jarsBackupFile)) { // Open the reader and close it
       String line;
       while ((line = reader.readLine()) != null) {
-        analyzedJars.add(line);
+        analyzedJars.add(artifactSymbols.canonical(line)); // Each path is kept once
       }
     } catch (IOException e) { // Issue in the reading, we stop the load
       System.err.println("Aucune sauvegarde précédente n'a été trouvée. Sinon, une erreur est survenue lors de l'accès au fichier de sauvegarde \"" + jarsBackupFile + "\" afin de restaurer la liste des artéfacts déjà analysés.");
@@ -593,13 +2202,49 @@ public class Asm implements HttpService  {
   }
 
   /**
-   * Stocks the current state of the list of jars analysis in the save file.
+   * Waits for the persistence writer to save a result.
+   *
+   * @param saved is the future of the result.
+   * @throws IOException if the result can't be saved or if the waiting thread is
+   *                     interrupted.
+   */
+  private static void await(CompletableFuture<Void> saved) throws IOException {
+    try {
+      saved.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("saving interrupted");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException ioException) {
+        throw ioException;
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Makes the analyses done since the last commit durable: the analyzed jars are
+   * added to their backup file and both backup files are written to the storage
+   * device, unless the durability policy never does it. It allows analyses to be
+   * saved in batches.
+   *
+   * @throws IOException if a backup file can't be written.
+   */
+  void commit() throws IOException {
+    var start = System.nanoTime();
+    await(writer.sync());
+    metrics.persistDuration.recordSince(start);
+  }
+
+  /**
+   * Tells if a jar has already been analyzed.
    *
-   * @param jar is the string name of the jar.
+   * @param jar is the string path of the jar.
+   * @return true if the jar has been analyzed.
    */
-  private void saveJarsBackupFile(String jar) throws IOException {
-    var line = jar + "\n";
-      Files.writeString(jarsBackupFile, line,  StandardCharsets.UTF_8, StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+  boolean isAnalyzed(String jar) {
+    Objects.requireNonNull(jar, "jar is null");
+    return analyzedJars.contains(jar);
   }
 
   /**
@@ -608,16 +2253,100 @@ public class Asm implements HttpService  {
    * @return the string representation of the jars analyzed.
    */
   public String analyzedJars() {
-    return analyzedJars.stream().sorted().collect(Collectors.joining("\n"));
+    return String.join("\n", analyzedJars); // Already sorted, a jar added meanwhile may be missing
+  }
+
+  /**
+   * Returns the analyzed jars following a jar in alphabetical order. The returned
+   * set is a view, it is read as the jars are written in the response.
+   *
+   * @param after is the string path of the jar preceding the returned ones, null
+   *              to return all the jars.
+   * @return the sorted analyzed jars following the given one.
+   */
+  NavigableSet<String> analyzedJarsAfter(String after) {
+    return after == null ? analyzedJars : analyzedJars.tailSet(after, false);
   }
 
   /**
    * Process the request to get string representation of all analyzed artifacts (analyzed jars).
+   * The jars are written as they are read, by pages if a limit is given: the
+   * next page starts after the last jar of the previous one, given by the
+   * "after" query parameter.
    *
    * @param req serveur request
    * @param res serveur response
    */
   private void getAnalyzedJars(ServerRequest req, ServerResponse res) {
-    res.send(analyzedJars());
+    var format = ResponseFormat.of(req);
+    var limit = intParameter(req, "limit", Integer.MAX_VALUE);
+    if (limit <= 0) {
+      format.sendError(res, "Veuillez fournir un nombre maximal d'artéfacts strictement positif");
+      return;
+    }
+    var iterator = analyzedJarsAfter(req.query().first("after").orElse(null)).iterator();
+    try {
+      switch (format) {
+        case TEXT -> {
+          try (var writer = format.writer(res)) {
+            for (var count = 0; count < limit && iterator.hasNext(); count++) {
+              writer.write((count == 0 ? "" : "\n") + iterator.next());
+            }
+          }
+        }
+        case JSON -> {
+          try (var writer = format.writer(res)) {
+            writer.write("{\"jars\":[");
+            String last = null;
+            for (var count = 0; count < limit && iterator.hasNext(); count++) {
+              last = iterator.next();
+              writer.write((count == 0 ? "" : ",") + ResponseFormat.quote(last));
+            }
+            writer.write("],\"next\":" + (iterator.hasNext() ? ResponseFormat.quote(last) : "null") + "}");
+          }
+        }
+        case BINARY -> { // Jars each preceded by 1, 0, then whether there is a next page
+          try (var output = format.dataOutput(res)) {
+            for (var count = 0; count < limit && iterator.hasNext(); count++) {
+              output.writeByte(1);
+              output.writeUTF(iterator.next());
+            }
+            output.writeByte(0);
+            output.writeBoolean(iterator.hasNext());
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Stops the workers analyzing the classes, saves the waiting results and
+   * closes the backup files. The object can't analyze any jar afterwards.
+   *
+   * @throws IOException if a backup file can't be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    executor.shutdown();
+    synchronized (lock) {
+      closed = true;
+      while (compacting) { // The store is closed once the compaction is over
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+    try {
+      writer.close(); // The hashes backup file is synchronized by the writer, it is closed afterwards
+    } finally {
+      synchronized (lock) {
+        store.close();
+      }
+    }
   }
 }
@@ -0,0 +1,237 @@
+package fr.uge.clonewar;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Analyzes all the jars of a directory tree, like a local Maven repository.
+ * Several jars are analyzed at the same time, the jars already analyzed are
+ * skipped and the analyzed jars are saved in batches rather than one by one.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+final class BulkIngest {
+
+  /**
+   * Amount of jars waiting to be analyzed for each worker.
+   */
+  private static final int QUEUED_JARS_PER_WORKER = 2;
+
+  /**
+   * Result of the bulk ingestion of a directory.
+   *
+   * @param analyzedJars  is the amount of analyzed jars.
+   * @param skippedJars   is the amount of jars skipped because they had already
+   *                      been analyzed.
+   * @param failedJars    is the amount of jars whose analysis has failed.
+   * @param classes       is the amount of classes of the analyzed jars.
+   * @param elapsedNanos  is the duration of the ingestion, in nanoseconds.
+   */
+  record Report(int analyzedJars, int skippedJars, int failedJars, long classes, long elapsedNanos) {
+
+    /**
+     * Returns the amount of jars analyzed per second.
+     *
+     * @return the throughput in jars per second.
+     */
+    double jarsPerSecond() {
+      return perSecond(analyzedJars);
+    }
+
+    /**
+     * Returns the amount of classes analyzed per second.
+     *
+     * @return the throughput in classes per second.
+     */
+    double classesPerSecond() {
+      return perSecond(classes);
+    }
+
+    private double perSecond(long amount) {
+      return elapsedNanos == 0 ? 0 : amount * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Makes a string representation of the report.
+     *
+     * @return the string representation of the report.
+     */
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT,
+          "%d artéfacts analysés, %d déjà analysés, %d en échec, %d classes en %.1f s (%.1f artéfacts/s, %.1f classes/s)",
+          analyzedJars, skippedJars, failedJars, classes, elapsedNanos / 1e9, jarsPerSecond(), classesPerSecond());
+    }
+  }
+
+  /**
+   * Object analyzing the jars.
+   */
+  private final Asm asm;
+
+  /**
+   * Maximum amount of jars analyzed at the same time.
+   */
+  private final int parallelism;
+
+  /**
+   * Amount of analyzed jars saved together.
+   */
+  private final int batchSize;
+
+  /**
+   * Creates a bulk ingestion.
+   *
+   * @param asm         is the object analyzing the jars.
+   * @param parallelism is the maximum amount of jars analyzed at the same time.
+   * @param batchSize   is the amount of analyzed jars saved together.
+   */
+  BulkIngest(Asm asm, int parallelism, int batchSize) {
+    Objects.requireNonNull(asm, "asm is null");
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("parallelism must be positive");
+    }
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive");
+    }
+    this.asm = asm;
+    this.parallelism = parallelism;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Analyzes all the jars of a directory tree which haven't been analyzed yet.
+   * The directories which can't be read are skipped.
+   *
+   * @param directory      is the root of the directory tree.
+   * @param classProcessed is called each time a class has been added to the
+   *                       database.
+   * @return the report of the ingestion.
+   * @throws IOException if the directory can't be read or if the analyzed jars
+   *                     can't be saved.
+   */
+  Report ingest(Path directory, Runnable classProcessed) throws IOException {
+    Objects.requireNonNull(directory, "directory is null");
+    Objects.requireNonNull(classProcessed, "classProcessed is null");
+    var start = System.nanoTime();
+    var analyzedJars = new AtomicInteger();
+    var skippedJars = new AtomicInteger();
+    var failedJars = new AtomicInteger();
+    var classes = new LongAdder();
+    var executor = Executors.newFixedThreadPool(parallelism);
+    var permits = new Semaphore(parallelism * QUEUED_JARS_PER_WORKER); // Bounds the amount of waiting jars
+    try {
+      Files.walkFileTree(directory.toAbsolutePath().normalize(), new SimpleFileVisitor<>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+          if (!attributes.isRegularFile() || !file.getFileName().toString().endsWith(".jar")) {
+            return FileVisitResult.CONTINUE;
+          }
+          if (asm.isAnalyzed(file.toString())) {
+            skippedJars.incrementAndGet();
+            return FileVisitResult.CONTINUE;
+          }
+          try {
+            permits.acquire();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("ingestion of " + directory + " interrupted");
+          }
+          executor.execute(() -> {
+            try {
+              if (!asm.analysis(file, () -> {
+                classes.increment();
+                classProcessed.run();
+              }, false)) {
+                failedJars.incrementAndGet();
+              } else if (analyzedJars.incrementAndGet() % batchSize == 0) {
+                commit();
+              }
+            } catch (RuntimeException e) { // A malformed class doesn't stop the ingestion
+              failedJars.incrementAndGet();
+            } finally {
+              permits.release();
+            }
+          });
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+          return FileVisitResult.CONTINUE; // An unreadable directory doesn't stop the ingestion
+        }
+      });
+    } finally {
+      executor.shutdown();
+    }
+    awaitTermination(executor, directory);
+    asm.commit(); // The last batch
+    return new Report(analyzedJars.get(), skippedJars.get(), failedJars.get(), classes.sum(), System.nanoTime() - start);
+  }
+
+  /**
+   * Saves the jars analyzed since the last batch.
+   */
+  private void commit() {
+    try {
+      asm.commit();
+    } catch (IOException e) { // The jars are saved by the next batch
+      System.err.println("Une erreur est survenue lors de la sauvegarde d'un lot d'artéfacts analysés : " + e.getMessage());
+    }
+  }
+
+  /**
+   * Waits for all the analyses of the jars to be over.
+   *
+   * @throws InterruptedIOException if the waiting thread is interrupted.
+   */
+  private static void awaitTermination(ExecutorService executor, Path directory) throws InterruptedIOException {
+    try {
+      while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        // The analyses are still running
+      }
+    } catch (InterruptedException e) {
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("ingestion of " + directory + " interrupted");
+    }
+  }
+
+  /**
+   * Analyzes all the jars of a directory tree from the command line, the server
+   * must not run at the same time since it uses the same backup files. The
+   * parallelism, the fingerprint settings and the durability policy are
+   * configured by the same system properties as the server, the "clonewar.ingestParallelism" and
+   * "clonewar.ingestBatchSize" system properties configure the ingestion.
+   *
+   * @param args command line arguments, the path of the directory to analyze.
+   * @throws IOException if the directory can't be read or if the backup files
+   *                     can't be written.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("Usage : java fr.uge.clonewar.BulkIngest <dossier>");
+      System.exit(1);
+      return;
+    }
+    NimaMain.migrateHashesBackupFile();
+    try (var asm = new Asm(NimaMain.HASHES_BACKUP_FILE, NimaMain.JARS_BACKUP_FILE, NimaMain.asmOptions())) {
+      var bulkIngest = new BulkIngest(asm, NimaMain.ingestParallelism(), NimaMain.ingestBatchSize());
+      System.out.println(bulkIngest.ingest(Path.of(args[0]), () -> {}));
+    }
+  }
+}
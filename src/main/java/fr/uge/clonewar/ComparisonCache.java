@@ -0,0 +1,194 @@
+package fr.uge.clonewar;
+
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the results of the comparisons of two artifacts, so that the same
+ * pair isn't compared again and again. A result is associated with the ordered
+ * pair of artifacts and with the version of the analysis of each of them: a new
+ * analysis of an artifact gives it a new version, the results of its previous
+ * version are then never returned and are evicted with the least recently used
+ * ones. A result also expires after the time to live of the {@link Policy}.
+ *
+ * <p>The cache is thread-safe, the comparisons are made without its lock.
+ *
+ * @param <R> is the type of the results of the comparisons.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+final class ComparisonCache<R> {
+
+  /**
+   * Size and time to live of the cache.
+   *
+   * @param capacity  is the maximum amount of results kept, 0 to disable the
+   *                  cache.
+   * @param ttlMillis is the time a result is kept, in milliseconds.
+   */
+  record Policy(int capacity, long ttlMillis) {
+
+    /**
+     * Policy used when nothing else is specified, 10000 results are kept for 10
+     * minutes.
+     */
+    static final Policy DEFAULT = new Policy(10_000, 600_000);
+
+    /**
+     * Creates a policy.
+     */
+    Policy {
+      if (capacity < 0) {
+        throw new IllegalArgumentException("capacity is negative");
+      }
+      if (ttlMillis <= 0) {
+        throw new IllegalArgumentException("ttlMillis must be positive");
+      }
+    }
+  }
+
+  /**
+   * Counters of the cache since its creation.
+   *
+   * @param hits      is the amount of results found in the cache.
+   * @param misses    is the amount of comparisons made because their result
+   *                  wasn't in the cache.
+   * @param evictions is the amount of results removed because the cache was
+   *                  full or because they had expired.
+   * @param size      is the amount of results in the cache.
+   */
+  record Statistics(long hits, long misses, long evictions, int size) {}
+
+  /**
+   * Key of a result, the ordered pair of artifacts and their versions.
+   *
+   * @param reference        is the string path of the reference artifact.
+   * @param cloneArtifact    is the string path of the clone artifact.
+   * @param referenceVersion is the version of the analysis of the reference.
+   * @param cloneVersion     is the version of the analysis of the clone.
+   */
+  private record Key(String reference, String cloneArtifact, long referenceVersion, long cloneVersion) {}
+
+  /**
+   * Cached result.
+   *
+   * @param result     is the result of the comparison.
+   * @param expiration is the time the result expires, in nanoseconds.
+   * @param <R>        is the type of the result.
+   */
+  private record Result<R>(R result, long expiration) {}
+
+  /**
+   * Size and time to live of the cache.
+   */
+  private final Policy policy;
+
+  /**
+   * Version of the analysis of each artifact, the artifacts which aren't listed
+   * have the version 0.
+   */
+  private final ConcurrentHashMap<String, Long> versions = new ConcurrentHashMap<>();
+
+  /**
+   * Results, from the least recently used one to the most recently used one.
+   * Protected by its own lock.
+   */
+  private final LinkedHashMap<Key, Result<R>> results = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * Amount of results found in the cache.
+   */
+  private final LongAdder hits = new LongAdder();
+
+  /**
+   * Amount of results which weren't in the cache.
+   */
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Amount of results evicted.
+   */
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param policy is the size and the time to live of the cache.
+   */
+  ComparisonCache(Policy policy) {
+    this.policy = Objects.requireNonNull(policy, "policy is null");
+  }
+
+  /**
+   * Gives a new version to the analysis of an artifact, the cached results of
+   * its comparisons aren't returned anymore. It must be called once the new
+   * analysis is visible to the comparisons.
+   *
+   * @param artifact is the string path of the artifact.
+   */
+  void newVersion(String artifact) {
+    Objects.requireNonNull(artifact, "artifact is null");
+    versions.merge(artifact, 1L, Long::sum);
+  }
+
+  /**
+   * Returns the cached result of the comparison of two artifacts, or compares
+   * them and caches the result if it isn't in the cache. The versions of the
+   * artifacts are read before the comparison, so that a result is never cached
+   * with a version more recent than the analyses it is made of.
+   *
+   * @param reference  is the string path of the reference artifact.
+   * @param clone      is the string path of the clone artifact.
+   * @param comparison compares the two artifacts.
+   * @return the result of the comparison.
+   */
+  R get(String reference, String clone, Supplier<? extends R> comparison) {
+    Objects.requireNonNull(reference, "reference is null");
+    Objects.requireNonNull(clone, "clone is null");
+    Objects.requireNonNull(comparison, "comparison is null");
+    if (policy.capacity() == 0) {
+      return comparison.get();
+    }
+    var key = new Key(reference, clone, versions.getOrDefault(reference, 0L), versions.getOrDefault(clone, 0L));
+    synchronized (results) {
+      var cached = results.get(key);
+      if (cached != null) {
+        if (System.nanoTime() - cached.expiration < 0) {
+          hits.increment();
+          return cached.result;
+        }
+        results.remove(key);
+        evictions.increment();
+      }
+    }
+    misses.increment();
+    var result = comparison.get(); // Compared without the lock, the same pair may be compared twice
+    var expiration = System.nanoTime() + policy.ttlMillis() * 1_000_000;
+    synchronized (results) {
+      results.put(key, new Result<>(result, expiration));
+      for (var iterator = results.values().iterator(); results.size() > policy.capacity();) {
+        iterator.next();
+        iterator.remove();
+        evictions.increment();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the counters of the cache.
+   *
+   * @return the statistics of the cache.
+   */
+  Statistics statistics() {
+    int size;
+    synchronized (results) {
+      size = results.size();
+    }
+    return new Statistics(hits.sum(), misses.sum(), evictions.sum(), size);
+  }
+}
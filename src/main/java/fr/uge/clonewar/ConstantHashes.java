@@ -0,0 +1,110 @@
+package fr.uge.clonewar;
+
+import java.util.HashMap;
+import java.util.Objects;
+
+/**
+ * Calculates the hash code of the constants loaded by the LDC instructions of a
+ * class without building their string representation. The hash code of a
+ * constant is the {@link String#hashCode()} of its string representation, a
+ * string constant being represented between double quotes, so that the hashes
+ * don't depend on how they are calculated.
+ *
+ * <p>The hash codes of the strings and of the integer constants are calculated
+ * arithmetically. The other constants (floating-point numbers, types, method
+ * handles...) are rare, their hash code is calculated once per class and kept
+ * in a cache. An instance is used by the analysis of a single class.
+ *
+ * <p>The owners and the types of the other instructions don't need any cache:
+ * ASM returns the same string for each use of an entry of the constant pool of
+ * a class, and a string keeps its hash code once calculated.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+final class ConstantHashes {
+
+  /**
+   * Multiplier of the polynomial hash of {@link String#hashCode()}.
+   */
+  private static final int STRING_HASH_MULTIPLIER = 31;
+
+  /**
+   * Hash code of the constants which aren't calculated arithmetically, created
+   * on the first use.
+   */
+  private HashMap<Object, Integer> cache;
+
+  /**
+   * Returns the hash code of the string representation of a constant.
+   *
+   * @param value is the constant.
+   * @return the hash code of the constant.
+   */
+  int hash(Object value) {
+    Objects.requireNonNull(value, "value is null");
+    if (value instanceof String string) {
+      return quotedHash(string);
+    }
+    if (value instanceof Integer integer) {
+      return decimalHash(integer);
+    }
+    if (value instanceof Long longValue) {
+      return decimalHash(longValue);
+    }
+    if (cache == null) {
+      cache = new HashMap<>();
+    }
+    return cache.computeIfAbsent(value, constant -> constant.toString().hashCode());
+  }
+
+  /**
+   * Calculates the hash code of a string between double quotes, like
+   * {@code ("\"" + string + "\"").hashCode()}.
+   *
+   * @param string is the string.
+   * @return the hash code of the quoted string.
+   */
+  static int quotedHash(String string) {
+    // hash(a + b) = hash(a) * 31^length(b) + hash(b), the hash code of the string is kept by the string itself
+    var hash = '"' * power(string.length()) + string.hashCode();
+    return hash * STRING_HASH_MULTIPLIER + '"';
+  }
+
+  /**
+   * Calculates the hash code of the decimal representation of a number, like
+   * {@code Long.toString(value).hashCode()}.
+   *
+   * @param value is the number.
+   * @return the hash code of the decimal representation.
+   */
+  static int decimalHash(long value) {
+    int hash = value < 0 ? '-' : 0;
+    var negative = value < 0 ? value : -value; // Negative values can represent Long.MIN_VALUE
+    var divisor = 1L;
+    while (negative / divisor <= -10) {
+      divisor *= 10;
+    }
+    for (; divisor > 0; divisor /= 10) {
+      var digit = (int) -(negative / divisor % 10);
+      hash = hash * STRING_HASH_MULTIPLIER + '0' + digit;
+    }
+    return hash;
+  }
+
+  /**
+   * Calculates 31 to the power of the given exponent, with the overflow of
+   * {@link String#hashCode()}.
+   */
+  private static int power(int exponent) {
+    var result = 1;
+    var base = STRING_HASH_MULTIPLIER;
+    for (; exponent > 0; exponent >>= 1) {
+      if ((exponent & 1) != 0) {
+        result *= base;
+      }
+      base *= base;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,298 @@
+package fr.uge.clonewar;
+
+import java.util.Objects;
+
+/**
+ * Calculates the fingerprints of the methods of a class using the rolling hash
+ * system. It is a representation of the Rabin's fingerprint. The window of byte
+ * code lines is a ring buffer of primitive values and the powers of the base
+ * are calculated once, so that hashing an instruction doesn't allocate
+ * anything. Depending on its settings, the engine keeps all the block hashes or
+ * only the ones selected by winnowing, and uses the rolling hash formula of the
+ * given {@link FingerprintSettings.Kernel}.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+final class FingerprintEngine {
+
+  /**
+   * Prime number for the polynomial formula of the {@link FingerprintSettings.Kernel#LEGACY} kernel.
+   */
+  static final int PRIME_NUMBER = 2;
+
+  /**
+   * Size of the blocks analyzed in the current file of the jar.
+   */
+  static final int WINDOW_SIZE = 4; // We choose to analyze the files by taking 4 lines of byte code for
+  // a block of instructions
+
+  /**
+   * Rolling hash formula of the blocks.
+   */
+  private final FingerprintSettings.Kernel kernel;
+
+  /**
+   * Base of the polynomial formula.
+   */
+  private final long base;
+
+  /**
+   * Powers of the base, powers[i] is the base to the power i.
+   */
+  private final long[] powers;
+
+  /**
+   * Window representing the block of operation we are calculating the hash value.
+   */
+  private final long[] window;
+
+  /**
+   * List where the hashes of the analyzed methods are stocked.
+   */
+  private final LongList hashes;
+
+  /**
+   * Last block hashes of the method among which the winnowing selects the
+   * minimal one, null if all the block hashes are kept.
+   */
+  private final long[] candidates;
+
+  /**
+   * Amount of block hashes of the current method given to the winnowing.
+   */
+  private int candidateCount;
+
+  /**
+   * Index, among the block hashes of the current method, of the last one selected
+   * by the winnowing.
+   */
+  private int lastSelected;
+
+  /**
+   * Index of the oldest byte code line hash of the window.
+   */
+  private int head;
+
+  /**
+   * Amount of byte code line hashes in the window.
+   */
+  private int size;
+
+  /**
+   * Value of the block hash value.
+   */
+  private long windowHash;
+
+  /**
+   * Count the lines already visited in the block window.
+   */
+  private int count;
+
+  /**
+   * Amount of methods analyzed by this engine.
+   */
+  private int methodCount;
+
+  /**
+   * Amount of byte code line hashes given to this engine.
+   */
+  private long instructionCount;
+
+  /**
+   * Creates an engine using blocks of {@link #WINDOW_SIZE} byte code lines and
+   * keeping all the block hashes.
+   */
+  FingerprintEngine() {
+    this(FingerprintSettings.DEFAULT);
+  }
+
+  /**
+   * Creates an engine using blocks of {@link #WINDOW_SIZE} byte code lines.
+   *
+   * @param settings tells which block hashes are kept.
+   */
+  FingerprintEngine(FingerprintSettings settings) {
+    this(WINDOW_SIZE, settings, new LongList());
+  }
+
+  /**
+   * Creates an engine using blocks of the given size.
+   *
+   * @param windowSize is the amount of byte code lines of a block.
+   * @param settings   tells which block hashes are kept.
+   * @param hashes     is the list where the hashes are stocked.
+   */
+  FingerprintEngine(int windowSize, FingerprintSettings settings, LongList hashes) {
+    if (windowSize <= 0) {
+      throw new IllegalArgumentException("windowSize must be positive");
+    }
+    Objects.requireNonNull(settings, "settings is null");
+    this.hashes = Objects.requireNonNull(hashes, "hashes is null");
+    candidates = settings.selection() == FingerprintSettings.Selection.WINNOWING
+        ? new long[settings.winnowingWindow()]
+        : null;
+    kernel = settings.kernel();
+    base = kernel.base();
+    window = new long[windowSize];
+    powers = new long[windowSize + 1];
+    powers[0] = 1;
+    for (var i = 1; i <= windowSize; i++) {
+      powers[i] = powers[i - 1] * base;
+    }
+  }
+
+  /**
+   * Returns the list where the hashes are stocked.
+   *
+   * @return the hashes of the methods analyzed by this engine.
+   */
+  LongList hashes() {
+    return hashes;
+  }
+
+  /**
+   * Returns the amount of methods analyzed by this engine.
+   *
+   * @return the amount of calls to {@link #startMethod()}.
+   */
+  int methodCount() {
+    return methodCount;
+  }
+
+  /**
+   * Returns the amount of byte code line hashes given to this engine.
+   *
+   * @return the amount of calls to {@link #addInstruction(long)}.
+   */
+  long instructionCount() {
+    return instructionCount;
+  }
+
+  /**
+   * Clears the window before the analysis of a new method.
+   */
+  void startMethod() {
+    methodCount++;
+    head = 0;
+    size = 0;
+    windowHash = 0; // clear of the current hash value
+    count = 0;
+    candidateCount = 0;
+    lastSelected = -1;
+  }
+
+  /**
+   * Adds the hash of a byte code line to the window and stocks the hash of the
+   * block if it doesn't worth 0.
+   *
+   * @param instructionHash is the new instruction hash code to add.
+   */
+  void addInstruction(long instructionHash) {
+    instructionCount++;
+    newHash(kernel.mix(instructionHash));
+    addHash();
+  }
+
+  /**
+   * Called when the end of the current method is reached. Stocks the hash of the
+   * method which has less byte code instructions than the block size.
+   */
+  void endMethod() {
+    if (count < window.length) { // Case where the block size is lower than the amount of byte code instructions
+      // in the method
+      windowHash = hash();
+      addHash();
+    }
+    if (candidates != null && candidateCount > 0 && candidateCount < candidates.length) {
+      selectMinimum(0, candidateCount); // The method is shorter than a winnowing window, its minimum is kept
+    }
+  }
+
+  /**
+   * Update the hash value of the current window analyzed.
+   *
+   * @param addingHash is the new instruction hash code to add.
+   */
+  private void newHash(long addingHash) {
+    var windowSize = window.length;
+    if (count == windowSize) { // We have the window fulfilled for the first time
+      windowHash = hash(); // we calculate the hash of the whole block
+      count++;
+      return;
+    }
+    if (size == windowSize) { // The window was already fulfilled
+      var oldFirstHashCode = window[head];
+      window[head] = addingHash; // The oldest slot of the ring becomes the newest one
+      head = head + 1 == windowSize ? 0 : head + 1;
+      windowHash = (windowHash - oldFirstHashCode * powers[windowSize]) * base
+          + addingHash * base; // We remove the value of the old first hash value and we add the new one
+      return;
+    }
+    var tail = head + size;
+    window[tail < windowSize ? tail : tail - windowSize] = addingHash;
+    size++;
+    count++;
+  }
+
+  /**
+   * Hash Function. It returns a long value which represents the hash value of
+   * the block of byte code lines currently in the window.
+   *
+   * @return the long value representing the hash of the whole block.
+   */
+  private long hash() {
+    long hashCode = 0;
+    var windowSize = window.length;
+    for (var i = 0; i < size; i++) {
+      var index = head + i;
+      var byteCodeLineHash = window[index < windowSize ? index : index - windowSize];
+      hashCode = hashCode + byteCodeLineHash * powers[size - i]; // polynomial formula
+    }
+    return hashCode;
+  }
+
+  /**
+   * Add the hash of the current block if it doesn't worth 0.
+   */
+  private void addHash() {
+    if (windowHash == 0) {
+      return;
+    }
+    if (candidates == null) {
+      hashes.add(windowHash);
+      return;
+    }
+    var winnowingWindow = candidates.length;
+    candidates[candidateCount % winnowingWindow] = windowHash;
+    candidateCount++;
+    if (candidateCount >= winnowingWindow) {
+      selectMinimum(candidateCount - winnowingWindow, candidateCount);
+    }
+  }
+
+  /**
+   * Keeps the minimal block hash among the given block hashes of the method, if
+   * it isn't already kept. The rightmost minimal hash is selected so that a
+   * minimum shared by consecutive windows is kept only once.
+   *
+   * @param from is the index of the first block hash of the window, inclusive.
+   * @param to   is the index of the last block hash of the window, exclusive.
+   */
+  private void selectMinimum(int from, int to) {
+    var winnowingWindow = candidates.length;
+    var minimumIndex = from;
+    var minimum = candidates[from % winnowingWindow];
+    for (var i = from + 1; i < to; i++) {
+      var candidate = candidates[i % winnowingWindow];
+      if (candidate <= minimum) {
+        minimum = candidate;
+        minimumIndex = i;
+      }
+    }
+    if (minimumIndex != lastSelected) {
+      hashes.add(minimum);
+      lastSelected = minimumIndex;
+    }
+  }
+}
@@ -0,0 +1,1321 @@
+package fr.uge.clonewar;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongPredicate;
+
+/**
+ * Inverted index of the hashes of the analyzed artifacts. Each hash is
+ * associated with its postings, the list of the classes it has been found in.
+ * A posting is made of the identifier of the artifact and of the identifier of
+ * the class in this artifact, one posting is stocked for each occurrence of the
+ * hash. The index also knows the classes of each artifact and keeps its compact
+ * fingerprint, so that an artifact is compared without scanning all the analyzed
+ * classes. The artifacts and the classes are identified by the identifiers of
+ * their string path and name in {@link SymbolTable symbol tables}, the strings
+ * are only used to render the results. The hashes of the classes are kept off
+ * the heap in a {@link HashArena}, the heap only holds their metadata, and the
+ * postings are packed in a {@link PostingTable} without any object per hash. The methods of the classes are known as well, so that the cloned
+ * methods of two artifacts are found without analyzing them again.
+ *
+ * <p>A lazy index only knows the classes of the stocked artifacts at first:
+ * their hashes are read by a {@link HashLoader} the first time the artifact is
+ * compared and only the most recently compared artifacts keep them in memory,
+ * as many as the size of the cache and the memory budget allow.
+ * A lazy index doesn't have any postings, an artifact is compared with all the
+ * other ones by merging their fingerprints.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+final class FingerprintIndex {
+
+  /**
+   * Estimated amount of heap bytes of the header of an object.
+   */
+  private static final int OBJECT_BYTES = 16;
+
+  /**
+   * Estimated amount of heap bytes of the header of an array.
+   */
+  private static final int ARRAY_BYTES = 16;
+
+  /**
+   * Estimated amount of heap bytes of a reference.
+   */
+  private static final int REFERENCE_BYTES = 8;
+
+  /**
+   * Classes of an analyzed artifact.
+   */
+  private static final class Artifact {
+
+    /**
+     * Identifier of the artifact.
+     */
+    private final int id;
+
+    /**
+     * Identifier of each class of the artifact, by identifier of its .class file
+     * name.
+     */
+    private final HashMap<Integer, Integer> classIds = new HashMap<>();
+
+    /**
+     * Hashes of the classes of the artifact in the arena, null while the artifact
+     * isn't loaded or if it doesn't have any class.
+     */
+    private HashArena.Run hashes;
+
+    /**
+     * Amount of classes of the artifact.
+     */
+    private int classCount;
+
+    /**
+     * Position of the hashes of each class in the run, by class identifier.
+     */
+    private int[] classPositions = new int[0];
+
+    /**
+     * Amount of hashes of each class, by class identifier.
+     */
+    private int[] classLengths = new int[0];
+
+    /**
+     * Identifier of the name of each class of the artifact, by class identifier.
+     */
+    private int[] classNameIds = new int[0];
+
+    /**
+     * Methods of each class of the artifact, by class identifier. The methods of
+     * a class are null if they aren't known.
+     */
+    private final ArrayList<List<MethodRange>> classMethods = new ArrayList<>();
+
+    /**
+     * Amount of classes of the artifact whose methods aren't known.
+     */
+    private int unknownMethodsCount;
+
+    /**
+     * Total amount of hashes of the artifact.
+     */
+    private int hashCount;
+
+    /**
+     * Compact fingerprint of the artifact, null if it has to be built again.
+     */
+    private ArtifactFingerprint fingerprint;
+
+    /**
+     * Settings used to calculate the hashes of the artifact.
+     */
+    private FingerprintSettings settings = FingerprintSettings.DEFAULT;
+
+    /**
+     * Index of the methods of the artifact, null if it has to be built again.
+     */
+    private MethodIndex methodIndex;
+
+    /**
+     * MinHash sketch of the artifact, null if it has to be calculated again.
+     */
+    private long[] sketch;
+
+    /**
+     * Tells if the hashes of the classes are in memory, always true if the index
+     * isn't lazy.
+     */
+    private boolean loaded = true;
+
+    /**
+     * Tells if the hashes are kept in memory whatever the size of the cache,
+     * because the artifact is being analyzed and isn't stocked yet.
+     */
+    private boolean retained;
+
+    /**
+     * Creates an artifact without any class.
+     */
+    private Artifact(int id) {
+      this.id = id;
+    }
+
+    /**
+     * Adds a class to the artifact, without its hashes.
+     *
+     * @param classNameId is the identifier of the name of the class.
+     * @param hashCount   is the amount of hashes of the class.
+     * @param methods     is the methods of the class, null if they aren't known.
+     * @return the identifier of the class in the artifact.
+     */
+    private int addClass(int classNameId, int hashCount, List<MethodRange> methods) {
+      var classId = classCount++;
+      if (classId == classNameIds.length) {
+        var capacity = Math.max(8, classId * 2);
+        classNameIds = Arrays.copyOf(classNameIds, capacity);
+        classPositions = Arrays.copyOf(classPositions, capacity);
+        classLengths = Arrays.copyOf(classLengths, capacity);
+      }
+      classNameIds[classId] = classNameId;
+      classLengths[classId] = hashCount;
+      classIds.put(classNameId, classId);
+      classMethods.add(methods);
+      return classId;
+    }
+
+    /**
+     * Returns a copy of the hashes of a class, the artifact must be loaded.
+     *
+     * @param classId is the identifier of the class in the artifact.
+     * @return a new array of the hashes of the class.
+     */
+    private long[] classHashes(int classId) {
+      return hashes.toArray(classPositions[classId], classLengths[classId]);
+    }
+
+    /**
+     * Gives the hashes of the artifact back to the arena.
+     */
+    private void freeHashes() {
+      if (hashes != null) {
+        hashes.free();
+        hashes = null;
+      }
+    }
+
+    /**
+     * Returns the estimated amount of heap bytes of the fingerprint and of the
+     * index of the methods of the artifact, the ones which have been built.
+     *
+     * @return the amount of bytes.
+     */
+    private long heapBytes() {
+      return (fingerprint == null ? 0 : fingerprintBytes(fingerprint))
+          + (methodIndex == null ? 0 : methodIndex.heapBytes());
+    }
+
+    /**
+     * Forgets the fingerprint, the index of the methods and the sketch of the
+     * artifact once its classes have changed.
+     */
+    private void invalidate() {
+      fingerprint = null;
+      methodIndex = null;
+      sketch = null;
+    }
+  }
+
+  /**
+   * Reads the hashes of the stocked artifacts for a lazy index.
+   */
+  @FunctionalInterface
+  interface HashLoader {
+
+    /**
+     * Reads the hashes of all the classes of an artifact.
+     *
+     * @param artifact is the string path of the artifact.
+     * @return the hashes of each class of the artifact, by identifier of the
+     *         .class file name.
+     * @throws IOException if the hashes can't be read.
+     */
+    Map<Integer, long[]> load(String artifact) throws IOException;
+  }
+
+  /**
+   * Inverted index of the methods of an artifact, built only when the methods of
+   * the artifact are compared. Each method has a dense identifier, each distinct
+   * hash of a method is associated with the identifiers of the methods it has been
+   * found in.
+   *
+   * @param methodClasses is the class identifier of each method.
+   * @param methods       is the range of each method.
+   * @param methodIds     is the identifiers of the methods containing each hash.
+   * @param heapBytes     is the estimated amount of heap bytes of the index.
+   */
+  private record MethodIndex(int[] methodClasses, MethodRange[] methods, PostingTable methodIds, long heapBytes) {}
+
+  /**
+   * Pair of methods sharing hashes, a method of the clone artifact and a method of
+   * the reference artifact.
+   *
+   * @param referenceClass  is the name of the class of the reference method.
+   * @param referenceMethod is the method of the reference artifact.
+   * @param cloneClass      is the name of the class of the clone method.
+   * @param cloneMethod     is the method of the clone artifact.
+   * @param sharedHashes    is the amount of hashes of the clone method found in
+   *                        the reference method.
+   */
+  record MethodMatch(String referenceClass, MethodRange referenceMethod, String cloneClass, MethodRange cloneMethod,
+                     int sharedHashes) {
+
+    /**
+     * Returns the percentage of the hashes of the clone method found in the
+     * reference method.
+     *
+     * @return the percentage.
+     */
+    double clonePercentage() {
+      return percentage(sharedHashes, cloneMethod.hashCount());
+    }
+  }
+
+  /**
+   * Result of the comparison of an artifact, being the clone, with another one,
+   * being the reference.
+   *
+   * @param reference                     is the string path of the reference
+   *                                      artifact.
+   * @param clonesFromReferencePercentage is the percentage of the hashes of the
+   *                                      reference found in the clone.
+   * @param totalClonesPercentage         is the percentage of the hashes of the
+   *                                      clone found in the reference.
+   */
+  record Match(String reference, double clonesFromReferencePercentage, double totalClonesPercentage) {}
+
+  /**
+   * Pair of similar artifacts found by the comparison of all the artifacts.
+   *
+   * @param artifact1           is the string path of the first artifact.
+   * @param artifact2           is the string path of the second artifact.
+   * @param similarity          is the Jaccard similarity of the distinct hashes of
+   *                            the artifacts, between 0 and 1.
+   * @param percentage1In2      is the percentage of the hashes of the first
+   *                            artifact found in the second one.
+   * @param percentage2In1      is the percentage of the hashes of the second
+   *                            artifact found in the first one.
+   */
+  record SimilarPair(String artifact1, String artifact2, double similarity, double percentage1In2,
+                     double percentage2In1) {}
+
+  /**
+   * Result of the search of the similar artifacts.
+   *
+   * @param artifacts      is the amount of compared artifacts.
+   * @param candidatePairs is the amount of pairs sharing a band of their sketches.
+   * @param exactPairs     is the amount of candidate pairs compared exactly.
+   * @param pairs          is the similar pairs, by decreasing similarity.
+   */
+  record SimilarityMatrix(int artifacts, long candidatePairs, long exactPairs, List<SimilarPair> pairs) {}
+
+  /**
+   * Distribution of the hashes calculated by a rolling hash kernel.
+   *
+   * @param kernel         is the rolling hash kernel.
+   * @param artifacts      is the amount of artifacts whose hashes have been
+   *                       calculated by the kernel.
+   * @param occurrences    is the amount of occurrences of the hashes, being the
+   *                       amount of postings.
+   * @param distinctHashes is the amount of distinct hashes.
+   * @param maxOccurrences is the amount of occurrences of the most frequent hash.
+   * @param occupancy      is the amount of distinct hashes by amount of
+   *                       occurrences, occupancy[i] counts the hashes found between
+   *                       2^i and 2^(i+1) - 1 times.
+   */
+  record KernelStatistics(FingerprintSettings.Kernel kernel, int artifacts, long occurrences, int distinctHashes,
+                          int maxOccurrences, int[] occupancy) {
+
+    /**
+     * Returns the average amount of postings read for each hash of an artifact
+     * compared with all the other ones.
+     *
+     * @return the average amount of occurrences of a hash.
+     */
+    double averageOccurrences() {
+      return distinctHashes == 0 ? 0 : (double) occurrences / distinctHashes;
+    }
+
+    /**
+     * Returns the amount of collisions expected between the distinct hashes if
+     * they were uniformly distributed over 64 bits, the reference the observed
+     * distribution is compared to.
+     *
+     * @return the expected amount of collisions of an ideal 64-bit hash.
+     */
+    double idealCollisions() {
+      return (double) distinctHashes * (distinctHashes - 1) / 2 / 0x1p64;
+    }
+  }
+
+  /**
+   * Distribution of the hashes of the index and occupancy of the table of the
+   * postings.
+   *
+   * @param kernels        is the distribution of the hashes of each kernel in use.
+   * @param distinctHashes is the amount of distinct hashes of the index.
+   * @param slots          is the amount of slots of the table of the postings.
+   * @param maxProbeLength is the maximal amount of slots read to find a hash.
+   * @param heapBytes      is the estimated amount of heap bytes of the table of
+   *                       the postings.
+   */
+  record Statistics(List<KernelStatistics> kernels, int distinctHashes, int slots, int maxProbeLength,
+                    long heapBytes) {}
+
+  /**
+   * Identifiers of the string paths of the artifacts, the identifier of an
+   * artifact being the one of its string path.
+   */
+  private final SymbolTable artifactSymbols;
+
+  /**
+   * Identifiers of the names of the classes.
+   */
+  private final SymbolTable classSymbols;
+
+  /**
+   * Artifacts, by identifier. The artifacts of the table which haven't been
+   * indexed don't have any class.
+   */
+  private final ArrayList<Artifact> artifacts = new ArrayList<>();
+
+  /**
+   * Postings of each hash, empty if the index is lazy.
+   */
+  private final PostingTable postings = new PostingTable();
+
+  /**
+   * Reads the hashes of the artifacts which aren't loaded, null if the index
+   * isn't lazy.
+   */
+  private final HashLoader loader;
+
+  /**
+   * Maximum amount of loaded artifacts, the retained ones excepted.
+   */
+  private final int cacheCapacity;
+
+  /**
+   * Off-heap memory of the hashes of the classes.
+   */
+  private final HashArena arena;
+
+  /**
+   * Amount of bytes the hashes in the arena and the fingerprints and the indexes
+   * of the methods built from them should not exceed. The least recently used
+   * artifacts of a lazy index are unloaded when it is exceeded.
+   */
+  private final long memoryBudget;
+
+  /**
+   * Estimated amount of heap bytes of the fingerprints and of the indexes of the
+   * methods built for the artifacts.
+   */
+  private long heapBytes;
+
+  /**
+   * Loaded artifacts which can be unloaded, from the least recently used one to
+   * the most recently used one.
+   */
+  private final LinkedHashMap<Integer, Artifact> loadedArtifacts = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * Creates an index keeping all the hashes in memory, with its own symbol
+   * tables.
+   */
+  FingerprintIndex() {
+    this(new SymbolTable(), new SymbolTable());
+  }
+
+  /**
+   * Creates an index keeping all the hashes in memory.
+   *
+   * @param artifactSymbols is the table of the string paths of the artifacts.
+   * @param classSymbols    is the table of the names of the classes.
+   */
+  FingerprintIndex(SymbolTable artifactSymbols, SymbolTable classSymbols) {
+    this.artifactSymbols = Objects.requireNonNull(artifactSymbols, "artifactSymbols is null");
+    this.classSymbols = Objects.requireNonNull(classSymbols, "classSymbols is null");
+    loader = null;
+    cacheCapacity = 0;
+    arena = new HashArena();
+    memoryBudget = Long.MAX_VALUE; // Nothing can be unloaded
+  }
+
+  /**
+   * Creates a lazy index. The hashes of the stocked artifacts are read when they
+   * are compared, at most the given amount of artifacts keep them in memory and
+   * the least recently used ones are unloaded while the memory of the loaded
+   * artifacts exceeds the budget. This memory is the hashes in the arena and the
+   * fingerprints and the indexes of the methods built from them on the heap, the
+   * metadata of the classes and the sketches aren't counted. The two most
+   * recently used artifacts and the ones being analyzed are never unloaded, so
+   * the budget can be exceeded by their memory.
+   *
+   * @param artifactSymbols is the table of the string paths of the artifacts.
+   * @param classSymbols    is the table of the names of the classes.
+   * @param loader          reads the hashes of the stocked artifacts.
+   * @param cacheCapacity   is the maximum amount of artifacts whose hashes are
+   *                        kept in memory, at least 2 so that two artifacts can
+   *                        be compared.
+   * @param memoryBudget    is the amount of bytes the memory of the loaded
+   *                        artifacts should not exceed, {@link Long#MAX_VALUE} if
+   *                        only the amount of artifacts is limited.
+   */
+  FingerprintIndex(SymbolTable artifactSymbols, SymbolTable classSymbols, HashLoader loader, int cacheCapacity,
+                   long memoryBudget) {
+    this.artifactSymbols = Objects.requireNonNull(artifactSymbols, "artifactSymbols is null");
+    this.classSymbols = Objects.requireNonNull(classSymbols, "classSymbols is null");
+    this.loader = Objects.requireNonNull(loader, "loader is null");
+    if (cacheCapacity < 2) {
+      throw new IllegalArgumentException("cacheCapacity must be at least 2");
+    }
+    if (memoryBudget <= 0) {
+      throw new IllegalArgumentException("memoryBudget must be positive");
+    }
+    this.cacheCapacity = cacheCapacity;
+    arena = new HashArena();
+    this.memoryBudget = memoryBudget;
+  }
+
+  /**
+   * Returns the estimated amount of heap bytes of a fingerprint, its arrays
+   * included.
+   *
+   * @param fingerprint is the fingerprint.
+   * @return the amount of bytes.
+   */
+  private static long fingerprintBytes(ArtifactFingerprint fingerprint) {
+    var counts = fingerprint.counts();
+    return OBJECT_BYTES + ARRAY_BYTES + (long) fingerprint.hashes().length * Long.BYTES
+        + (counts == null ? 0 : ARRAY_BYTES + (long) counts.length * Integer.BYTES);
+  }
+
+  /**
+   * Makes a posting from an artifact identifier and a class identifier.
+   *
+   * @param artifactId is the identifier of the artifact.
+   * @param classId    is the identifier of the class in the artifact.
+   * @return the posting.
+   */
+  static long posting(int artifactId, int classId) {
+    return ((long) artifactId) << 32 | (classId & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Returns the artifact identifier of a posting.
+   *
+   * @param posting is the posting.
+   * @return the identifier of the artifact.
+   */
+  static int artifactId(long posting) {
+    return (int) (posting >>> 32);
+  }
+
+  /**
+   * Returns the class identifier of a posting.
+   *
+   * @param posting is the posting.
+   * @return the identifier of the class in its artifact.
+   */
+  static int classId(long posting) {
+    return (int) posting;
+  }
+
+  /**
+   * Returns the identifier of an artifact, the artifact is registered if it isn't
+   * known yet.
+   *
+   * @param artifact is the string path of the artifact.
+   * @return the identifier of the artifact.
+   */
+  private int register(String artifact) {
+    var id = artifactSymbols.intern(artifact);
+    while (artifacts.size() <= id) { // The artifacts of the table registered meanwhile don't have any class
+      artifacts.add(new Artifact(artifacts.size()));
+    }
+    return id;
+  }
+
+  /**
+   * Returns the identifier of an artifact without registering it.
+   *
+   * @param artifact is the string path of the artifact.
+   * @return the identifier of the artifact, null if it isn't known.
+   */
+  private Integer find(String artifact) {
+    var id = artifactSymbols.id(artifact);
+    return id == SymbolTable.NO_ID || id >= artifacts.size() ? null : id;
+  }
+
+
+  /**
+   * Adds the hashes of a class to the index. If the class was already indexed,
+   * its previous hashes are replaced.
+   *
+   * @param artifact  is the string path of the artifact the class belongs to.
+   * @param className is the name of the .class file.
+   * @param hashes    is the array of the hashes of the class.
+   * @param methods   is the list of the methods of the class, null if they aren't
+   *                  known.
+   */
+  void add(String artifact, String className, long[] hashes, List<MethodRange> methods) {
+    Objects.requireNonNull(artifact, "artifact is null");
+    Objects.requireNonNull(className, "className is null");
+    Objects.requireNonNull(hashes, "hashes is null");
+    var artifactId = register(artifact);
+    var entry = artifacts.get(artifactId);
+    load(entry);
+    var classNameId = classSymbols.intern(className);
+    var classId = entry.classIds.get(classNameId);
+    if (classId == null) {
+      classId = entry.addClass(classNameId, hashes.length, methods);
+    } else { // The class has been analyzed again, its old postings are removed
+      var oldPosting = posting(artifactId, classId);
+      if (loader == null) {
+        removePostings(entry.classHashes(classId), posting -> posting == oldPosting);
+      }
+      entry.hashCount -= entry.classLengths[classId];
+      entry.classLengths[classId] = hashes.length;
+      if (entry.classMethods.set(classId, methods) == null) {
+        entry.unknownMethodsCount--;
+      }
+    }
+    if (entry.hashes == null) {
+      entry.hashes = arena.newRun();
+    }
+    entry.classPositions[classId] = entry.hashes.append(hashes); // The old hashes stay in the run until it is freed
+    if (methods == null) {
+      entry.unknownMethodsCount++;
+    }
+    entry.hashCount += hashes.length;
+    invalidate(entry);
+    if (loader != null) {
+      evict(); // The artifact may have made the index exceed its budget
+      return;
+    }
+    var newPosting = posting(artifactId, classId);
+    for (var hash : hashes) {
+      postings.add(hash, newPosting);
+    }
+  }
+
+  /**
+   * Adds a stocked class to a lazy index without its hashes, they are read the
+   * first time the artifact is compared.
+   *
+   * @param artifact  is the string path of the artifact the class belongs to.
+   * @param className is the name of the .class file.
+   * @param hashCount is the amount of hashes of the class.
+   * @param methods   is the list of the methods of the class, null if they aren't
+   *                  known.
+   * @throws IllegalStateException if the index isn't lazy or if the hashes of the
+   *                               artifact are in memory.
+   */
+  void declare(String artifact, String className, int hashCount, List<MethodRange> methods) {
+    Objects.requireNonNull(artifact, "artifact is null");
+    Objects.requireNonNull(className, "className is null");
+    if (hashCount < 0) {
+      throw new IllegalArgumentException("hashCount is negative");
+    }
+    if (loader == null) {
+      throw new IllegalStateException("the index isn't lazy");
+    }
+    var entry = artifacts.get(register(artifact));
+    var classNameId = classSymbols.intern(className);
+    if (entry.loaded && entry.classCount != 0 || entry.classIds.containsKey(classNameId)) {
+      throw new IllegalStateException("the class " + className + " of " + artifact + " can't be declared");
+    }
+    loadedArtifacts.remove(entry.id);
+    entry.loaded = false;
+    entry.addClass(classNameId, hashCount, methods);
+    if (methods == null) {
+      entry.unknownMethodsCount++;
+    }
+    entry.hashCount += hashCount;
+    invalidate(entry);
+  }
+
+  /**
+   * Forgets the fingerprint, the index of the methods and the sketch of an
+   * artifact once its classes or its settings have changed.
+   *
+   * @param entry is the artifact.
+   */
+  private void invalidate(Artifact entry) {
+    heapBytes -= entry.heapBytes();
+    entry.invalidate();
+  }
+
+  /**
+   * Reads the hashes of an artifact of a lazy index in the arena if they aren't
+   * in memory and marks it as the most recently used one. The least recently used
+   * artifacts are unloaded if there are too many loaded artifacts or if the index
+   * is over budget.
+   *
+   * @param entry is the artifact.
+   * @throws UncheckedIOException if the hashes can't be read.
+   */
+  private void load(Artifact entry) {
+    if (loader == null) {
+      return;
+    }
+    if (!entry.loaded) {
+      var name = artifactSymbols.symbol(entry.id);
+      Map<Integer, long[]> hashes;
+      try {
+        hashes = loader.load(name);
+      } catch (IOException e) {
+        throw new UncheckedIOException("can't load the hashes of " + name, e);
+      }
+      for (var classId = 0; classId < entry.classCount; classId++) { // Checked before anything is copied
+        var classHashes = hashes.get(entry.classNameIds[classId]);
+        if (classHashes == null) {
+          throw new UncheckedIOException(new IOException("the hashes of "
+              + classSymbols.symbol(entry.classNameIds[classId]) + " of " + name + " are missing"));
+        }
+        if (classHashes.length != entry.classLengths[classId]) {
+          throw new UncheckedIOException(new IOException("the stocked hashes of " + name + " have changed"));
+        }
+      }
+      entry.hashes = arena.newRun();
+      for (var classId = 0; classId < entry.classCount; classId++) {
+        entry.classPositions[classId] = entry.hashes.append(hashes.get(entry.classNameIds[classId]));
+      }
+      entry.loaded = true;
+    }
+    if (!entry.retained) {
+      loadedArtifacts.put(entry.id, entry); // Most recently used
+    }
+    evict();
+  }
+
+  /**
+   * Unloads the least recently used artifacts of a lazy index while there are
+   * too many loaded artifacts or while the index is over budget. The hashes of
+   * the unloaded artifacts are stocked in the backup file, they are read again
+   * from it when needed. The two most recently used artifacts are kept.
+   */
+  private void evict() {
+    for (var iterator = loadedArtifacts.values().iterator();
+         loadedArtifacts.size() > cacheCapacity || isOverBudget() && loadedArtifacts.size() > 2;) {
+      unload(iterator.next());
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Forgets the hashes of an artifact of a lazy index, its fingerprint and the
+   * index of its methods, they are read again the next time it is compared. The
+   * sketch is kept.
+   */
+  private void unload(Artifact entry) {
+    heapBytes -= entry.heapBytes();
+    entry.freeHashes();
+    entry.loaded = false;
+    entry.fingerprint = null;
+    entry.methodIndex = null;
+  }
+
+  /**
+   * Tells if the hashes in the arena and the fingerprints and the indexes of the
+   * methods built from them exceed the memory budget.
+   *
+   * @return true if the index is over budget.
+   */
+  private boolean isOverBudget() {
+    return arena.usedBytes() + heapBytes > memoryBudget;
+  }
+
+  /**
+   * Allows the hashes of an artifact of a lazy index to be unloaded once it is
+   * stocked. The artifact is retained since the start of its analysis.
+   *
+   * @param artifact is the string path of the artifact.
+   */
+  void release(String artifact) {
+    Objects.requireNonNull(artifact, "artifact is null");
+    var artifactId = find(artifact);
+    if (artifactId == null || loader == null) {
+      return;
+    }
+    var entry = artifacts.get(artifactId);
+    entry.retained = false;
+    load(entry);
+  }
+
+  /**
+   * Sets the settings used to calculate the hashes of an artifact.
+   *
+   * @param artifact is the string path of the artifact.
+   * @param settings is the settings of the artifact.
+   */
+  void setSettings(String artifact, FingerprintSettings settings) {
+    Objects.requireNonNull(artifact, "artifact is null");
+    Objects.requireNonNull(settings, "settings is null");
+    var entry = artifacts.get(register(artifact));
+    entry.settings = settings;
+    invalidate(entry);
+  }
+
+  /**
+   * Removes all the classes of an artifact from the index, before the classes of
+   * its new analysis are added. The artifact of a lazy index is retained until
+   * it is {@link #release(String) released}, so that its new classes aren't
+   * unloaded while they are added.
+   *
+   * @param artifact is the string path of the artifact.
+   */
+  void removeArtifact(String artifact) {
+    Objects.requireNonNull(artifact, "artifact is null");
+    var artifactId = loader == null ? find(artifact) : Integer.valueOf(register(artifact));
+    if (artifactId == null) {
+      return;
+    }
+    var entry = artifacts.get(artifactId);
+    if (loader == null) {
+      removePostings(hashes(entry), posting -> artifactId(posting) == artifactId);
+    } else {
+      loadedArtifacts.remove(artifactId);
+      entry.loaded = true; // Nothing to read, the artifact doesn't have any class
+      entry.retained = true;
+    }
+    entry.freeHashes();
+    entry.classIds.clear();
+    entry.classCount = 0;
+    entry.classMethods.clear();
+    entry.unknownMethodsCount = 0;
+    entry.hashCount = 0;
+    invalidate(entry);
+  }
+
+  /**
+   * Removes the postings matching the given filter from the postings of the
+   * given hashes. Each distinct hash is only processed once.
+   *
+   * @param hashes is the array of hashes.
+   * @param filter tells which postings are removed.
+   */
+  private void removePostings(long[] hashes, LongPredicate filter) {
+    var distinctHashes = hashes.clone();
+    Arrays.sort(distinctHashes);
+    for (var i = 0; i < distinctHashes.length; i++) {
+      var hash = distinctHashes[i];
+      if (i > 0 && distinctHashes[i - 1] == hash) {
+        continue;
+      }
+      postings.removeIf(hash, filter);
+    }
+  }
+
+  /**
+   * Returns all the hashes of an artifact, class after class.
+   *
+   * @param entry is the artifact.
+   * @return an array of the hashes of the artifact.
+   */
+  private static long[] hashes(Artifact entry) {
+    var hashes = new long[entry.hashCount];
+    var index = 0;
+    for (var classId = 0; classId < entry.classCount; classId++) {
+      var length = entry.classLengths[classId];
+      entry.hashes.copy(entry.classPositions[classId], hashes, index, length);
+      index += length;
+    }
+    return hashes;
+  }
+
+  /**
+   * Returns the compact fingerprint of an artifact. It is built only if the
+   * classes of the artifact have changed since the last call.
+   *
+   * @param artifact is the string path of the artifact.
+   * @return the fingerprint of the artifact, empty if the artifact hasn't been
+   *         analyzed.
+   */
+  ArtifactFingerprint fingerprint(String artifact) {
+    Objects.requireNonNull(artifact, "artifact is null");
+    var artifactId = find(artifact);
+    if (artifactId == null) {
+      return ArtifactFingerprint.EMPTY;
+    }
+    return fingerprint(artifacts.get(artifactId));
+  }
+
+  /**
+   * Returns the compact fingerprint of an artifact, built if the classes of the
+   * artifact have changed. The hashes of the artifact of a lazy index are read if
+   * they aren't in memory.
+   */
+  private ArtifactFingerprint fingerprint(Artifact entry) {
+    load(entry);
+    var fingerprint = entry.fingerprint;
+    if (fingerprint == null) {
+      fingerprint = ArtifactFingerprint.of(hashes(entry), entry.settings);
+      entry.fingerprint = fingerprint;
+      heapBytes += fingerprintBytes(fingerprint);
+      if (loader != null) {
+        evict(); // The fingerprint may have made the index exceed its budget
+      }
+    }
+    return fingerprint;
+  }
+
+  /**
+   * Compares an artifact, being the clone, with all the other indexed artifacts
+   * analyzed with the same settings and returns the ones sharing the most hashes
+   * with it. The comparison is made in one pass over the distinct hashes of the
+   * artifact: the postings of each hash tell which artifacts contain it.
+   *
+   * @param artifact is the string path of the clone artifact.
+   * @param limit    is the maximum amount of returned artifacts.
+   * @return the artifacts sharing at least one hash with the clone, sorted by
+   *         decreasing percentage of the clone found in them, then by decreasing
+   *         percentage of them found in the clone.
+   */
+  List<Match> topClones(String artifact, int limit) {
+    Objects.requireNonNull(artifact, "artifact is null");
+    if (limit < 0) {
+      throw new IllegalArgumentException("limit is negative");
+    }
+    var fingerprint = fingerprint(artifact);
+    if (fingerprint.isEmpty() || limit == 0) {
+      return List.of();
+    }
+    var artifactId = find(artifact);
+    var referenceShared = new int[artifacts.size()]; // Occurrences of the common hashes in each artifact
+    var cloneShared = new int[artifacts.size()]; // Occurrences of the common hashes in the clone
+    if (loader == null) {
+      var lastHash = new int[artifacts.size()]; // Last distinct hash of the clone found in each artifact, plus one
+      var hashes = fingerprint.hashes();
+      for (var i = 0; i < hashes.length; i++) {
+        var slot = postings.find(hashes[i]);
+        for (var j = 0; j < postings.count(slot); j++) {
+          var referenceId = artifactId(postings.posting(slot, j));
+          if (referenceId == artifactId) {
+            continue;
+          }
+          referenceShared[referenceId]++; // A posting is an occurrence of the hash in the reference
+          if (lastHash[referenceId] != i + 1) { // The occurrences in the clone are counted once per reference
+            lastHash[referenceId] = i + 1;
+            cloneShared[referenceId] += fingerprint.count(i);
+          }
+        }
+      }
+    } else { // Without postings, the clone is merged with each comparable artifact
+      for (var referenceId = 0; referenceId < artifacts.size(); referenceId++) {
+        var entry = artifacts.get(referenceId);
+        if (referenceId == artifactId || entry.hashCount == 0 || !entry.settings.equals(fingerprint.settings())) {
+          continue;
+        }
+        var overlap = fingerprint(entry).overlap(fingerprint);
+        referenceShared[referenceId] = overlap.referenceShared();
+        cloneShared[referenceId] = overlap.cloneShared();
+      }
+    }
+    var matches = new ArrayList<Match>();
+    for (var referenceId = 0; referenceId < artifacts.size(); referenceId++) {
+      var entry = artifacts.get(referenceId);
+      if (cloneShared[referenceId] == 0 || !entry.settings.equals(fingerprint.settings())) {
+        continue;
+      }
+      matches.add(new Match(artifactSymbols.symbol(referenceId), percentage(referenceShared[referenceId], entry.hashCount),
+          percentage(cloneShared[referenceId], fingerprint.total())));
+    }
+    matches.sort(Comparator.comparingDouble(Match::totalClonesPercentage)
+        .thenComparingDouble(Match::clonesFromReferencePercentage)
+        .reversed()
+        .thenComparing(Match::reference));
+    return List.copyOf(matches.subList(0, Math.min(limit, matches.size())));
+  }
+
+  /**
+   * Sets the compact fingerprint of an artifact, built from its hashes, so that
+   * it isn't built again.
+   *
+   * @param artifact    is the string path of the artifact.
+   * @param fingerprint is the fingerprint of all the hashes of the artifact.
+   * @throws IllegalArgumentException if the fingerprint doesn't match the hashes
+   *                                  or the settings of the artifact.
+   */
+  void setFingerprint(String artifact, ArtifactFingerprint fingerprint) {
+    Objects.requireNonNull(artifact, "artifact is null");
+    Objects.requireNonNull(fingerprint, "fingerprint is null");
+    var entry = artifacts.get(register(artifact));
+    if (fingerprint.total() != entry.hashCount || !fingerprint.settings().equals(entry.settings)) {
+      throw new IllegalArgumentException("the fingerprint doesn't match the classes of " + artifact);
+    }
+    if (entry.fingerprint != null) {
+      heapBytes -= fingerprintBytes(entry.fingerprint);
+    }
+    entry.fingerprint = fingerprint;
+    heapBytes += fingerprintBytes(fingerprint);
+  }
+
+  /**
+   * Sets the MinHash sketch of an artifact, calculated from its hashes, so that
+   * it isn't calculated again.
+   *
+   * @param artifact is the string path of the artifact.
+   * @param sketch   is the sketch of the artifact, null if it isn't known.
+   */
+  void setSketch(String artifact, long[] sketch) {
+    Objects.requireNonNull(artifact, "artifact is null");
+    artifacts.get(register(artifact)).sketch = sketch;
+  }
+
+  /**
+   * Returns the MinHash sketch of an artifact. It is calculated only if the
+   * classes of the artifact have changed since it was set or calculated.
+   *
+   * @param artifact is the string path of the artifact.
+   * @return the sketch of the artifact, empty if the artifact hasn't been
+   *         analyzed.
+   */
+  long[] sketch(String artifact) {
+    Objects.requireNonNull(artifact, "artifact is null");
+    var artifactId = find(artifact);
+    return artifactId == null ? new long[0] : sketch(artifacts.get(artifactId));
+  }
+
+  /**
+   * Returns the MinHash sketch of an artifact, calculated from its distinct
+   * hashes if it isn't known.
+   */
+  private long[] sketch(Artifact entry) {
+    if (entry.sketch == null) {
+      entry.sketch = MinHash.sketch(fingerprint(entry).hashes());
+    }
+    return entry.sketch;
+  }
+
+  /**
+   * Finds all the pairs of artifacts whose distinct hashes have at least the
+   * given Jaccard similarity, without comparing all the pairs. The sketches of
+   * the artifacts are split in bands and only the artifacts analyzed with the
+   * same settings sharing a band are candidates. A candidate pair whose
+   * similarity estimated by the sketches is far below the threshold is
+   * discarded, the other ones are compared exactly.
+   *
+   * @param threshold is the minimal similarity, between 0 (excluded) and 1.
+   * @return the similar pairs and the amount of compared pairs.
+   */
+  SimilarityMatrix similarityMatrix(double threshold) {
+    var rows = MinHash.rowsPerBand(threshold);
+    var bands = MinHash.SKETCH_SIZE / rows;
+    var artifactCount = 0;
+    // Artifacts sharing a band, by settings since only the artifacts with the same settings are compared
+    var buckets = new HashMap<FingerprintSettings, HashMap<Long, LongList>>();
+    for (var artifactId = 0; artifactId < artifacts.size(); artifactId++) {
+      var entry = artifacts.get(artifactId);
+      if (entry.hashCount == 0) {
+        continue;
+      }
+      artifactCount++;
+      var sketch = sketch(entry);
+      var settingsBuckets = buckets.computeIfAbsent(entry.settings, __ -> new HashMap<>());
+      for (var band = 0; band < bands; band++) {
+        settingsBuckets.computeIfAbsent(MinHash.bandKey(sketch, band, rows), __ -> new LongList(1)).add(artifactId);
+      }
+    }
+    var candidates = new HashSet<Long>(); // A pair sharing several bands is compared once
+    for (var settingsBuckets : buckets.values()) {
+      for (var bucket : settingsBuckets.values()) {
+        for (var i = 0; i < bucket.size(); i++) {
+          for (var j = i + 1; j < bucket.size(); j++) {
+            candidates.add(bucket.get(i) << 32 | bucket.get(j)); // Both identifiers of the pair
+          }
+        }
+      }
+    }
+    var exactPairs = 0L;
+    var pairs = new ArrayList<SimilarPair>();
+    for (var candidate : candidates) {
+      var artifactId1 = (int) (candidate >>> 32);
+      var artifactId2 = (int) (long) candidate;
+      var entry1 = artifacts.get(artifactId1);
+      var entry2 = artifacts.get(artifactId2);
+      if (MinHash.similarity(sketch(entry1), sketch(entry2)) < threshold - MinHash.ESTIMATION_MARGIN) {
+        continue;
+      }
+      exactPairs++;
+      var fingerprint1 = fingerprint(entry1);
+      var fingerprint2 = fingerprint(entry2);
+      var overlap = fingerprint1.overlap(fingerprint2);
+      var similarity = fingerprint1.jaccard(fingerprint2, overlap);
+      if (similarity >= threshold) {
+        pairs.add(new SimilarPair(artifactSymbols.symbol(artifactId1), artifactSymbols.symbol(artifactId2),
+            similarity, percentage(overlap.referenceShared(), fingerprint1.total()),
+            percentage(overlap.cloneShared(), fingerprint2.total())));
+      }
+    }
+    pairs.sort(Comparator.comparingDouble(SimilarPair::similarity).reversed()
+        .thenComparing(SimilarPair::artifact1)
+        .thenComparing(SimilarPair::artifact2));
+    return new SimilarityMatrix(artifactCount, candidates.size(), exactPairs, List.copyOf(pairs));
+  }
+
+  /**
+   * Returns the name of a class of an artifact.
+   *
+   * @param entry   is the artifact.
+   * @param classId is the identifier of the class in the artifact.
+   * @return the name of the .class file.
+   */
+  private String className(Artifact entry, int classId) {
+    return classSymbols.symbol(entry.classNameIds[classId]);
+  }
+
+  /**
+   * Tells if the methods of all the classes of an artifact are known. The methods
+   * of the artifacts analyzed by an older version aren't known.
+   *
+   * @param artifact is the string path of the artifact.
+   * @return true if the methods of the artifact are known.
+   */
+  boolean hasMethods(String artifact) {
+    Objects.requireNonNull(artifact, "artifact is null");
+    var artifactId = find(artifact);
+    return artifactId != null && artifacts.get(artifactId).unknownMethodsCount == 0;
+  }
+
+  /**
+   * Returns the index of the methods of an artifact. It is built only if the
+   * classes of the artifact have changed since the last call.
+   *
+   * @param entry is the artifact.
+   * @return the index of the methods of the artifact.
+   */
+  private MethodIndex methodIndex(Artifact entry) {
+    load(entry);
+    if (entry.methodIndex != null) {
+      return entry.methodIndex;
+    }
+    var methodClasses = new ArrayList<Integer>();
+    var methods = new ArrayList<MethodRange>();
+    var methodIds = new PostingTable();
+    for (var classId = 0; classId < entry.classCount; classId++) {
+      var hashes = entry.classHashes(classId);
+      var start = 0;
+      for (var method : entry.classMethods.get(classId)) {
+        var methodId = methods.size();
+        methodClasses.add(classId);
+        methods.add(method);
+        for (var i = start; i < start + method.hashCount(); i++) {
+          if (methodIds.lastPosting(hashes[i]) != methodId) { // Each method is listed once per hash
+            methodIds.add(hashes[i], methodId);
+          }
+        }
+        start += method.hashCount(); // The hashes of the next method follow
+      }
+    }
+    var bytes = 2 * ARRAY_BYTES + methods.size() * (Integer.BYTES + REFERENCE_BYTES + OBJECT_BYTES)
+        + methodIds.heapBytes();
+    var methodIndex = new MethodIndex(methodClasses.stream().mapToInt(Integer::intValue).toArray(),
+        methods.toArray(MethodRange[]::new), methodIds, bytes);
+    entry.methodIndex = methodIndex;
+    heapBytes += bytes;
+    if (loader != null) {
+      evict(); // The index of the methods may have made the index exceed its budget
+    }
+    return methodIndex;
+  }
+
+  /**
+   * Compares the methods of an artifact, being the clone, with the methods of
+   * another one, being the reference, and returns the pairs of methods sharing
+   * the most hashes. Each method of the clone is compared with the methods of
+   * the reference containing its hashes thanks to the index of the methods of the
+   * reference, the methods of both artifacts must be known.
+   *
+   * @param reference is the string path of the reference artifact.
+   * @param clone     is the string path of the clone artifact.
+   * @param limit     is the maximum amount of returned pairs.
+   * @return the pairs of methods sharing at least one hash, sorted by decreasing
+   *         amount of shared hashes, then by decreasing percentage of the clone
+   *         method found in the reference method.
+   * @throws IllegalStateException if the methods of an artifact aren't known.
+   */
+  List<MethodMatch> methodMatches(String reference, String clone, int limit) {
+    Objects.requireNonNull(reference, "reference is null");
+    Objects.requireNonNull(clone, "clone is null");
+    if (limit < 0) {
+      throw new IllegalArgumentException("limit is negative");
+    }
+    var referenceId = find(reference);
+    var cloneId = find(clone);
+    if (referenceId == null || cloneId == null || limit == 0) {
+      return List.of();
+    }
+    if (!hasMethods(reference) || !hasMethods(clone)) {
+      throw new IllegalStateException("the methods of " + reference + " or " + clone + " aren't known");
+    }
+    var referenceEntry = artifacts.get(referenceId);
+    var cloneEntry = artifacts.get(cloneId);
+    var methodIndex = methodIndex(referenceEntry);
+    load(cloneEntry); // The reference stays loaded, the cache holds at least two artifacts
+    var counts = new int[methodIndex.methods().length]; // Hashes of the clone method found in each reference method
+    var touched = new int[methodIndex.methods().length]; // Reference methods whose count isn't 0
+    var matches = new ArrayList<MethodMatch>();
+    for (var classId = 0; classId < cloneEntry.classCount; classId++) {
+      var hashes = cloneEntry.classHashes(classId);
+      var start = 0;
+      for (var method : cloneEntry.classMethods.get(classId)) {
+        var touchedCount = 0;
+        for (var i = start; i < start + method.hashCount(); i++) {
+          var methodIds = methodIndex.methodIds();
+          var slot = methodIds.find(hashes[i]);
+          if (slot == -1) {
+            continue;
+          }
+          for (var j = 0; j < methodIds.count(slot); j++) {
+            var methodId = (int) methodIds.posting(slot, j);
+            if (counts[methodId]++ == 0) {
+              touched[touchedCount++] = methodId;
+            }
+          }
+        }
+        for (var k = 0; k < touchedCount; k++) {
+          var methodId = touched[k];
+          matches.add(new MethodMatch(className(referenceEntry, methodIndex.methodClasses()[methodId]),
+              methodIndex.methods()[methodId], className(cloneEntry, classId), method, counts[methodId]));
+          counts[methodId] = 0; // Ready for the next method of the clone
+        }
+        start += method.hashCount();
+      }
+    }
+    matches.sort(Comparator.comparingInt(MethodMatch::sharedHashes)
+        .thenComparingDouble(MethodMatch::clonePercentage)
+        .reversed()
+        .thenComparing(MethodMatch::cloneClass)
+        .thenComparing(MethodMatch::referenceClass));
+    return List.copyOf(matches.subList(0, Math.min(limit, matches.size())));
+  }
+
+  /**
+   * Calculates the distribution of the hashes of the index, for each rolling hash
+   * kernel, and the occupancy of the table of the postings. Many occurrences of
+   * the same hash make the comparisons read more postings, long probe sequences
+   * make them read more slots. A lazy index reads the hashes of all the artifacts to build a
+   * temporary postings table, which isn't counted in the memory budget: it is
+   * dropped once the statistics are calculated.
+   *
+   * @return the statistics of the index.
+   */
+  Statistics statistics() {
+    var postings = loader == null ? this.postings : temporaryPostings();
+    var kernelValues = FingerprintSettings.Kernel.values();
+    var artifactKernels = new int[artifacts.size()];
+    var kernelArtifacts = new int[kernelValues.length];
+    for (var artifactId = 0; artifactId < artifacts.size(); artifactId++) {
+      var entry = artifacts.get(artifactId);
+      artifactKernels[artifactId] = entry.settings.kernel().ordinal();
+      if (entry.hashCount != 0) {
+        kernelArtifacts[artifactKernels[artifactId]]++;
+      }
+    }
+    var occurrences = new long[kernelValues.length];
+    var distinctHashes = new int[kernelValues.length];
+    var maxOccurrences = new int[kernelValues.length];
+    var occupancy = new int[kernelValues.length][Integer.SIZE];
+    var counts = new int[kernelValues.length]; // Occurrences of the current hash for each kernel
+    var maxProbeLength = 0;
+    for (var slot = 0; slot < postings.capacity(); slot++) {
+      if (postings.count(slot) == 0) {
+        continue;
+      }
+      Arrays.fill(counts, 0);
+      for (var i = 0; i < postings.count(slot); i++) {
+        counts[artifactKernels[artifactId(postings.posting(slot, i))]]++;
+      }
+      for (var kernel = 0; kernel < kernelValues.length; kernel++) {
+        if (counts[kernel] == 0) {
+          continue;
+        }
+        occurrences[kernel] += counts[kernel];
+        distinctHashes[kernel]++;
+        maxOccurrences[kernel] = Math.max(maxOccurrences[kernel], counts[kernel]);
+        occupancy[kernel][31 - Integer.numberOfLeadingZeros(counts[kernel])]++;
+      }
+      maxProbeLength = Math.max(maxProbeLength, postings.probeLength(slot));
+    }
+    var kernels = new ArrayList<KernelStatistics>();
+    for (var kernel = 0; kernel < kernelValues.length; kernel++) {
+      if (kernelArtifacts[kernel] == 0) {
+        continue;
+      }
+      var length = Integer.SIZE;
+      while (length > 1 && occupancy[kernel][length - 1] == 0) { // The empty classes of the end aren't kept
+        length--;
+      }
+      kernels.add(new KernelStatistics(kernelValues[kernel], kernelArtifacts[kernel], occurrences[kernel],
+          distinctHashes[kernel], maxOccurrences[kernel], Arrays.copyOf(occupancy[kernel], length)));
+    }
+    return new Statistics(List.copyOf(kernels), postings.size(), postings.capacity(), maxProbeLength,
+        postings.heapBytes());
+  }
+
+  /**
+   * Builds the postings of all the artifacts of a lazy index from their
+   * fingerprints, the class identifiers of the postings being unknown.
+   */
+  private PostingTable temporaryPostings() {
+    var postings = new PostingTable();
+    for (var entry : artifacts) {
+      if (entry.hashCount == 0) {
+        continue;
+      }
+      var fingerprint = fingerprint(entry);
+      var posting = posting(entry.id, 0);
+      var hashes = fingerprint.hashes();
+      for (var i = 0; i < hashes.length; i++) {
+        for (var j = 0; j < fingerprint.count(i); j++) {
+          postings.add(hashes[i], posting);
+        }
+      }
+    }
+    return postings;
+  }
+
+  /**
+   * Calculates the percentage of the hashes of an artifact found in another one,
+   * the same way the comparison of two artifacts does.
+   *
+   * @param shared is the amount of hashes of the artifact found in the other one.
+   * @param total  is the amount of hashes of the artifact.
+   * @return the percentage.
+   */
+  private static double percentage(int shared, int total) {
+    return total == 0 ? 0 : shared * 100 / Integer.valueOf(total).floatValue();
+  }
+
+  /**
+   * Returns the hashes of all the loaded classes, the key of a class being the
+   * string path of its artifact and its name separated by " : ".
+   *
+   * @return a new map of the hashes of the classes.
+   */
+  HashMap<String, long[]> classHashes() {
+    var classHashes = new HashMap<String, long[]>();
+    for (var entry : artifacts) {
+      if (!entry.loaded) {
+        continue;
+      }
+      for (var classId = 0; classId < entry.classCount; classId++) {
+        classHashes.put(artifactSymbols.symbol(entry.id) + " : " + className(entry, classId),
+            entry.classHashes(classId));
+      }
+    }
+    return classHashes;
+  }
+
+  /**
+   * Returns the string path of an artifact.
+   *
+   * @param artifactId is the identifier of the artifact.
+   * @return the string path of the artifact.
+   */
+  String artifactName(int artifactId) {
+    return artifactSymbols.symbol(artifactId);
+  }
+}
@@ -0,0 +1,166 @@
+package fr.uge.clonewar;
+
+import java.util.Objects;
+
+/**
+ * Settings used to calculate the hashes of an artifact. Only the hashes of
+ * artifacts analyzed with the same settings can be compared.
+ *
+ * <p>In the {@link Selection#ALL} mode, the hash of each block of byte code
+ * lines is kept. In the {@link Selection#WINNOWING} mode, only the minimal hash
+ * of each window of {@code winnowingWindow} consecutive block hashes of a method
+ * is kept, which divides the amount of stocked hashes while guaranteeing that
+ * two methods sharing at least {@link #detectionThreshold()} consecutive byte
+ * code lines still share at least one kept hash.
+ *
+ * <p>The {@link Kernel} is the rolling hash formula used to calculate the hash
+ * of a block from the hashes of its byte code lines.
+ *
+ * @param selection       is the way the block hashes are kept.
+ * @param winnowingWindow is the amount of consecutive block hashes among which
+ *                        the minimal one is kept, 1 in the {@link Selection#ALL}
+ *                        mode.
+ * @param kernel          is the rolling hash formula of the blocks.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+record FingerprintSettings(Selection selection, int winnowingWindow, Kernel kernel) {
+
+  /**
+   * Way the block hashes of a method are kept.
+   */
+  enum Selection {
+    /**
+     * All the block hashes are kept.
+     */
+    ALL,
+    /**
+     * Only the minimal block hash of each window is kept.
+     */
+    WINNOWING
+  }
+
+  /**
+   * Rolling hash formula of the blocks. The hash of a block is the sum of the
+   * hashes of its byte code lines, each one being mixed then multiplied by a
+   * power of the base according to its place in the block.
+   */
+  enum Kernel {
+    /**
+     * Formula of the first versions: base 2 and byte code line hashes used as
+     * they are. Small bases and hashes made of sums collide a lot, it is kept so
+     * that the artifacts already analyzed can still be compared.
+     */
+    LEGACY(FingerprintEngine.PRIME_NUMBER) {
+      @Override
+      long mix(long instructionHash) {
+        return instructionHash;
+      }
+    },
+    /**
+     * 64-bit polynomial with a large odd base. The byte code line hashes are
+     * mixed first, so that close values like an opcode plus a hash code give
+     * unrelated block hashes.
+     */
+    POLYNOMIAL64(0x9E3779B97F4A7C15L) {
+      @Override
+      long mix(long instructionHash) {
+        // Finalizer of the 64-bit MurmurHash3, each bit of the input changes half of the bits of the output
+        var hash = instructionHash;
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+      }
+    };
+
+    /**
+     * Base of the polynomial.
+     */
+    private final long base;
+
+    Kernel(long base) {
+      this.base = base;
+    }
+
+    /**
+     * Returns the base of the polynomial.
+     *
+     * @return the base.
+     */
+    long base() {
+      return base;
+    }
+
+    /**
+     * Mixes the hash of a byte code line before it is added to a block.
+     *
+     * @param instructionHash is the hash of the byte code line.
+     * @return the mixed hash.
+     */
+    abstract long mix(long instructionHash);
+  }
+
+  /**
+   * Settings used when nothing else is specified, all the hashes are kept.
+   */
+  static final FingerprintSettings DEFAULT = new FingerprintSettings(Selection.ALL, 1);
+
+  /**
+   * Creates settings.
+   */
+  FingerprintSettings {
+    Objects.requireNonNull(selection, "selection is null");
+    Objects.requireNonNull(kernel, "kernel is null");
+    if (winnowingWindow <= 0) {
+      throw new IllegalArgumentException("winnowingWindow must be positive");
+    }
+    if (selection == Selection.ALL && winnowingWindow != 1) {
+      throw new IllegalArgumentException("winnowingWindow must be 1 when all the hashes are kept");
+    }
+  }
+
+  /**
+   * Creates settings using the {@link Kernel#LEGACY} formula.
+   *
+   * @param selection       is the way the block hashes are kept.
+   * @param winnowingWindow is the amount of consecutive block hashes among which
+   *                        the minimal one is kept.
+   */
+  FingerprintSettings(Selection selection, int winnowingWindow) {
+    this(selection, winnowingWindow, Kernel.LEGACY);
+  }
+
+  /**
+   * Returns the same settings with another rolling hash formula.
+   *
+   * @param kernel is the rolling hash formula of the blocks.
+   * @return the settings.
+   */
+  FingerprintSettings withKernel(Kernel kernel) {
+    return new FingerprintSettings(selection, winnowingWindow, kernel);
+  }
+
+  /**
+   * Creates the settings of the winnowing mode.
+   *
+   * @param winnowingWindow is the amount of consecutive block hashes among which
+   *                        the minimal one is kept.
+   * @return the settings.
+   */
+  static FingerprintSettings winnowing(int winnowingWindow) {
+    return new FingerprintSettings(Selection.WINNOWING, winnowingWindow);
+  }
+
+  /**
+   * Returns the minimal amount of consecutive byte code lines that two methods
+   * must share to be sure that the clone is detected.
+   *
+   * @return the detection threshold, in byte code lines.
+   */
+  int detectionThreshold() {
+    // A block covers WINDOW_SIZE lines. The fifth line of a method isn't part of any block, so the blocks close to
+    // the beginning of a method don't cover consecutive lines and can't be shared with other methods.
+    return winnowingWindow + 2 * FingerprintEngine.WINDOW_SIZE;
+  }
+}
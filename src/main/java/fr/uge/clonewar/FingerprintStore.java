@@ -0,0 +1,1175 @@
+package fr.uge.clonewar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Binary backup file of the hashes of the analyzed artifacts.
+ *
+ * <p>The file starts with a header followed by segments. Each segment contains
+ * the result of the analysis of one artifact: a segment header, a string table
+ * with the name of the artifact, the settings used to calculate its hashes, its
+ * MinHash sketch and the name, the amount of hashes, the digest of the content
+ * and the methods of each class, then the hashes of all the classes as
+ * contiguous little-endian long values. A segment replaces all the previous
+ * segments of the same artifact.
+ *
+ * <p>Opening the store only reads the segment headers and the string tables. The
+ * hashes are read through a memory mapping of their block when a class is read.
+ *
+ * <p>The replaced segments are dead bytes of the file. A {@link Compaction}
+ * copies the live segments in a new file while the store is still used, then
+ * replaces the file by the new one. A segment doesn't contain any absolute
+ * position, so it is copied as it is.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+final class FingerprintStore implements Closeable {
+
+  /**
+   * Magic number of the file ("CWFS").
+   */
+  private static final int MAGIC = 0x43574653;
+
+  /**
+   * Magic number of a segment ("SEGM").
+   */
+  private static final int SEGMENT_MAGIC = 0x5345474D;
+
+  /**
+   * Version of the segment format.
+   */
+  private static final int VERSION = 6;
+
+  /**
+   * First version of the segment format stocking the digest of the classes.
+   */
+  private static final int DIGEST_VERSION = 2;
+
+  /**
+   * First version of the segment format stocking the fingerprint settings.
+   */
+  private static final int SETTINGS_VERSION = 3;
+
+  /**
+   * First version of the segment format stocking the methods of the classes.
+   */
+  private static final int METHODS_VERSION = 4;
+
+  /**
+   * First version of the segment format stocking the rolling hash kernel of the
+   * fingerprint settings.
+   */
+  private static final int KERNEL_VERSION = 5;
+
+  /**
+   * First version of the segment format stocking the MinHash sketch of the
+   * artifact.
+   */
+  private static final int SKETCH_VERSION = 6;
+
+  /**
+   * Length written for a sketch which isn't known.
+   */
+  private static final int UNKNOWN_SKETCH = -1;
+
+  /**
+   * Amount of methods written for a class whose methods aren't known.
+   */
+  private static final int UNKNOWN_METHODS = -1;
+
+  /**
+   * Digest of a class whose content isn't known.
+   */
+  static final long NO_DIGEST = 0;
+
+  /**
+   * Size of the file header: magic number, version and a reserved long.
+   */
+  private static final int HEADER_SIZE = 16;
+
+  /**
+   * Size of a segment header: magic number, version, amount of classes, size of
+   * the string table and amount of hashes.
+   */
+  private static final int SEGMENT_HEADER_SIZE = 24;
+
+  /**
+   * Maximum size of a segment, it is encoded in a single buffer.
+   */
+  private static final int MAX_SEGMENT_SIZE = Integer.MAX_VALUE - 8;
+
+  /**
+   * Amount of bytes read at once when the file is searched for a segment header.
+   */
+  private static final int SCAN_CHUNK_SIZE = 1 << 20;
+
+  /**
+   * Analyzed class stocked in a segment.
+   *
+   * @param segment   is the segment the class belongs to.
+   * @param className is the name of the .class file.
+   * @param digest    is the digest of the content of the .class file,
+   *                  {@link #NO_DIGEST} if it isn't known.
+   * @param start     is the index of the first hash of the class in the hashes
+   *                  of the segment.
+   * @param hashCount is the amount of hashes of the class.
+   * @param methods   is the list of the methods of the class, null if they
+   *                  aren't known.
+   */
+  record Entry(Segment segment, String className, long digest, int start, int hashCount, List<MethodRange> methods) {}
+
+  /**
+   * Result of the analysis of an artifact stocked in the file.
+   */
+  static final class Segment {
+
+    /**
+     * String path of the artifact.
+     */
+    private final String artifact;
+
+    /**
+     * Position of the segment in the file, it changes when the file is compacted.
+     */
+    private long position;
+
+    /**
+     * Position of the first hash of the segment in the file, it changes when the
+     * file is compacted.
+     */
+    private long dataPosition;
+
+    /**
+     * Amount of hashes of the segment.
+     */
+    private final int hashCount;
+
+    /**
+     * Settings used to calculate the hashes of the segment.
+     */
+    private final FingerprintSettings settings;
+
+    /**
+     * MinHash sketch of the artifact, null if it isn't known.
+     */
+    private final long[] sketch;
+
+    /**
+     * Classes of the segment.
+     */
+    private final ArrayList<Entry> entries = new ArrayList<>();
+
+    /**
+     * Hashes of the segment, mapped the first time they are read.
+     */
+    private LongBuffer hashes;
+
+    /**
+     * Creates a segment.
+     */
+    private Segment(String artifact, long position, long dataPosition, int hashCount, FingerprintSettings settings,
+                    long[] sketch) {
+      this.artifact = artifact;
+      this.position = position;
+      this.dataPosition = dataPosition;
+      this.hashCount = hashCount;
+      this.settings = settings;
+      this.sketch = sketch;
+    }
+
+    /**
+     * Returns the string path of the artifact.
+     *
+     * @return the artifact of the segment.
+     */
+    String artifact() {
+      return artifact;
+    }
+
+    /**
+     * Returns the position of the end of the segment in the file.
+     *
+     * @return the position following the last hash of the segment.
+     */
+    private long end() {
+      return dataPosition + (long) hashCount * Long.BYTES;
+    }
+
+    /**
+     * Returns the size of the segment in the file.
+     *
+     * @return the amount of bytes of the segment.
+     */
+    private long size() {
+      return end() - position;
+    }
+
+    /**
+     * Moves the segment to another position, the hashes are mapped again the next
+     * time they are read.
+     *
+     * @param newPosition is the new position of the segment.
+     */
+    private void moveTo(long newPosition) {
+      dataPosition += newPosition - position;
+      position = newPosition;
+      hashes = null;
+    }
+  }
+
+  /**
+   * Segment encoded before being appended to the file.
+   */
+  static final class EncodedSegment {
+
+    /**
+     * String path of the artifact.
+     */
+    private final String artifact;
+
+    /**
+     * Settings used to calculate the hashes of the segment.
+     */
+    private final FingerprintSettings settings;
+
+    /**
+     * MinHash sketch of the artifact, null if it isn't known.
+     */
+    private final long[] sketch;
+
+    /**
+     * Classes of the segment.
+     */
+    private final List<ClassRecord> classes;
+
+    /**
+     * Bytes of the segment, as written in the file.
+     */
+    private final ByteBuffer content;
+
+    /**
+     * Size of the segment header and of the string table.
+     */
+    private final int headerSize;
+
+    /**
+     * Amount of hashes of the segment.
+     */
+    private final int hashCount;
+
+    /**
+     * Creates an encoded segment.
+     */
+    private EncodedSegment(String artifact, FingerprintSettings settings, long[] sketch, List<ClassRecord> classes,
+                           ByteBuffer content, int headerSize, int hashCount) {
+      this.artifact = artifact;
+      this.settings = settings;
+      this.sketch = sketch;
+      this.classes = classes;
+      this.content = content;
+      this.headerSize = headerSize;
+      this.hashCount = hashCount;
+    }
+  }
+
+  /**
+   * Class to write in a segment.
+   *
+   * @param className is the name of the .class file.
+   * @param digest    is the digest of the content of the .class file.
+   * @param hashes    is the array of the hashes of the class.
+   * @param methods   is the list of the methods of the class, null if they
+   *                  aren't known.
+   */
+  record ClassRecord(String className, long digest, long[] hashes, List<MethodRange> methods) {
+    /**
+     * Creates a class to write.
+     */
+    ClassRecord {
+      Objects.requireNonNull(className, "className is null");
+      Objects.requireNonNull(hashes, "hashes is null");
+    }
+  }
+
+  /**
+   * Path of the file.
+   */
+  private final Path path;
+
+  /**
+   * Channel opened on the file, replaced when the file is compacted.
+   */
+  private FileChannel channel;
+
+  /**
+   * Identifiers of the string paths of the artifacts.
+   */
+  private final SymbolTable artifactSymbols;
+
+  /**
+   * Identifiers of the names of the classes.
+   */
+  private final SymbolTable classSymbols;
+
+  /**
+   * Last segment of each artifact, by artifact identifier, in the order of the
+   * file.
+   */
+  private final LinkedHashMap<Integer, Segment> segments = new LinkedHashMap<>();
+
+  /**
+   * Position where the next segment is written.
+   */
+  private long end;
+
+  /**
+   * Amount of bytes of the last segment of each artifact.
+   */
+  private long liveBytes;
+
+  /**
+   * Compaction in progress, null if the file isn't being compacted.
+   */
+  private Compaction compaction;
+
+  /**
+   * Creates a store on an opened channel.
+   */
+  private FingerprintStore(Path path, FileChannel channel, SymbolTable artifactSymbols, SymbolTable classSymbols) {
+    this.path = path;
+    this.channel = channel;
+    this.artifactSymbols = artifactSymbols;
+    this.classSymbols = classSymbols;
+  }
+
+  /**
+   * Opens the store located at the given path. The file is created if it
+   * doesn't exist. Only the directory of the artifacts and classes is read.
+   *
+   * @param path is the path of the file.
+   * @return the opened store.
+   * @throws IOException if the file can't be opened or isn't a valid store.
+   */
+  static FingerprintStore open(Path path) throws IOException {
+    return open(path, new SymbolTable(), new SymbolTable());
+  }
+
+  /**
+   * Opens the store located at the given path. The file is created if it
+   * doesn't exist. Only the directory of the artifacts and classes is read, the
+   * string paths of the artifacts and the names of the classes are the ones of
+   * the given tables, shared with the index.
+   *
+   * @param path            is the path of the file.
+   * @param artifactSymbols is the table of the string paths of the artifacts.
+   * @param classSymbols    is the table of the names of the classes.
+   * @return the opened store.
+   * @throws IOException if the file can't be opened or isn't a valid store.
+   */
+  static FingerprintStore open(Path path, SymbolTable artifactSymbols, SymbolTable classSymbols) throws IOException {
+    Objects.requireNonNull(path, "path is null");
+    Objects.requireNonNull(artifactSymbols, "artifactSymbols is null");
+    Objects.requireNonNull(classSymbols, "classSymbols is null");
+    var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE);
+    try {
+      var store = new FingerprintStore(path, channel, artifactSymbols, classSymbols);
+      store.readDirectory();
+      return store;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Reads the file header and the directory of all the segments. A segment
+   * partially written at the end of the file, because the application stopped
+   * during its writing, is removed. Segments are only appended, so an invalid
+   * segment header which isn't followed by any valid segment header, like the
+   * zeros left when the system stopped after the file grew but before its
+   * content was written, is a torn tail as well: the file is truncated after the
+   * last valid segment. An invalid segment header followed by a valid one is a
+   * corruption, the file is left untouched so that the following segments
+   * aren't lost.
+   *
+   * @throws IOException if the file isn't a valid store or if a segment in the
+   *                     middle of the file is corrupted.
+   */
+  private void readDirectory() throws IOException {
+    var size = channel.size();
+    if (size == 0) { // New file
+      var header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(MAGIC).putInt(VERSION).putLong(0).flip();
+      writeFully(header, 0);
+      end = HEADER_SIZE;
+      return;
+    }
+    var header = readFully(0, HEADER_SIZE);
+    if (header == null || header.getInt() != MAGIC) {
+      throw new IOException(path + " is not a fingerprint store");
+    }
+    var position = (long) HEADER_SIZE;
+    while (position < size) {
+      var segment = readSegment(position, size);
+      if (segment == null) { // Truncated segment, unless valid segments follow
+        if (hasSegmentAfter(position, size)) {
+          throw new IOException(path + " is corrupted at position " + position + ", valid segments follow");
+        }
+        channel.truncate(position);
+        break;
+      }
+      replace(segment);
+      position = segment.end();
+    }
+    end = position;
+  }
+
+  /**
+   * Tells if a valid segment header follows a position of the file. The bytes
+   * following the position are searched for the magic number of a segment whose
+   * version is known and whose sizes fit in the file.
+   *
+   * @param position is the position of the invalid segment.
+   * @param size     is the size of the file.
+   * @return true if a valid segment header follows the position.
+   * @throws IOException if the file can't be read.
+   */
+  private boolean hasSegmentAfter(long position, long size) throws IOException {
+    var start = position + 1;
+    while (size - start >= SEGMENT_HEADER_SIZE) {
+      var length = (int) Math.min(SCAN_CHUNK_SIZE, size - start);
+      var chunk = readFully(start, length);
+      for (var i = 0; i + Integer.BYTES <= length; i++) {
+        if (chunk.getInt(i) == SEGMENT_MAGIC && isSegmentHeader(start + i, size)) {
+          return true;
+        }
+      }
+      start += length - (Integer.BYTES - 1); // A magic number can straddle two chunks
+    }
+    return false;
+  }
+
+  /**
+   * Tells if a valid segment header is at a position of the file.
+   *
+   * @param position is the position of the segment.
+   * @param size     is the size of the file.
+   * @return true if the header has the magic number of a segment, a known
+   *         version and sizes fitting in the file.
+   * @throws IOException if the file can't be read.
+   */
+  private boolean isSegmentHeader(long position, long size) throws IOException {
+    var header = readFully(position, SEGMENT_HEADER_SIZE);
+    if (header == null || header.getInt() != SEGMENT_MAGIC) {
+      return false;
+    }
+    var version = header.getInt();
+    var entryCount = header.getInt();
+    var stringTableSize = header.getInt();
+    var hashCount = header.getLong();
+    return version >= 1 && version <= VERSION && entryCount >= 0 && stringTableSize >= 0 && hashCount >= 0
+        && hashCount <= Integer.MAX_VALUE
+        && position + SEGMENT_HEADER_SIZE + stringTableSize + hashCount * Long.BYTES <= size;
+  }
+
+  /**
+   * Reads the header and the string table of a segment.
+   *
+   * @param position is the position of the segment.
+   * @param size     is the size of the file.
+   * @return the segment, null if it has been partially written or if its header
+   *         isn't valid.
+   * @throws IOException if the string table of the segment is corrupted or if
+   *                     the segment has an unknown version.
+   */
+  private Segment readSegment(long position, long size) throws IOException {
+    var header = readFully(position, SEGMENT_HEADER_SIZE);
+    if (header == null || header.getInt() != SEGMENT_MAGIC) {
+      return null;
+    }
+    var version = header.getInt();
+    if (version < 1 || version > VERSION) {
+      throw new IOException(path + " contains a segment of unknown version " + version);
+    }
+    var entryCount = header.getInt();
+    var stringTableSize = header.getInt();
+    var hashCount = header.getLong();
+    var dataPosition = position + SEGMENT_HEADER_SIZE + stringTableSize;
+    if (entryCount < 0 || stringTableSize < 0 || hashCount < 0 || hashCount > Integer.MAX_VALUE
+        || dataPosition + hashCount * Long.BYTES > size) {
+      return null;
+    }
+    var table = readFully(position + SEGMENT_HEADER_SIZE, stringTableSize);
+    try {
+      return readSegment(table, version, position, dataPosition, (int) hashCount, entryCount);
+    } catch (BufferUnderflowException e) {
+      throw new IOException(path + " is corrupted at position " + position, e);
+    }
+  }
+
+  /**
+   * Reads the string table of a segment.
+   *
+   * @param table        is the string table.
+   * @param version      is the version of the segment format.
+   * @param position     is the position of the segment.
+   * @param dataPosition is the position of the first hash of the segment.
+   * @param hashCount    is the amount of hashes of the segment.
+   * @param entryCount   is the amount of classes of the segment.
+   * @return the segment.
+   * @throws IOException if the string table is corrupted.
+   */
+  private Segment readSegment(ByteBuffer table, int version, long position, long dataPosition, int hashCount,
+                              int entryCount) throws IOException {
+    var artifact = artifactSymbols.canonical(readString(table)); // Each string is kept once
+    var settings = version >= SETTINGS_VERSION ? readSettings(table, version) : FingerprintSettings.DEFAULT;
+    var sketch = version >= SKETCH_VERSION ? readSketch(table, position) : null;
+    var segment = new Segment(artifact, position, dataPosition, hashCount, settings, sketch);
+    var start = 0;
+    for (var i = 0; i < entryCount; i++) {
+      var className = classSymbols.canonical(readString(table));
+      var classHashCount = table.getInt();
+      var digest = version >= DIGEST_VERSION ? table.getLong() : NO_DIGEST;
+      var methods = version >= METHODS_VERSION ? readMethods(table, classHashCount, position) : null;
+      segment.entries.add(new Entry(segment, className, digest, start, classHashCount, methods));
+      start += classHashCount;
+    }
+    if (start != hashCount) {
+      throw new IOException(path + " is corrupted at position " + position);
+    }
+    return segment;
+  }
+
+  /**
+   * Returns the analyzed artifacts, in the order they have been written.
+   *
+   * @return an unmodifiable list of the string paths of the artifacts.
+   */
+  List<String> artifacts() {
+    return segments.values().stream().map(Segment::artifact).toList();
+  }
+
+  /**
+   * Returns the last segment of an artifact.
+   *
+   * @param artifact is the string path of the artifact.
+   * @return the segment, null if the artifact isn't stocked.
+   */
+  private Segment segment(String artifact) {
+    var artifactId = artifactSymbols.id(artifact);
+    return artifactId == SymbolTable.NO_ID ? null : segments.get(artifactId);
+  }
+
+  /**
+   * Returns the settings used to calculate the stocked hashes of an artifact.
+   *
+   * @param artifact is the string path of the artifact.
+   * @return the settings of the artifact, null if the artifact isn't stocked.
+   */
+  FingerprintSettings settings(String artifact) {
+    Objects.requireNonNull(artifact, "artifact is null");
+    var segment = segment(artifact);
+    return segment == null ? null : segment.settings;
+  }
+
+  /**
+   * Returns the MinHash sketch of the stocked hashes of an artifact.
+   *
+   * @param artifact is the string path of the artifact.
+   * @return the sketch of the artifact, null if the artifact isn't stocked or if
+   *         its sketch isn't known. The returned array must not be modified.
+   */
+  long[] sketch(String artifact) {
+    Objects.requireNonNull(artifact, "artifact is null");
+    var segment = segment(artifact);
+    return segment == null ? null : segment.sketch;
+  }
+
+  /**
+   * Returns the classes of an artifact.
+   *
+   * @param artifact is the string path of the artifact.
+   * @return an unmodifiable list of the classes, empty if the artifact isn't
+   *         stocked.
+   */
+  List<Entry> entries(String artifact) {
+    Objects.requireNonNull(artifact, "artifact is null");
+    var segment = segment(artifact);
+    return segment == null ? List.of() : Collections.unmodifiableList(segment.entries);
+  }
+
+  /**
+   * Reads the hashes of a class.
+   *
+   * @param entry is the class.
+   * @return a new array of the hashes of the class.
+   * @throws IOException if the hashes can't be mapped.
+   */
+  long[] read(Entry entry) throws IOException {
+    Objects.requireNonNull(entry, "entry is null");
+    var segment = entry.segment();
+    if (segment.hashes == null) {
+      segment.hashes = channel.map(FileChannel.MapMode.READ_ONLY, segment.dataPosition,
+          (long) segment.hashCount * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+    }
+    var hashes = new long[entry.hashCount()];
+    segment.hashes.get(entry.start(), hashes);
+    return hashes;
+  }
+
+  /**
+   * Appends a segment containing the result of the analysis of an artifact. It
+   * replaces the previous result of the same artifact.
+   *
+   * @param artifact is the string path of the artifact.
+   * @param settings is the settings used to calculate the hashes of the classes.
+   * @param sketch   is the MinHash sketch of the hashes of the artifact, null if
+   *                 it isn't known.
+   * @param classes  is the list of the analyzed classes of the artifact.
+   * @throws IOException if the segment can't be written.
+   */
+  void append(String artifact, FingerprintSettings settings, long[] sketch, List<ClassRecord> classes)
+      throws IOException {
+    append(encode(artifact, settings, sketch, classes));
+  }
+
+  /**
+   * Encodes a segment containing the result of the analysis of an artifact. The
+   * store isn't used, so that the segment can be encoded by any thread before
+   * being {@link #append(EncodedSegment) appended}.
+   *
+   * @param artifact is the string path of the artifact.
+   * @param settings is the settings used to calculate the hashes of the classes.
+   * @param sketch   is the MinHash sketch of the hashes of the artifact, null if
+   *                 it isn't known.
+   * @param classes  is the list of the analyzed classes of the artifact.
+   * @return the encoded segment.
+   * @throws IOException if the artifact has too many hashes for a segment.
+   */
+  static EncodedSegment encode(String artifact, FingerprintSettings settings, long[] sketch, List<ClassRecord> classes)
+      throws IOException {
+    Objects.requireNonNull(artifact, "artifact is null");
+    Objects.requireNonNull(settings, "settings is null");
+    Objects.requireNonNull(classes, "classes is null");
+    var hashCount = 0L;
+    var stringTableSize = stringSize(artifact) + 4 * Integer.BYTES + (sketch == null ? 0 : sketch.length * Long.BYTES);
+    for (var classRecord : classes) {
+      hashCount += classRecord.hashes().length;
+      stringTableSize += stringSize(classRecord.className()) + Integer.BYTES + Long.BYTES + Integer.BYTES;
+      if (classRecord.methods() != null) {
+        for (var method : classRecord.methods()) {
+          stringTableSize += stringSize(method.name()) + stringSize(method.descriptor()) + 3 * Integer.BYTES;
+        }
+      }
+    }
+    stringTableSize = (stringTableSize + Long.BYTES - 1) & -Long.BYTES; // The hashes are aligned on 8 bytes
+    var headerSize = SEGMENT_HEADER_SIZE + stringTableSize;
+    if (hashCount > (MAX_SEGMENT_SIZE - headerSize) / Long.BYTES) {
+      throw new IOException("too many hashes for the artifact " + artifact);
+    }
+    var content = ByteBuffer.allocate(headerSize + (int) hashCount * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    content.putInt(SEGMENT_MAGIC).putInt(VERSION).putInt(classes.size()).putInt(stringTableSize).putLong(hashCount);
+    putString(content, artifact);
+    content.putInt(settings.selection().ordinal()).putInt(settings.winnowingWindow()).putInt(settings.kernel().ordinal());
+    putSketch(content, sketch);
+    for (var classRecord : classes) {
+      putString(content, classRecord.className());
+      content.putInt(classRecord.hashes().length).putLong(classRecord.digest());
+      putMethods(content, classRecord.methods());
+    }
+    content.position(headerSize); // Padding bytes are zeros
+    var hashes = content.asLongBuffer();
+    for (var classRecord : classes) {
+      hashes.put(classRecord.hashes());
+    }
+    return new EncodedSegment(artifact, settings, sketch == null ? null : sketch.clone(), List.copyOf(classes),
+        content.clear(), headerSize, (int) hashCount);
+  }
+
+  /**
+   * Appends an encoded segment at the end of the file. It replaces the previous
+   * result of the same artifact.
+   *
+   * @param encoded is the encoded segment.
+   * @throws IOException if the segment can't be written.
+   */
+  void append(EncodedSegment encoded) throws IOException {
+    Objects.requireNonNull(encoded, "encoded is null");
+    var position = end;
+    end += writeFully(encoded.content.duplicate(), position);
+    var segment = new Segment(artifactSymbols.canonical(encoded.artifact), position, position + encoded.headerSize,
+        encoded.hashCount, encoded.settings, encoded.sketch);
+    var start = 0;
+    for (var classRecord : encoded.classes) {
+      var hashCount = classRecord.hashes().length;
+      segment.entries.add(new Entry(segment, classSymbols.canonical(classRecord.className()), classRecord.digest(),
+          start, hashCount, classRecord.methods()));
+      start += hashCount;
+    }
+    replace(segment);
+  }
+
+  /**
+   * Makes a segment the last one of its artifact, the previous one becomes dead.
+   */
+  private void replace(Segment segment) {
+    var artifactId = artifactSymbols.intern(segment.artifact);
+    var previous = segments.remove(artifactId); // Keeps the order of the file
+    if (previous != null) {
+      liveBytes -= previous.size();
+    }
+    segments.put(artifactId, segment);
+    liveBytes += segment.size();
+  }
+
+  /**
+   * Returns the size of the file.
+   *
+   * @return the amount of bytes of the file.
+   */
+  long size() {
+    return end;
+  }
+
+  /**
+   * Returns the amount of bytes of the file used by segments which have been
+   * replaced.
+   *
+   * @return the amount of dead bytes.
+   */
+  long deadBytes() {
+    return end - HEADER_SIZE - liveBytes;
+  }
+
+  /**
+   * Tells if the file should be compacted: at least the given amount of bytes
+   * and the given proportion of the file are dead.
+   *
+   * @param deadRatio    is the minimal proportion of dead bytes.
+   * @param minDeadBytes is the minimal amount of dead bytes.
+   * @return true if the file should be compacted.
+   */
+  boolean needsCompaction(double deadRatio, long minDeadBytes) {
+    var deadBytes = deadBytes();
+    return compaction == null && deadBytes >= minDeadBytes && deadBytes >= deadRatio * end;
+  }
+
+  /**
+   * Starts the compaction of the file: the live segments are noted, they are
+   * copied in a new file by {@link Compaction#copy()} without using the store,
+   * which can still be used in the meantime.
+   *
+   * @return the compaction.
+   * @throws IOException if the new file can't be created.
+   * @throws IllegalStateException if a compaction is already in progress.
+   */
+  Compaction startCompaction() throws IOException {
+    if (compaction != null) {
+      throw new IllegalStateException("compaction already in progress");
+    }
+    compaction = new Compaction(List.copyOf(segments.values()), end);
+    return compaction;
+  }
+
+  /**
+   * Compaction of the file. Its steps are called in order: the store is
+   * {@link FingerprintStore#startCompaction() noted}, the live segments are
+   * {@link #copy() copied} while the store is used, then the new file
+   * {@link #commit() replaces} the old one. The store must not be used by
+   * another thread during the first and the last steps.
+   */
+  final class Compaction {
+
+    /**
+     * Path of the new file.
+     */
+    private final Path temporaryPath;
+
+    /**
+     * Channel opened on the new file.
+     */
+    private final FileChannel temporaryChannel;
+
+    /**
+     * Segments live when the compaction started.
+     */
+    private final List<Segment> liveSegments;
+
+    /**
+     * Position of each live segment in the new file.
+     */
+    private final long[] newPositions;
+
+    /**
+     * Size of the old file when the compaction started, the segments appended
+     * afterwards are copied by the last step.
+     */
+    private final long startEnd;
+
+    /**
+     * Size of the new file.
+     */
+    private long newEnd;
+
+    /**
+     * Creates the new file.
+     */
+    private Compaction(List<Segment> liveSegments, long startEnd) throws IOException {
+      this.liveSegments = liveSegments;
+      this.startEnd = startEnd;
+      newPositions = new long[liveSegments.size()];
+      temporaryPath = path.resolveSibling(path.getFileName() + ".compaction");
+      temporaryChannel = FileChannel.open(temporaryPath, StandardOpenOption.READ, StandardOpenOption.WRITE,
+          StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Copies the segments live when the compaction started in the new file. The
+     * old file is only read, the store can be used at the same time.
+     *
+     * @throws IOException if a file can't be read or written.
+     */
+    void copy() throws IOException {
+      var header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(MAGIC).putInt(VERSION).putLong(0).flip();
+      while (header.hasRemaining()) {
+        temporaryChannel.write(header, HEADER_SIZE - header.remaining());
+      }
+      newEnd = HEADER_SIZE;
+      for (var i = 0; i < liveSegments.size(); i++) {
+        var segment = liveSegments.get(i);
+        newPositions[i] = newEnd;
+        newEnd += transfer(segment.position, segment.size());
+      }
+    }
+
+    /**
+     * Copies the segments appended since the start of the compaction, writes the
+     * new file on the storage device and replaces the old file by it. The
+     * segments of the store are moved to their position in the new file.
+     *
+     * @throws IOException if a file can't be read, written or moved.
+     */
+    void commit() throws IOException {
+      var tailPosition = newEnd;
+      newEnd += transfer(startEnd, end - startEnd); // The segments appended meanwhile are kept as they are
+      temporaryChannel.force(true);
+      synchronized (FingerprintStore.this) { // The file isn't forced while it is replaced
+        Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory(path);
+        var oldChannel = channel;
+        channel = temporaryChannel;
+        oldChannel.close();
+      }
+      var movedSegments = Collections.newSetFromMap(new IdentityHashMap<Segment, Boolean>());
+      for (var i = 0; i < liveSegments.size(); i++) {
+        var segment = liveSegments.get(i);
+        segment.moveTo(newPositions[i]);
+        movedSegments.add(segment);
+      }
+      for (var segment : segments.values()) {
+        if (!movedSegments.contains(segment)) { // Appended since the start of the compaction
+          segment.moveTo(segment.position - startEnd + tailPosition);
+        }
+      }
+      liveBytes = 0;
+      for (var segment : segments.values()) {
+        liveBytes += segment.size();
+      }
+      end = newEnd;
+      compaction = null;
+    }
+
+    /**
+     * Stops the compaction and deletes the new file, the store keeps its file.
+     */
+    void abort() {
+      try {
+        temporaryChannel.close();
+        Files.deleteIfExists(temporaryPath);
+      } catch (IOException e) { // The new file is replaced by the next compaction
+        // Nothing else to do
+      }
+      compaction = null;
+    }
+
+    /**
+     * Copies bytes of the old file at the end of the new file.
+     *
+     * @return the amount of copied bytes.
+     */
+    private long transfer(long position, long count) throws IOException {
+      var target = newEnd;
+      for (var copied = 0L; copied < count;) {
+        temporaryChannel.position(target + copied);
+        copied += channel.transferTo(position + copied, count - copied, temporaryChannel);
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Returns the amount of bytes needed to write a string in the string table.
+   */
+  private static int stringSize(String string) {
+    return Integer.BYTES + string.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  /**
+   * Writes a string in the string table: its length followed by its UTF-8 bytes.
+   */
+  private static void putString(ByteBuffer buffer, String string) {
+    var bytes = string.getBytes(StandardCharsets.UTF_8);
+    buffer.putInt(bytes.length).put(bytes);
+  }
+
+  /**
+   * Reads a string of the string table.
+   */
+  private static String readString(ByteBuffer buffer) {
+    var length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    var bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Writes a MinHash sketch in the string table: its length followed by its
+   * values.
+   */
+  private static void putSketch(ByteBuffer buffer, long[] sketch) {
+    if (sketch == null) {
+      buffer.putInt(UNKNOWN_SKETCH);
+      return;
+    }
+    buffer.putInt(sketch.length);
+    for (var value : sketch) {
+      buffer.putLong(value);
+    }
+  }
+
+  /**
+   * Reads a MinHash sketch of the string table.
+   *
+   * @return the sketch, null if it isn't known.
+   * @throws IOException if the length of the sketch is invalid.
+   */
+  private long[] readSketch(ByteBuffer buffer, long position) throws IOException {
+    var length = buffer.getInt();
+    if (length == UNKNOWN_SKETCH) {
+      return null;
+    }
+    if (length < 0 || length > buffer.remaining() / Long.BYTES) {
+      throw new IOException(path + " is corrupted at position " + position);
+    }
+    var sketch = new long[length];
+    for (var i = 0; i < length; i++) {
+      sketch[i] = buffer.getLong();
+    }
+    return sketch;
+  }
+
+  /**
+   * Writes the methods of a class in the string table: their amount followed by
+   * the name, the descriptor, the lines and the amount of hashes of each method.
+   */
+  private static void putMethods(ByteBuffer buffer, List<MethodRange> methods) {
+    if (methods == null) {
+      buffer.putInt(UNKNOWN_METHODS);
+      return;
+    }
+    buffer.putInt(methods.size());
+    for (var method : methods) {
+      putString(buffer, method.name());
+      putString(buffer, method.descriptor());
+      buffer.putInt(method.firstLine()).putInt(method.lastLine()).putInt(method.hashCount());
+    }
+  }
+
+  /**
+   * Reads the methods of a class in the string table.
+   *
+   * @return the unmodifiable list of the methods, null if they aren't known.
+   * @throws IOException if the methods don't cover the hashes of the class.
+   */
+  private List<MethodRange> readMethods(ByteBuffer buffer, int classHashCount, long position) throws IOException {
+    var methodCount = buffer.getInt();
+    if (methodCount == UNKNOWN_METHODS) {
+      return null;
+    }
+    if (methodCount < 0 || methodCount > buffer.remaining()) {
+      throw new IOException(path + " is corrupted at position " + position);
+    }
+    var methods = new MethodRange[methodCount];
+    var methodsHashCount = 0L;
+    for (var i = 0; i < methodCount; i++) {
+      var name = readString(buffer);
+      var descriptor = readString(buffer);
+      var firstLine = buffer.getInt();
+      var lastLine = buffer.getInt();
+      var hashCount = buffer.getInt();
+      if (hashCount < 0) {
+        throw new IOException(path + " is corrupted at position " + position);
+      }
+      methods[i] = new MethodRange(name, descriptor, firstLine, lastLine, hashCount);
+      methodsHashCount += hashCount;
+    }
+    if (methodsHashCount != classHashCount) {
+      throw new IOException(path + " is corrupted at position " + position);
+    }
+    return List.of(methods);
+  }
+
+  /**
+   * Reads the fingerprint settings of the string table. The segments written
+   * before the kernel was stocked use the {@link FingerprintSettings.Kernel#LEGACY}
+   * kernel.
+   *
+   * @throws IOException if the settings are unknown.
+   */
+  private FingerprintSettings readSettings(ByteBuffer buffer, int version) throws IOException {
+    var selections = FingerprintSettings.Selection.values(); // Stocked by ordinal, the order must not change
+    var kernels = FingerprintSettings.Kernel.values();
+    var selection = buffer.getInt();
+    var winnowingWindow = buffer.getInt();
+    var kernel = version >= KERNEL_VERSION ? buffer.getInt() : FingerprintSettings.Kernel.LEGACY.ordinal();
+    if (selection < 0 || selection >= selections.length || kernel < 0 || kernel >= kernels.length) {
+      throw new IOException(path + " contains unknown fingerprint settings");
+    }
+    try {
+      return new FingerprintSettings(selections[selection], winnowingWindow, kernels[kernel]);
+    } catch (IllegalArgumentException e) {
+      throw new IOException(path + " contains unknown fingerprint settings", e);
+    }
+  }
+
+  /**
+   * Reads bytes of the file.
+   *
+   * @return a buffer containing the bytes, null if the end of the file is reached
+   *         before.
+   */
+  private ByteBuffer readFully(long position, int size) throws IOException {
+    var buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) == -1) {
+        return null;
+      }
+    }
+    return buffer.flip();
+  }
+
+  /**
+   * Writes all the bytes of a buffer in the file.
+   *
+   * @return the amount of bytes written.
+   */
+  private int writeFully(ByteBuffer buffer, long position) throws IOException {
+    var size = buffer.remaining();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, position + size - buffer.remaining());
+    }
+    return size;
+  }
+
+  /**
+   * Writes the directory of a file to the storage device, so that the file
+   * renamed in it stays renamed if the system stops. Some systems can't open a
+   * directory, the renaming is then written by the system later.
+   *
+   * @param file is the path of the file.
+   */
+  private static void forceDirectory(Path file) {
+    var directory = file.toAbsolutePath().getParent();
+    try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      // The directory can't be opened on this system
+    }
+  }
+
+  /**
+   * Writes the appended segments to the storage device.
+   *
+   * @throws IOException if the file can't be written.
+   */
+  synchronized void force() throws IOException {
+    channel.force(false);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (compaction != null) {
+      compaction.abort();
+    }
+    channel.close();
+  }
+
+  /**
+   * Converts a text backup file, made of the name of a class followed by a line
+   * of its hashes separated by spaces, into a new store. If a class appears
+   * several times, its last hashes are kept.
+   *
+   * @param textBackupFile is the path of the text backup file.
+   * @param storeFile      is the path of the store to create.
+   * @throws IOException if the text backup file can't be read or the store can't
+   *                     be written.
+   */
+  static void migrate(Path textBackupFile, Path storeFile) throws IOException {
+    Objects.requireNonNull(textBackupFile, "textBackupFile is null");
+    Objects.requireNonNull(storeFile, "storeFile is null");
+    var artifacts = new LinkedHashMap<String, LinkedHashMap<String, long[]>>();
+    try (var reader = Files.newBufferedReader(textBackupFile)) {
+      String key;
+      String rawValue;
+      while ((key = reader.readLine()) != null && (rawValue = reader.readLine()) != null) {
+        var separator = key.lastIndexOf(" : "); // The key is made of the jar path and of the .class file name
+        if (separator == -1) {
+          continue;
+        }
+        var hashes = rawValue.isEmpty() ? new long[0]
+            : Arrays.stream(rawValue.split(" ")).mapToLong(Long::parseLong).toArray();
+        artifacts.computeIfAbsent(key.substring(0, separator), __ -> new LinkedHashMap<>())
+            .put(key.substring(separator + 3), hashes);
+      }
+    }
+    var temporaryFile = storeFile.resolveSibling(storeFile.getFileName() + ".migration");
+    Files.deleteIfExists(temporaryFile);
+    try (var store = open(temporaryFile)) {
+      for (Map.Entry<String, LinkedHashMap<String, long[]>> artifact : artifacts.entrySet()) {
+        var classes = artifact.getValue().entrySet().stream()
+            .map(entry -> new ClassRecord(entry.getKey(), NO_DIGEST, entry.getValue(), null))
+            .toList();
+        store.append(artifact.getKey(), FingerprintSettings.DEFAULT, null, classes); // The sketch is calculated at
+                                                                                    // the loading
+      }
+      store.channel.force(true);
+    }
+    Files.move(temporaryFile, storeFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    forceDirectory(storeFile);
+  }
+}
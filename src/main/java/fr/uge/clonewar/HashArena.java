@@ -0,0 +1,216 @@
+package fr.uge.clonewar;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Off-heap memory holding the hashes of the classes of the indexed artifacts,
+ * so that the heap only holds their metadata. The memory is allocated by chunks
+ * of direct buffers split in pages of {@link #PAGE_HASHES} hashes. The hashes of
+ * an artifact are appended to a {@link Run} owning its pages, the pages of a
+ * run are given back to the arena when it is freed and reused by the next runs:
+ * the memory of the arena is never given back to the system before the arena
+ * is dropped.
+ *
+ * <p>The arena doesn't limit its memory, its owner frees the least recently
+ * used runs when the {@link #usedBytes() used bytes} exceed its budget. The
+ * chunks are direct buffers: the memory they allocate is only limited by the
+ * -XX:MaxDirectMemorySize option of the virtual machine, the maximum size of
+ * the heap by default.
+ *
+ * <p>An arena isn't thread-safe, it is used with the lock of the analyses held.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+final class HashArena {
+
+  /**
+   * Amount of hashes of a page.
+   */
+  static final int PAGE_HASHES = 1024;
+
+  /**
+   * Amount of bytes of a page.
+   */
+  static final int PAGE_BYTES = PAGE_HASHES * Long.BYTES;
+
+  /**
+   * Amount of pages allocated at once.
+   */
+  private static final int CHUNK_PAGES = 128;
+
+  /**
+   * Pages which don't belong to any run.
+   */
+  private final ArrayList<LongBuffer> freePages = new ArrayList<>();
+
+  /**
+   * Amount of pages belonging to a run.
+   */
+  private long usedPages;
+
+  /**
+   * Amount of pages allocated by the arena.
+   */
+  private long allocatedPages;
+
+  /**
+   * Hashes of the classes of an artifact, stocked one after the other in the
+   * pages of the arena. Hashes can only be appended, the hashes of a class
+   * replaced by other ones are kept until the run is freed.
+   */
+  final class Run {
+
+    /**
+     * Pages of the run, in order.
+     */
+    private LongBuffer[] pages = new LongBuffer[0];
+
+    /**
+     * Amount of pages of the run.
+     */
+    private int pageCount;
+
+    /**
+     * Amount of hashes of the run.
+     */
+    private int size;
+
+    /**
+     * Creates an empty run, it doesn't have any page.
+     */
+    private Run() {}
+
+    /**
+     * Appends hashes at the end of the run, new pages are taken from the arena if
+     * needed.
+     *
+     * @param hashes is the array of the hashes.
+     * @return the position of the first appended hash in the run.
+     * @throws IllegalStateException if the run has been freed.
+     */
+    int append(long[] hashes) {
+      Objects.requireNonNull(hashes, "hashes is null");
+      if (pages == null) {
+        throw new IllegalStateException("the run has been freed");
+      }
+      var start = size;
+      var copied = 0;
+      while (copied < hashes.length) {
+        var pageIndex = size / PAGE_HASHES;
+        if (pageIndex == pageCount) {
+          if (pageCount == pages.length) {
+            pages = Arrays.copyOf(pages, Math.max(4, pageCount * 2));
+          }
+          pages[pageCount++] = takePage();
+        }
+        var offset = size % PAGE_HASHES;
+        var length = Math.min(PAGE_HASHES - offset, hashes.length - copied);
+        pages[pageIndex].put(offset, hashes, copied, length);
+        copied += length;
+        size += length;
+      }
+      return start;
+    }
+
+    /**
+     * Copies hashes of the run in an array.
+     *
+     * @param position    is the position of the first copied hash in the run.
+     * @param destination is the array the hashes are copied in.
+     * @param offset      is the index of the first copied hash in the array.
+     * @param length      is the amount of copied hashes.
+     * @throws IndexOutOfBoundsException if the hashes aren't in the run.
+     */
+    void copy(int position, long[] destination, int offset, int length) {
+      Objects.requireNonNull(destination, "destination is null");
+      Objects.checkFromIndexSize(position, length, size);
+      Objects.checkFromIndexSize(offset, length, destination.length);
+      while (length > 0) {
+        var pageOffset = position % PAGE_HASHES;
+        var copied = Math.min(PAGE_HASHES - pageOffset, length);
+        pages[position / PAGE_HASHES].get(pageOffset, destination, offset, copied);
+        position += copied;
+        offset += copied;
+        length -= copied;
+      }
+    }
+
+    /**
+     * Returns a copy of hashes of the run.
+     *
+     * @param position is the position of the first hash in the run.
+     * @param length   is the amount of hashes.
+     * @return a new array of the hashes.
+     */
+    long[] toArray(int position, int length) {
+      var hashes = new long[length];
+      copy(position, hashes, 0, length);
+      return hashes;
+    }
+
+    /**
+     * Gives the pages of the run back to the arena. The run can't be used
+     * afterwards, freeing it again does nothing.
+     */
+    void free() {
+      if (pages == null) {
+        return;
+      }
+      for (var i = 0; i < pageCount; i++) {
+        freePages.add(pages[i]);
+      }
+      usedPages -= pageCount;
+      pages = null;
+      pageCount = 0;
+      size = 0;
+    }
+  }
+
+  /**
+   * Creates an empty run.
+   *
+   * @return the run.
+   */
+  Run newRun() {
+    return new Run();
+  }
+
+  /**
+   * Takes a free page, a new chunk of pages is allocated if there isn't any.
+   */
+  private LongBuffer takePage() {
+    if (freePages.isEmpty()) {
+      var chunk = ByteBuffer.allocateDirect(CHUNK_PAGES * PAGE_BYTES).order(ByteOrder.nativeOrder());
+      for (var i = 0; i < CHUNK_PAGES; i++) {
+        freePages.add(chunk.slice(i * PAGE_BYTES, PAGE_BYTES).order(ByteOrder.nativeOrder()).asLongBuffer());
+      }
+      allocatedPages += CHUNK_PAGES;
+    }
+    usedPages++;
+    return freePages.remove(freePages.size() - 1);
+  }
+
+  /**
+   * Returns the amount of bytes belonging to the runs.
+   *
+   * @return the used memory.
+   */
+  long usedBytes() {
+    return usedPages * PAGE_BYTES;
+  }
+
+  /**
+   * Returns the amount of bytes allocated by the arena, the free pages included.
+   *
+   * @return the allocated memory.
+   */
+  long allocatedBytes() {
+    return allocatedPages * PAGE_BYTES;
+  }
+}
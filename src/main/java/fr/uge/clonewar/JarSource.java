@@ -0,0 +1,505 @@
+package fr.uge.clonewar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the classes of a jar straight from the central directory of the zip
+ * file, which is mapped in memory. The jars nested in the jar, like the
+ * libraries of a Spring Boot fat jar (BOOT-INF/lib) or of a war (WEB-INF/lib),
+ * are read the same way without being extracted: a stored nested jar is a slice
+ * of its parent buffer, a compressed one is inflated in memory.
+ *
+ * <p>The classes are returned one by one by {@link #next()}. The name of a class
+ * of a nested jar is prefixed by the name of the nested jar followed by "!/".
+ * The digest of a class is made of its size and of its CRC-32 checksum, both
+ * read from the central directory, so that a class doesn't have to be inflated
+ * to know if it has changed.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+final class JarSource {
+
+  /**
+   * Signature of the end of central directory record.
+   */
+  private static final int END_SIGNATURE = 0x06054B50;
+
+  /**
+   * Signature of the ZIP64 end of central directory locator.
+   */
+  private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064B50;
+
+  /**
+   * Signature of the ZIP64 end of central directory record.
+   */
+  private static final int ZIP64_END_SIGNATURE = 0x06064B50;
+
+  /**
+   * Signature of a central directory file header.
+   */
+  private static final int CENTRAL_SIGNATURE = 0x02014B50;
+
+  /**
+   * Signature of a local file header.
+   */
+  private static final int LOCAL_SIGNATURE = 0x04034B50;
+
+  /**
+   * Identifier of the ZIP64 extended information extra field.
+   */
+  private static final int ZIP64_EXTRA_ID = 0x0001;
+
+  /**
+   * Size of the end of central directory record, without its comment.
+   */
+  private static final int END_SIZE = 22;
+
+  /**
+   * Size of the ZIP64 end of central directory locator.
+   */
+  private static final int ZIP64_LOCATOR_SIZE = 20;
+
+  /**
+   * Size of the ZIP64 end of central directory record, without its extensible
+   * data.
+   */
+  private static final int ZIP64_END_SIZE = 56;
+
+  /**
+   * Size of a central directory file header, without its variable fields.
+   */
+  private static final int CENTRAL_SIZE = 46;
+
+  /**
+   * Size of a local file header, without its variable fields.
+   */
+  private static final int LOCAL_SIZE = 30;
+
+  /**
+   * Maximum size of the comment of a zip file.
+   */
+  private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+  /**
+   * Compression method of the entries stored without compression.
+   */
+  private static final int STORED = 0;
+
+  /**
+   * Compression method of the deflated entries.
+   */
+  private static final int DEFLATED = 8;
+
+  /**
+   * Maximum amount of nested jars read inside each other, it protects from
+   * recursive archives.
+   */
+  private static final int MAX_NESTING = 4;
+
+  /**
+   * Zip archive whose central directory is being read.
+   */
+  private static final class Archive {
+
+    /**
+     * Prefix of the names of the entries of the archive.
+     */
+    private final String prefix;
+
+    /**
+     * Content of the archive, in little-endian order.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Amount of bytes found before the zip file, like the launch script of an
+     * executable jar. The offsets of the zip file are relative to it.
+     */
+    private final long base;
+
+    /**
+     * Amount of jars this archive is nested in.
+     */
+    private final int depth;
+
+    /**
+     * Position of the next central directory file header.
+     */
+    private int position;
+
+    /**
+     * Amount of central directory file headers not read yet.
+     */
+    private long remaining;
+
+    private Archive(String prefix, ByteBuffer buffer, long base, int depth, int position, long remaining) {
+      this.prefix = prefix;
+      this.buffer = buffer;
+      this.base = base;
+      this.depth = depth;
+      this.position = position;
+      this.remaining = remaining;
+    }
+  }
+
+  /**
+   * Class of the jar or of a nested jar.
+   */
+  static final class ClassEntry {
+
+    /**
+     * Name of the .class file, prefixed by the nested jars it belongs to.
+     */
+    private final String name;
+
+    /**
+     * Digest of the content of the class.
+     */
+    private final long digest;
+
+    /**
+     * Archive the class belongs to.
+     */
+    private final Archive archive;
+
+    /**
+     * Compression method of the class.
+     */
+    private final int method;
+
+    /**
+     * Size of the compressed content of the class.
+     */
+    private final long compressedSize;
+
+    /**
+     * Size of the content of the class.
+     */
+    private final long size;
+
+    /**
+     * Position of the local file header of the class in its archive.
+     */
+    private final long localHeader;
+
+    private ClassEntry(String name, long digest, Archive archive, int method, long compressedSize, long size,
+                       long localHeader) {
+      this.name = name;
+      this.digest = digest;
+      this.archive = archive;
+      this.method = method;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeader = localHeader;
+    }
+
+    /**
+     * Returns the name of the .class file, prefixed by the nested jars it belongs
+     * to.
+     *
+     * @return the name of the class.
+     */
+    String name() {
+      return name;
+    }
+
+    /**
+     * Returns the digest of the content of the class, made of its size and of its
+     * CRC-32 checksum.
+     *
+     * @return the digest of the class.
+     */
+    long digest() {
+      return digest;
+    }
+
+    /**
+     * Reads the byte code of the class, it is inflated if it is compressed.
+     *
+     * @return the byte code of the class.
+     * @throws IOException if the content of the class can't be read.
+     */
+    byte[] bytes() throws IOException {
+      var content = content(archive, localHeader, method, compressedSize, size, name);
+      if (method == DEFLATED) {
+        return content.array(); // Inflated in its own array
+      }
+      var bytes = new byte[content.remaining()];
+      content.get(bytes);
+      return bytes;
+    }
+  }
+
+  /**
+   * Archives whose central directory is being read, the most nested one on top.
+   */
+  private final ArrayDeque<Archive> archives = new ArrayDeque<>();
+
+  private JarSource(Archive archive) {
+    archives.push(archive);
+  }
+
+  /**
+   * Opens a jar and maps it in memory.
+   *
+   * @param jar is the path of the jar.
+   * @return the source of the classes of the jar.
+   * @throws IOException if the jar can't be read or isn't a valid zip file.
+   */
+  static JarSource open(Path jar) throws IOException {
+    Objects.requireNonNull(jar, "jar is null");
+    ByteBuffer buffer;
+    try (var channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+      var size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new ZipException(jar + " is too large");
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size); // The mapping stays valid once closed
+    }
+    return new JarSource(archive("", buffer, 0));
+  }
+
+  /**
+   * Returns the next class of the jar or of its nested jars.
+   *
+   * @return the next class, null if all the classes have been returned.
+   * @throws IOException if the jar isn't a valid zip file.
+   */
+  ClassEntry next() throws IOException {
+    while (!archives.isEmpty()) {
+      var archive = archives.peek();
+      if (archive.remaining == 0) {
+        archives.pop();
+        continue;
+      }
+      archive.remaining--;
+      var buffer = archive.buffer;
+      var header = archive.position;
+      if (header > buffer.limit() - CENTRAL_SIZE || buffer.getInt(header) != CENTRAL_SIGNATURE) {
+        throw new ZipException("invalid central directory in jar " + archive.prefix);
+      }
+      var method = Short.toUnsignedInt(buffer.getShort(header + 10));
+      var crc = Integer.toUnsignedLong(buffer.getInt(header + 16));
+      var compressedSize = Integer.toUnsignedLong(buffer.getInt(header + 20));
+      var size = Integer.toUnsignedLong(buffer.getInt(header + 24));
+      var nameLength = Short.toUnsignedInt(buffer.getShort(header + 28));
+      var extraLength = Short.toUnsignedInt(buffer.getShort(header + 30));
+      var commentLength = Short.toUnsignedInt(buffer.getShort(header + 32));
+      var localHeader = Integer.toUnsignedLong(buffer.getInt(header + 42));
+      if (nameLength + extraLength + commentLength > buffer.limit() - header - CENTRAL_SIZE) {
+        throw new ZipException("truncated central directory in jar " + archive.prefix);
+      }
+      archive.position = header + CENTRAL_SIZE + nameLength + extraLength + commentLength;
+      var name = string(buffer, header + CENTRAL_SIZE, nameLength);
+      var isClass = name.endsWith(".class");
+      var isJar = name.endsWith(".jar") && archive.depth < MAX_NESTING;
+      if (!isClass && !isJar) {
+        continue;
+      }
+      if (size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localHeader == 0xFFFFFFFFL) { // ZIP64 entry
+        var fields = (size == 0xFFFFFFFFL ? 1 : 0) + (compressedSize == 0xFFFFFFFFL ? 1 : 0)
+            + (localHeader == 0xFFFFFFFFL ? 1 : 0);
+        var extra = zip64Extra(buffer, header + CENTRAL_SIZE + nameLength, extraLength, fields * Long.BYTES);
+        if (size == 0xFFFFFFFFL) {
+          size = buffer.getLong(extra);
+          extra += Long.BYTES;
+        }
+        if (compressedSize == 0xFFFFFFFFL) {
+          compressedSize = buffer.getLong(extra);
+          extra += Long.BYTES;
+        }
+        if (localHeader == 0xFFFFFFFFL) {
+          localHeader = buffer.getLong(extra);
+        }
+      }
+      if (isClass) {
+        return new ClassEntry(archive.prefix + name, size << 32 | crc, archive, method, compressedSize, size,
+            localHeader);
+      }
+      var nestedName = archive.prefix + name;
+      var content = content(archive, localHeader, method, compressedSize, size, nestedName);
+      try {
+        archives.push(archive(nestedName + "!/", content, archive.depth + 1));
+      } catch (ZipException e) {
+        // A resource named like a jar which isn't a zip file, it doesn't contain any class
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finds the central directory of a zip file.
+   *
+   * @param prefix is the prefix of the names of the entries of the archive.
+   * @param buffer is the content of the zip file.
+   * @param depth  is the amount of jars the archive is nested in.
+   * @return the archive, ready to read its central directory.
+   * @throws ZipException if the buffer isn't a valid zip file.
+   */
+  private static Archive archive(String prefix, ByteBuffer buffer, int depth) throws ZipException {
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    var end = -1;
+    var lowest = Math.max(0, buffer.limit() - END_SIZE - MAX_COMMENT_SIZE);
+    for (var position = buffer.limit() - END_SIZE; position >= lowest; position--) { // The comment is at the end
+      if (buffer.getInt(position) == END_SIGNATURE) {
+        end = position;
+        break;
+      }
+    }
+    if (end == -1) {
+      throw new ZipException("end of central directory not found in jar " + prefix);
+    }
+    long entries = Short.toUnsignedInt(buffer.getShort(end + 10));
+    long directorySize = Integer.toUnsignedLong(buffer.getInt(end + 12));
+    long directoryOffset = Integer.toUnsignedLong(buffer.getInt(end + 16));
+    long directoryEnd = end;
+    var locator = end - ZIP64_LOCATOR_SIZE;
+    if (locator >= 0 && buffer.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) { // More entries or bytes than the
+                                                                              // record can tell
+      var zip64End = zip64End(buffer, locator, prefix);
+      entries = buffer.getLong(zip64End + 32);
+      directorySize = buffer.getLong(zip64End + 40);
+      directoryOffset = buffer.getLong(zip64End + 48);
+      directoryEnd = zip64End;
+    }
+    var base = directoryEnd - directorySize - directoryOffset; // Bytes prepended to the zip file
+    var directory = base + directoryOffset;
+    if (base < 0 || directory > Integer.MAX_VALUE) {
+      throw new ZipException("invalid central directory in jar " + prefix);
+    }
+    return new Archive(prefix, buffer, base, depth, (int) directory, entries);
+  }
+
+  /**
+   * Finds the ZIP64 end of central directory record of a zip file.
+   *
+   * @return the position of the record.
+   * @throws ZipException if the record isn't found.
+   */
+  private static int zip64End(ByteBuffer buffer, int locator, String prefix) throws ZipException {
+    var position = locator - ZIP64_END_SIZE; // Usually right before the locator, without extensible data
+    if (position >= 0 && buffer.getInt(position) == ZIP64_END_SIGNATURE) {
+      return position;
+    }
+    var offset = buffer.getLong(locator + 8); // Relative to the start of the zip file
+    if (offset < 0 || offset > buffer.limit() - ZIP64_END_SIZE || buffer.getInt((int) offset) != ZIP64_END_SIGNATURE) {
+      throw new ZipException("ZIP64 end of central directory not found in jar " + prefix);
+    }
+    return (int) offset;
+  }
+
+  /**
+   * Finds the ZIP64 extended information of a central directory file header.
+   *
+   * @param needed is the amount of bytes of the fields read from the extended
+   *               information.
+   * @return the position of the first field of the extended information.
+   * @throws ZipException if there isn't any extended information or if it is
+   *                      shorter than needed.
+   */
+  private static int zip64Extra(ByteBuffer buffer, int position, int length, int needed) throws ZipException {
+    var end = position + length;
+    while (position + 4 <= end) {
+      var id = Short.toUnsignedInt(buffer.getShort(position));
+      var size = Short.toUnsignedInt(buffer.getShort(position + 2));
+      if (id == ZIP64_EXTRA_ID) {
+        if (size < needed || size > end - position - 4) {
+          throw new ZipException("truncated ZIP64 extended information");
+        }
+        return position + 4;
+      }
+      position += 4 + size;
+    }
+    throw new ZipException("missing ZIP64 extended information");
+  }
+
+  /**
+   * Reads the content of an entry of an archive. The content of a stored entry
+   * is a slice of the buffer of the archive, the content of a deflated entry is
+   * inflated in an array wrapped by the returned buffer.
+   *
+   * @param archive        is the archive of the entry.
+   * @param localHeader    is the position of the local file header of the entry,
+   *                       relative to the zip file.
+   * @param method         is the compression method of the entry.
+   * @param compressedSize is the size of the compressed content.
+   * @param size           is the size of the content.
+   * @param name           is the name of the entry.
+   * @return the content of the entry.
+   * @throws IOException if the content can't be read.
+   */
+  private static ByteBuffer content(Archive archive, long localHeader, int method, long compressedSize, long size,
+                                String name) throws IOException {
+    var buffer = archive.buffer;
+    var header = archive.base + localHeader;
+    if (header < 0 || header > buffer.limit() - LOCAL_SIZE || buffer.getInt((int) header) != LOCAL_SIGNATURE) {
+      throw new ZipException("invalid local header for " + name);
+    }
+    var nameLength = Short.toUnsignedInt(buffer.getShort((int) header + 26));
+    var extraLength = Short.toUnsignedInt(buffer.getShort((int) header + 28));
+    var data = header + LOCAL_SIZE + nameLength + extraLength;
+    if (size > Integer.MAX_VALUE || compressedSize > buffer.limit() - data) {
+      throw new ZipException("invalid size for " + name);
+    }
+    var compressed = buffer.slice((int) data, (int) compressedSize);
+    return switch (method) {
+      case STORED -> {
+        if (compressedSize != size) {
+          throw new ZipException("invalid size for " + name);
+        }
+        yield compressed;
+      }
+      case DEFLATED -> {
+        var content = new byte[(int) size];
+        inflate(compressed, content, name);
+        yield ByteBuffer.wrap(content);
+      }
+      default -> throw new ZipException("unsupported compression method " + method + " for " + name);
+    };
+  }
+
+  /**
+   * Inflates deflated data.
+   *
+   * @throws ZipException if the data are corrupted.
+   */
+  private static void inflate(ByteBuffer compressed, byte[] content, String name) throws ZipException {
+    var inflater = new Inflater(true); // Raw deflate data, without zlib header
+    try {
+      inflater.setInput(compressed);
+      var length = 0;
+      while (length < content.length) {
+        var inflated = inflater.inflate(content, length, content.length - length);
+        if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+          throw new ZipException("truncated content for " + name);
+        }
+        length += inflated;
+      }
+    } catch (DataFormatException e) {
+      throw new ZipException("corrupted content for " + name + ": " + e.getMessage());
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Decodes a string of the zip file.
+   */
+  private static String string(ByteBuffer buffer, int position, int length) {
+    var bytes = new byte[length];
+    buffer.get(position, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,157 @@
+package fr.uge.clonewar;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.LongPredicate;
+
+/**
+ * Growable list of primitive long values. It is used instead of an ArrayList of
+ * Long to stock hash values without boxing each of them.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+final class LongList {
+
+  /**
+   * Default capacity of a list.
+   */
+  private static final int DEFAULT_CAPACITY = 16;
+
+  /**
+   * Array where the values are stocked.
+   */
+  private long[] values;
+
+  /**
+   * Amount of values of the list.
+   */
+  private int size;
+
+  /**
+   * Creates an empty list.
+   */
+  LongList() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an empty list able to stock the given amount of values without being
+   * resized.
+   *
+   * @param capacity is the initial capacity of the list.
+   */
+  LongList(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity is negative");
+    }
+    values = new long[capacity];
+  }
+
+  /**
+   * Adds a value at the end of the list.
+   *
+   * @param value is the value to add.
+   */
+  void add(long value) {
+    if (size == values.length) {
+      grow(size + 1);
+    }
+    values[size++] = value;
+  }
+
+  /**
+   * Adds all the values of the given array at the end of the list.
+   *
+   * @param array is the array of values to add.
+   */
+  void addAll(long[] array) {
+    Objects.requireNonNull(array, "array is null");
+    if (size + array.length > values.length) {
+      grow(size + array.length);
+    }
+    System.arraycopy(array, 0, values, size, array.length);
+    size += array.length;
+  }
+
+  /**
+   * Returns the value at the given index.
+   *
+   * @param index is the index of the value.
+   * @return the value at the given index.
+   */
+  long get(int index) {
+    Objects.checkIndex(index, size);
+    return values[index];
+  }
+
+  /**
+   * Returns the amount of values of the list.
+   *
+   * @return the size of the list.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Tells if the list doesn't contain any value.
+   *
+   * @return true if the list is empty.
+   */
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Removes all the values of the list. The capacity of the list is kept.
+   */
+  void clear() {
+    size = 0;
+  }
+
+  /**
+   * Removes all the values of the list matching the given predicate. The order
+   * of the remaining values is kept.
+   *
+   * @param filter is the predicate telling which values are removed.
+   * @return true if at least one value has been removed.
+   */
+  boolean removeIf(LongPredicate filter) {
+    Objects.requireNonNull(filter, "filter is null");
+    var newSize = 0;
+    for (var i = 0; i < size; i++) {
+      var value = values[i];
+      if (!filter.test(value)) {
+        values[newSize++] = value;
+      }
+    }
+    var removed = newSize != size;
+    size = newSize;
+    return removed;
+  }
+
+  /**
+   * Makes an array containing the values of the list.
+   *
+   * @return a new array of the values of the list.
+   */
+  long[] toArray() {
+    return Arrays.copyOf(values, size);
+  }
+
+  /**
+   * Increases the capacity of the list.
+   *
+   * @param minCapacity is the capacity needed.
+   */
+  private void grow(int minCapacity) {
+    var newCapacity = Math.max(minCapacity, Math.max(DEFAULT_CAPACITY, values.length << 1));
+    values = Arrays.copyOf(values, newCapacity);
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(toArray());
+  }
+}
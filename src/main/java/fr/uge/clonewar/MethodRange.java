@@ -0,0 +1,54 @@
+package fr.uge.clonewar;
+
+import java.util.Objects;
+
+/**
+ * Method of an analyzed class and the range of the hashes of the class it has
+ * produced. The hashes of the methods of a class are consecutive, in the order
+ * of the methods, so the range of a method starts where the range of the
+ * previous one ends.
+ *
+ * @param name       is the name of the method.
+ * @param descriptor is the descriptor of the method.
+ * @param firstLine  is the first source line of the method, {@link #NO_LINE} if
+ *                   the class doesn't contain the line numbers.
+ * @param lastLine   is the last source line of the method, {@link #NO_LINE} if
+ *                   the class doesn't contain the line numbers.
+ * @param hashCount  is the amount of hashes produced by the method.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+record MethodRange(String name, String descriptor, int firstLine, int lastLine, int hashCount) {
+
+  /**
+   * Line of a method whose line numbers aren't known.
+   */
+  static final int NO_LINE = -1;
+
+  /**
+   * Creates a method range.
+   */
+  MethodRange {
+    Objects.requireNonNull(name, "name is null");
+    Objects.requireNonNull(descriptor, "descriptor is null");
+    if (hashCount < 0) {
+      throw new IllegalArgumentException("hashCount is negative");
+    }
+  }
+
+  /**
+   * Makes a string representation of the method and of its lines.
+   *
+   * @return the string representation of the method.
+   */
+  @Override
+  public String toString() {
+    var method = name + descriptor;
+    if (firstLine == NO_LINE) {
+      return method;
+    }
+    return firstLine == lastLine ? method + " (ligne " + firstLine + ")"
+        : method + " (lignes " + firstLine + " à " + lastLine + ")";
+  }
+}
@@ -0,0 +1,155 @@
+package fr.uge.clonewar;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * MinHash sketches of the distinct hashes of the artifacts. The sketch of an
+ * artifact keeps, for each of {@link #SKETCH_SIZE} hash functions, the minimal
+ * value of the function over the hashes of the artifact. The proportion of
+ * equal values between two sketches estimates the Jaccard similarity of the
+ * distinct hashes of the two artifacts, whatever their size.
+ *
+ * <p>The sketches are split in bands to find the pairs of similar artifacts
+ * without comparing all of them (locality-sensitive hashing): two artifacts
+ * are candidates if all the values of at least one of their bands are equal.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+final class MinHash {
+
+  /**
+   * Amount of hash functions, being the amount of values of a sketch.
+   */
+  static final int SKETCH_SIZE = 128;
+
+  /**
+   * Minimal probability for a pair of artifacts whose similarity is the threshold
+   * to share a band, used to choose the size of the bands.
+   */
+  private static final double CANDIDATE_PROBABILITY = 0.95;
+
+  /**
+   * Margin below the threshold under which the similarity estimated by the
+   * sketches of a candidate pair isn't checked by an exact comparison. It is four
+   * times the largest standard deviation of the estimation.
+   */
+  static final double ESTIMATION_MARGIN = 4 * Math.sqrt(0.25 / SKETCH_SIZE);
+
+  /**
+   * Seeds of the hash functions.
+   */
+  private static final long[] SEEDS = new long[SKETCH_SIZE];
+
+  static {
+    var seed = 0x2545F4914F6CDD1DL;
+    for (var i = 0; i < SKETCH_SIZE; i++) {
+      seed += 0x9E3779B97F4A7C15L; // Sequence of the SplitMix64 generator, the seeds never change
+      SEEDS[i] = mix(seed);
+    }
+  }
+
+  private MinHash() {
+    throw new AssertionError();
+  }
+
+  /**
+   * Calculates the MinHash sketch of hashes.
+   *
+   * @param hashes is the array of the hashes, they don't need to be distinct.
+   * @return the sketch of the hashes, empty if there isn't any hash.
+   */
+  static long[] sketch(long[] hashes) {
+    Objects.requireNonNull(hashes, "hashes is null");
+    if (hashes.length == 0) {
+      return new long[0];
+    }
+    var sketch = new long[SKETCH_SIZE];
+    Arrays.fill(sketch, Long.MAX_VALUE);
+    for (var hash : hashes) {
+      var mixed = mix(hash); // Mixed once, each function is then a cheap xor with its seed
+      for (var i = 0; i < SKETCH_SIZE; i++) {
+        var value = mix(mixed ^ SEEDS[i]);
+        if (value < sketch[i]) {
+          sketch[i] = value;
+        }
+      }
+    }
+    return sketch;
+  }
+
+  /**
+   * Estimates the Jaccard similarity of the distinct hashes of two artifacts from
+   * their sketches.
+   *
+   * @param sketch1 is the sketch of the first artifact.
+   * @param sketch2 is the sketch of the second artifact.
+   * @return the estimated similarity, between 0 and 1.
+   */
+  static double similarity(long[] sketch1, long[] sketch2) {
+    Objects.requireNonNull(sketch1, "sketch1 is null");
+    Objects.requireNonNull(sketch2, "sketch2 is null");
+    if (sketch1.length != SKETCH_SIZE || sketch2.length != SKETCH_SIZE) {
+      return 0;
+    }
+    var equal = 0;
+    for (var i = 0; i < SKETCH_SIZE; i++) {
+      if (sketch1[i] == sketch2[i]) {
+        equal++;
+      }
+    }
+    return (double) equal / SKETCH_SIZE;
+  }
+
+  /**
+   * Returns the amount of values of a band so that a pair of artifacts whose
+   * similarity is the threshold shares at least one band with a high probability.
+   * The bigger the bands, the less candidates are generated.
+   *
+   * @param threshold is the minimal similarity of the searched pairs, between 0
+   *                  (excluded) and 1.
+   * @return the amount of values of each band.
+   */
+  static int rowsPerBand(double threshold) {
+    if (!(threshold > 0 && threshold <= 1)) {
+      throw new IllegalArgumentException("threshold must be between 0 (excluded) and 1");
+    }
+    var rows = 1;
+    for (var candidate = 2; candidate <= SKETCH_SIZE; candidate++) {
+      var bands = SKETCH_SIZE / candidate;
+      // Probability that at least one of the bands is equal when each value is equal with the threshold probability
+      var probability = 1 - Math.pow(1 - Math.pow(threshold, candidate), bands);
+      if (probability < CANDIDATE_PROBABILITY) {
+        break;
+      }
+      rows = candidate;
+    }
+    return rows;
+  }
+
+  /**
+   * Calculates the key of a band of a sketch.
+   *
+   * @param sketch is the sketch.
+   * @param band   is the index of the band.
+   * @param rows   is the amount of values of a band.
+   * @return the key of the band.
+   */
+  static long bandKey(long[] sketch, int band, int rows) {
+    var key = (long) band; // The same values in different bands don't make a pair candidate
+    for (var i = band * rows; i < (band + 1) * rows; i++) {
+      key = mix(key * 31 + sketch[i]);
+    }
+    return key;
+  }
+
+  /**
+   * Mixes the bits of a value with the finalizer of the 64-bit MurmurHash3.
+   */
+  private static long mix(long value) {
+    value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+    value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+    return value ^ (value >>> 33);
+  }
+}
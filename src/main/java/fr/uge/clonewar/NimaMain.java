@@ -7,7 +7,10 @@ import io.helidon.nima.webserver.cors.CrossOriginConfig;
 import io.helidon.nima.webserver.http.HttpRouting;
 import io.helidon.nima.webserver.staticcontent.StaticContentSupport;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Locale;
 
 /**
  * Allow to use Helidon Nima server.
@@ -22,6 +25,27 @@ public class NimaMain {
    */
   private static final Http.HeaderValue SERVER = Http.Header.create(Http.Header.SERVER, "Nima");
 
+  /**
+   * Content type of the metrics, the version 0.0.4 of the Prometheus text format.
+   */
+  private static final Http.HeaderValue METRICS_CONTENT_TYPE = Http.Header.create(Http.Header.CONTENT_TYPE,
+      "text/plain; version=0.0.4; charset=utf-8");
+
+  /**
+   * Binary hashes backup file path.
+   */
+  static final Path HASHES_BACKUP_FILE = Path.of("hashesBackupFile.bin");
+
+  /**
+   * Text hashes backup file path used by the previous versions of the application.
+   */
+  private static final Path TEXT_HASHES_BACKUP_FILE = Path.of("hashesBackupFile.txt");
+
+  /**
+   * Already analyzed artifacts backup file path.
+   */
+  static final Path JARS_BACKUP_FILE = Path.of("jarsBackupFile.txt");
+
   /**
    * CorsSupport instance used to configure cross-origin resource sharing (CORS).
    */
@@ -32,17 +56,204 @@ public class NimaMain {
       .build();
 
   /**
-   * Allow to configure some server routes.
+   * Allow to configure some server routes. The backup files are synchronized and
+   * closed when the virtual machine stops.
    *
    * @param rules HTTP routing builder
    */
   static void routing(HttpRouting.Builder rules) {
+    var asm = new Asm(HASHES_BACKUP_FILE, JARS_BACKUP_FILE, asmOptions());
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> closeOnShutdown(asm), "clonewar-shutdown"));
     rules.addFilter((chain, req, res) -> {
           res.header(SERVER);
           chain.proceed();
         })
-        .register("/", CORS_SUPPORT, new Asm(Path.of("hashesBackupFile.txt"), Path.of("jarsBackupFile.txt")))
-        .register("/", CORS_SUPPORT, StaticContentSupport.builder("/static-content"));
+        .register("/", CORS_SUPPORT, asm, new AnalysisJobs(asm, new BulkIngest(asm, ingestParallelism(), ingestBatchSize()),
+            maxConcurrentJobs(), maxQueuedJobs()))
+        .register("/", CORS_SUPPORT, StaticContentSupport.builder("/static-content"))
+        .get("/metrics", (req, res) -> res.header(METRICS_CONTENT_TYPE).send(asm.metrics())); // Scraped by Prometheus
+  }
+
+  /**
+   * Closes the object analyzing the jars when the virtual machine stops, so that
+   * the waiting results are saved.
+   *
+   * @param asm is the object analyzing the jars.
+   */
+  private static void closeOnShutdown(Asm asm) {
+    try {
+      asm.close();
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Une erreur est survenue lors de la fermeture des fichiers de sauvegarde : " + e.getMessage());
+    }
+  }
+
+  /**
+   * Returns the maximum amount of classes of a jar analyzed at the same time. It
+   * is given by the "clonewar.parallelism" system property, the amount of
+   * available processors is used by default.
+   *
+   * @return the parallelism of the analyses.
+   */
+  static int parallelism() {
+    return Integer.getInteger("clonewar.parallelism", Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Returns the maximum amount of artifacts analyzed at the same time by the
+   * background jobs. It is given by the "clonewar.maxConcurrentJobs" system
+   * property, 2 by default.
+   *
+   * @return the maximum amount of running jobs.
+   */
+  static int maxConcurrentJobs() {
+    return Integer.getInteger("clonewar.maxConcurrentJobs", 2);
+  }
+
+  /**
+   * Returns the maximum amount of background jobs waiting to be run, the next
+   * submitted jobs are rejected. It is given by the "clonewar.maxQueuedJobs"
+   * system property, 100 by default.
+   *
+   * @return the maximum amount of waiting jobs.
+   */
+  static int maxQueuedJobs() {
+    return Integer.getInteger("clonewar.maxQueuedJobs", 100);
+  }
+
+  /**
+   * Returns the maximum amount of jars analyzed at the same time by a bulk
+   * ingestion. It is given by the "clonewar.ingestParallelism" system property, 4
+   * by default.
+   *
+   * @return the parallelism of the bulk ingestions.
+   */
+  static int ingestParallelism() {
+    return Integer.getInteger("clonewar.ingestParallelism", 4);
+  }
+
+  /**
+   * Returns the amount of jars analyzed by a bulk ingestion which are saved
+   * together. It is given by the "clonewar.ingestBatchSize" system property, 100
+   * by default.
+   *
+   * @return the size of the batches of a bulk ingestion.
+   */
+  static int ingestBatchSize() {
+    return Integer.getInteger("clonewar.ingestBatchSize", 100);
+  }
+
+  /**
+   * Returns the settings used to calculate the hashes of the analyzed jars. If
+   * the "clonewar.winnowingWindow" system property is given, only the hashes
+   * selected by winnowing over windows of this size are kept, otherwise all the
+   * hashes are kept. The "clonewar.hashKernel" system property gives the rolling
+   * hash formula, "legacy" by default so that the analyzed jars stay comparable,
+   * or "polynomial64".
+   *
+   * @return the fingerprint settings.
+   * @throws IllegalArgumentException if the kernel is unknown.
+   */
+  static FingerprintSettings fingerprintSettings() {
+    var winnowingWindow = Integer.getInteger("clonewar.winnowingWindow");
+    var settings = winnowingWindow == null ? FingerprintSettings.DEFAULT : FingerprintSettings.winnowing(winnowingWindow);
+    var kernel = System.getProperty("clonewar.hashKernel", "legacy");
+    return settings.withKernel(FingerprintSettings.Kernel.valueOf(kernel.toUpperCase(Locale.ROOT)));
+  }
+
+  /**
+   * Returns the policy telling when the backup files are synchronized with the
+   * storage device. The "clonewar.durability" system property gives the moment:
+   * "artifact" after each analysis, "interval" at most once per interval or
+   * "never", "interval" by default. The "clonewar.syncIntervalMillis" system
+   * property gives the interval, 1000 ms by default.
+   *
+   * @return the durability policy.
+   * @throws IllegalArgumentException if the durability is unknown.
+   */
+  static PersistenceWriter.Policy durabilityPolicy() {
+    var defaultPolicy = PersistenceWriter.Policy.DEFAULT;
+    return PersistenceWriter.Policy.of(System.getProperty("clonewar.durability", defaultPolicy.durability().name()),
+        Long.getLong("clonewar.syncIntervalMillis", defaultPolicy.intervalMillis()));
+  }
+
+  /**
+   * Returns the maximum amount of stocked artifacts whose hashes are kept in
+   * memory. It is given by the "clonewar.fingerprintCache" system property, 0 by
+   * default: all the stocked hashes are read at the start. Otherwise the server
+   * starts once the classes of the artifacts are read and the hashes of an
+   * artifact are read the first time it is compared.
+   *
+   * @return the size of the cache of the hashes, 0 if all the hashes are read.
+   */
+  static int fingerprintCacheSize() {
+    return Integer.getInteger("clonewar.fingerprintCache", 0);
+  }
+
+  /**
+   * Returns the amount of memory the hashes kept in memory should not exceed.
+   * It is given in megabytes by the "clonewar.fingerprintMemoryMb" system
+   * property, 0 by default. With a positive budget, the hashes are read like
+   * with a cache of the hashes and the least recently compared
+   * artifacts are unloaded when their hashes, off the heap, and the fingerprints
+   * and the indexes of the methods built from them, on the heap, exceed the
+   * budget. The two most recently compared artifacts and the ones being analyzed
+   * are kept, so the budget can be exceeded by their memory, and the temporary
+   * postings of the statistics of the hashes aren't counted.
+   *
+   * <p>A budget is opt-in because the hashes read on demand aren't indexed: the
+   * search of the top clones and of the similar pairs reads and merges every
+   * artifact, and the comparisons read the hashes with the lock of the analyses
+   * held. With 0 and a cache of the hashes of size 0, all the stocked hashes are
+   * read at the start and indexed, their postings and their fingerprints stay on
+   * the heap, only limited by -Xmx, and the hashes stay off the heap, only
+   * limited by -XX:MaxDirectMemorySize, the maximum size of the heap by default.
+   *
+   * @return the memory budget of the hashes in bytes, 0 if it isn't limited.
+   */
+  static long fingerprintMemoryBudget() {
+    return Long.getLong("clonewar.fingerprintMemoryMb", 0) * 1024 * 1024;
+  }
+
+  /**
+   * Returns the size and the time to live of the cache of the comparisons. The
+   * "clonewar.comparisonCacheSize" system property gives the maximum amount of
+   * results kept, 10000 by default and 0 to disable the cache. The
+   * "clonewar.comparisonCacheTtlMillis" system property gives the time a result
+   * is kept, 10 minutes by default.
+   *
+   * @return the policy of the cache of the comparisons.
+   */
+  static ComparisonCache.Policy comparisonCachePolicy() {
+    var defaultPolicy = ComparisonCache.Policy.DEFAULT;
+    return new ComparisonCache.Policy(Integer.getInteger("clonewar.comparisonCacheSize", defaultPolicy.capacity()),
+        Long.getLong("clonewar.comparisonCacheTtlMillis", defaultPolicy.ttlMillis()));
+  }
+
+  /**
+   * Returns the options of the analyses given by the system properties.
+   *
+   * @return the options of the object analyzing the jars.
+   */
+  static Asm.Options asmOptions() {
+    return new Asm.Options(parallelism(), fingerprintSettings(), durabilityPolicy(), fingerprintCacheSize(),
+        fingerprintMemoryBudget(), comparisonCachePolicy());
+  }
+
+  /**
+   * Converts the text hashes backup file of the previous versions into the binary
+   * one. It is only done once, if the binary backup file doesn't exist yet.
+   */
+  static void migrateHashesBackupFile() {
+    if (Files.exists(HASHES_BACKUP_FILE) || !Files.exists(TEXT_HASHES_BACKUP_FILE)) {
+      return;
+    }
+    try {
+      FingerprintStore.migrate(TEXT_HASHES_BACKUP_FILE, HASHES_BACKUP_FILE);
+      System.err.println("Le fichier de sauvegarde \"" + TEXT_HASHES_BACKUP_FILE + "\" a été converti en \"" + HASHES_BACKUP_FILE + "\".");
+    } catch (IOException e) {
+      System.err.println("Une erreur est survenue lors de la conversion du fichier de sauvegarde \"" + TEXT_HASHES_BACKUP_FILE + "\" : " + e.getMessage());
+    }
   }
 
   /**
@@ -51,9 +262,10 @@ public class NimaMain {
    * @param args command line arguments
    */
   public static void main(String[] args) {
+    migrateHashesBackupFile();
     WebServer ws = WebServer.builder()
         .routing(NimaMain::routing)
         .port(8080)
         .start();
   }
-}
\ No newline at end of file
+}
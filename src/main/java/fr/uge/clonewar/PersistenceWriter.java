@@ -0,0 +1,336 @@
+package fr.uge.clonewar;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Writes the results of the analyses in the backup files on a dedicated thread,
+ * so that the analyses don't wait for the storage device. The analyzed jars
+ * backup file stays open, the jars analyzed at the same time are appended by a
+ * single write and the backup files are synchronized with the storage device
+ * in groups according to the {@link Policy}: the analyses finished while a
+ * synchronization is running share the next one.
+ *
+ * <p>The hashes of an artifact are written in the hashes backup file before the
+ * artifact is given to this writer, the hashes backup file is synchronized
+ * before the analyzed jars backup file so that a listed jar always has its
+ * hashes saved.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+final class PersistenceWriter implements Closeable {
+
+  /**
+   * When the backup files are synchronized with the storage device.
+   */
+  enum Durability {
+    /**
+     * Once per analyzed artifact, an analysis is over once its result is on the
+     * storage device. The artifacts analyzed at the same time share the same
+     * synchronization.
+     */
+    ARTIFACT,
+    /**
+     * At most once per interval, an analysis is over once its result is written
+     * in the backup files.
+     */
+    INTERVAL,
+    /**
+     * Never, the operating system writes the backup files on the storage device
+     * when it wants to.
+     */
+    NEVER
+  }
+
+  /**
+   * Durability policy of the backup files.
+   *
+   * @param durability     tells when the backup files are synchronized.
+   * @param intervalMillis is the interval between two synchronizations in the
+   *                       {@link Durability#INTERVAL} mode, in milliseconds.
+   */
+  record Policy(Durability durability, long intervalMillis) {
+
+    /**
+     * Policy used when nothing else is specified, the backup files are
+     * synchronized every second.
+     */
+    static final Policy DEFAULT = new Policy(Durability.INTERVAL, 1_000);
+
+    /**
+     * Creates a policy.
+     */
+    Policy {
+      Objects.requireNonNull(durability, "durability is null");
+      if (intervalMillis <= 0) {
+        throw new IllegalArgumentException("intervalMillis must be positive");
+      }
+    }
+
+    /**
+     * Creates a policy from its name ("artifact", "interval" or "never").
+     *
+     * @param durability     is the name of the durability.
+     * @param intervalMillis is the interval between two synchronizations.
+     * @return the policy.
+     * @throws IllegalArgumentException if the durability is unknown.
+     */
+    static Policy of(String durability, long intervalMillis) {
+      Objects.requireNonNull(durability, "durability is null");
+      return new Policy(Durability.valueOf(durability.toUpperCase(Locale.ROOT)), intervalMillis);
+    }
+  }
+
+  /**
+   * Durability policy of the backup files.
+   */
+  private final Policy policy;
+
+  /**
+   * Metrics where the durations of the writes and of the synchronizations are
+   * recorded.
+   */
+  private final AnalysisMetrics metrics;
+
+  /**
+   * Synchronizes the hashes backup file with the storage device.
+   */
+  private final Flushable hashesBackupFile;
+
+  /**
+   * Channel opened on the analyzed jars backup file, each write is appended.
+   */
+  private final FileChannel jarsChannel;
+
+  /**
+   * Thread writing and synchronizing the backup files.
+   */
+  private final Thread thread;
+
+  /**
+   * Lock protecting the waiting requests.
+   */
+  private final Object lock = new Object();
+
+  /**
+   * Jars to append to the analyzed jars backup file.
+   */
+  private final ArrayList<String> pendingJars = new ArrayList<>();
+
+  /**
+   * Requests completed once the jars are written, or synchronized depending on
+   * the policy.
+   */
+  private final ArrayList<CompletableFuture<Void>> pendingWrites = new ArrayList<>();
+
+  /**
+   * Requests completed once everything is synchronized.
+   */
+  private final ArrayList<CompletableFuture<Void>> pendingSyncs = new ArrayList<>();
+
+  /**
+   * Tells if the writer has been closed.
+   */
+  private boolean closed;
+
+  /**
+   * Tells if something has been written since the last synchronization. Only
+   * used by the thread of the writer.
+   */
+  private boolean dirty;
+
+  /**
+   * Time of the last synchronization, in nanoseconds. Only used by the thread of
+   * the writer.
+   */
+  private long lastSync = System.nanoTime();
+
+  /**
+   * Creates a writer and starts its thread.
+   *
+   * @param jarsBackupFile   is the path of the analyzed jars backup file, it is
+   *                         created if it doesn't exist.
+   * @param hashesBackupFile synchronizes the hashes backup file with the storage
+   *                         device.
+   * @param policy           is the durability policy of the backup files.
+   * @param metrics          is the metrics where the durations of the writes and
+   *                         of the synchronizations are recorded.
+   * @throws IOException if the analyzed jars backup file can't be opened.
+   */
+  PersistenceWriter(Path jarsBackupFile, Flushable hashesBackupFile, Policy policy, AnalysisMetrics metrics)
+      throws IOException {
+    Objects.requireNonNull(jarsBackupFile, "jarsBackupFile is null");
+    this.hashesBackupFile = Objects.requireNonNull(hashesBackupFile, "hashesBackupFile is null");
+    this.policy = Objects.requireNonNull(policy, "policy is null");
+    this.metrics = Objects.requireNonNull(metrics, "metrics is null");
+    jarsChannel = FileChannel.open(jarsBackupFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND,
+        StandardOpenOption.CREATE);
+    thread = new Thread(this::run, "clonewar-persistence");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Saves the result of the analysis of an artifact, whose hashes are already
+   * written in the hashes backup file.
+   *
+   * @param jar is the string path of the analyzed jar, null if it is already
+   *            listed in the analyzed jars backup file.
+   * @return a future completed once the result is saved according to the
+   *         policy, or completed with an IOException if it can't be saved.
+   */
+  CompletableFuture<Void> artifactAnalyzed(String jar) {
+    var future = new CompletableFuture<Void>();
+    synchronized (lock) {
+      if (closed) {
+        return CompletableFuture.failedFuture(new IOException("persistence writer closed"));
+      }
+      if (jar != null) {
+        pendingJars.add(jar);
+      }
+      pendingWrites.add(future);
+      lock.notifyAll();
+    }
+    return future;
+  }
+
+  /**
+   * Writes all the waiting results and synchronizes the backup files with the
+   * storage device, unless the policy is {@link Durability#NEVER}.
+   *
+   * @return a future completed once everything is saved, or completed with an
+   *         IOException if the backup files can't be written.
+   */
+  CompletableFuture<Void> sync() {
+    var future = new CompletableFuture<Void>();
+    synchronized (lock) {
+      if (closed) {
+        return CompletableFuture.failedFuture(new IOException("persistence writer closed"));
+      }
+      pendingSyncs.add(future);
+      lock.notifyAll();
+    }
+    return future;
+  }
+
+  /**
+   * Writes and synchronizes the waiting requests in groups until the writer is
+   * closed.
+   */
+  private void run() {
+    for (;;) {
+      List<String> jars;
+      List<CompletableFuture<Void>> writes;
+      List<CompletableFuture<Void>> syncs;
+      boolean last;
+      synchronized (lock) {
+        while (pendingWrites.isEmpty() && pendingSyncs.isEmpty() && !closed && !syncDue()) {
+          try {
+            if (dirty && policy.durability() == Durability.INTERVAL) {
+              var waitNanos = lastSync + policy.intervalMillis() * 1_000_000 - System.nanoTime();
+              lock.wait(Math.max(1, waitNanos / 1_000_000));
+            } else {
+              lock.wait();
+            }
+          } catch (InterruptedException e) { // An interrupted writer saves the waiting requests and stops
+            closed = true;
+          }
+        }
+        jars = List.copyOf(pendingJars);
+        writes = List.copyOf(pendingWrites);
+        syncs = List.copyOf(pendingSyncs);
+        pendingJars.clear();
+        pendingWrites.clear();
+        pendingSyncs.clear();
+        last = closed;
+      }
+      var durability = policy.durability();
+      var sync = durability != Durability.NEVER
+          && (!syncs.isEmpty() || last || syncDue() || durability == Durability.ARTIFACT && !writes.isEmpty());
+      try {
+        write(jars);
+        dirty |= !writes.isEmpty();
+        if (sync && dirty) {
+          var syncStart = System.nanoTime();
+          hashesBackupFile.flush(); // A listed jar must have its hashes saved
+          jarsChannel.force(false);
+          metrics.backupSyncDuration.recordSince(syncStart);
+          dirty = false;
+          lastSync = System.nanoTime();
+        }
+        writes.forEach(future -> future.complete(null));
+        syncs.forEach(future -> future.complete(null));
+      } catch (IOException | RuntimeException e) {
+        writes.forEach(future -> future.completeExceptionally(e));
+        syncs.forEach(future -> future.completeExceptionally(e));
+      }
+      if (last) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Tells if the backup files must be synchronized because the interval of the
+   * {@link Durability#INTERVAL} mode is over.
+   */
+  private boolean syncDue() {
+    return dirty && policy.durability() == Durability.INTERVAL
+        && System.nanoTime() - lastSync >= policy.intervalMillis() * 1_000_000;
+  }
+
+  /**
+   * Appends jars to the analyzed jars backup file with a single write.
+   */
+  private void write(List<String> jars) throws IOException {
+    if (jars.isEmpty()) {
+      return;
+    }
+    var start = System.nanoTime();
+    var builder = new StringBuilder();
+    for (var jar : jars) {
+      builder.append(jar).append('\n');
+    }
+    var buffer = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8));
+    while (buffer.hasRemaining()) {
+      jarsChannel.write(buffer);
+    }
+    metrics.backupWriteDuration.recordSince(start);
+  }
+
+  /**
+   * Writes the waiting results, synchronizes the backup files unless the policy
+   * is {@link Durability#NEVER} and closes the analyzed jars backup file. The
+   * results given afterwards aren't saved.
+   *
+   * @throws IOException if the analyzed jars backup file can't be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      lock.notifyAll();
+    }
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    jarsChannel.close();
+  }
+}
@@ -0,0 +1,372 @@
+package fr.uge.clonewar;
+
+import java.util.function.LongPredicate;
+
+/**
+ * Table associating each hash with its postings, a list of long values, without
+ * any object per hash. The hashes are the keys of an open addressing table with
+ * linear probing, whose slots are three primitive arrays: the hash, the offset
+ * of its postings and their amount. The postings of all the hashes are packed
+ * in a single pool, the postings of a hash being consecutive in a block whose
+ * capacity is the power of two following their amount.
+ *
+ * <p>When the block of a hash is full, its postings are moved to a new block at
+ * the end of the pool and the old block is wasted. The pool is compacted when
+ * the wasted blocks take more room than the used ones. A hash whose postings are
+ * all removed leaves the table, the following slots are shifted back so that
+ * the table never holds deleted slots.
+ *
+ * <p>A slot is an index between 0 and {@link #capacity()}, it is only valid
+ * until the next change of the table.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+final class PostingTable {
+
+  /**
+   * Initial amount of slots of the table.
+   */
+  private static final int MIN_CAPACITY = 16;
+
+  /**
+   * Maximal proportion of used slots before the table is enlarged.
+   */
+  private static final float LOAD_FACTOR = 0.75f;
+
+  /**
+   * Maximal length of the pool of the postings.
+   */
+  private static final int MAX_POOL_LENGTH = Integer.MAX_VALUE - 8;
+
+  /**
+   * Hash of each slot.
+   */
+  private long[] keys;
+
+  /**
+   * Offset in the pool of the postings of the hash of each slot.
+   */
+  private int[] offsets;
+
+  /**
+   * Amount of postings of the hash of each slot, 0 if the slot is empty.
+   */
+  private int[] counts;
+
+  /**
+   * Amount of hashes of the table.
+   */
+  private int size;
+
+  /**
+   * Postings of all the hashes.
+   */
+  private long[] pool = new long[MIN_CAPACITY];
+
+  /**
+   * Used length of the pool, wasted blocks included.
+   */
+  private int poolLength;
+
+  /**
+   * Sum of the capacities of the blocks of the hashes of the table, being the
+   * length of the pool once compacted.
+   */
+  private long liveLength;
+
+  /**
+   * Creates an empty table.
+   */
+  PostingTable() {
+    allocateSlots(MIN_CAPACITY);
+  }
+
+  /**
+   * Allocates empty slots.
+   */
+  private void allocateSlots(int capacity) {
+    keys = new long[capacity];
+    offsets = new int[capacity];
+    counts = new int[capacity];
+  }
+
+  /**
+   * Returns the capacity of the block of the given amount of postings.
+   */
+  private static int blockCapacity(int count) {
+    return count <= 1 ? count : Integer.highestOneBit(count - 1) << 1;
+  }
+
+  /**
+   * Returns the slot where the search of a hash starts. The bits of the hash are
+   * spread by a Fibonacci multiplication, the hashes of the legacy kernel being
+   * poorly distributed.
+   */
+  private int home(long hash) {
+    return (int) ((hash * 0x9E3779B97F4A7C15L) >>> (64 - Integer.numberOfTrailingZeros(keys.length)));
+  }
+
+  /**
+   * Returns the amount of hashes of the table.
+   *
+   * @return the amount of distinct hashes.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the amount of slots of the table.
+   *
+   * @return the amount of slots, used or not.
+   */
+  int capacity() {
+    return keys.length;
+  }
+
+  /**
+   * Returns the slot of a hash.
+   *
+   * @param hash is the hash.
+   * @return the slot of the hash, -1 if it isn't in the table.
+   */
+  int find(long hash) {
+    var mask = keys.length - 1;
+    for (var slot = home(hash); counts[slot] != 0; slot = (slot + 1) & mask) {
+      if (keys[slot] == hash) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the hash of a slot.
+   *
+   * @param slot is the slot.
+   * @return the hash of the slot, meaningless if the slot is empty.
+   */
+  long hash(int slot) {
+    return keys[slot];
+  }
+
+  /**
+   * Returns the amount of postings of the hash of a slot.
+   *
+   * @param slot is the slot.
+   * @return the amount of postings, 0 if the slot is empty.
+   */
+  int count(int slot) {
+    return counts[slot];
+  }
+
+  /**
+   * Returns a posting of the hash of a slot.
+   *
+   * @param slot  is the slot.
+   * @param index is the index of the posting, lower than {@link #count(int)}.
+   * @return the posting.
+   */
+  long posting(int slot, int index) {
+    return pool[offsets[slot] + index];
+  }
+
+  /**
+   * Returns the amount of slots read to find the hash of a slot.
+   *
+   * @param slot is the used slot.
+   * @return the distance of the slot from the slot where the search starts, plus
+   *         one.
+   */
+  int probeLength(int slot) {
+    return ((slot - home(keys[slot])) & (keys.length - 1)) + 1;
+  }
+
+  /**
+   * Returns the last posting of a hash.
+   *
+   * @param hash is the hash.
+   * @return the last posting of the hash, -1 if the hash isn't in the table.
+   */
+  long lastPosting(long hash) {
+    var slot = find(hash);
+    return slot == -1 ? -1 : pool[offsets[slot] + counts[slot] - 1];
+  }
+
+  /**
+   * Adds a posting at the end of the postings of a hash.
+   *
+   * @param hash    is the hash.
+   * @param posting is the posting.
+   */
+  void add(long hash, long posting) {
+    var slot = find(hash);
+    if (slot == -1) {
+      if (size + 1 > keys.length * LOAD_FACTOR) {
+        resize(keys.length * 2);
+      }
+      var mask = keys.length - 1;
+      slot = home(hash);
+      while (counts[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      var offset = allocate(1);
+      keys[slot] = hash;
+      offsets[slot] = offset;
+      counts[slot] = 1;
+      pool[offset] = posting;
+      size++;
+      liveLength++;
+      return;
+    }
+    var count = counts[slot];
+    if (count == blockCapacity(count)) { // The block is full, the postings are moved to a larger one
+      var newCapacity = blockCapacity(count + 1);
+      var offset = allocate(newCapacity); // May compact the pool and move the block
+      System.arraycopy(pool, offsets[slot], pool, offset, count);
+      offsets[slot] = offset;
+      liveLength += newCapacity - count;
+    }
+    pool[offsets[slot] + count] = posting;
+    counts[slot] = count + 1;
+  }
+
+  /**
+   * Removes the postings of a hash matching a filter, the hash leaves the table
+   * if all its postings are removed.
+   *
+   * @param hash   is the hash.
+   * @param filter tells which postings are removed.
+   * @return true if a posting has been removed.
+   */
+  boolean removeIf(long hash, LongPredicate filter) {
+    var slot = find(hash);
+    if (slot == -1) {
+      return false;
+    }
+    var offset = offsets[slot];
+    var count = counts[slot];
+    var kept = 0;
+    for (var i = 0; i < count; i++) {
+      var posting = pool[offset + i];
+      if (!filter.test(posting)) {
+        pool[offset + kept++] = posting;
+      }
+    }
+    if (kept == count) {
+      return false;
+    }
+    liveLength -= blockCapacity(count) - blockCapacity(kept); // The end of the block is wasted
+    if (kept != 0) {
+      counts[slot] = kept;
+      return true;
+    }
+    delete(slot);
+    return true;
+  }
+
+  /**
+   * Empties a slot and shifts back the following slots whose search would go
+   * through it.
+   */
+  private void delete(int slot) {
+    var mask = keys.length - 1;
+    counts[slot] = 0;
+    size--;
+    var empty = slot;
+    for (var next = (slot + 1) & mask; counts[next] != 0; next = (next + 1) & mask) {
+      // The hash can fill the empty slot if its search starts before it
+      if (((next - home(keys[next])) & mask) >= ((next - empty) & mask)) {
+        keys[empty] = keys[next];
+        offsets[empty] = offsets[next];
+        counts[empty] = counts[next];
+        counts[next] = 0;
+        empty = next;
+      }
+    }
+  }
+
+  /**
+   * Moves the hashes to a table of the given amount of slots, the postings stay
+   * in the pool.
+   */
+  private void resize(int capacity) {
+    var oldKeys = keys;
+    var oldOffsets = offsets;
+    var oldCounts = counts;
+    allocateSlots(capacity);
+    var mask = capacity - 1;
+    for (var oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+      if (oldCounts[oldSlot] == 0) {
+        continue;
+      }
+      var slot = home(oldKeys[oldSlot]);
+      while (counts[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = oldKeys[oldSlot];
+      offsets[slot] = oldOffsets[oldSlot];
+      counts[slot] = oldCounts[oldSlot];
+    }
+  }
+
+  /**
+   * Reserves a block at the end of the pool. The pool is compacted if the
+   * wasted blocks take more room than the used ones, otherwise it is enlarged.
+   *
+   * @param length is the length of the block.
+   * @return the offset of the block.
+   * @throws IllegalStateException if the pool can't hold the postings.
+   */
+  private int allocate(int length) {
+    if (poolLength + length > pool.length) {
+      if (poolLength - liveLength > liveLength) {
+        compact(length);
+      }
+      if (poolLength + length > pool.length) {
+        var needed = (long) poolLength + length;
+        if (needed > MAX_POOL_LENGTH) {
+          throw new IllegalStateException("too many postings");
+        }
+        var newLength = (int) Math.min(MAX_POOL_LENGTH, Math.max(needed, pool.length + (pool.length >> 1)));
+        var newPool = new long[newLength];
+        System.arraycopy(pool, 0, newPool, 0, poolLength);
+        pool = newPool;
+      }
+    }
+    var offset = poolLength;
+    poolLength += length;
+    return offset;
+  }
+
+  /**
+   * Copies the used blocks to a new pool, leaving room for a block of the given
+   * length.
+   */
+  private void compact(int length) {
+    var newPool = new long[(int) Math.min(MAX_POOL_LENGTH,
+        Math.max(MIN_CAPACITY, liveLength + length + (liveLength >> 1)))];
+    var newLength = 0;
+    for (var slot = 0; slot < keys.length; slot++) {
+      var count = counts[slot];
+      if (count == 0) {
+        continue;
+      }
+      System.arraycopy(pool, offsets[slot], newPool, newLength, count);
+      offsets[slot] = newLength;
+      newLength += blockCapacity(count);
+    }
+    pool = newPool;
+    poolLength = newLength;
+  }
+
+  /**
+   * Returns the estimated amount of heap bytes of the table.
+   *
+   * @return the bytes of the arrays of the slots and of the pool.
+   */
+  long heapBytes() {
+    return (long) keys.length * (Long.BYTES + 2 * Integer.BYTES) + (long) pool.length * Long.BYTES + 4 * 16;
+  }
+}
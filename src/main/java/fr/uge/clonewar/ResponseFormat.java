@@ -0,0 +1,161 @@
+package fr.uge.clonewar;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import io.helidon.common.http.Http;
+import io.helidon.common.media.type.MediaType;
+import io.helidon.common.media.type.MediaTypes;
+import io.helidon.nima.webserver.http.ServerRequest;
+import io.helidon.nima.webserver.http.ServerResponse;
+
+/**
+ * Format of a response of the HTTP API, chosen from the Accept header of the
+ * request. The text format is the sentences the API has always sent, it is
+ * used when the request doesn't ask for another format. The JSON format gives
+ * the results with numeric fields. The binary format is the most compact one
+ * for bulk results, it is written with a {@link DataOutputStream}: big-endian
+ * numbers and strings in modified UTF-8 prefixed by their length.
+ *
+ * <p>The listings are written to the response as they are read, the whole
+ * listing is never built in memory.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+enum ResponseFormat {
+
+  /**
+   * Sentences in French.
+   */
+  TEXT(MediaTypes.TEXT_PLAIN),
+
+  /**
+   * JSON object.
+   */
+  JSON(MediaTypes.APPLICATION_JSON),
+
+  /**
+   * Binary records.
+   */
+  BINARY(MediaTypes.APPLICATION_OCTET_STREAM);
+
+  /**
+   * Media type of the format.
+   */
+  private final MediaType mediaType;
+
+  ResponseFormat(MediaType mediaType) {
+    this.mediaType = mediaType;
+  }
+
+  /**
+   * Returns the format preferred by a request among the supported ones.
+   *
+   * @param req is the request.
+   * @return the format of the response, {@link #TEXT} if the request doesn't
+   *         accept any of the formats or doesn't give an Accept header.
+   */
+  static ResponseFormat of(ServerRequest req) {
+    Objects.requireNonNull(req, "req is null");
+    if (!req.headers().contains(Http.Header.ACCEPT)) {
+      return TEXT;
+    }
+    var accepted = req.headers().bestAccepted(TEXT.mediaType, JSON.mediaType, BINARY.mediaType);
+    if (accepted.isEmpty()) {
+      return TEXT;
+    }
+    var text = accepted.get().text();
+    for (var format : values()) {
+      if (format.mediaType.text().equals(text)) {
+        return format;
+      }
+    }
+    return TEXT;
+  }
+
+  /**
+   * Sets the content type of a response to the media type of this format.
+   *
+   * @param res is the response.
+   * @return the response.
+   */
+  ServerResponse contentType(ServerResponse res) {
+    var contentType = this == BINARY ? mediaType.text() : mediaType.text() + "; charset=UTF-8";
+    return res.header(Http.Header.create(Http.Header.CONTENT_TYPE, contentType));
+  }
+
+  /**
+   * Sends an invalid request message. The text format sends the message alone as
+   * it has always done, the other formats tell that the request is invalid by
+   * the status of the response: a JSON object with an "error" field or the
+   * message as text for the binary format.
+   *
+   * @param res     is the response.
+   * @param message is the message explaining what is wrong with the request.
+   */
+  void sendError(ServerResponse res, String message) {
+    Objects.requireNonNull(res, "res is null");
+    Objects.requireNonNull(message, "message is null");
+    switch (this) {
+      case TEXT -> res.send(message);
+      case JSON -> contentType(res.status(Http.Status.BAD_REQUEST_400)).send("{\"error\":" + quote(message) + "}");
+      case BINARY -> TEXT.contentType(res.status(Http.Status.BAD_REQUEST_400)).send(message);
+    }
+  }
+
+  /**
+   * Opens a writer on the body of a response in the text or JSON format.
+   *
+   * @param res is the response.
+   * @return a buffered writer encoding in UTF-8, it must be closed to end the
+   *         response.
+   */
+  Writer writer(ServerResponse res) {
+    return new BufferedWriter(new OutputStreamWriter(contentType(res).outputStream(), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Opens a stream on the body of a response in the binary format.
+   *
+   * @param res is the response.
+   * @return a buffered data stream, it must be closed to end the response.
+   */
+  DataOutputStream dataOutput(ServerResponse res) {
+    return new DataOutputStream(new BufferedOutputStream(contentType(res).outputStream()));
+  }
+
+  /**
+   * Makes a JSON string literal from a string.
+   *
+   * @param value is the string.
+   * @return the quoted and escaped string.
+   */
+  static String quote(String value) {
+    Objects.requireNonNull(value, "value is null");
+    var builder = new StringBuilder(value.length() + 2).append('"');
+    for (var i = 0; i < value.length(); i++) {
+      var c = value.charAt(i);
+      switch (c) {
+        case '"' -> builder.append("\\\"");
+        case '\\' -> builder.append("\\\\");
+        case '\n' -> builder.append("\\n");
+        case '\r' -> builder.append("\\r");
+        case '\t' -> builder.append("\\t");
+        default -> {
+          if (c < 0x20) { // The other control characters can't appear in a JSON string
+            builder.append(String.format("\\u%04x", (int) c));
+          } else {
+            builder.append(c);
+          }
+        }
+      }
+    }
+    return builder.append('"').toString();
+  }
+}
@@ -0,0 +1,97 @@
+package fr.uge.clonewar;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Objects;
+
+/**
+ * Dictionary of strings, the string paths of the artifacts or the names of the
+ * classes, associating each distinct string with a dense integer identifier.
+ * The structures keyed by a string use its identifier instead, and each string
+ * is kept once: the same instance is returned by {@link #symbol(int)} for each
+ * use of the string, whoever read it. The strings are never removed.
+ *
+ * <p>A table isn't thread-safe, it is used with the lock of the analyses held.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+final class SymbolTable {
+
+  /**
+   * Identifier returned for a string which isn't in the table.
+   */
+  static final int NO_ID = -1;
+
+  /**
+   * Identifier of each string.
+   */
+  private final HashMap<String, Integer> ids = new HashMap<>();
+
+  /**
+   * Strings, by identifier.
+   */
+  private final ArrayList<String> symbols = new ArrayList<>();
+
+  /**
+   * Returns the identifier of a string, the string is added if it isn't known
+   * yet.
+   *
+   * @param symbol is the string.
+   * @return the identifier of the string.
+   */
+  int intern(String symbol) {
+    Objects.requireNonNull(symbol, "symbol is null");
+    var id = ids.get(symbol);
+    if (id != null) {
+      return id;
+    }
+    var newId = symbols.size();
+    ids.put(symbol, newId);
+    symbols.add(symbol);
+    return newId;
+  }
+
+  /**
+   * Returns the identifier of a string without adding it.
+   *
+   * @param symbol is the string.
+   * @return the identifier of the string, {@link #NO_ID} if it isn't known.
+   */
+  int id(String symbol) {
+    Objects.requireNonNull(symbol, "symbol is null");
+    var id = ids.get(symbol);
+    return id == null ? NO_ID : id;
+  }
+
+  /**
+   * Returns the string of an identifier, the instance kept by the table.
+   *
+   * @param id is the identifier.
+   * @return the string.
+   * @throws IndexOutOfBoundsException if the identifier is unknown.
+   */
+  String symbol(int id) {
+    return symbols.get(id);
+  }
+
+  /**
+   * Returns the instance kept by the table of a string equal to the given one,
+   * the string is added if it isn't known yet.
+   *
+   * @param symbol is the string.
+   * @return the instance of the string kept by the table.
+   */
+  String canonical(String symbol) {
+    return symbols.get(intern(symbol));
+  }
+
+  /**
+   * Returns the amount of strings of the table, the next identifier.
+   *
+   * @return the amount of strings.
+   */
+  int size() {
+    return symbols.size();
+  }
+}
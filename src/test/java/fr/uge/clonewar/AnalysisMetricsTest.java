@@ -0,0 +1,126 @@
+package fr.uge.clonewar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the writing of the metrics of the analyses in the Prometheus text
+ * format.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+public class AnalysisMetricsTest {
+
+  /**
+   * Sample line of the Prometheus text format: a name, optional labels and a
+   * value.
+   */
+  private static final Pattern SAMPLE = Pattern.compile(
+      "[a-zA-Z_:][a-zA-Z0-9_:]*(\\{[a-zA-Z_][a-zA-Z0-9_]*=\"[^\"]*\"(,[a-zA-Z_][a-zA-Z0-9_]*=\"[^\"]*\")*\\})? "
+          + "-?[0-9.E+-]+");
+
+  /**
+   * Writes the metrics in the Prometheus text format.
+   *
+   * @param metrics is the metrics.
+   * @return the lines of the metrics.
+   */
+  private static List<String> lines(AnalysisMetrics metrics) {
+    var builder = new StringBuilder();
+    metrics.write(builder);
+    assertTrue(builder.toString().endsWith("\n"));
+    return builder.toString().lines().toList();
+  }
+
+  /**
+   * Returns the value of a sample.
+   *
+   * @param lines  is the lines of the metrics.
+   * @param sample is the name of the sample and its labels.
+   * @return the value of the sample.
+   */
+  private static String value(List<String> lines, String sample) {
+    for (var line : lines) {
+      if (line.startsWith(sample + " ")) {
+        return line.substring(sample.length() + 1);
+      }
+    }
+    return fail("missing sample " + sample);
+  }
+
+  @Test
+  public void countersAreWritten() {
+    var metrics = new AnalysisMetrics();
+    metrics.jarsAnalyzed.increment();
+    metrics.jarsAnalyzed.increment();
+    metrics.classesVisited.add(42);
+    var lines = lines(metrics);
+    assertTrue(lines.contains("# HELP clonewar_jars_analyzed_total Analyses of jars completed."));
+    assertTrue(lines.contains("# TYPE clonewar_jars_analyzed_total counter"));
+    assertEquals("2", value(lines, "clonewar_jars_analyzed_total"));
+    assertEquals("42", value(lines, "clonewar_classes_visited_total"));
+    assertEquals("0", value(lines, "clonewar_jars_failed_total"));
+  }
+
+  @Test
+  public void histogramBucketsAreCumulative() {
+    var metrics = new AnalysisMetrics();
+    metrics.classDuration.record(50_000);
+    metrics.classDuration.record(100_000); // On the bound of the first bucket
+    metrics.classDuration.record(2_000_000);
+    metrics.classDuration.record(120_000_000_000L); // Beyond the last bound
+    var lines = lines(metrics);
+    var name = "clonewar_class_duration_seconds";
+    assertTrue(lines.contains("# TYPE " + name + " histogram"));
+    assertEquals("2", value(lines, name + "_bucket{le=\"0.0001\"}"));
+    assertEquals("2", value(lines, name + "_bucket{le=\"0.001\"}"));
+    assertEquals("3", value(lines, name + "_bucket{le=\"0.005\"}"));
+    assertEquals("3", value(lines, name + "_bucket{le=\"60\"}"));
+    assertEquals("4", value(lines, name + "_bucket{le=\"+Inf\"}"));
+    assertEquals("4", value(lines, name + "_count"));
+    assertEquals(120.00215, Double.parseDouble(value(lines, name + "_sum")), 1e-9);
+  }
+
+  @Test
+  public void comparisonsAreLabelled() {
+    var metrics = new AnalysisMetrics();
+    metrics.comparisonDuration(AnalysisMetrics.Comparison.TOP_CLONES).record(1_000);
+    var lines = lines(metrics);
+    var name = "clonewar_comparison_duration_seconds";
+    assertEquals(1, lines.stream().filter(line -> line.equals("# TYPE " + name + " histogram")).count());
+    assertEquals("1", value(lines, name + "_count{operation=\"top_clones\"}"));
+    assertEquals("1", value(lines, name + "_bucket{operation=\"top_clones\",le=\"0.0001\"}"));
+    assertEquals("0", value(lines, name + "_count{operation=\"percentage_cloning\"}"));
+    assertEquals("0", value(lines, name + "_count{operation=\"similarity_matrix\"}"));
+  }
+
+  @Test
+  public void outputIsValidTextFormat() {
+    var metrics = new AnalysisMetrics();
+    metrics.analysisDuration.record(3_000_000_000L);
+    metrics.hashesEmitted.add(7);
+    var builder = new StringBuilder();
+    metrics.write(builder);
+    AnalysisMetrics.gauge(builder, "clonewar_analyzed_jars", "Jars analyzed.", 3);
+    var types = new HashSet<String>();
+    for (var line : builder.toString().lines().toList()) {
+      if (line.startsWith("# TYPE ")) {
+        var fields = line.split(" ");
+        assertEquals(4, fields.length, line);
+        assertTrue(List.of("counter", "gauge", "histogram").contains(fields[3]), line);
+        assertTrue(types.add(fields[2]), "duplicated metric " + fields[2]);
+      } else if (!line.startsWith("# HELP ")) {
+        assertTrue(SAMPLE.matcher(line).matches(), line);
+        var name = line.split("[{ ]")[0].replaceAll("_(bucket|sum|count)$", "");
+        assertTrue(types.contains(name), "sample before its type " + line);
+      }
+    }
+    assertTrue(types.contains("clonewar_analyzed_jars"));
+  }
+}
@@ -0,0 +1,131 @@
+package fr.uge.clonewar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the comparison of the fingerprints of the artifacts, compared with
+ * the comparison of the lists of their hashes made before the fingerprints.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+public class ArtifactFingerprintTest {
+
+  /**
+   * Compares the lists of the hashes of two artifacts like before the
+   * fingerprints: the common hashes are kept in each list by
+   * {@link ArrayList#retainAll(java.util.Collection)}.
+   *
+   * @param hashesReference is the hashes of the reference, occurrences included.
+   * @param hashesClone     is the hashes of the clone, occurrences included.
+   * @return the hashes of the reference found in the clone and the hashes of
+   *         the clone found in the reference.
+   */
+  private static List<List<Long>> retainAll(List<Long> hashesReference, List<Long> hashesClone) {
+    var commonHashes = new ArrayList<>(hashesReference);
+    commonHashes.retainAll(hashesClone);
+    var cloneHashesInClone = new ArrayList<>(hashesClone);
+    cloneHashesInClone.retainAll(commonHashes);
+    var cloneHashesInReference = new ArrayList<>(hashesReference);
+    cloneHashesInReference.retainAll(commonHashes);
+    return List.of(cloneHashesInReference, cloneHashesInClone);
+  }
+
+  /**
+   * Calculates a percentage like the comparison of the lists of hashes.
+   *
+   * @param shared is the amount of hashes found in the other artifact.
+   * @param total  is the amount of hashes of the artifact.
+   * @return the percentage.
+   */
+  private static double percentage(int shared, int total) {
+    return shared * 100 / Integer.valueOf(total).floatValue();
+  }
+
+  /**
+   * Makes random hashes, taken among few values so that they are often
+   * duplicated and shared by the artifacts.
+   *
+   * @param random is the generator of the hashes.
+   * @param values is the amount of distinct values of the hashes.
+   * @return the hashes, at least one.
+   */
+  private static List<Long> hashes(Random random, int values) {
+    var size = 1 + random.nextInt(200);
+    var hashes = new ArrayList<Long>();
+    for (var i = 0; i < size; i++) {
+      hashes.add(random.nextInt(values) * 0x9E3779B97F4A7C15L); // Negative hashes as well
+    }
+    return hashes;
+  }
+
+  /**
+   * Makes the fingerprint of hashes.
+   *
+   * @param hashes is the hashes, occurrences included.
+   * @return the fingerprint.
+   */
+  private static ArtifactFingerprint fingerprint(List<Long> hashes) {
+    return ArtifactFingerprint.of(hashes.stream().mapToLong(Long::longValue).toArray(), FingerprintSettings.DEFAULT);
+  }
+
+  @Test
+  public void overlapCountsDuplicatedHashes() {
+    var reference = fingerprint(List.of(1L, 1L, 1L, 2L, 3L));
+    var clone = fingerprint(List.of(1L, 3L, 3L, 4L));
+    var overlap = reference.overlap(clone);
+    assertEquals(4, overlap.referenceShared()); // 1, 1, 1 and 3
+    assertEquals(3, overlap.cloneShared()); // 1, 3 and 3
+    assertEquals(2, overlap.distinctShared());
+    assertEquals(2 / 4.0, reference.jaccard(clone, overlap));
+  }
+
+  @Test
+  public void overlapIsSameAsRetainAll() {
+    var random = new Random(0);
+    for (var run = 0; run < 2_000; run++) {
+      var values = 1 + random.nextInt(100);
+      var hashesReference = hashes(random, values);
+      var hashesClone = hashes(random, values);
+      var expected = retainAll(hashesReference, hashesClone);
+      var overlap = fingerprint(hashesReference).overlap(fingerprint(hashesClone));
+      assertEquals(expected.get(0).size(), overlap.referenceShared());
+      assertEquals(expected.get(1).size(), overlap.cloneShared());
+      var distinct = new HashSet<>(hashesReference);
+      distinct.retainAll(hashesClone);
+      assertEquals(distinct.size(), overlap.distinctShared());
+    }
+  }
+
+  @Test
+  public void percentagesAreSameAsRetainAll() {
+    var random = new Random(1);
+    for (var run = 0; run < 2_000; run++) {
+      var values = 1 + random.nextInt(100);
+      var hashesReference = hashes(random, values);
+      var hashesClone = hashes(random, values);
+      var expected = retainAll(hashesReference, hashesClone);
+      var comparison = Asm.resultComparison(fingerprint(hashesReference), fingerprint(hashesClone));
+      assertEquals(Asm.Comparison.Outcome.COMPARED, comparison.outcome());
+      assertEquals(percentage(expected.get(0).size(), hashesReference.size()),
+          comparison.clonesFromReferencePercentage());
+      assertEquals(percentage(expected.get(1).size(), hashesClone.size()), comparison.totalClonesPercentage());
+    }
+  }
+
+  @Test
+  public void emptyArtifactIsNotCompared() {
+    var fingerprint = fingerprint(List.of(1L, 2L));
+    assertEquals(Asm.Comparison.Outcome.REFERENCE_NOT_ANALYZED,
+        Asm.resultComparison(ArtifactFingerprint.EMPTY, fingerprint).outcome());
+    assertEquals(Asm.Comparison.Outcome.CLONE_NOT_ANALYZED,
+        Asm.resultComparison(fingerprint, ArtifactFingerprint.EMPTY).outcome());
+  }
+}
@@ -0,0 +1,425 @@
+package fr.uge.clonewar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of the analyses of a jar analyzed again, whether the analysis
+ * succeeds or fails, and of the reuse of the hashes of its unchanged classes.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+public class AsmAnalysisTest {
+
+  /**
+   * Directory of the test artifacts.
+   */
+  private static final Path RESOURCES = Path.of("src", "test", "resources", "fr", "uge", "clonewar");
+
+  /**
+   * Test artifact.
+   */
+  private static final Path TOY = RESOURCES.resolve("toy-0.0.1-SNAPSHOT.jar");
+
+  /**
+   * Test artifact sharing code with {@link #TOY}.
+   */
+  private static final Path DIFFERENT_TOY = RESOURCES.resolve("a_little_bit_different_toy-0.0.1-SNAPSHOT.jar");
+
+  /**
+   * Creates an object analyzing the jars, whose backup files are in the given
+   * directory.
+   *
+   * @param directory            is the directory of the backup files.
+   * @param fingerprintCacheSize is the size of the cache of the hashes, 0 to keep
+   *                             all of them in memory.
+   * @return the object.
+   */
+  private static Asm asm(Path directory, int fingerprintCacheSize) {
+    return new Asm(directory.resolve("hashes.bin"), directory.resolve("jars.txt"),
+        Asm.Options.DEFAULT.withParallelism(2).withFingerprintCacheSize(fingerprintCacheSize));
+  }
+
+  /**
+   * Creates an object analyzing the jars with the given settings, whose backup
+   * files are in the given directory.
+   *
+   * @param directory is the directory of the backup files.
+   * @param settings  is the settings used to calculate the hashes.
+   * @return the object.
+   */
+  private static Asm asm(Path directory, FingerprintSettings settings) {
+    return new Asm(directory.resolve("hashes.bin"), directory.resolve("jars.txt"),
+        Asm.Options.DEFAULT.withParallelism(2).withSettings(settings));
+  }
+
+  /**
+   * Writes a jar holding a single class file.
+   *
+   * @param jar       is the path of the jar.
+   * @param className is the name of the class file.
+   * @param content   is the content of the class file.
+   */
+  private static void writeJar(Path jar, String className, byte[] content) throws IOException {
+    writeJar(jar, Map.of(className, content));
+  }
+
+  /**
+   * Writes a jar holding the given class files.
+   *
+   * @param jar     is the path of the jar.
+   * @param classes is the content of each class file, by name.
+   */
+  private static void writeJar(Path jar, Map<String, byte[]> classes) throws IOException {
+    try (var output = new ZipOutputStream(Files.newOutputStream(jar))) {
+      for (var entry : new TreeMap<>(classes).entrySet()) {
+        output.putNextEntry(new ZipEntry(entry.getKey()));
+        output.write(entry.getValue());
+        output.closeEntry();
+      }
+    }
+  }
+
+  /**
+   * Reads the content of the single class file of a test artifact.
+   *
+   * @param artifact is the path of the test artifact.
+   * @return the content of its class file.
+   */
+  private static byte[] classBytes(Path artifact) throws IOException {
+    try (var zip = new ZipFile(artifact.toFile())) {
+      var entry = zip.stream().filter(e -> e.getName().endsWith(".class")).findFirst().orElseThrow();
+      try (var input = zip.getInputStream(entry)) {
+        return input.readAllBytes();
+      }
+    }
+  }
+
+  /**
+   * Returns the value of a counter of the metrics of the analyses.
+   *
+   * @param asm  is the object analyzing the jars.
+   * @param name is the name of the counter.
+   * @return the value of the counter.
+   */
+  private static long counter(Asm asm, String name) {
+    for (var line : asm.metrics().split("\n")) {
+      if (line.startsWith(name + " ")) {
+        return Long.parseLong(line.substring(name.length() + 1));
+      }
+    }
+    return fail("missing counter " + name);
+  }
+
+  /**
+   * Returns the hashes of the classes of a jar, by class name.
+   *
+   * @param asm is the object analyzing the jars.
+   * @param jar is the path of the jar.
+   * @return the hashes of each class of the jar.
+   */
+  private static Map<String, List<Long>> classHashes(Asm asm, Path jar) {
+    var prefix = jar + " : ";
+    var classHashes = new TreeMap<String, List<Long>>();
+    for (var entry : asm.getMap().entrySet()) {
+      if (entry.getKey().startsWith(prefix)) {
+        classHashes.put(entry.getKey().substring(prefix.length()),
+            Arrays.stream(entry.getValue()).boxed().toList());
+      }
+    }
+    return classHashes;
+  }
+
+  /**
+   * Analyzes a jar, replaces it with a file which can't be analyzed and checks
+   * that the previous analysis is still compared, until the application is
+   * started again.
+   *
+   * @param directory            is the directory of the artifacts and of the
+   *                             backup files.
+   * @param fingerprintCacheSize is the size of the cache of the hashes, 0 to keep
+   *                             all of them in memory.
+   * @param replacement          is the content of the file replacing the jar.
+   */
+  private static void failedAnalysisKeepsPrevious(Path directory, int fingerprintCacheSize, byte[] replacement)
+      throws IOException {
+    var jar = directory.resolve("toy.jar");
+    Files.copy(TOY, jar, StandardCopyOption.REPLACE_EXISTING);
+    var reference = DIFFERENT_TOY.toString();
+    String percentage;
+    String topClones;
+    String clonedMethods;
+    try (var asm = asm(directory, fingerprintCacheSize)) {
+      assertTrue(asm.analysis(DIFFERENT_TOY));
+      assertTrue(asm.analysis(jar));
+      percentage = asm.percentageCloning(reference, jar.toString());
+      topClones = asm.topClones(jar.toString(), 3);
+      clonedMethods = asm.clonedMethods(reference, jar.toString(), 5);
+      Files.write(jar, replacement);
+      assertFalse(asm.analysis(jar));
+      assertEquals(percentage, asm.percentageCloning(reference, jar.toString()));
+      assertEquals(topClones, asm.topClones(jar.toString(), 3));
+      assertEquals(clonedMethods, asm.clonedMethods(reference, jar.toString(), 5));
+      Files.copy(TOY, jar, StandardCopyOption.REPLACE_EXISTING);
+      assertTrue(asm.analysis(jar)); // The jar can be analyzed again after a failure
+      assertEquals(percentage, asm.percentageCloning(reference, jar.toString()));
+    }
+    try (var asm = asm(directory, fingerprintCacheSize)) {
+      assertEquals(percentage, asm.percentageCloning(reference, jar.toString()));
+      assertEquals(clonedMethods, asm.clonedMethods(reference, jar.toString(), 5));
+    }
+  }
+
+  @Test
+  public void invalidZipKeepsPreviousAnalysis(@TempDir Path directory) throws IOException {
+    failedAnalysisKeepsPrevious(directory, 0, "not a zip file".getBytes());
+  }
+
+  @Test
+  public void invalidZipKeepsPreviousAnalysisWithLazyLoading(@TempDir Path directory) throws IOException {
+    failedAnalysisKeepsPrevious(directory, 2, "not a zip file".getBytes());
+  }
+
+  @Test
+  public void invalidClassKeepsPreviousAnalysis(@TempDir Path directory) throws IOException {
+    var invalidJar = directory.resolve("invalid.jar");
+    writeJar(invalidJar, "Invalid.class", new byte[] { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 1, 2, 3 });
+    failedAnalysisKeepsPrevious(directory, 0, Files.readAllBytes(invalidJar));
+  }
+
+  @Test
+  public void invalidClassKeepsPreviousAnalysisWithLazyLoading(@TempDir Path directory) throws IOException {
+    var invalidJar = directory.resolve("invalid.jar");
+    writeJar(invalidJar, "Invalid.class", new byte[] { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 1, 2, 3 });
+    failedAnalysisKeepsPrevious(directory, 2, Files.readAllBytes(invalidJar));
+  }
+
+  @Test
+  public void invalidClassFailsFirstAnalysis(@TempDir Path directory) throws IOException {
+    var jar = directory.resolve("invalid.jar");
+    writeJar(jar, "Invalid.class", new byte[] { 1, 2, 3 });
+    try (var asm = asm(directory, 0)) {
+      assertFalse(asm.analysis(jar));
+      assertFalse(asm.isAnalyzed(jar.toString()));
+    }
+  }
+
+  @Test
+  public void analysisInvalidatesCachedComparisons(@TempDir Path directory) throws IOException {
+    var jar = directory.resolve("toy.jar");
+    Files.copy(TOY, jar);
+    var reference = DIFFERENT_TOY.toString();
+    try (var asm = asm(directory, 0)) {
+      assertTrue(asm.analysis(DIFFERENT_TOY));
+      assertTrue(asm.analysis(jar));
+      var percentage = asm.percentageCloning(reference, jar.toString());
+      assertEquals(percentage, asm.percentageCloning(reference, jar.toString()));
+      assertEquals(1, counter(asm, "clonewar_comparison_cache_hits_total"));
+      assertEquals(1, counter(asm, "clonewar_comparison_cache_misses_total"));
+      Files.copy(DIFFERENT_TOY, jar, StandardCopyOption.REPLACE_EXISTING);
+      assertTrue(asm.analysis(jar)); // The cached result is for the previous analysis
+      assertNotEquals(percentage, asm.percentageCloning(reference, jar.toString()));
+      assertEquals(1, counter(asm, "clonewar_comparison_cache_hits_total"));
+      assertEquals(2, counter(asm, "clonewar_comparison_cache_misses_total"));
+    }
+  }
+
+  @Test
+  public void unchangedClassesAreReused(@TempDir Path directory) throws IOException {
+    var jar = directory.resolve("classes.jar");
+    writeJar(jar, Map.of("p/A.class", classBytes(TOY), "p/B.class", classBytes(DIFFERENT_TOY)));
+    Map<String, List<Long>> classHashes;
+    try (var asm = asm(directory, 0)) {
+      assertTrue(asm.analysis(jar));
+      assertEquals(2, counter(asm, "clonewar_classes_visited_total"));
+      assertEquals(0, counter(asm, "clonewar_classes_reused_total"));
+      classHashes = classHashes(asm, jar);
+      assertEquals(Set.of("p/A.class", "p/B.class"), classHashes.keySet());
+      assertTrue(asm.analysis(jar));
+      assertEquals(2, counter(asm, "clonewar_classes_visited_total"));
+      assertEquals(2, counter(asm, "clonewar_classes_reused_total"));
+      assertEquals(classHashes, classHashes(asm, jar));
+    }
+    try (var asm = asm(directory, 0)) { // The hashes are reused from the backup file
+      assertTrue(asm.analysis(jar));
+      assertEquals(0, counter(asm, "clonewar_classes_visited_total"));
+      assertEquals(2, counter(asm, "clonewar_classes_reused_total"));
+      assertEquals(classHashes, classHashes(asm, jar));
+    }
+  }
+
+  @Test
+  public void changedClassIsHashedAgain(@TempDir Path directory) throws IOException {
+    var jar = directory.resolve("classes.jar");
+    var toy = classBytes(TOY);
+    writeJar(jar, Map.of("p/A.class", toy, "p/B.class", classBytes(DIFFERENT_TOY)));
+    try (var asm = asm(directory, 0)) {
+      assertTrue(asm.analysis(jar));
+      var previousHashes = classHashes(asm, jar);
+      writeJar(jar, Map.of("p/A.class", toy, "p/B.class", toy));
+      assertTrue(asm.analysis(jar));
+      assertEquals(3, counter(asm, "clonewar_classes_visited_total"));
+      assertEquals(1, counter(asm, "clonewar_classes_reused_total"));
+      var classHashes = classHashes(asm, jar);
+      assertEquals(previousHashes.get("p/A.class"), classHashes.get("p/A.class"));
+      assertNotEquals(previousHashes.get("p/B.class"), classHashes.get("p/B.class"));
+      assertEquals(classHashes.get("p/A.class"), classHashes.get("p/B.class")); // Same content, same hashes
+    }
+  }
+
+  @Test
+  public void removedClassDropsOut(@TempDir Path directory) throws IOException {
+    var jar = directory.resolve("classes.jar");
+    var toy = classBytes(TOY);
+    writeJar(jar, Map.of("p/A.class", toy, "p/B.class", classBytes(DIFFERENT_TOY)));
+    Map<String, List<Long>> previousHashes;
+    try (var asm = asm(directory, 0)) {
+      assertTrue(asm.analysis(jar));
+      previousHashes = classHashes(asm, jar);
+      writeJar(jar, Map.of("p/A.class", toy));
+      assertTrue(asm.analysis(jar));
+      assertEquals(2, counter(asm, "clonewar_classes_visited_total"));
+      assertEquals(1, counter(asm, "clonewar_classes_reused_total"));
+      assertEquals(Map.of("p/A.class", previousHashes.get("p/A.class")), classHashes(asm, jar));
+    }
+    try (var asm = asm(directory, 0)) { // The backup file doesn't contain the removed class either
+      assertEquals(Map.of("p/A.class", previousHashes.get("p/A.class")), classHashes(asm, jar));
+    }
+  }
+
+  @Test
+  public void settingsChangeInvalidatesReuse(@TempDir Path directory) throws IOException {
+    var jar = directory.resolve("classes.jar");
+    writeJar(jar, Map.of("p/A.class", classBytes(TOY), "p/B.class", classBytes(DIFFERENT_TOY)));
+    Map<String, List<Long>> previousHashes;
+    try (var asm = asm(directory, FingerprintSettings.DEFAULT)) {
+      assertTrue(asm.analysis(jar));
+      previousHashes = classHashes(asm, jar);
+    }
+    var settings = new FingerprintSettings(FingerprintSettings.Selection.WINNOWING, 2,
+        FingerprintSettings.Kernel.POLYNOMIAL64);
+    try (var asm = asm(directory, settings)) {
+      assertTrue(asm.analysis(jar));
+      assertEquals(2, counter(asm, "clonewar_classes_visited_total"));
+      assertEquals(0, counter(asm, "clonewar_classes_reused_total"));
+      var classHashes = classHashes(asm, jar);
+      assertNotEquals(previousHashes.get("p/A.class"), classHashes.get("p/A.class"));
+      assertNotEquals(previousHashes.get("p/B.class"), classHashes.get("p/B.class"));
+      assertTrue(asm.analysis(jar)); // Stocked with the new settings, the hashes are reused again
+      assertEquals(2, counter(asm, "clonewar_classes_visited_total"));
+      assertEquals(2, counter(asm, "clonewar_classes_reused_total"));
+      assertEquals(classHashes, classHashes(asm, jar));
+    }
+  }
+
+  @Test
+  public void topClonesPagesFollowEachOther(@TempDir Path directory) throws IOException {
+    var jar = directory.resolve("toy.jar");
+    Files.copy(TOY, jar);
+    try (var asm = asm(directory, 0)) {
+      assertTrue(asm.analysis(jar));
+      assertTrue(asm.analysis(DIFFERENT_TOY));
+      for (var i = 0; i < 4; i++) {
+        var copy = directory.resolve("copy" + i + ".jar");
+        Files.copy(TOY, copy);
+        assertTrue(asm.analysis(copy));
+      }
+      var all = asm.topClonesPage(jar.toString(), 0, 10);
+      assertTrue(all.analyzed());
+      assertEquals(5, all.matches().size());
+      assertEquals(-1, all.nextOffset());
+      var first = asm.topClonesPage(jar.toString(), 0, 2);
+      assertEquals(all.matches().subList(0, 2), first.matches());
+      assertEquals(2, first.nextOffset());
+      var second = asm.topClonesPage(jar.toString(), first.nextOffset(), 2);
+      assertEquals(all.matches().subList(2, 4), second.matches());
+      assertEquals(4, second.nextOffset());
+      var last = asm.topClonesPage(jar.toString(), second.nextOffset(), 2);
+      assertEquals(all.matches().subList(4, 5), last.matches());
+      assertEquals(-1, last.nextOffset());
+      var exact = asm.topClonesPage(jar.toString(), 0, 5); // No artifact left for a next page
+      assertEquals(all.matches(), exact.matches());
+      assertEquals(-1, exact.nextOffset());
+      var beyond = asm.topClonesPage(jar.toString(), 6, 2);
+      assertTrue(beyond.analyzed());
+      assertEquals(List.of(), beyond.matches());
+      assertEquals(-1, beyond.nextOffset());
+      assertThrows(IllegalArgumentException.class, () -> asm.topClonesPage(jar.toString(), -1, 2));
+      assertThrows(IllegalArgumentException.class, () -> asm.topClonesPage(jar.toString(), 0, 0));
+    }
+  }
+
+  /**
+   * Analyzes the test artifacts and finds the artifacts each of them is the
+   * most likely to be cloned from.
+   *
+   * @param directory    is the directory of the backup files.
+   * @param artifacts    is the artifacts to analyze.
+   * @param memoryBudget is the amount of bytes of the hashes kept in memory, 0
+   *                     to keep all of them in memory.
+   * @return the top clones of each artifact, analyzed then read from the backup
+   *         file.
+   */
+  private static List<Map<Path, List<FingerprintIndex.Match>>> topClones(Path directory, List<Path> artifacts,
+                                                                         long memoryBudget) throws IOException {
+    var options = Asm.Options.DEFAULT.withParallelism(2).withFingerprintMemoryBudget(memoryBudget);
+    var analyzed = new TreeMap<Path, List<FingerprintIndex.Match>>();
+    try (var asm = new Asm(directory.resolve("hashes.bin"), directory.resolve("jars.txt"), options)) {
+      for (var artifact : artifacts) {
+        assertTrue(asm.analysis(artifact));
+      }
+      for (var artifact : artifacts) {
+        analyzed.put(artifact, asm.topClonesPage(artifact.toString(), 0, artifacts.size()).matches());
+      }
+    }
+    var restored = new TreeMap<Path, List<FingerprintIndex.Match>>();
+    try (var asm = new Asm(directory.resolve("hashes.bin"), directory.resolve("jars.txt"), options)) {
+      for (var artifact : artifacts) {
+        restored.put(artifact, asm.topClonesPage(artifact.toString(), 0, artifacts.size()).matches());
+      }
+    }
+    return List.of(analyzed, restored);
+  }
+
+  @Test
+  public void lazyTopClonesAreSameAsEager(@TempDir Path directory) throws IOException {
+    var copy = directory.resolve("copy.jar");
+    Files.copy(TOY, copy);
+    var artifacts = List.of(TOY, DIFFERENT_TOY, RESOURCES.resolve("animal-0.0.1-SNAPSHOT.jar"),
+        RESOURCES.resolve("animal_with_multiple_files-0.0.1-SNAPSHOT.jar"), copy);
+    var eager = topClones(Files.createDirectory(directory.resolve("eager")), artifacts, 0);
+    assertFalse(eager.get(0).get(TOY).isEmpty());
+    assertEquals(eager.get(0), eager.get(1));
+    // A budget smaller than the hashes of a single artifact, they are loaded again for each comparison
+    var lazy = topClones(Files.createDirectory(directory.resolve("lazy")), artifacts, 1);
+    assertEquals(eager.get(0), lazy.get(0));
+    assertEquals(eager.get(0), lazy.get(1));
+  }
+
+  @Test
+  public void topClonesPageOfUnknownArtifact(@TempDir Path directory) throws IOException {
+    try (var asm = asm(directory, 0)) {
+      assertTrue(asm.analysis(TOY));
+      var page = asm.topClonesPage(directory.resolve("unknown.jar").toString(), 0, 2);
+      assertFalse(page.analyzed());
+      assertEquals(List.of(), page.matches());
+      assertEquals(-1, page.nextOffset());
+    }
+  }
+}
@@ -0,0 +1,213 @@
+package fr.uge.clonewar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Stress tests of the analyses and comparisons made at the same time by
+ * several virtual threads, like the requests of the server.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+public class AsmConcurrencyTest {
+
+  /**
+   * Directory of the test artifacts.
+   */
+  private static final Path RESOURCES = Path.of("src", "test", "resources", "fr", "uge", "clonewar");
+
+  /**
+   * Amount of copies of each test artifact, so that more artifacts are analyzed
+   * at the same time.
+   */
+  private static final int COPIES = 3;
+
+  /**
+   * Amount of times each analyzing thread analyzes all the artifacts again.
+   */
+  private static final int ROUNDS = 5;
+
+  /**
+   * Amount of threads analyzing the artifacts.
+   */
+  private static final int WRITERS = 4;
+
+  /**
+   * Amount of threads comparing the artifacts.
+   */
+  private static final int READERS = 8;
+
+  /**
+   * Copies the test artifacts in a directory, several times each.
+   *
+   * @param directory is the directory of the copies.
+   * @return the string paths of the copies.
+   */
+  private static List<String> copyArtifacts(Path directory) throws IOException {
+    var jars = new ArrayList<String>();
+    try (var resources = Files.list(RESOURCES)) {
+      for (var resource : resources.filter(path -> path.toString().endsWith(".jar")).sorted().toList()) {
+        for (var i = 0; i < COPIES; i++) {
+          var copy = directory.resolve(i + "-" + resource.getFileName());
+          Files.copy(resource, copy, StandardCopyOption.REPLACE_EXISTING);
+          jars.add(copy.toString());
+        }
+      }
+    }
+    return jars;
+  }
+
+  /**
+   * Runs tasks on virtual threads, all of them starting at the same time, and
+   * rethrows the first failure.
+   *
+   * @param tasks is the tasks.
+   */
+  private static void runConcurrently(List<Callable<Void>> tasks) throws InterruptedException {
+    var start = new CountDownLatch(1);
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var futures = new ArrayList<Future<Void>>();
+      for (var task : tasks) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          return task.call();
+        }));
+      }
+      start.countDown();
+      for (var future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          fail(e.getCause());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void firstAnalysesInParallel(@TempDir Path directory) throws IOException, InterruptedException {
+    var jars = copyArtifacts(directory);
+    var expected = new HashMap<String, String>();
+    try (var asm = new Asm(directory.resolve("sequentialHashes.bin"), directory.resolve("sequentialJars.txt"), 2)) {
+      for (var jar : jars) {
+        assertTrue(asm.analysis(Path.of(jar)));
+      }
+      for (var jar : jars) {
+        expected.put(jar, asm.percentageCloning(jars.get(0), jar));
+      }
+    }
+    try (var asm = new Asm(directory.resolve("hashes.bin"), directory.resolve("jars.txt"), 2)) {
+      var tasks = new ArrayList<Callable<Void>>();
+      for (var jar : jars) {
+        tasks.add(() -> {
+          assertTrue(asm.analysis(Path.of(jar)));
+          return null;
+        });
+      }
+      runConcurrently(tasks);
+      assertEquals(jars.size(), asm.analyzedJars().lines().count());
+      for (var jar : jars) {
+        assertTrue(asm.isAnalyzed(jar));
+        assertEquals(expected.get(jar), asm.percentageCloning(jars.get(0), jar));
+      }
+    }
+  }
+
+  /**
+   * Analyzes the artifacts again and again on several threads while other
+   * threads compare them.
+   *
+   * @param directory            is the directory of the artifacts and of the
+   *                             backup files.
+   * @param fingerprintCacheSize is the size of the cache of the hashes, 0 to keep
+   *                             all of them in memory.
+   */
+  private static void analyzeWhileComparing(Path directory, int fingerprintCacheSize)
+      throws IOException, InterruptedException {
+    var jars = copyArtifacts(directory);
+    try (var asm = new Asm(directory.resolve("hashes.bin"), directory.resolve("jars.txt"),
+        Asm.Options.DEFAULT.withParallelism(2).withFingerprintCacheSize(fingerprintCacheSize))) {
+      for (var jar : jars) {
+        assertTrue(asm.analysis(Path.of(jar)));
+      }
+      var expected = new HashMap<String, String>();
+      var expectedMethods = new HashMap<String, String>();
+      for (var jar : jars) {
+        expected.put(jar, asm.percentageCloning(jars.get(0), jar));
+        expectedMethods.put(jar, asm.clonedMethods(jars.get(0), jar, 5));
+      }
+      var expectedTopClones = asm.topClones(jars.get(0), 3);
+      var expectedMatrix = asm.similarityMatrix(0.5);
+      var analyzing = new AtomicBoolean(true);
+      var remainingWriters = new CountDownLatch(WRITERS);
+      var tasks = new ArrayList<Callable<Void>>();
+      for (var i = 0; i < WRITERS; i++) {
+        tasks.add(() -> {
+          try {
+            var order = new ArrayList<>(jars);
+            for (var round = 0; round < ROUNDS; round++) {
+              Collections.shuffle(order);
+              for (var jar : order) { // The same jar may be analyzed by another thread at the same time
+                assertTrue(asm.analysis(Path.of(jar)));
+              }
+            }
+          } finally {
+            remainingWriters.countDown();
+            if (remainingWriters.getCount() == 0) {
+              analyzing.set(false);
+            }
+          }
+          return null;
+        });
+      }
+      for (var i = 0; i < READERS; i++) {
+        tasks.add(() -> {
+          do { // An analysis of the same content never changes the result of a comparison
+            for (var jar : jars) {
+              assertEquals(expected.get(jar), asm.percentageCloning(jars.get(0), jar));
+              assertEquals(expectedMethods.get(jar), asm.clonedMethods(jars.get(0), jar, 5));
+            }
+            assertEquals(jars.size(), asm.analyzedJars().lines().count());
+            assertEquals(expectedTopClones, asm.topClones(jars.get(0), 3));
+            assertEquals(expectedMatrix, asm.similarityMatrix(0.5));
+            Thread.sleep(1); // Frees the carrier thread, a yielding virtual thread can starve the analyses
+          } while (analyzing.get());
+          return null;
+        });
+      }
+      runConcurrently(tasks);
+    }
+    try (var asm = new Asm(directory.resolve("hashes.bin"), directory.resolve("jars.txt"), 2)) {
+      assertEquals(jars.size(), asm.analyzedJars().lines().count());
+    }
+  }
+
+  @Test
+  public void comparisonsDuringAnalyses(@TempDir Path directory) throws IOException, InterruptedException {
+    analyzeWhileComparing(directory, 0);
+  }
+
+  @Test
+  public void comparisonsDuringAnalysesWithLazyLoading(@TempDir Path directory)
+      throws IOException, InterruptedException {
+    analyzeWhileComparing(directory, 2);
+  }
+}
@@ -0,0 +1,87 @@
+package fr.uge.clonewar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the cache of the results of the comparisons.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+public class ComparisonCacheTest {
+
+  /**
+   * Makes a comparison counting its calls, whose result is the amount of calls.
+   *
+   * @param calls is the counter of the calls.
+   * @return the comparison.
+   */
+  private static Supplier<Integer> comparison(AtomicInteger calls) {
+    return calls::incrementAndGet;
+  }
+
+  @Test
+  public void hitsAndMisses() {
+    var cache = new ComparisonCache<Integer>(new ComparisonCache.Policy(10, 60_000));
+    var calls = new AtomicInteger();
+    assertEquals(1, cache.get("a.jar", "b.jar", comparison(calls)));
+    assertEquals(1, cache.get("a.jar", "b.jar", comparison(calls))); // Not compared again
+    assertEquals(2, cache.get("b.jar", "a.jar", comparison(calls))); // The pair is ordered
+    assertEquals(2, calls.get());
+    assertEquals(new ComparisonCache.Statistics(1, 2, 0, 2), cache.statistics());
+  }
+
+  @Test
+  public void leastRecentlyUsedResultIsEvicted() {
+    var cache = new ComparisonCache<Integer>(new ComparisonCache.Policy(2, 60_000));
+    var calls = new AtomicInteger();
+    cache.get("a.jar", "b.jar", comparison(calls));
+    cache.get("a.jar", "c.jar", comparison(calls));
+    assertEquals(1, cache.get("a.jar", "b.jar", comparison(calls))); // Most recently used
+    cache.get("a.jar", "d.jar", comparison(calls)); // Evicts a.jar and c.jar
+    assertEquals(3, calls.get());
+    assertEquals(1, cache.get("a.jar", "b.jar", comparison(calls)));
+    assertEquals(4, cache.get("a.jar", "c.jar", comparison(calls)));
+    assertEquals(new ComparisonCache.Statistics(2, 4, 2, 2), cache.statistics());
+  }
+
+  @Test
+  public void expiredResultIsComparedAgain() throws InterruptedException {
+    var cache = new ComparisonCache<Integer>(new ComparisonCache.Policy(10, 1));
+    var calls = new AtomicInteger();
+    assertEquals(1, cache.get("a.jar", "b.jar", comparison(calls)));
+    Thread.sleep(20);
+    assertEquals(2, cache.get("a.jar", "b.jar", comparison(calls)));
+    assertEquals(new ComparisonCache.Statistics(0, 2, 1, 1), cache.statistics());
+  }
+
+  @Test
+  public void newVersionInvalidatesResults() {
+    var cache = new ComparisonCache<Integer>(new ComparisonCache.Policy(10, 60_000));
+    var calls = new AtomicInteger();
+    cache.get("a.jar", "b.jar", comparison(calls));
+    cache.get("c.jar", "a.jar", comparison(calls));
+    cache.newVersion("d.jar"); // Doesn't change the results of the other artifacts
+    assertEquals(1, cache.get("a.jar", "b.jar", comparison(calls)));
+    cache.newVersion("a.jar"); // Both as reference and as clone
+    assertEquals(3, cache.get("a.jar", "b.jar", comparison(calls)));
+    assertEquals(4, cache.get("c.jar", "a.jar", comparison(calls)));
+    assertEquals(3, cache.get("a.jar", "b.jar", comparison(calls)));
+    assertEquals(4, calls.get());
+  }
+
+  @Test
+  public void disabledCacheAlwaysCompares() {
+    var cache = new ComparisonCache<Integer>(new ComparisonCache.Policy(0, 60_000));
+    var calls = new AtomicInteger();
+    assertEquals(1, cache.get("a.jar", "b.jar", comparison(calls)));
+    assertEquals(2, cache.get("a.jar", "b.jar", comparison(calls)));
+    assertEquals(0, cache.statistics().hits());
+    assertEquals(0, cache.statistics().size());
+  }
+}
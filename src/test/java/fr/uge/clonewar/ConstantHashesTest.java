@@ -0,0 +1,82 @@
+package fr.uge.clonewar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+
+/**
+ * Tests of the hash codes of the constants, compared with the hash codes of
+ * their string representations.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+public class ConstantHashesTest {
+
+  /**
+   * Strings whose hash codes are checked.
+   */
+  private static final List<String> STRINGS = List.of("", "a", "Hello, world!", "\"quoted\"", "é à ç",
+      "😀 emoji", "x".repeat(1_000));
+
+  /**
+   * Numbers whose hash codes are checked.
+   */
+  private static final List<Long> NUMBERS = List.of(0L, 1L, 9L, 10L, -1L, -10L, 123_456_789L, -987_654_321L,
+      (long) Integer.MAX_VALUE, (long) Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE);
+
+  @Test
+  public void quotedHashIsHashOfQuotedString() {
+    for (var string : STRINGS) {
+      assertEquals(("\"" + string + "\"").hashCode(), ConstantHashes.quotedHash(string), string);
+    }
+  }
+
+  @Test
+  public void decimalHashIsHashOfDecimalString() {
+    for (var number : NUMBERS) {
+      assertEquals(number.toString().hashCode(), ConstantHashes.decimalHash(number), number.toString());
+    }
+  }
+
+  @Test
+  public void constantHashIsHashOfStringRepresentation() {
+    var constants = new ConstantHashes();
+    for (var string : STRINGS) {
+      assertEquals(("\"" + string + "\"").hashCode(), constants.hash(string), string);
+    }
+    for (var number : NUMBERS) {
+      if (number == (int) (long) number) {
+        Integer integer = (int) (long) number;
+        assertEquals(integer.toString().hashCode(), constants.hash(integer), number.toString());
+      }
+      assertEquals(number.toString().hashCode(), constants.hash(number), number.toString());
+    }
+    var type = Type.getType("Ljava/lang/String;");
+    assertEquals(type.toString().hashCode(), constants.hash(type));
+    assertEquals(type.toString().hashCode(), constants.hash(Type.getType("Ljava/lang/String;"))); // From the cache
+    assertEquals(Double.toString(1.5).hashCode(), constants.hash(1.5));
+  }
+
+  @Test
+  public void stringsAndNumbersDontAllocate() {
+    var constants = new ConstantHashes();
+    Object[] values = { "", "Hello, world!", "😀 emoji", 0, -42, Integer.MIN_VALUE, Long.MIN_VALUE };
+    var sum = 0;
+    for (var i = 0; i < 100_000; i++) { // Compiles the calculation before the measure
+      sum += constants.hash(values[i % values.length]);
+    }
+    var before = Asm.currentThreadAllocatedBytes();
+    for (var i = 0; i < 10_000; i++) {
+      sum += constants.hash(values[i % values.length]);
+    }
+    var after = Asm.currentThreadAllocatedBytes();
+    if (before == -1) { // The virtual machine can't measure the allocations
+      return;
+    }
+    assertTrue(after - before < 1_024, (after - before) + " bytes allocated, " + sum);
+  }
+}
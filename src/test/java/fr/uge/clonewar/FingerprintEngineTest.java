@@ -0,0 +1,261 @@
+package fr.uge.clonewar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the fingerprint engine calculates the same hashes as the rolling
+ * hash of the first versions, so that the backup files stay valid.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+public class FingerprintEngineTest {
+
+  /**
+   * Rolling hash of the first versions, a list of boxed hashes for the window and
+   * powers calculated with {@link Math#pow(double, double)}, kept as the
+   * reference of the expected hashes.
+   */
+  private static final class BaselineHash {
+
+    /**
+     * Hashes of the blocks.
+     */
+    private final ArrayList<Long> hashTable = new ArrayList<>();
+
+    /**
+     * Window of byte code line hashes.
+     */
+    private final ArrayList<Long> window = new ArrayList<>(FingerprintEngine.WINDOW_SIZE);
+
+    /**
+     * Hash of the window.
+     */
+    private long windowHash;
+
+    /**
+     * Count of the lines already visited in the window.
+     */
+    private int count;
+
+    /**
+     * Rolling hash of the first versions.
+     */
+    private static long rollingHash(long hash, long oldFirstHashCode, int blockSize, long addedHashCode) {
+      return (hash - oldFirstHashCode * Math.round(Math.pow(FingerprintEngine.PRIME_NUMBER, blockSize)))
+          * FingerprintEngine.PRIME_NUMBER + addedHashCode * FingerprintEngine.PRIME_NUMBER;
+    }
+
+    /**
+     * Polynomial hash of a block of the first versions.
+     */
+    private static long hash(ArrayList<Long> block) {
+      long hashCode = 0;
+      var blockSize = block.size();
+      for (var i = 0; i < block.size(); i++) {
+        hashCode = hashCode + block.get(i) * Math.round(Math.pow(FingerprintEngine.PRIME_NUMBER, blockSize - i));
+      }
+      return hashCode;
+    }
+
+    /**
+     * Starts a method.
+     */
+    void visitCode() {
+      window.clear();
+      windowHash = 0;
+      count = 0;
+    }
+
+    /**
+     * Adds the hash of a byte code line.
+     */
+    void newHash(long addingHash) {
+      if (count == FingerprintEngine.WINDOW_SIZE) {
+        windowHash = hash(window);
+        count++;
+      } else if (window.size() == FingerprintEngine.WINDOW_SIZE) {
+        windowHash = rollingHash(windowHash, window.remove(0), FingerprintEngine.WINDOW_SIZE, addingHash);
+        window.add(addingHash);
+      } else {
+        window.add(addingHash);
+        count++;
+      }
+      addHash();
+    }
+
+    /**
+     * Ends a method.
+     */
+    void visitEnd() {
+      if (count < FingerprintEngine.WINDOW_SIZE) {
+        windowHash = hash(window);
+        addHash();
+      }
+    }
+
+    /**
+     * Stocks the hash of the window if it doesn't worth 0.
+     */
+    private void addHash() {
+      if (windowHash != 0) {
+        hashTable.add(windowHash);
+      }
+    }
+
+    /**
+     * Returns the hashes of the blocks.
+     */
+    long[] hashes() {
+      return hashTable.stream().mapToLong(Long::longValue).toArray();
+    }
+  }
+
+  @Test
+  public void knownMethodHashes() {
+    var engine = new FingerprintEngine();
+    engine.startMethod();
+    for (var instruction = 1; instruction <= 6; instruction++) {
+      engine.addInstruction(instruction);
+    }
+    engine.endMethod();
+    engine.startMethod(); // Shorter than a block
+    engine.addInstruction(1);
+    engine.addInstruction(2);
+    engine.endMethod();
+    // 1*16 + 2*8 + 3*4 + 4*2, the fifth line isn't added to the window, then (52 - 1*16)*2 + 6*2, then 1*4 + 2*2
+    assertArrayEquals(new long[] { 52, 84, 8 }, engine.hashes().toArray());
+    assertEquals(2, engine.methodCount());
+    assertEquals(8, engine.instructionCount());
+  }
+
+  @Test
+  public void emptyMethodHasNoHash() {
+    var engine = new FingerprintEngine();
+    engine.startMethod();
+    engine.endMethod();
+    engine.startMethod();
+    engine.addInstruction(3);
+    engine.addInstruction(-6); // 3*4 - 6*2 is 0
+    engine.endMethod();
+    assertTrue(engine.hashes().isEmpty());
+  }
+
+  @Test
+  public void sameHashesAsBaseline() {
+    var random = new Random(0);
+    for (var run = 0; run < 200; run++) {
+      var engine = new FingerprintEngine();
+      var baseline = new BaselineHash();
+      var methods = random.nextInt(10);
+      for (var method = 0; method < methods; method++) {
+        var abstractMethod = random.nextInt(8) == 0; // Ended without being started, like a method without code
+        if (!abstractMethod) {
+          engine.startMethod();
+          baseline.visitCode();
+          var instructions = random.nextInt(20);
+          for (var i = 0; i < instructions; i++) {
+            long instructionHash = switch (random.nextInt(3)) {
+              case 0 -> random.nextInt(200); // An opcode with a small operand
+              case 1 -> random.nextInt(200) + (long) random.nextInt(); // An opcode plus a hash code
+              default -> random.nextLong(); // Overflowing values
+            };
+            engine.addInstruction(instructionHash);
+            baseline.newHash(instructionHash);
+          }
+        }
+        engine.endMethod();
+        baseline.visitEnd();
+      }
+      assertArrayEquals(baseline.hashes(), engine.hashes().toArray());
+    }
+  }
+
+  /**
+   * Calculates the hashes selected from a single method.
+   *
+   * @param settings     tells which block hashes are kept.
+   * @param instructions is the byte code line hashes of the method.
+   * @return the selected hashes.
+   */
+  private static long[] methodHashes(FingerprintSettings settings, long... instructions) {
+    var engine = new FingerprintEngine(settings);
+    engine.startMethod();
+    for (var instruction : instructions) {
+      engine.addInstruction(instruction);
+    }
+    engine.endMethod();
+    return engine.hashes().toArray();
+  }
+
+  /**
+   * Makes random byte code line hashes.
+   *
+   * @param random is the generator of the hashes.
+   * @param count  is the amount of hashes.
+   * @return the hashes.
+   */
+  private static long[] instructions(Random random, int count) {
+    return random.longs(count).toArray();
+  }
+
+  /**
+   * Concatenates byte code line hashes.
+   *
+   * @param parts is the hashes to concatenate.
+   * @return the hashes of all the parts, in order.
+   */
+  private static long[] concat(long[]... parts) {
+    return Arrays.stream(parts).flatMapToLong(LongStream::of).toArray();
+  }
+
+  @Test
+  public void sharedRunSharesSelectedHash() {
+    var random = new Random(1);
+    var settings = FingerprintSettings.winnowing(4).withKernel(FingerprintSettings.Kernel.POLYNOMIAL64);
+    // Enough lines for winnowingWindow consecutive blocks, one of them is the minimum of a winnowing window
+    var runLength = settings.winnowingWindow() + FingerprintEngine.WINDOW_SIZE - 1;
+    for (var run = 0; run < 200; run++) {
+      var shared = instructions(random, runLength);
+      // The prefixes cover the fifth line of the methods, which isn't part of any block
+      var method1 = concat(instructions(random, FingerprintEngine.WINDOW_SIZE + 1 + random.nextInt(10)), shared,
+          instructions(random, random.nextInt(10)));
+      var method2 = concat(instructions(random, FingerprintEngine.WINDOW_SIZE + 1 + random.nextInt(10)), shared,
+          instructions(random, random.nextInt(10)));
+      var hashes1 = new HashSet<Long>();
+      for (var hash : methodHashes(settings, method1)) {
+        hashes1.add(hash);
+      }
+      assertTrue(LongStream.of(methodHashes(settings, method2)).anyMatch(hashes1::contains), "run " + run);
+    }
+  }
+
+  @Test
+  public void shortMethodKeepsItsMinimum() {
+    var random = new Random(2);
+    var settings = FingerprintSettings.winnowing(8).withKernel(FingerprintSettings.Kernel.POLYNOMIAL64);
+    var all = FingerprintSettings.DEFAULT.withKernel(FingerprintSettings.Kernel.POLYNOMIAL64);
+    // Fewer blocks than a winnowing window, the first block of a method covering its fifth line as well
+    for (var length = 1; length < settings.winnowingWindow() + FingerprintEngine.WINDOW_SIZE - 1; length++) {
+      var method = instructions(random, length);
+      var blocks = methodHashes(all, method);
+      assertTrue(blocks.length < settings.winnowingWindow());
+      var expected = blocks.length == 0 ? new long[0] : new long[] { LongStream.of(blocks).min().orElseThrow() };
+      assertArrayEquals(expected, methodHashes(settings, method), "length " + length);
+    }
+  }
+
+  @Test
+  public void invalidWindowSizeIsRejected() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new FingerprintEngine(0, FingerprintSettings.DEFAULT, new LongList()));
+  }
+}
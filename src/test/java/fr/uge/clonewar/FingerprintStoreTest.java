@@ -0,0 +1,383 @@
+package fr.uge.clonewar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of the binary backup file of the hashes: writing and reading, migration
+ * of the text backup file, reading of the old segment versions and recovery of
+ * a torn end of file.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+public class FingerprintStoreTest {
+
+  /**
+   * Settings using the winnowing and the {@link FingerprintSettings.Kernel#POLYNOMIAL64}
+   * kernel, different from the default ones.
+   */
+  private static final FingerprintSettings WINNOWING = new FingerprintSettings(
+      FingerprintSettings.Selection.WINNOWING, 4, FingerprintSettings.Kernel.POLYNOMIAL64);
+
+  /**
+   * Makes a class whose methods share its hashes.
+   *
+   * @param className is the name of the class.
+   * @param digest    is the digest of the class.
+   * @param hashes    is the hashes of the class.
+   * @return the class.
+   */
+  private static FingerprintStore.ClassRecord classRecord(String className, long digest, long... hashes) {
+    var half = hashes.length / 2;
+    return new FingerprintStore.ClassRecord(className, digest, hashes, List.of(
+        new MethodRange("first", "()V", 1, 2, half),
+        new MethodRange("second", "(I)I", 3, 4, hashes.length - half)));
+  }
+
+  /**
+   * Checks that a stocked class has the given name, digest and hashes.
+   *
+   * @param store     is the store.
+   * @param entry     is the stocked class.
+   * @param className is the expected name of the class.
+   * @param digest    is the expected digest of the class.
+   * @param hashes    is the expected hashes of the class.
+   */
+  private static void assertEntry(FingerprintStore store, FingerprintStore.Entry entry, String className,
+                                  long digest, long... hashes) throws IOException {
+    assertEquals(className, entry.className());
+    assertEquals(digest, entry.digest());
+    assertEquals(hashes.length, entry.hashCount());
+    assertArrayEquals(hashes, store.read(entry));
+  }
+
+  @Test
+  public void appendAndOpen(@TempDir Path directory) throws IOException {
+    var file = directory.resolve("hashes.bin");
+    var sketch = new long[] { 7, 8, 9 };
+    long size;
+    try (var store = FingerprintStore.open(file)) {
+      store.append("a.jar", FingerprintSettings.DEFAULT, null, List.of(classRecord("A.class", 1, 10, 11, 12)));
+      store.append("b.jar", WINNOWING, sketch, List.of(classRecord("B.class", 2, 20, 21),
+          classRecord("C.class", 3, 30)));
+      store.append("a.jar", FingerprintSettings.DEFAULT, null, List.of(classRecord("A.class", 4, 13, 14)));
+      assertTrue(store.deadBytes() > 0);
+      size = store.size();
+    }
+    try (var store = FingerprintStore.open(file)) {
+      assertEquals(List.of("b.jar", "a.jar"), store.artifacts());
+      assertEquals(size, store.size());
+      assertEquals(FingerprintSettings.DEFAULT, store.settings("a.jar"));
+      assertEquals(WINNOWING, store.settings("b.jar"));
+      assertNull(store.sketch("a.jar"));
+      assertArrayEquals(sketch, store.sketch("b.jar"));
+      var aEntries = store.entries("a.jar");
+      assertEquals(1, aEntries.size());
+      assertEntry(store, aEntries.get(0), "A.class", 4, 13, 14);
+      var bEntries = store.entries("b.jar");
+      assertEquals(2, bEntries.size());
+      assertEntry(store, bEntries.get(0), "B.class", 2, 20, 21);
+      assertEntry(store, bEntries.get(1), "C.class", 3, 30);
+      assertEquals(classRecord("B.class", 2, 20, 21).methods(), bEntries.get(0).methods());
+      assertTrue(store.entries("c.jar").isEmpty());
+      assertNull(store.settings("c.jar"));
+    }
+  }
+
+  @Test
+  public void migrateTextBackupFile(@TempDir Path directory) throws IOException {
+    var textFile = directory.resolve("hashes.txt");
+    var file = directory.resolve("hashes.bin");
+    Files.writeString(textFile, """
+        a.jar : A.class
+        1 2 3
+        a.jar : B.class
+
+        b.jar : C.class
+        4 5
+        a.jar : A.class
+        6 7
+        """);
+    FingerprintStore.migrate(textFile, file);
+    try (var store = FingerprintStore.open(file)) {
+      assertEquals(List.of("a.jar", "b.jar"), store.artifacts());
+      assertEquals(FingerprintSettings.DEFAULT, store.settings("a.jar"));
+      assertNull(store.sketch("a.jar"));
+      var aEntries = store.entries("a.jar");
+      assertEquals(2, aEntries.size());
+      assertEntry(store, aEntries.get(0), "A.class", FingerprintStore.NO_DIGEST, 6, 7); // The last hashes are kept
+      assertEntry(store, aEntries.get(1), "B.class", FingerprintStore.NO_DIGEST);
+      assertNull(aEntries.get(0).methods());
+      assertEntry(store, store.entries("b.jar").get(0), "C.class", FingerprintStore.NO_DIGEST, 4, 5);
+    }
+  }
+
+  /**
+   * Writes a string in a string table.
+   */
+  private static void putString(ByteBuffer buffer, String string) {
+    var bytes = string.getBytes(StandardCharsets.UTF_8);
+    buffer.putInt(bytes.length).put(bytes);
+  }
+
+  /**
+   * Writes a segment of an old version of the format, containing a single class
+   * of two methods, as the previous versions of the application wrote it.
+   *
+   * @param buffer   is the buffer the segment is written in.
+   * @param version  is the version of the segment, from 1 to 5.
+   * @param artifact is the string path of the artifact.
+   * @param digest   is the digest of the class, ignored before the version 2.
+   * @param hashes   is the hashes of the class.
+   */
+  private static void putOldSegment(ByteBuffer buffer, int version, String artifact, long digest, long... hashes) {
+    var table = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+    putString(table, artifact);
+    if (version >= 3) { // Settings
+      table.putInt(FingerprintSettings.Selection.WINNOWING.ordinal()).putInt(4);
+      if (version >= 5) {
+        table.putInt(FingerprintSettings.Kernel.POLYNOMIAL64.ordinal());
+      }
+    }
+    putString(table, "C" + version + ".class");
+    table.putInt(hashes.length);
+    if (version >= 2) {
+      table.putLong(digest);
+    }
+    if (version >= 4) { // Methods
+      table.putInt(2);
+      putString(table, "first");
+      putString(table, "()V");
+      table.putInt(1).putInt(2).putInt(1);
+      putString(table, "second");
+      putString(table, "(I)I");
+      table.putInt(3).putInt(4).putInt(hashes.length - 1);
+    }
+    var tableSize = (table.position() + Long.BYTES - 1) & -Long.BYTES;
+    buffer.putInt(0x5345474D).putInt(version).putInt(1).putInt(tableSize).putLong(hashes.length);
+    buffer.put(table.flip()).position(buffer.position() + tableSize - table.limit());
+    for (var hash : hashes) {
+      buffer.putLong(hash);
+    }
+  }
+
+  @Test
+  public void readOldSegmentVersions(@TempDir Path directory) throws IOException {
+    var file = directory.resolve("hashes.bin");
+    var buffer = ByteBuffer.allocate(8192).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(0x43574653).putInt(5).putLong(0);
+    for (var version = 1; version <= 5; version++) {
+      putOldSegment(buffer, version, "v" + version + ".jar", 100 + version, version, version * 10L, version * 100L);
+    }
+    Files.write(file, Arrays.copyOf(buffer.array(), buffer.position()));
+    var legacyWinnowing = new FingerprintSettings(FingerprintSettings.Selection.WINNOWING, 4);
+    try (var store = FingerprintStore.open(file)) {
+      assertEquals(List.of("v1.jar", "v2.jar", "v3.jar", "v4.jar", "v5.jar"), store.artifacts());
+      for (var version = 1; version <= 5; version++) {
+        var artifact = "v" + version + ".jar";
+        var entries = store.entries(artifact);
+        assertEquals(1, entries.size());
+        var digest = version >= 2 ? 100 + version : FingerprintStore.NO_DIGEST;
+        assertEntry(store, entries.get(0), "C" + version + ".class", digest, version, version * 10L, version * 100L);
+        var settings = version >= 5 ? WINNOWING : version >= 3 ? legacyWinnowing : FingerprintSettings.DEFAULT;
+        assertEquals(settings, store.settings(artifact));
+        assertNull(store.sketch(artifact));
+        if (version >= 4) {
+          assertEquals(List.of(new MethodRange("first", "()V", 1, 2, 1), new MethodRange("second", "(I)I", 3, 4, 2)),
+              entries.get(0).methods());
+        } else {
+          assertNull(entries.get(0).methods());
+        }
+      }
+      store.append("v1.jar", WINNOWING, null, List.of(classRecord("C1.class", 5, 1, 2))); // Mixed versions
+    }
+    try (var store = FingerprintStore.open(file)) {
+      assertEquals(List.of("v2.jar", "v3.jar", "v4.jar", "v5.jar", "v1.jar"), store.artifacts());
+      assertEntry(store, store.entries("v1.jar").get(0), "C1.class", 5, 1, 2);
+    }
+  }
+
+  /**
+   * Writes two artifacts in a new store.
+   *
+   * @param file is the path of the store.
+   * @return the size of the store.
+   */
+  private static long writeTwoArtifacts(Path file) throws IOException {
+    try (var store = FingerprintStore.open(file)) {
+      store.append("a.jar", FingerprintSettings.DEFAULT, null, List.of(classRecord("A.class", 1, 10, 11, 12)));
+      store.append("b.jar", FingerprintSettings.DEFAULT, null, List.of(classRecord("B.class", 2, 20, 21)));
+      return store.size();
+    }
+  }
+
+  /**
+   * Checks that a store contains the two artifacts of
+   * {@link #writeTwoArtifacts(Path)} and can be appended to.
+   *
+   * @param file is the path of the store.
+   * @param size is the size of the store once written.
+   */
+  private static void assertTwoArtifacts(Path file, long size) throws IOException {
+    try (var store = FingerprintStore.open(file)) {
+      assertEquals(List.of("a.jar", "b.jar"), store.artifacts());
+      assertEquals(size, store.size());
+      assertEquals(size, Files.size(file));
+      assertEntry(store, store.entries("b.jar").get(0), "B.class", 2, 20, 21);
+      store.append("c.jar", FingerprintSettings.DEFAULT, null, List.of(classRecord("C.class", 3, 30, 31)));
+    }
+    try (var store = FingerprintStore.open(file)) {
+      assertEquals(List.of("a.jar", "b.jar", "c.jar"), store.artifacts());
+      assertEntry(store, store.entries("c.jar").get(0), "C.class", 3, 30, 31);
+    }
+  }
+
+  @Test
+  public void zerosAtTheEndAreTruncated(@TempDir Path directory) throws IOException {
+    var file = directory.resolve("hashes.bin");
+    var size = writeTwoArtifacts(file);
+    Files.write(file, new byte[4096], StandardOpenOption.APPEND);
+    assertTwoArtifacts(file, size);
+  }
+
+  @Test
+  public void partialSegmentIsTruncated(@TempDir Path directory) throws IOException {
+    var file = directory.resolve("hashes.bin");
+    var size = writeTwoArtifacts(file);
+    try (var store = FingerprintStore.open(file)) {
+      store.append("partial.jar", FingerprintSettings.DEFAULT, null, List.of(classRecord("P.class", 4, 40, 41)));
+    }
+    try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(Files.size(file) - Long.BYTES); // The last hash hasn't been written
+    }
+    assertTwoArtifacts(file, size);
+  }
+
+  @Test
+  public void partialSegmentHeaderIsTruncated(@TempDir Path directory) throws IOException {
+    var file = directory.resolve("hashes.bin");
+    var size = writeTwoArtifacts(file);
+    Files.write(file, new byte[] { 0x4D, 0x47, 0x45 }, StandardOpenOption.APPEND);
+    assertTwoArtifacts(file, size);
+  }
+
+  @Test
+  public void segmentEncodedBeforeAnotherAppend(@TempDir Path directory) throws IOException {
+    var file = directory.resolve("hashes.bin");
+    var encoded = FingerprintStore.encode("b.jar", FingerprintSettings.DEFAULT, null,
+        List.of(classRecord("B.class", 2, 20, 21)));
+    try (var store = FingerprintStore.open(file)) {
+      store.append("a.jar", FingerprintSettings.DEFAULT, null, List.of(classRecord("A.class", 1, 10, 11, 12)));
+      store.append(encoded); // Written where the file ends now
+      assertEntry(store, store.entries("b.jar").get(0), "B.class", 2, 20, 21);
+    }
+    assertTwoArtifacts(file, Files.size(file));
+  }
+
+  @Test
+  public void corruptedMiddleSegmentIsRejected(@TempDir Path directory) throws IOException {
+    var file = directory.resolve("hashes.bin");
+    long corrupted;
+    try (var store = FingerprintStore.open(file)) {
+      store.append("a.jar", FingerprintSettings.DEFAULT, null, List.of(classRecord("A.class", 1, 10, 11, 12)));
+      corrupted = store.size();
+      store.append("b.jar", FingerprintSettings.DEFAULT, null, List.of(classRecord("B.class", 2, 20, 21)));
+      store.append("c.jar", FingerprintSettings.DEFAULT, null, List.of(classRecord("C.class", 3, 30, 31)));
+    }
+    var size = Files.size(file);
+    try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(Integer.BYTES), corrupted); // The magic number of b.jar is lost
+    }
+    assertThrows(IOException.class, () -> FingerprintStore.open(file));
+    assertEquals(size, Files.size(file)); // The segment of c.jar is kept
+  }
+
+  /**
+   * Checks that a store contains the given artifacts, each one holding a single
+   * class whose hashes are made from the index of the artifact.
+   *
+   * @param store     is the store.
+   * @param artifacts is the expected artifacts, in order.
+   */
+  private static void assertArtifacts(FingerprintStore store, List<String> artifacts) throws IOException {
+    assertEquals(artifacts, store.artifacts());
+    for (var i = 0; i < artifacts.size(); i++) {
+      var entries = store.entries(artifacts.get(i));
+      assertEquals(1, entries.size());
+      assertEntry(store, entries.get(0), "C.class", i, i, i + 1L, i + 2L);
+    }
+  }
+
+  @Test
+  public void compactionKeepsSegmentsAppendedDuringCopy(@TempDir Path directory) throws Exception {
+    var file = directory.resolve("hashes.bin");
+    var artifacts = new ArrayList<String>();
+    try (var store = FingerprintStore.open(file)) {
+      for (var i = 0; i < 50; i++) { // The first segments are replaced by the next ones
+        store.append("jar" + i % 10 + ".jar", FingerprintSettings.DEFAULT, null,
+            List.of(classRecord("C.class", -1, -1, -1, -1)));
+      }
+      for (var i = 0; i < 10; i++) {
+        artifacts.add("jar" + i + ".jar");
+        store.append(artifacts.get(i), FingerprintSettings.DEFAULT, null,
+            List.of(classRecord("C.class", i, i, i + 1L, i + 2L)));
+      }
+      assertTrue(store.needsCompaction(0.5, 1));
+      var compaction = store.startCompaction();
+      var executor = Executors.newSingleThreadExecutor();
+      try {
+        var copy = executor.submit(() -> {
+          compaction.copy();
+          return null;
+        });
+        for (var i = 10; i < 200; i++) { // Appended while the live segments are copied
+          artifacts.add("jar" + i + ".jar");
+          store.append(artifacts.get(i), FingerprintSettings.DEFAULT, null,
+              List.of(classRecord("C.class", i, i, i + 1L, i + 2L)));
+        }
+        copy.get();
+      } finally {
+        executor.shutdown();
+      }
+      compaction.commit();
+      assertEquals(0, store.deadBytes());
+      assertEquals(store.size(), Files.size(file));
+      assertFalse(Files.exists(directory.resolve("hashes.bin.compaction")));
+      assertArtifacts(store, artifacts);
+      store.append("jar0.jar", FingerprintSettings.DEFAULT, null, List.of(classRecord("C.class", 0, 0, 1, 2)));
+      artifacts.remove(0);
+      artifacts.add("jar0.jar");
+      assertTrue(store.deadBytes() > 0);
+    }
+    try (var store = FingerprintStore.open(file)) {
+      assertEquals(List.copyOf(artifacts), store.artifacts());
+      for (var artifact : artifacts) {
+        var i = Integer.parseInt(artifact.substring(3, artifact.length() - 4));
+        assertEntry(store, store.entries(artifact).get(0), "C.class", i, i, i + 1L, i + 2L);
+      }
+    }
+  }
+
+  @Test
+  public void unknownFileIsRejected(@TempDir Path directory) throws IOException {
+    var file = directory.resolve("hashes.bin");
+    Files.writeString(file, "not a fingerprint store");
+    assertThrows(IOException.class, () -> FingerprintStore.open(file));
+  }
+}
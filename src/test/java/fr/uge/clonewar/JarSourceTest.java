@@ -0,0 +1,274 @@
+package fr.uge.clonewar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests of the reading of the classes of the jars, nested jars included, from
+ * generated jars.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+public class JarSourceTest {
+
+  /**
+   * Class read from a jar.
+   *
+   * @param name   is the name of the class.
+   * @param digest is the digest of the class.
+   * @param bytes  is the content of the class.
+   */
+  private record ReadClass(String name, long digest, byte[] bytes) {}
+
+  /**
+   * Content of a jar being written.
+   */
+  private static final class JarBuilder {
+
+    /**
+     * Content of the jar.
+     */
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    /**
+     * Stream writing the jar.
+     */
+    private final ZipOutputStream output = new ZipOutputStream(bytes);
+
+    /**
+     * Adds a deflated entry.
+     *
+     * @param name    is the name of the entry.
+     * @param content is the content of the entry.
+     * @return this builder.
+     */
+    JarBuilder deflated(String name, byte[] content) throws IOException {
+      output.putNextEntry(new ZipEntry(name));
+      output.write(content);
+      output.closeEntry();
+      return this;
+    }
+
+    /**
+     * Adds an entry stored without compression.
+     *
+     * @param name    is the name of the entry.
+     * @param content is the content of the entry.
+     * @return this builder.
+     */
+    JarBuilder stored(String name, byte[] content) throws IOException {
+      var entry = new ZipEntry(name);
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(content.length);
+      entry.setCompressedSize(content.length);
+      var crc = new CRC32();
+      crc.update(content);
+      entry.setCrc(crc.getValue());
+      output.putNextEntry(entry);
+      output.write(content);
+      output.closeEntry();
+      return this;
+    }
+
+    /**
+     * Ends the jar.
+     *
+     * @return the content of the jar.
+     */
+    byte[] build() throws IOException {
+      output.close();
+      return bytes.toByteArray();
+    }
+  }
+
+  /**
+   * Makes the content of a fake class file, the classes aren't visited.
+   *
+   * @param name is the name of the class.
+   * @return the content of the class.
+   */
+  private static byte[] classBytes(String name) {
+    return ("class " + name).repeat(10).getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Calculates the expected digest of a class, made of its size and of its CRC-32
+   * checksum.
+   *
+   * @param content is the content of the class.
+   * @return the digest.
+   */
+  private static long digest(byte[] content) {
+    var crc = new CRC32();
+    crc.update(content);
+    return (long) content.length << 32 | crc.getValue();
+  }
+
+  /**
+   * Reads all the classes of a jar.
+   *
+   * @param jar is the path of the jar.
+   * @return the classes, in the order they are returned.
+   */
+  private static List<ReadClass> read(Path jar) throws IOException {
+    var source = JarSource.open(jar);
+    var classes = new ArrayList<ReadClass>();
+    for (var entry = source.next(); entry != null; entry = source.next()) {
+      classes.add(new ReadClass(entry.name(), entry.digest(), entry.bytes()));
+    }
+    return classes;
+  }
+
+  /**
+   * Checks that a class has been read with the expected name, digest and
+   * content.
+   *
+   * @param expectedName    is the expected name of the class.
+   * @param expectedContent is the expected content of the class.
+   * @param actual          is the read class.
+   */
+  private static void assertClass(String expectedName, byte[] expectedContent, ReadClass actual) {
+    assertEquals(expectedName, actual.name());
+    assertEquals(digest(expectedContent), actual.digest());
+    assertArrayEquals(expectedContent, actual.bytes());
+  }
+
+  @Test
+  public void nestedJars(@TempDir Path directory) throws IOException {
+    var a = classBytes("A");
+    var x = classBytes("X");
+    var y = classBytes("Y");
+    var z = classBytes("Z");
+    var stored = new JarBuilder().deflated("X.class", x).build();
+    var deflated = new JarBuilder().stored("Y.class", y).build();
+    var inner = new JarBuilder().deflated("Z.class", z).build();
+    var middle = new JarBuilder().stored("lib/inner.jar", inner).build();
+    var jar = directory.resolve("fat.jar");
+    Files.write(jar, new JarBuilder()
+        .deflated("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8))
+        .deflated("A.class", a)
+        .stored("BOOT-INF/lib/stored.jar", stored)
+        .deflated("BOOT-INF/lib/deflated.jar", deflated)
+        .stored("BOOT-INF/lib/not-a-zip.jar", "not a zip file".getBytes(StandardCharsets.UTF_8))
+        .deflated("BOOT-INF/lib/middle.jar", middle)
+        .build());
+    var classes = read(jar);
+    assertEquals(4, classes.size());
+    assertClass("A.class", a, classes.get(0));
+    assertClass("BOOT-INF/lib/stored.jar!/X.class", x, classes.get(1));
+    assertClass("BOOT-INF/lib/deflated.jar!/Y.class", y, classes.get(2));
+    assertClass("BOOT-INF/lib/middle.jar!/lib/inner.jar!/Z.class", z, classes.get(3));
+  }
+
+  @Test
+  public void launchScript(@TempDir Path directory) throws IOException {
+    var a = classBytes("A");
+    var x = classBytes("X");
+    var script = "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes(StandardCharsets.UTF_8);
+    var zip = new JarBuilder()
+        .deflated("A.class", a)
+        .stored("BOOT-INF/lib/nested.jar", new JarBuilder().stored("X.class", x).build())
+        .build();
+    var content = new byte[script.length + zip.length];
+    System.arraycopy(script, 0, content, 0, script.length);
+    System.arraycopy(zip, 0, content, script.length, zip.length);
+    var jar = directory.resolve("executable.jar");
+    Files.write(jar, content);
+    var classes = read(jar);
+    assertEquals(2, classes.size());
+    assertClass("A.class", a, classes.get(0));
+    assertClass("BOOT-INF/lib/nested.jar!/X.class", x, classes.get(1));
+  }
+
+  /**
+   * Finds the first central directory file header of a jar.
+   *
+   * @param jar is the content of the jar.
+   * @return the content of the jar, in little-endian order, positioned on the
+   *         header.
+   */
+  private static ByteBuffer centralHeader(byte[] jar) {
+    var buffer = ByteBuffer.wrap(jar).order(ByteOrder.LITTLE_ENDIAN);
+    for (var position = 0; position <= jar.length - Integer.BYTES; position++) {
+      if (buffer.getInt(position) == 0x02014B50) {
+        return buffer.position(position);
+      }
+    }
+    return fail("central directory not found");
+  }
+
+  @Test
+  public void truncatedCentralDirectory(@TempDir Path directory) throws IOException {
+    var bytes = new JarBuilder().deflated("A.class", classBytes("A")).build();
+    var header = centralHeader(bytes);
+    header.putShort(header.position() + 28, (short) 0xFFFF); // The name goes beyond the end of the jar
+    var jar = directory.resolve("truncated.jar");
+    Files.write(jar, bytes);
+    assertThrows(ZipException.class, () -> read(jar));
+  }
+
+  @Test
+  public void truncatedZip64Extra(@TempDir Path directory) throws IOException {
+    var entry = new ZipEntry("A.class");
+    entry.setExtra(new byte[] { 0x77, 0x77, 0, 0, 0x78, 0x78, 0, 0, 0, 0, 0, 0 });
+    var bytes = new ByteArrayOutputStream();
+    try (var output = new ZipOutputStream(bytes)) {
+      output.putNextEntry(entry);
+      output.write(classBytes("A"));
+    }
+    var jar = bytes.toByteArray();
+    var header = centralHeader(jar);
+    var position = header.position();
+    var compressedSize = header.getInt(position + 20);
+    header.putInt(position + 20, 0xFFFFFFFF); // The compressed size needs 8 bytes of ZIP64 information
+    var extra = position + 46 + Short.toUnsignedInt(header.getShort(position + 28));
+    header.putShort(extra, (short) 0x0001); // The ZIP64 information is empty
+    header.putShort(extra + 4, (short) compressedSize); // The next fields look like the compressed size
+    var path = directory.resolve("zip64.jar");
+    Files.write(path, jar);
+    assertThrows(ZipException.class, () -> read(path));
+  }
+
+  @Test
+  public void notZipJar(@TempDir Path directory) throws IOException {
+    var jar = directory.resolve("not-a-zip.jar");
+    Files.write(jar, "not a zip file".repeat(10).getBytes(StandardCharsets.UTF_8));
+    assertThrows(ZipException.class, () -> JarSource.open(jar));
+  }
+
+  @Test
+  public void zip64Jar(@TempDir Path directory) throws IOException {
+    var count = 70_000; // More entries than the end of central directory record can tell
+    var builder = new JarBuilder();
+    for (var i = 0; i < count; i++) {
+      builder.deflated("p/C" + i + ".class", classBytes("C" + i));
+    }
+    var nested = classBytes("X");
+    builder.stored("lib/nested.jar", new JarBuilder().deflated("X.class", nested).build());
+    var jar = directory.resolve("zip64.jar");
+    Files.write(jar, builder.build());
+    var classes = read(jar);
+    assertEquals(count + 1, classes.size());
+    assertClass("p/C0.class", classBytes("C0"), classes.get(0));
+    assertClass("p/C12345.class", classBytes("C12345"), classes.get(12_345));
+    assertClass("p/C69999.class", classBytes("C69999"), classes.get(count - 1));
+    assertClass("lib/nested.jar!/X.class", nested, classes.get(count));
+  }
+}
@@ -0,0 +1,145 @@
+package fr.uge.clonewar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the estimation of the similarity of the artifacts by their MinHash
+ * sketches and of the choice of the bands.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+public class MinHashTest {
+
+  /**
+   * Makes two sets of distinct random hashes of the given sizes sharing the given
+   * amount of hashes.
+   *
+   * @param random is the generator of the hashes.
+   * @param shared is the amount of hashes in both sets.
+   * @param only1  is the amount of hashes only in the first set.
+   * @param only2  is the amount of hashes only in the second set.
+   * @return the two sets of hashes.
+   */
+  private static long[][] sets(Random random, int shared, int only1, int only2) {
+    var hashes = random.longs().distinct().limit(shared + only1 + only2).toArray();
+    var set1 = LongStream.concat(LongStream.of(hashes).limit(shared),
+        LongStream.of(hashes).skip(shared).limit(only1)).toArray();
+    var set2 = LongStream.concat(LongStream.of(hashes).limit(shared),
+        LongStream.of(hashes).skip(shared + only1)).toArray();
+    return new long[][] { set1, set2 };
+  }
+
+  /**
+   * Tells if two sketches share at least one band.
+   *
+   * @param sketch1 is the first sketch.
+   * @param sketch2 is the second sketch.
+   * @param rows    is the amount of values of a band.
+   * @return true if the keys of a band are equal.
+   */
+  private static boolean shareBand(long[] sketch1, long[] sketch2, int rows) {
+    for (var band = 0; band < MinHash.SKETCH_SIZE / rows; band++) {
+      if (MinHash.bandKey(sketch1, band, rows) == MinHash.bandKey(sketch2, band, rows)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void emptyHashesHaveEmptySketch() {
+    assertEquals(0, MinHash.sketch(new long[0]).length);
+    assertEquals(0.0, MinHash.similarity(new long[0], MinHash.sketch(new long[] { 1, 2, 3 })));
+  }
+
+  @Test
+  public void sketchOnlyDependsOnDistinctHashes() {
+    var sketch = MinHash.sketch(new long[] { 5, -3, 42, Long.MIN_VALUE });
+    assertEquals(MinHash.SKETCH_SIZE, sketch.length);
+    assertArrayEquals(sketch, MinHash.sketch(new long[] { 42, Long.MIN_VALUE, 5, 42, -3, 5 }));
+    assertEquals(1.0, MinHash.similarity(sketch, sketch));
+  }
+
+  @Test
+  public void estimationStaysWithinMargin() {
+    var random = new Random(0);
+    int[][] cases = { { 500, 500, 500 }, { 900, 50, 50 }, { 100, 2_000, 0 }, { 0, 300, 300 }, { 250, 0, 750 } };
+    for (var run = 0; run < 20; run++) {
+      for (var sizes : cases) {
+        var sets = sets(random, sizes[0], sizes[1], sizes[2]);
+        var jaccard = (double) sizes[0] / (sizes[0] + sizes[1] + sizes[2]);
+        var estimate = MinHash.similarity(MinHash.sketch(sets[0]), MinHash.sketch(sets[1]));
+        assertTrue(estimate >= 0 && estimate <= 1);
+        assertEquals(jaccard, estimate, MinHash.ESTIMATION_MARGIN);
+      }
+    }
+  }
+
+  @Test
+  public void rowsPerBandFindsPairsAtThreshold() {
+    for (var percent = 5; percent <= 100; percent += 5) {
+      var threshold = percent / 100.0;
+      var rows = MinHash.rowsPerBand(threshold);
+      assertTrue(rows >= 1 && rows <= MinHash.SKETCH_SIZE);
+      var bands = MinHash.SKETCH_SIZE / rows;
+      assertTrue(1 - Math.pow(1 - Math.pow(threshold, rows), bands) >= 0.95);
+      if (rows < MinHash.SKETCH_SIZE) { // Bigger bands would miss pairs at the threshold
+        assertTrue(1 - Math.pow(1 - Math.pow(threshold, rows + 1), MinHash.SKETCH_SIZE / (rows + 1)) < 0.95);
+      }
+    }
+    assertEquals(MinHash.SKETCH_SIZE, MinHash.rowsPerBand(1));
+    assertTrue(MinHash.rowsPerBand(0.9) > MinHash.rowsPerBand(0.5));
+  }
+
+  @Test
+  public void invalidThresholdIsRejected() {
+    assertThrows(IllegalArgumentException.class, () -> MinHash.rowsPerBand(0));
+    assertThrows(IllegalArgumentException.class, () -> MinHash.rowsPerBand(1.5));
+    assertThrows(IllegalArgumentException.class, () -> MinHash.rowsPerBand(Double.NaN));
+  }
+
+  @Test
+  public void similarPairsShareBand() {
+    var random = new Random(1);
+    var rows = MinHash.rowsPerBand(0.7);
+    var missed = 0;
+    for (var run = 0; run < 50; run++) {
+      var sets = sets(random, 800, 100, 100); // Similarity of 0.8
+      if (!shareBand(MinHash.sketch(sets[0]), MinHash.sketch(sets[1]), rows)) {
+        missed++;
+      }
+    }
+    assertTrue(missed <= 2, "missed " + missed + " similar pairs");
+  }
+
+  @Test
+  public void dissimilarPairsRarelyShareBand() {
+    var random = new Random(2);
+    var rows = MinHash.rowsPerBand(0.8);
+    var candidates = 0;
+    for (var run = 0; run < 50; run++) {
+      var sets = sets(random, 100, 400, 400); // Similarity of 0.1
+      if (shareBand(MinHash.sketch(sets[0]), MinHash.sketch(sets[1]), rows)) {
+        candidates++;
+      }
+    }
+    assertTrue(candidates <= 2, candidates + " dissimilar pairs are candidates");
+  }
+
+  @Test
+  public void bandKeyDependsOnBand() {
+    var sketch = new long[MinHash.SKETCH_SIZE]; // All the bands have the same values
+    assertEquals(MinHash.bandKey(sketch, 3, 4), MinHash.bandKey(sketch.clone(), 3, 4));
+    assertNotEquals(MinHash.bandKey(sketch, 0, 4), MinHash.bandKey(sketch, 1, 4));
+    var other = sketch.clone();
+    other[13] = 1; // In the band 3 of 4 values
+    assertEquals(MinHash.bandKey(sketch, 2, 4), MinHash.bandKey(other, 2, 4));
+    assertNotEquals(MinHash.bandKey(sketch, 3, 4), MinHash.bandKey(other, 3, 4));
+  }
+}
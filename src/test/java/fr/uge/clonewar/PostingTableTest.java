@@ -0,0 +1,147 @@
+package fr.uge.clonewar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the table of the postings of the hashes, compared with a map of
+ * lists.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+public class PostingTableTest {
+
+  /**
+   * Returns the postings of a hash of a table.
+   *
+   * @param table is the table.
+   * @param hash  is the hash.
+   * @return the postings of the hash, null if it isn't in the table.
+   */
+  private static List<Long> postings(PostingTable table, long hash) {
+    var slot = table.find(hash);
+    if (slot == -1) {
+      return null;
+    }
+    var postings = new ArrayList<Long>();
+    for (var i = 0; i < table.count(slot); i++) {
+      postings.add(table.posting(slot, i));
+    }
+    return postings;
+  }
+
+  /**
+   * Checks that a table holds the same postings as a map.
+   *
+   * @param expected is the postings of each hash.
+   * @param table    is the table.
+   */
+  private static void assertSamePostings(HashMap<Long, List<Long>> expected, PostingTable table) {
+    assertEquals(expected.size(), table.size());
+    var used = 0;
+    for (var slot = 0; slot < table.capacity(); slot++) {
+      if (table.count(slot) != 0) {
+        used++;
+        assertEquals(slot, table.find(table.hash(slot)));
+        assertTrue(table.probeLength(slot) >= 1);
+      }
+    }
+    assertEquals(expected.size(), used);
+    for (var entry : expected.entrySet()) {
+      assertEquals(entry.getValue(), postings(table, entry.getKey()));
+    }
+  }
+
+  @Test
+  public void addAndFind() {
+    var table = new PostingTable();
+    assertEquals(-1, table.find(42));
+    table.add(42, 1);
+    table.add(42, 2);
+    table.add(0, 3); // 0 is a hash like the others
+    table.add(-7, 4);
+    assertEquals(3, table.size());
+    assertEquals(List.of(1L, 2L), postings(table, 42));
+    assertEquals(List.of(3L), postings(table, 0));
+    assertEquals(4, table.lastPosting(-7));
+    assertEquals(-1, table.lastPosting(5));
+    assertNull(postings(table, 5));
+  }
+
+  @Test
+  public void removedPostingsLeaveTable() {
+    var table = new PostingTable();
+    for (var posting = 0; posting < 5; posting++) {
+      table.add(42, posting);
+    }
+    table.add(43, 9);
+    assertTrue(table.removeIf(42, posting -> posting % 2 == 0));
+    assertEquals(List.of(1L, 3L), postings(table, 42));
+    assertFalse(table.removeIf(42, posting -> posting == 7));
+    assertFalse(table.removeIf(44, posting -> true));
+    assertTrue(table.removeIf(42, posting -> true));
+    assertEquals(-1, table.find(42));
+    assertEquals(1, table.size());
+    assertEquals(List.of(9L), postings(table, 43));
+    table.add(42, 8); // A removed hash can be added again
+    assertEquals(List.of(8L), postings(table, 42));
+  }
+
+  @Test
+  public void sameContentAsMap() {
+    var random = new Random(0);
+    var table = new PostingTable();
+    var expected = new HashMap<Long, List<Long>>();
+    for (var step = 0; step < 200_000; step++) {
+      var hash = (long) random.nextInt(5_000) * 1024; // Poorly distributed like the hashes of the legacy kernel
+      if (random.nextInt(4) != 0) {
+        var posting = random.nextLong(100);
+        table.add(hash, posting);
+        expected.computeIfAbsent(hash, __ -> new ArrayList<>()).add(posting);
+      } else {
+        var removed = random.nextLong(100);
+        var list = expected.get(hash);
+        var changed = list != null && list.removeIf(posting -> posting <= removed);
+        if (list != null && list.isEmpty()) {
+          expected.remove(hash);
+        }
+        assertEquals(changed, table.removeIf(hash, posting -> posting <= removed));
+      }
+      if (step % 20_000 == 0) {
+        assertSamePostings(expected, table);
+      }
+    }
+    assertSamePostings(expected, table);
+    for (var hash : new ArrayList<>(expected.keySet())) { // Removing all the hashes shifts back the slots
+      assertTrue(table.removeIf(hash, posting -> true));
+      expected.remove(hash);
+      if (expected.size() % 1_000 == 0) {
+        assertSamePostings(expected, table);
+      }
+    }
+    assertEquals(0, table.size());
+  }
+
+  @Test
+  public void heapBytesStayCompact() {
+    var table = new PostingTable();
+    var count = 100_000;
+    for (var hash = 0L; hash < count; hash++) {
+      table.add(hash * 0x9E3779B97F4A7C15L, hash);
+    }
+    assertTrue(table.heapBytes() < count * 64L, table.heapBytes() + " bytes"); // A map of boxed lists takes 100
+    for (var round = 0; round < 10; round++) { // The blocks moved by the growth are reclaimed
+      for (var hash = 0L; hash < 1_000; hash++) {
+        table.add(hash * 0x9E3779B97F4A7C15L, round);
+      }
+    }
+    assertTrue(table.heapBytes() < count * 64L, table.heapBytes() + " bytes");
+  }
+}
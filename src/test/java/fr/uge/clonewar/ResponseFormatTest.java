@@ -0,0 +1,41 @@
+package fr.uge.clonewar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the escaping of the strings written in the JSON responses.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+public class ResponseFormatTest {
+
+  @Test
+  public void plainStringIsQuoted() {
+    assertEquals("\"\"", ResponseFormat.quote(""));
+    assertEquals("\"/home/user/toy-0.0.1.jar\"", ResponseFormat.quote("/home/user/toy-0.0.1.jar"));
+  }
+
+  @Test
+  public void quotesAndBackslashesAreEscaped() {
+    assertEquals("\"C:\\\\jars\\\\\\\"toy\\\".jar\"", ResponseFormat.quote("C:\\jars\\\"toy\".jar"));
+  }
+
+  @Test
+  public void controlCharactersAreEscaped() {
+    assertEquals("\"a\\nb\\rc\\td\"", ResponseFormat.quote("a\nb\rc\td"));
+    assertEquals("\"\\u0000\\u001f\\u0008\"", ResponseFormat.quote("\u0000\u001f\b"));
+  }
+
+  @Test
+  public void otherCharactersAreKept() {
+    assertEquals("\"artéfact / € \u007f 𝄞\"", ResponseFormat.quote("artéfact / € \u007f 𝄞"));
+  }
+
+  @Test
+  public void nullIsRejected() {
+    assertThrows(NullPointerException.class, () -> ResponseFormat.quote(null));
+  }
+}
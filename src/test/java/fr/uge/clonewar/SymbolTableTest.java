@@ -0,0 +1,64 @@
+package fr.uge.clonewar;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the dictionary of the names of the artifacts and of the classes.
+ *
+ * @author Dylan DE JESUS & Vincent RICHARD
+ *
+ */
+public class SymbolTableTest {
+
+  @Test
+  public void idsAreDense() {
+    var table = new SymbolTable();
+    assertEquals(0, table.size());
+    assertEquals(0, table.intern("/jars/a.jar"));
+    assertEquals(1, table.intern("/jars/b.jar"));
+    assertEquals(2, table.intern("p/A.class"));
+    assertEquals(3, table.size());
+    assertEquals("/jars/b.jar", table.symbol(1));
+  }
+
+  @Test
+  public void sameStringHasSameId() {
+    var table = new SymbolTable();
+    var id = table.intern("/jars/a.jar");
+    table.intern("/jars/b.jar");
+    assertEquals(id, table.intern(new String("/jars/a.jar")));
+    assertEquals(id, table.id(new String("/jars/a.jar")));
+    assertEquals(2, table.size());
+  }
+
+  @Test
+  public void unknownStringIsNotAdded() {
+    var table = new SymbolTable();
+    table.intern("/jars/a.jar");
+    assertEquals(SymbolTable.NO_ID, table.id("/jars/b.jar"));
+    assertEquals(1, table.size());
+    assertThrows(IndexOutOfBoundsException.class, () -> table.symbol(1));
+  }
+
+  @Test
+  public void canonicalInstanceIsKept() {
+    var table = new SymbolTable();
+    var first = new String("p/A.class");
+    var second = new String("p/A.class");
+    assertNotSame(first, second);
+    assertSame(first, table.canonical(first));
+    assertSame(first, table.canonical(second)); // The equal string read later is replaced
+    assertSame(first, table.symbol(table.intern(second)));
+    assertEquals(1, table.size());
+  }
+
+  @Test
+  public void nullIsRejected() {
+    var table = new SymbolTable();
+    assertThrows(NullPointerException.class, () -> table.intern(null));
+    assertThrows(NullPointerException.class, () -> table.id(null));
+    assertThrows(NullPointerException.class, () -> table.canonical(null));
+  }
+}